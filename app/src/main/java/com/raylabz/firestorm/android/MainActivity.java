@@ -11,12 +11,27 @@ import android.widget.TextView;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
 import com.raylabz.firestorm.R;
+import com.raylabz.firestorm.android.benchmark.BenchmarkConfig;
+import com.raylabz.firestorm.android.benchmark.BenchmarkReport;
+import com.raylabz.firestorm.android.benchmark.EmulatorBenchmark;
 
+import java.io.File;
 import java.util.List;
 import java.util.UUID;
 
 public class MainActivity extends AppCompatActivity {
 
+    /**
+     * Intent extras which run the emulator benchmark instead of the manual tests, e.g.:
+     * adb shell am start -n com.raylabz.firestorm/com.raylabz.firestorm.android.MainActivity --ez benchmark true --ei benchmarkOperations 5000
+     * The report is written to firestorm-benchmark.json in the app's files directory.
+     */
+    public static final String EXTRA_BENCHMARK = "benchmark";
+    public static final String EXTRA_BENCHMARK_DOCUMENTS = "benchmarkDocuments";
+    public static final String EXTRA_BENCHMARK_OPERATIONS = "benchmarkOperations";
+    public static final String EXTRA_BENCHMARK_CONCURRENCY = "benchmarkConcurrency";
+    public static final String EXTRA_BENCHMARK_BASELINE = "benchmarkBaseline";
+
     Button createButton;
     Button getButton;
     Button deleteButton;
@@ -228,6 +243,11 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        if (getIntent().getBooleanExtra(EXTRA_BENCHMARK, false)) {
+            runBenchmark();
+            return;
+        }
+
         //Initialize:
         Firestorm.init();
 
@@ -385,4 +405,45 @@ public class MainActivity extends AppCompatActivity {
 
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the emulator benchmark in the background, configured by the intent extras, and shows its report.
+     */
+    private void runBenchmark() {
+        final BenchmarkConfig.Builder builder = new BenchmarkConfig.Builder(new File(getFilesDir(), "firestorm-benchmark.json"));
+        if (getIntent().hasExtra(EXTRA_BENCHMARK_DOCUMENTS)) {
+            builder.setDocuments(getIntent().getIntExtra(EXTRA_BENCHMARK_DOCUMENTS, 0));
+        }
+        if (getIntent().hasExtra(EXTRA_BENCHMARK_OPERATIONS)) {
+            builder.setOperations(getIntent().getIntExtra(EXTRA_BENCHMARK_OPERATIONS, 0));
+        }
+        if (getIntent().hasExtra(EXTRA_BENCHMARK_CONCURRENCY)) {
+            builder.setConcurrency(getIntent().getIntExtra(EXTRA_BENCHMARK_CONCURRENCY, 0));
+        }
+        if (getIntent().hasExtra(EXTRA_BENCHMARK_BASELINE)) {
+            builder.setBaseline(new File(getFilesDir(), getIntent().getStringExtra(EXTRA_BENCHMARK_BASELINE)), 0.1);
+        }
+        final BenchmarkConfig config = builder.build();
+        resultTextview.setText("Running benchmark...");
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                String result;
+                try {
+                    final BenchmarkReport report = new EmulatorBenchmark(config).run();
+                    result = report.toString();
+                } catch (RuntimeException e) {
+                    result = "Benchmark failed: " + e.getMessage();
+                }
+                System.out.println(result);
+                final String text = result;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        resultTextview.setText(text);
+                    }
+                });
+            }
+        }).start();
+    }
+}
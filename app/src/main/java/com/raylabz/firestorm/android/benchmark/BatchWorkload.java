@@ -0,0 +1,55 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+import com.raylabz.firestorm.android.Firestorm;
+import com.raylabz.firestorm.android.FirestormBatch;
+
+import java.util.Random;
+
+/**
+ * Writes large batches, each updating the configured number of consecutive seeded documents
+ * starting from a random one.
+ * @version 1.4.0
+ */
+public final class BatchWorkload extends Workload {
+
+    private final int documents;
+    private final int batchSize;
+    private final Random random;
+
+    /**
+     * Constructs the workload.
+     * @param config The benchmark configuration.
+     */
+    public BatchWorkload(final BenchmarkConfig config) {
+        super("batch", config.getBatches(), Math.min(config.getWarmUpOperations(), config.getBatches()));
+        this.documents = config.getDocuments();
+        this.batchSize = config.getBatchSize();
+        this.random = new Random(config.getSeed());
+    }
+
+    @Override
+    public Task<?> run(final int index) {
+        final BenchmarkPerson[] people = new BenchmarkPerson[batchSize];
+        final int first = random.nextInt(documents);
+        for (int i = 0; i < batchSize; i++) {
+            people[i] = EmulatorBenchmark.person((first + i) % documents);
+            people[i].setVersion(index + 1);
+        }
+        return Firestorm.runBatch(new FirestormBatch() {
+            @Override
+            public Void execute() {
+                for (BenchmarkPerson person : people) {
+                    update(person);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public int getDocumentsPerOperation() {
+        return batchSize;
+    }
+
+}
@@ -0,0 +1,438 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import java.io.File;
+
+/**
+ * Stores the configuration of an {@link EmulatorBenchmark} run: the emulator to connect to, the size of the seeded
+ * collection, the shape of each workload and the files the report is written to and compared with.
+ * Configurations are created using a {@link BenchmarkConfig.Builder}.
+ * @version 1.4.0
+ */
+public final class BenchmarkConfig {
+
+    /**
+     * The host of the emulator as seen from the Android emulator.
+     */
+    public static final String DEFAULT_HOST = "10.0.2.2";
+
+    /**
+     * The default port of the Firestore emulator.
+     */
+    public static final int DEFAULT_PORT = 8080;
+
+    private final String host;
+    private final int port;
+    private final int documents;
+    private final int operations;
+    private final int warmUpOperations;
+    private final int concurrency;
+    private final double updateRatio;
+    private final int fanOut;
+    private final int pageSize;
+    private final int listeners;
+    private final int batchSize;
+    private final int batches;
+    private final long timeoutSeconds;
+    private final long seed;
+    private final File outputFile;
+    private final File baselineFile;
+    private final double tolerance;
+
+    /**
+     * Constructs the configuration from a builder.
+     * @param builder The builder.
+     */
+    private BenchmarkConfig(final Builder builder) {
+        this.host = builder.host;
+        this.port = builder.port;
+        this.documents = builder.documents;
+        this.operations = builder.operations;
+        this.warmUpOperations = builder.warmUpOperations;
+        this.concurrency = builder.concurrency;
+        this.updateRatio = builder.updateRatio;
+        this.fanOut = builder.fanOut;
+        this.pageSize = builder.pageSize;
+        this.listeners = builder.listeners;
+        this.batchSize = builder.batchSize;
+        this.batches = builder.batches;
+        this.timeoutSeconds = builder.timeoutSeconds;
+        this.seed = builder.seed;
+        this.outputFile = builder.outputFile;
+        this.baselineFile = builder.baselineFile;
+        this.tolerance = builder.tolerance;
+    }
+
+    /**
+     * Retrieves the host of the Firestore emulator.
+     * @return Returns a host name or address.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Retrieves the port of the Firestore emulator.
+     * @return Returns a port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Retrieves the number of documents seeded before the workloads run.
+     * @return Returns a count.
+     */
+    public int getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Retrieves the number of measured operations of each workload, except the batch workload.
+     * @return Returns a count.
+     */
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * Retrieves the number of unmeasured operations run before each workload is measured.
+     * @return Returns a count.
+     */
+    public int getWarmUpOperations() {
+        return warmUpOperations;
+    }
+
+    /**
+     * Retrieves the maximum number of operations in flight.
+     * @return Returns a count.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Retrieves the share of updates in the create/update workload.
+     * @return Returns a ratio between 0 and 1.
+     */
+    public double getUpdateRatio() {
+        return updateRatio;
+    }
+
+    /**
+     * Retrieves the number of documents read by each operation of the getMany workload.
+     * @return Returns a count.
+     */
+    public int getFanOut() {
+        return fanOut;
+    }
+
+    /**
+     * Retrieves the number of documents in each page of the Paginator workload.
+     * @return Returns a count.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Retrieves the number of listeners attached in the listener workload.
+     * @return Returns a count.
+     */
+    public int getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Retrieves the number of documents written by each operation of the batch workload.
+     * @return Returns a count.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Retrieves the number of measured batches of the batch workload.
+     * @return Returns a count.
+     */
+    public int getBatches() {
+        return batches;
+    }
+
+    /**
+     * Retrieves the time after which a workload is abandoned.
+     * @return Returns a timeout in seconds.
+     */
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * Retrieves the seed of the random numbers used to pick documents.
+     * @return Returns a seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Retrieves the file the report is written to.
+     * @return Returns a File.
+     */
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    /**
+     * Retrieves the report of a previous run the results are compared with.
+     * @return Returns a File, or null if the results are not compared.
+     */
+    public File getBaselineFile() {
+        return baselineFile;
+    }
+
+    /**
+     * Retrieves the share by which throughput may drop below the baseline before it is reported as a regression.
+     * @return Returns a ratio between 0 and 1.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkConfig{" +
+                "host='" + host + '\'' +
+                ", port=" + port +
+                ", documents=" + documents +
+                ", operations=" + operations +
+                ", warmUpOperations=" + warmUpOperations +
+                ", concurrency=" + concurrency +
+                ", updateRatio=" + updateRatio +
+                ", fanOut=" + fanOut +
+                ", pageSize=" + pageSize +
+                ", listeners=" + listeners +
+                ", batchSize=" + batchSize +
+                ", batches=" + batches +
+                ", timeoutSeconds=" + timeoutSeconds +
+                ", seed=" + seed +
+                ", outputFile=" + outputFile +
+                ", baselineFile=" + baselineFile +
+                ", tolerance=" + tolerance +
+                '}';
+    }
+
+    /**
+     * Builds a BenchmarkConfig.
+     */
+    public static final class Builder {
+
+        private String host = DEFAULT_HOST;
+        private int port = DEFAULT_PORT;
+        private int documents = 2000;
+        private int operations = 2000;
+        private int warmUpOperations = 100;
+        private int concurrency = 16;
+        private double updateRatio = 0.8;
+        private int fanOut = 20;
+        private int pageSize = 50;
+        private int listeners = 8;
+        private int batchSize = 500;
+        private int batches = 20;
+        private long timeoutSeconds = 300;
+        private long seed = 42;
+        private final File outputFile;
+        private File baselineFile = null;
+        private double tolerance = 0.1;
+
+        /**
+         * Constructs a builder.
+         * @param outputFile The file the report is written to.
+         */
+        public Builder(final File outputFile) {
+            this.outputFile = outputFile;
+        }
+
+        /**
+         * Sets the address of the Firestore emulator.
+         * @param host The host.
+         * @param port The port.
+         * @return Returns the builder.
+         */
+        public Builder setEmulator(final String host, final int port) {
+            this.host = host;
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Sets the number of documents seeded before the workloads run.
+         * @param documents The number of documents.
+         * @return Returns the builder.
+         */
+        public Builder setDocuments(final int documents) {
+            this.documents = positive(documents, "number of documents");
+            return this;
+        }
+
+        /**
+         * Sets the number of measured operations of each workload.
+         * @param operations The number of operations.
+         * @return Returns the builder.
+         */
+        public Builder setOperations(final int operations) {
+            this.operations = positive(operations, "number of operations");
+            return this;
+        }
+
+        /**
+         * Sets the number of unmeasured operations run before each workload is measured.
+         * @param warmUpOperations The number of operations, or 0 to skip warm-up.
+         * @return Returns the builder.
+         */
+        public Builder setWarmUpOperations(final int warmUpOperations) {
+            if (warmUpOperations < 0) {
+                throw new IllegalArgumentException("The number of warm-up operations must not be negative.");
+            }
+            this.warmUpOperations = warmUpOperations;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of operations in flight.
+         * @param concurrency The number of operations.
+         * @return Returns the builder.
+         */
+        public Builder setConcurrency(final int concurrency) {
+            this.concurrency = positive(concurrency, "concurrency");
+            return this;
+        }
+
+        /**
+         * Sets the share of updates in the create/update workload. The rest of its operations are creates.
+         * @param updateRatio The ratio, between 0 and 1.
+         * @return Returns the builder.
+         */
+        public Builder setUpdateRatio(final double updateRatio) {
+            if (updateRatio < 0 || updateRatio > 1) {
+                throw new IllegalArgumentException("The update ratio must be between 0 and 1.");
+            }
+            this.updateRatio = updateRatio;
+            return this;
+        }
+
+        /**
+         * Sets the number of documents read by each operation of the getMany workload.
+         * @param fanOut The number of documents.
+         * @return Returns the builder.
+         */
+        public Builder setFanOut(final int fanOut) {
+            this.fanOut = positive(fanOut, "fan-out");
+            return this;
+        }
+
+        /**
+         * Sets the number of documents in each page of the Paginator workload.
+         * @param pageSize The number of documents.
+         * @return Returns the builder.
+         */
+        public Builder setPageSize(final int pageSize) {
+            this.pageSize = positive(pageSize, "page size");
+            return this;
+        }
+
+        /**
+         * Sets the number of listeners attached in the listener workload.
+         * @param listeners The number of listeners.
+         * @return Returns the builder.
+         */
+        public Builder setListeners(final int listeners) {
+            this.listeners = positive(listeners, "number of listeners");
+            return this;
+        }
+
+        /**
+         * Sets the number of documents written by each operation of the batch workload.
+         * @param batchSize The number of documents, at most 500.
+         * @return Returns the builder.
+         */
+        public Builder setBatchSize(final int batchSize) {
+            if (batchSize <= 0 || batchSize > 500) {
+                throw new IllegalArgumentException("The batch size must be between 1 and 500.");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of measured batches of the batch workload. The other workloads run the configured number
+         * of operations.
+         * @param batches The number of batches.
+         * @return Returns the builder.
+         */
+        public Builder setBatches(final int batches) {
+            this.batches = positive(batches, "number of batches");
+            return this;
+        }
+
+        /**
+         * Sets the time after which a workload is abandoned.
+         * @param timeoutSeconds The timeout in seconds.
+         * @return Returns the builder.
+         */
+        public Builder setTimeoutSeconds(final long timeoutSeconds) {
+            if (timeoutSeconds <= 0) {
+                throw new IllegalArgumentException("The timeout must be positive.");
+            }
+            this.timeoutSeconds = timeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Sets the seed of the random numbers used to pick documents.
+         * @param seed The seed.
+         * @return Returns the builder.
+         */
+        public Builder setSeed(final long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Compares the results with the report of a previous run.
+         * @param baselineFile The report of the previous run.
+         * @param tolerance The share by which throughput may drop below the baseline, between 0 and 1.
+         * @return Returns the builder.
+         */
+        public Builder setBaseline(final File baselineFile, final double tolerance) {
+            if (tolerance < 0 || tolerance > 1) {
+                throw new IllegalArgumentException("The tolerance must be between 0 and 1.");
+            }
+            this.baselineFile = baselineFile;
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Builds the configuration.
+         * @return Returns a BenchmarkConfig.
+         */
+        public BenchmarkConfig build() {
+            return new BenchmarkConfig(this);
+        }
+
+        /**
+         * Checks that a setting is positive.
+         * @param value The value of the setting.
+         * @param name The name of the setting.
+         * @return Returns the value.
+         */
+        private static int positive(final int value, final String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("The " + name + " must be positive.");
+            }
+            return value;
+        }
+
+    }
+
+}
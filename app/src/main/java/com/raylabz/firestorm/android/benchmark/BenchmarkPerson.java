@@ -0,0 +1,90 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.raylabz.firestorm.android.annotation.FirestormObject;
+
+/**
+ * The documents written and read by the emulator benchmark.
+ * @version 1.4.0
+ */
+@FirestormObject
+public class BenchmarkPerson {
+
+    private String id;
+    private String name;
+    private String group;
+    private int age;
+    private double score;
+    private long version;
+
+    public BenchmarkPerson(String id, String name, String group, int age, double score, long version) {
+        this.id = id;
+        this.name = name;
+        this.group = group;
+        this.age = age;
+        this.score = score;
+        this.version = version;
+    }
+
+    private BenchmarkPerson() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public void setAge(int age) {
+        this.age = age;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkPerson{" +
+                "id='" + id + '\'' +
+                ", name='" + name + '\'' +
+                ", group='" + group + '\'' +
+                ", age=" + age +
+                ", score=" + score +
+                ", version=" + version +
+                '}';
+    }
+}
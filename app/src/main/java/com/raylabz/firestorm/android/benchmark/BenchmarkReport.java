@@ -0,0 +1,195 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The report of an emulator benchmark run: the results of every workload and the regressions found by comparing
+ * them with a baseline report. Reports are written as JSON so that they can be archived and compared by scripts.
+ * @version 1.4.0
+ */
+public final class BenchmarkReport {
+
+    private final BenchmarkConfig config;
+    private final long timestamp;
+    private final List<WorkloadResult> results;
+    private final List<String> regressions;
+
+    /**
+     * Constructs a report.
+     * @param config The configuration of the run.
+     * @param timestamp The time the run started, in milliseconds since the epoch.
+     * @param results The results of the workloads.
+     * @param regressions The regressions found, if any.
+     */
+    public BenchmarkReport(final BenchmarkConfig config, final long timestamp, final List<WorkloadResult> results, final List<String> regressions) {
+        this.config = config;
+        this.timestamp = timestamp;
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        this.regressions = Collections.unmodifiableList(new ArrayList<>(regressions));
+    }
+
+    /**
+     * Retrieves the configuration of the run.
+     * @return Returns a BenchmarkConfig.
+     */
+    public BenchmarkConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Retrieves the time the run started.
+     * @return Returns a timestamp in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Retrieves the results of the workloads.
+     * @return Returns a list of WorkloadResult.
+     */
+    public List<WorkloadResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Retrieves the regressions found by comparing the results with the baseline.
+     * @return Returns a list of descriptions, empty if there is no baseline or nothing regressed.
+     */
+    public List<String> getRegressions() {
+        return regressions;
+    }
+
+    /**
+     * Checks if the run passed: no operation failed and nothing regressed.
+     * @return Returns true if the run passed, false otherwise.
+     */
+    public boolean isPassed() {
+        for (WorkloadResult result : results) {
+            if (result.getErrors() > 0) {
+                return false;
+            }
+        }
+        return regressions.isEmpty();
+    }
+
+    /**
+     * Converts the report to JSON.
+     * @return Returns a JsonObject.
+     */
+    public JsonObject toJson() {
+        final JsonObject json = new JsonObject();
+        json.addProperty("timestamp", timestamp);
+        json.addProperty("passed", isPassed());
+        final JsonObject configJson = new JsonObject();
+        configJson.addProperty("documents", config.getDocuments());
+        configJson.addProperty("operations", config.getOperations());
+        configJson.addProperty("warmUpOperations", config.getWarmUpOperations());
+        configJson.addProperty("concurrency", config.getConcurrency());
+        configJson.addProperty("updateRatio", config.getUpdateRatio());
+        configJson.addProperty("fanOut", config.getFanOut());
+        configJson.addProperty("pageSize", config.getPageSize());
+        configJson.addProperty("listeners", config.getListeners());
+        configJson.addProperty("batchSize", config.getBatchSize());
+        configJson.addProperty("batches", config.getBatches());
+        configJson.addProperty("seed", config.getSeed());
+        json.add("config", configJson);
+        final JsonArray workloads = new JsonArray();
+        for (WorkloadResult result : results) {
+            workloads.add(result.toJson());
+        }
+        json.add("workloads", workloads);
+        final JsonArray regressionsJson = new JsonArray();
+        for (String regression : regressions) {
+            regressionsJson.add(new JsonPrimitive(regression));
+        }
+        json.add("regressions", regressionsJson);
+        return json;
+    }
+
+    /**
+     * Writes the report to a file.
+     * @param file The file.
+     * @throws IOException Thrown when the file cannot be written.
+     */
+    public void write(final File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(toJson(), writer);
+        }
+    }
+
+    /**
+     * Compares results with a baseline report. A workload regressed if its throughput dropped, or its p99 latency
+     * grew, by more than the tolerance. Workloads missing from the baseline are not compared.
+     * @param results The results.
+     * @param baselineFile The baseline report, written by a previous run.
+     * @param tolerance The share by which a measurement may get worse, between 0 and 1.
+     * @return Returns a list of descriptions of the regressions.
+     * @throws IOException Thrown when the baseline cannot be read.
+     */
+    public static List<String> findRegressions(final List<WorkloadResult> results, final File baselineFile, final double tolerance) throws IOException {
+        final HashMap<String, JsonObject> baseline = new HashMap<>();
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(baselineFile), StandardCharsets.UTF_8))) {
+            for (JsonElement workload : JsonParser.parseReader(reader).getAsJsonObject().getAsJsonArray("workloads")) {
+                baseline.put(workload.getAsJsonObject().get("name").getAsString(), workload.getAsJsonObject());
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("The baseline " + baselineFile + " is not a benchmark report.", e);
+        }
+
+        final ArrayList<String> regressions = new ArrayList<>();
+        for (WorkloadResult result : results) {
+            final JsonObject previous = baseline.get(result.getName());
+            if (previous == null) {
+                continue;
+            }
+            final double previousThroughput = previous.get("throughput").getAsDouble();
+            if (result.getThroughput() < previousThroughput * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: throughput dropped from %.1f to %.1f ops/s",
+                        result.getName(), previousThroughput, result.getThroughput()));
+            }
+            final long previousP99 = previous.get("p99Micros").getAsLong();
+            final long p99 = result.getLatency().getPercentileMicros(99);
+            if (p99 > previousP99 * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: p99 latency grew from %d to %d us",
+                        result.getName(), previousP99, p99));
+            }
+        }
+        return regressions;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(isPassed() ? "PASSED" : "FAILED");
+        for (WorkloadResult result : results) {
+            builder.append('\n').append(result);
+        }
+        for (String regression : regressions) {
+            builder.append("\nRegression - ").append(regression);
+        }
+        return builder.toString();
+    }
+
+}
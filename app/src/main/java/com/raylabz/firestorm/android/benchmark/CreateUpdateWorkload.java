@@ -0,0 +1,42 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+import com.raylabz.firestorm.android.Firestorm;
+
+import java.util.Random;
+
+/**
+ * Mixes updates of random seeded documents with creates of new documents, in the configured ratio.
+ * @version 1.4.0
+ */
+public final class CreateUpdateWorkload extends Workload {
+
+    private final int documents;
+    private final double updateRatio;
+    private final Random random;
+
+    /**
+     * Constructs the workload.
+     * @param config The benchmark configuration.
+     */
+    public CreateUpdateWorkload(final BenchmarkConfig config) {
+        super("createUpdate", config.getOperations(), config.getWarmUpOperations());
+        this.documents = config.getDocuments();
+        this.updateRatio = config.getUpdateRatio();
+        this.random = new Random(config.getSeed());
+    }
+
+    @Override
+    public Task<?> run(final int index) {
+        if (random.nextDouble() < updateRatio) {
+            final int document = random.nextInt(documents);
+            final BenchmarkPerson person = EmulatorBenchmark.person(document);
+            person.setScore(random.nextDouble() * 1000);
+            person.setVersion(index + 1);
+            return Firestorm.update(person);
+        }
+        final BenchmarkPerson person = EmulatorBenchmark.person(documents + index);
+        return Firestorm.create(person);
+    }
+
+}
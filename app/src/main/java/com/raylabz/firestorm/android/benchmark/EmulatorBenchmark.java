@@ -0,0 +1,232 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.raylabz.firestorm.android.Firestorm;
+import com.raylabz.firestorm.android.FirestormBatch;
+import com.raylabz.firestorm.android.FirestormSettings;
+import com.raylabz.firestorm.android.exception.FirestormException;
+import com.raylabz.firestorm.android.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs workloads through the Firestorm API against the Firestore emulator and reports their throughput and
+ * latency percentiles: create/update mixes, getMany fan-out, Paginator scrolls, listener fan-in and large batches.
+ * <p>
+ * The benchmark seeds a collection of {@link BenchmarkPerson} documents, then runs every workload in turn, keeping
+ * the configured number of operations in flight. Each workload first runs unmeasured warm-up operations. The report
+ * is written as JSON to the configured output file and, if a baseline is configured, compared with it.
+ * <p>
+ * The benchmark must run on a background thread of a process which has not used Firestore yet, against a freshly
+ * started emulator (e.g. <i>firebase emulators:start --only firestore</i>).
+ * @version 1.4.0
+ */
+public final class EmulatorBenchmark {
+
+    /**
+     * The number of documents written by each batch which seeds the collection.
+     */
+    private static final int SEED_BATCH_SIZE = 500;
+
+    private final BenchmarkConfig config;
+    private final ExecutorService dispatcher = Executors.newFixedThreadPool(4);
+    private final ExecutorService callbacks = Executors.newSingleThreadExecutor();
+
+    /**
+     * Constructs a benchmark.
+     * @param config The configuration.
+     */
+    public EmulatorBenchmark(final BenchmarkConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Connects to the emulator, seeds the collection, runs all workloads and writes the report.
+     * @return Returns the BenchmarkReport.
+     * @throws FirestormException Thrown when the benchmark cannot be completed.
+     */
+    public BenchmarkReport run() throws FirestormException {
+        final long timestamp = System.currentTimeMillis();
+        try {
+            connect();
+            seed();
+            final ArrayList<WorkloadResult> results = new ArrayList<>();
+            for (Workload workload : workloads()) {
+                results.add(measure(workload));
+            }
+            final List<String> regressions = config.getBaselineFile() != null
+                    ? BenchmarkReport.findRegressions(results, config.getBaselineFile(), config.getTolerance())
+                    : Collections.<String>emptyList();
+            final BenchmarkReport report = new BenchmarkReport(config, timestamp, results, regressions);
+            report.write(config.getOutputFile());
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FirestormException(e);
+        } catch (Exception e) {
+            throw new FirestormException(e);
+        } finally {
+            callbacks.shutdown();
+        }
+    }
+
+    /**
+     * Creates the workloads, in the order they run. Reads run before writes, so that pages only contain seeded
+     * documents.
+     * @return Returns a list of workloads.
+     */
+    private List<Workload> workloads() {
+        final ArrayList<Workload> workloads = new ArrayList<>();
+        workloads.add(new GetManyWorkload(config));
+        workloads.add(new PaginatorWorkload(config));
+        workloads.add(new CreateUpdateWorkload(config));
+        workloads.add(new ListenerWorkload(config));
+        workloads.add(new BatchWorkload(config));
+        return workloads;
+    }
+
+    /**
+     * Points Firestore to the emulator and initializes Firestorm without persistence or warm-up, so that every
+     * operation reaches the emulator.
+     */
+    private void connect() {
+        FirebaseFirestore.getInstance().useEmulator(config.getHost(), config.getPort());
+        Firestorm.init(new FirestormSettings.Builder()
+                .setPersistenceEnabled(false)
+                .setWarmUpConnection(false)
+                .setDispatcher(dispatcher)
+                .build());
+        Firestorm.register(BenchmarkPerson.class);
+    }
+
+    /**
+     * Writes the seeded documents in batches.
+     * @throws ExecutionException Thrown when a batch fails.
+     * @throws InterruptedException Thrown when the benchmark thread is interrupted.
+     * @throws TimeoutException Thrown when seeding takes longer than the timeout.
+     */
+    private void seed() throws ExecutionException, InterruptedException, TimeoutException {
+        final ArrayList<Task<Void>> batches = new ArrayList<>();
+        for (int first = 0; first < config.getDocuments(); first += SEED_BATCH_SIZE) {
+            final int start = first;
+            final int end = Math.min(first + SEED_BATCH_SIZE, config.getDocuments());
+            batches.add(Firestorm.runBatch(new FirestormBatch() {
+                @Override
+                public Void execute() {
+                    for (int i = start; i < end; i++) {
+                        update(person(i));
+                    }
+                    return null;
+                }
+            }));
+        }
+        Tasks.await(Tasks.whenAll(batches), config.getTimeoutSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs a workload: its warm-up operations, then its measured operations.
+     * @param workload The workload.
+     * @return Returns the WorkloadResult of the measured operations.
+     * @throws Exception Thrown when the workload cannot be set up or does not complete in time.
+     */
+    private WorkloadResult measure(final Workload workload) throws Exception {
+        try {
+            workload.setUp();
+            execute(workload, workload.getWarmUpOperations());
+            return execute(workload, workload.getOperations());
+        } finally {
+            workload.tearDown();
+        }
+    }
+
+    /**
+     * Runs operations of a workload, keeping at most the configured number of them in flight.
+     * @param workload The workload.
+     * @param operations The number of operations.
+     * @return Returns the WorkloadResult of the operations.
+     * @throws InterruptedException Thrown when the benchmark thread is interrupted.
+     * @throws TimeoutException Thrown when the operations do not complete in time.
+     */
+    private WorkloadResult execute(final Workload workload, final int operations) throws InterruptedException, TimeoutException {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong documents = new AtomicLong();
+        final Semaphore inFlight = new Semaphore(config.getConcurrency());
+        final CountDownLatch completed = new CountDownLatch(operations);
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(config.getTimeoutSeconds());
+
+        for (int i = 0; i < operations; i++) {
+            if (!inFlight.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                throw timeout(workload);
+            }
+            final long operationStart = System.nanoTime();
+            final Task<?> task;
+            try {
+                task = workload.run(i);
+            } catch (RuntimeException e) {
+                latency.record(System.nanoTime() - operationStart);
+                errors.incrementAndGet();
+                inFlight.release();
+                completed.countDown();
+                continue;
+            }
+            task.addOnCompleteListener(callbacks, completedTask -> {
+                latency.record(System.nanoTime() - operationStart);
+                if (completedTask.isSuccessful()) {
+                    documents.addAndGet(workload.getDocumentsPerOperation());
+                }
+                else {
+                    errors.incrementAndGet();
+                }
+                inFlight.release();
+                completed.countDown();
+            });
+        }
+        if (!completed.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            throw timeout(workload);
+        }
+        return new WorkloadResult(workload.getName(), errors.get(), documents.get(), System.nanoTime() - start, latency);
+    }
+
+    /**
+     * Creates the exception thrown when a workload does not complete in time.
+     * @param workload The workload.
+     * @return Returns a TimeoutException.
+     */
+    private TimeoutException timeout(final Workload workload) {
+        return new TimeoutException("The " + workload.getName() + " workload did not complete within " + config.getTimeoutSeconds() + " seconds.");
+    }
+
+    /**
+     * Retrieves the ID of a seeded document. IDs sort in the order of their indices.
+     * @param index The index of the document.
+     * @return Returns a document ID.
+     */
+    static String documentID(final int index) {
+        return String.format(Locale.ROOT, "person-%08d", index);
+    }
+
+    /**
+     * Creates the initial version of a seeded document.
+     * @param index The index of the document.
+     * @return Returns a BenchmarkPerson.
+     */
+    static BenchmarkPerson person(final int index) {
+        return new BenchmarkPerson(documentID(index), "Person " + index, "group-" + (index % 10), 18 + index % 60, index * 1.5, 0);
+    }
+
+}
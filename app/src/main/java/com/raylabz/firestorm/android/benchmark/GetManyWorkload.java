@@ -0,0 +1,44 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+import com.raylabz.firestorm.android.Firestorm;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Reads several random seeded documents in each operation using <i>Firestorm.getMany()</i>.
+ * @version 1.4.0
+ */
+public final class GetManyWorkload extends Workload {
+
+    private final int documents;
+    private final int fanOut;
+    private final Random random;
+
+    /**
+     * Constructs the workload.
+     * @param config The benchmark configuration.
+     */
+    public GetManyWorkload(final BenchmarkConfig config) {
+        super("getMany", config.getOperations(), config.getWarmUpOperations());
+        this.documents = config.getDocuments();
+        this.fanOut = config.getFanOut();
+        this.random = new Random(config.getSeed());
+    }
+
+    @Override
+    public Task<?> run(final int index) {
+        final ArrayList<String> ids = new ArrayList<>(fanOut);
+        for (int i = 0; i < fanOut; i++) {
+            ids.add(EmulatorBenchmark.documentID(random.nextInt(documents)));
+        }
+        return Firestorm.getMany(BenchmarkPerson.class, ids);
+    }
+
+    @Override
+    public int getDocumentsPerOperation() {
+        return fanOut;
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.raylabz.firestorm.android.FilterableListener;
+import com.raylabz.firestorm.android.Firestorm;
+import com.raylabz.firestorm.android.FirestormFilterable;
+import com.raylabz.firestorm.android.ObjectChange;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Attaches several listeners to the same query and measures how long an update takes to reach all of them.
+ * Each operation updates one of a set of hot documents, which only one operation writes at a time, and completes
+ * when every listener has received the new version of the document.
+ * @version 1.4.0
+ */
+public final class ListenerWorkload extends Workload {
+
+    private static final String HOT_GROUP = "hot";
+
+    private final int listeners;
+    private final int hotDocuments;
+    private final long timeoutSeconds;
+    private final ArrayList<ListenerRegistration> registrations = new ArrayList<>();
+    private final ConcurrentLinkedQueue<String> idleDocuments = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, Delivery> deliveries = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /**
+     * Constructs the workload.
+     * @param config The benchmark configuration.
+     */
+    public ListenerWorkload(final BenchmarkConfig config) {
+        super("listeners", config.getOperations(), config.getWarmUpOperations());
+        this.listeners = config.getListeners();
+        this.hotDocuments = config.getConcurrency();
+        this.timeoutSeconds = config.getTimeoutSeconds();
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        final ArrayList<Task<String>> writes = new ArrayList<>();
+        for (int i = 0; i < hotDocuments; i++) {
+            final BenchmarkPerson person = hotPerson(i, versions.incrementAndGet());
+            writes.add(Firestorm.create(person, person.getId()));
+            idleDocuments.add(person.getId());
+        }
+        Tasks.await(Tasks.whenAll(writes), timeoutSeconds, TimeUnit.SECONDS);
+
+        final CountDownLatch attached = new CountDownLatch(listeners);
+        for (int i = 0; i < listeners; i++) {
+            final int listener = i;
+            final FirestormFilterable<BenchmarkPerson> filterable = Firestorm.filter(BenchmarkPerson.class).whereEqualTo("group", HOT_GROUP);
+            registrations.add(Firestorm.attachListener(new FilterableListener<BenchmarkPerson>(filterable) {
+                private boolean initialSnapshot = true;
+
+                @Override
+                public void onSuccess(List<ObjectChange<BenchmarkPerson>> objectChanges) {
+                    if (initialSnapshot) {
+                        initialSnapshot = false;
+                        attached.countDown();
+                    }
+                    for (ObjectChange<BenchmarkPerson> objectChange : objectChanges) {
+                        if (objectChange.getType() != ObjectChange.Type.REMOVED) {
+                            deliver(objectChange.getObject(), listener);
+                        }
+                    }
+                }
+
+                @Override
+                public void onFailure(String failureMessage) {
+                    failAll(new FirestormException(failureMessage));
+                }
+            }));
+        }
+        if (!attached.await(timeoutSeconds, TimeUnit.SECONDS)) {
+            throw new FirestormException("The listeners did not receive their initial snapshots in time.");
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        for (ListenerRegistration registration : registrations) {
+            Firestorm.detachListener(registration);
+        }
+        registrations.clear();
+        failAll(new FirestormException("The listener workload was torn down."));
+    }
+
+    @Override
+    public Task<?> run(final int index) {
+        final String id = idleDocuments.poll();
+        if (id == null) {
+            throw new IllegalStateException("More listener operations are in flight than hot documents.");
+        }
+        final long version = versions.incrementAndGet();
+        final Delivery delivery = new Delivery(version, listeners);
+        deliveries.put(id, delivery);
+        final BenchmarkPerson person = hotPerson(Integer.parseInt(id.substring(id.lastIndexOf('-') + 1)), version);
+        Firestorm.update(person).addOnFailureListener(e -> complete(id, delivery, e));
+        return delivery.source.getTask();
+    }
+
+    @Override
+    public int getDocumentsPerOperation() {
+        return listeners;
+    }
+
+    /**
+     * Records that a listener received a version of a hot document.
+     * @param person The document received.
+     * @param listener The index of the listener.
+     */
+    private void deliver(final BenchmarkPerson person, final int listener) {
+        final Delivery delivery = deliveries.get(person.getId());
+        if (delivery != null && person.getVersion() >= delivery.version && delivery.received.compareAndSet(listener, 0, 1)
+                && delivery.remaining.decrementAndGet() == 0) {
+            complete(person.getId(), delivery, null);
+        }
+    }
+
+    /**
+     * Completes the operation delivering a version of a hot document and makes the document available to the next
+     * operation.
+     * @param id The ID of the document.
+     * @param delivery The delivery.
+     * @param e The exception which caused the operation to fail, or null if it succeeded.
+     */
+    private void complete(final String id, final Delivery delivery, final Exception e) {
+        if (deliveries.remove(id, delivery)) {
+            idleDocuments.add(id);
+            if (e == null) {
+                delivery.source.trySetResult(null);
+            }
+            else {
+                delivery.source.trySetException(e);
+            }
+        }
+    }
+
+    /**
+     * Fails all the operations in flight.
+     * @param e The cause of the failure.
+     */
+    private void failAll(final Exception e) {
+        for (Map.Entry<String, Delivery> entry : deliveries.entrySet()) {
+            complete(entry.getKey(), entry.getValue(), e);
+        }
+    }
+
+    /**
+     * Creates a version of a hot document.
+     * @param index The index of the hot document.
+     * @param version The version.
+     * @return Returns a BenchmarkPerson.
+     */
+    private static BenchmarkPerson hotPerson(final int index, final long version) {
+        return new BenchmarkPerson(String.format(Locale.ROOT, "hot-%04d", index), "Hot " + index, HOT_GROUP, 30, 0, version);
+    }
+
+    /**
+     * Tracks the delivery of a version of a hot document to the listeners.
+     */
+    private static final class Delivery {
+
+        private final long version;
+        private final AtomicIntegerArray received;
+        private final AtomicInteger remaining;
+        private final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+
+        /**
+         * Constructs a delivery.
+         * @param version The version of the document.
+         * @param listeners The number of listeners which must receive it.
+         */
+        private Delivery(final long version, final int listeners) {
+            this.version = version;
+            this.received = new AtomicIntegerArray(listeners);
+            this.remaining = new AtomicInteger(listeners);
+        }
+
+    }
+
+}
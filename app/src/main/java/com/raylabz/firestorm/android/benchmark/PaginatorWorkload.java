@@ -0,0 +1,42 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+import com.raylabz.firestorm.android.Paginator;
+
+import java.util.Random;
+
+/**
+ * Fetches pages of the seeded collection using a {@link Paginator}. Each operation fetches the page following a
+ * random seeded document, the way a scrolling list fetches its next page, so it includes reading the cursor document.
+ * @version 1.4.0
+ */
+public final class PaginatorWorkload extends Workload {
+
+    private final int pages;
+    private final int pageSize;
+    private final Random random;
+
+    /**
+     * Constructs the workload.
+     * @param config The benchmark configuration.
+     */
+    public PaginatorWorkload(final BenchmarkConfig config) {
+        super("paginator", config.getOperations(), config.getWarmUpOperations());
+        this.pageSize = config.getPageSize();
+        this.pages = Math.max(1, config.getDocuments() / pageSize);
+        this.random = new Random(config.getSeed());
+    }
+
+    @Override
+    public Task<?> run(final int index) {
+        final int page = random.nextInt(pages);
+        final String lastDocumentID = page == 0 ? null : EmulatorBenchmark.documentID(page * pageSize - 1);
+        return Paginator.next(BenchmarkPerson.class, lastDocumentID, pageSize).fetch();
+    }
+
+    @Override
+    public int getDocumentsPerOperation() {
+        return pageSize;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.android.gms.tasks.Task;
+
+/**
+ * A workload of the emulator benchmark: a kind of operation which is run many times, concurrently, against the
+ * seeded collection. The benchmark measures the time from the start of each operation until its task completes.
+ * @version 1.4.0
+ */
+public abstract class Workload {
+
+    private final String name;
+    private final int operations;
+    private final int warmUpOperations;
+
+    /**
+     * Constructs a workload.
+     * @param name The name of the workload, used in the report.
+     * @param operations The number of measured operations.
+     * @param warmUpOperations The number of unmeasured operations run first.
+     */
+    protected Workload(final String name, final int operations, final int warmUpOperations) {
+        this.name = name;
+        this.operations = operations;
+        this.warmUpOperations = warmUpOperations;
+    }
+
+    /**
+     * Retrieves the name of the workload.
+     * @return Returns a string.
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the number of measured operations.
+     * @return Returns a count.
+     */
+    public final int getOperations() {
+        return operations;
+    }
+
+    /**
+     * Retrieves the number of unmeasured operations run before the workload is measured.
+     * @return Returns a count.
+     */
+    public final int getWarmUpOperations() {
+        return warmUpOperations;
+    }
+
+    /**
+     * Prepares the workload before its first operation, e.g. by attaching listeners. Runs on the benchmark thread,
+     * which may block.
+     * @throws Exception Thrown when the workload cannot be prepared.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Releases the resources of the workload after its last operation.
+     */
+    public void tearDown() {
+    }
+
+    /**
+     * Starts an operation.
+     * @param index The index of the operation.
+     * @return Returns a Task which completes when the operation completes.
+     */
+    public abstract Task<?> run(final int index);
+
+    /**
+     * Retrieves the number of documents read or written by each operation.
+     * @return Returns a count.
+     */
+    public int getDocumentsPerOperation() {
+        return 1;
+    }
+
+}
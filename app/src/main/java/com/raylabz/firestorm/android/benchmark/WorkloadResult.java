@@ -0,0 +1,130 @@
+package com.raylabz.firestorm.android.benchmark;
+
+import com.google.gson.JsonObject;
+import com.raylabz.firestorm.android.metrics.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * The measurements of one workload of the emulator benchmark: throughput and latency percentiles.
+ * @version 1.4.0
+ */
+public final class WorkloadResult {
+
+    private final String name;
+    private final long operations;
+    private final long errors;
+    private final long documents;
+    private final long durationNanos;
+    private final LatencyHistogram latency;
+
+    /**
+     * Constructs a result.
+     * @param name The name of the workload.
+     * @param errors The number of failed operations.
+     * @param documents The number of documents read or written.
+     * @param durationNanos The time taken by all operations, in nanoseconds.
+     * @param latency The latencies of the operations.
+     */
+    public WorkloadResult(final String name, final long errors, final long documents, final long durationNanos, final LatencyHistogram latency) {
+        this.name = name;
+        this.operations = latency.getCount();
+        this.errors = errors;
+        this.documents = documents;
+        this.durationNanos = durationNanos;
+        this.latency = latency;
+    }
+
+    /**
+     * Retrieves the name of the workload.
+     * @return Returns a string.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the number of measured operations.
+     * @return Returns a count.
+     */
+    public long getOperations() {
+        return operations;
+    }
+
+    /**
+     * Retrieves the number of failed operations.
+     * @return Returns a count.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Retrieves the number of documents read or written by the successful operations.
+     * @return Returns a count.
+     */
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Retrieves the time taken by all operations.
+     * @return Returns a duration in nanoseconds.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * Retrieves the number of operations completed per second.
+     * @return Returns a throughput.
+     */
+    public double getThroughput() {
+        return durationNanos == 0 ? 0 : operations * 1e9 / durationNanos;
+    }
+
+    /**
+     * Retrieves the number of documents read or written per second.
+     * @return Returns a throughput.
+     */
+    public double getDocumentThroughput() {
+        return durationNanos == 0 ? 0 : documents * 1e9 / durationNanos;
+    }
+
+    /**
+     * Retrieves the latencies of the operations.
+     * @return Returns a LatencyHistogram.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Converts the result to the JSON object written to the report.
+     * @return Returns a JsonObject.
+     */
+    public JsonObject toJson() {
+        final JsonObject json = new JsonObject();
+        json.addProperty("name", name);
+        json.addProperty("operations", operations);
+        json.addProperty("errors", errors);
+        json.addProperty("documents", documents);
+        json.addProperty("durationMillis", durationNanos / 1000000);
+        json.addProperty("throughput", getThroughput());
+        json.addProperty("documentThroughput", getDocumentThroughput());
+        json.addProperty("meanMicros", latency.getMeanMicros());
+        json.addProperty("p50Micros", latency.getPercentileMicros(50));
+        json.addProperty("p99Micros", latency.getPercentileMicros(99));
+        json.addProperty("p999Micros", latency.getPercentileMicros(99.9));
+        json.addProperty("maxMicros", latency.getMaxMicros());
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %.1f ops/s, %.1f docs/s, p50=%dus, p99=%dus, p999=%dus, errors=%d",
+                name, getThroughput(), getDocumentThroughput(), latency.getPercentileMicros(50),
+                latency.getPercentileMicros(99), latency.getPercentileMicros(99.9), errors);
+    }
+
+}
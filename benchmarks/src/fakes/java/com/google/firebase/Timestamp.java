@@ -0,0 +1,29 @@
+package com.google.firebase;
+
+import java.util.Date;
+
+/**
+ * A fake of Firebase's Timestamp.
+ * @version 1.4.0
+ */
+public final class Timestamp {
+
+    private final Date date;
+
+    /**
+     * Constructs a timestamp.
+     * @param date The date.
+     */
+    public Timestamp(final Date date) {
+        this.date = date;
+    }
+
+    /**
+     * Converts the timestamp to a date.
+     * @return Returns a Date.
+     */
+    public Date toDate() {
+        return date;
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.google.firebase.firestore;
+
+/**
+ * A fake of Firestore's DocumentChange, used to feed snapshot inputs to the benchmarks.
+ * @version 1.4.0
+ */
+public class DocumentChange {
+
+    /**
+     * The type of a document change.
+     */
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final QueryDocumentSnapshot document;
+    private final int oldIndex;
+    private final int newIndex;
+
+    /**
+     * Constructs a DocumentChange.
+     * @param document The document.
+     * @param type The type of change.
+     * @param oldIndex The old index.
+     * @param newIndex The new index.
+     */
+    public DocumentChange(QueryDocumentSnapshot document, Type type, int oldIndex, int newIndex) {
+        this.type = type;
+        this.document = document;
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+    }
+
+    /**
+     * Retrieves the type of change.
+     * @return Returns a type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the document.
+     * @return Returns a QueryDocumentSnapshot.
+     */
+    public QueryDocumentSnapshot getDocument() {
+        return document;
+    }
+
+    /**
+     * Retrieves the old index.
+     * @return Returns an integer.
+     */
+    public int getOldIndex() {
+        return oldIndex;
+    }
+
+    /**
+     * Retrieves the new index.
+     * @return Returns an integer.
+     */
+    public int getNewIndex() {
+        return newIndex;
+    }
+
+}
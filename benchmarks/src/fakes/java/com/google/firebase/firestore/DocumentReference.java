@@ -0,0 +1,27 @@
+package com.google.firebase.firestore;
+
+/**
+ * A fake of Firestore's DocumentReference, which only provides the path of the document.
+ * @version 1.4.0
+ */
+public class DocumentReference {
+
+    private final String path;
+
+    /**
+     * Constructs a DocumentReference.
+     * @param path The path of the document.
+     */
+    public DocumentReference(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Retrieves the path of the document.
+     * @return Returns a string.
+     */
+    public String getPath() {
+        return path;
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.google.firebase.firestore;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+/**
+ * A fake of Firestore's DocumentSnapshot, backed by a map of field values.
+ * Like the real snapshot, {@link #toObject(Class)} creates a new object through its no-parameter constructor and
+ * populates its fields reflectively on every call.
+ * @version 1.4.0
+ */
+public class DocumentSnapshot {
+
+    private final String id;
+    private final Map<String, Object> data;
+
+    /**
+     * Constructs a DocumentSnapshot.
+     * @param id The document ID.
+     * @param data The field values of the document, or null if the document does not exist.
+     */
+    public DocumentSnapshot(String id, Map<String, Object> data) {
+        this.id = id;
+        this.data = data;
+    }
+
+    /**
+     * Checks if the document exists.
+     * @return Returns true if the document exists, false otherwise.
+     */
+    public boolean exists() {
+        return data != null;
+    }
+
+    /**
+     * Retrieves the reference of the document.
+     * @return Returns a DocumentReference.
+     */
+    public DocumentReference getReference() {
+        return new DocumentReference(id);
+    }
+
+    /**
+     * Retrieves the document ID.
+     * @return Returns a string.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the field values of the document.
+     * @return Returns a map.
+     */
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    /**
+     * Converts the document to an object.
+     * @param valueType The class of the object.
+     * @param <T> The type of the object.
+     * @return Returns an object.
+     */
+    public <T> T toObject(Class<T> valueType) {
+        try {
+            final Constructor<T> constructor = valueType.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            final T object = constructor.newInstance();
+            Class<?> current = valueType;
+            while (current != null && current != Object.class) {
+                for (Field f : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(f.getModifiers()) && data.containsKey(f.getName())) {
+                        f.setAccessible(true);
+                        f.set(object, data.get(f.getName()));
+                    }
+                }
+                current = current.getSuperclass();
+            }
+            return object;
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.google.firebase.firestore;
+
+/**
+ * A fake of Firestore's FirebaseFirestoreException.
+ * @version 1.4.0
+ */
+public class FirebaseFirestoreException extends Exception {
+
+    /**
+     * The error code of the exception.
+     */
+    public enum Code {
+        OK,
+        CANCELLED,
+        UNKNOWN,
+        INVALID_ARGUMENT,
+        DEADLINE_EXCEEDED,
+        NOT_FOUND,
+        ALREADY_EXISTS,
+        PERMISSION_DENIED,
+        RESOURCE_EXHAUSTED,
+        FAILED_PRECONDITION,
+        ABORTED,
+        OUT_OF_RANGE,
+        UNIMPLEMENTED,
+        INTERNAL,
+        UNAVAILABLE,
+        DATA_LOSS,
+        UNAUTHENTICATED
+    }
+
+    private final Code code;
+
+    /**
+     * Constructs a FirebaseFirestoreException.
+     * @param detailMessage The message.
+     * @param code The error code.
+     */
+    public FirebaseFirestoreException(String detailMessage, Code code) {
+        this(detailMessage, code, null);
+    }
+
+    /**
+     * Constructs a FirebaseFirestoreException.
+     * @param detailMessage The message.
+     * @param code The error code.
+     * @param cause The cause.
+     */
+    public FirebaseFirestoreException(String detailMessage, Code code, Throwable cause) {
+        super(detailMessage, cause);
+        this.code = code;
+    }
+
+    /**
+     * Retrieves the error code.
+     * @return Returns a Code.
+     */
+    public Code getCode() {
+        return code;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.google.firebase.firestore;
+
+/**
+ * A fake of Firestore's ListenerRegistration.
+ * @version 1.4.0
+ */
+public interface ListenerRegistration {
+
+    /**
+     * Removes the listener.
+     */
+    void remove();
+
+}
@@ -0,0 +1,17 @@
+package com.google.firebase.firestore;
+
+/**
+ * A fake of Firestore's Query, providing its ordering directions.
+ * @version 1.4.0
+ */
+public class Query {
+
+    /**
+     * The direction of an ordering.
+     */
+    public enum Direction {
+        ASCENDING,
+        DESCENDING
+    }
+
+}
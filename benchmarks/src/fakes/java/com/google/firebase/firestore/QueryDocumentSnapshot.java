@@ -0,0 +1,20 @@
+package com.google.firebase.firestore;
+
+import java.util.Map;
+
+/**
+ * A fake of Firestore's QueryDocumentSnapshot: a {@link DocumentSnapshot} of a document which exists.
+ * @version 1.4.0
+ */
+public class QueryDocumentSnapshot extends DocumentSnapshot {
+
+    /**
+     * Constructs a QueryDocumentSnapshot.
+     * @param id The document ID.
+     * @param data The field values of the document.
+     */
+    public QueryDocumentSnapshot(String id, Map<String, Object> data) {
+        super(id, data);
+    }
+
+}
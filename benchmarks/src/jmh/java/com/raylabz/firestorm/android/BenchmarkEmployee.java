@@ -0,0 +1,36 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.annotation.FirestormObject;
+
+/**
+ * A class that inherits its ID field from {@link BenchmarkEntity}.
+ * @version 1.4.0
+ */
+@FirestormObject
+public class BenchmarkEmployee extends BenchmarkEntity {
+
+    private String name;
+    private String department;
+    private int level;
+    private double salary;
+
+    public BenchmarkEmployee() {
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDepartment() {
+        return department;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public double getSalary() {
+        return salary;
+    }
+
+}
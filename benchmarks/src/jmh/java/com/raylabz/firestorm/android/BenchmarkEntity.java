@@ -0,0 +1,28 @@
+package com.raylabz.firestorm.android;
+
+/**
+ * A base class holding the ID field, so that lookups have to walk the class hierarchy.
+ * @version 1.4.0
+ */
+public class BenchmarkEntity {
+
+    private String id;
+    private long createdAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+}
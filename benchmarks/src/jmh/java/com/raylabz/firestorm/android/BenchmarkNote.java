@@ -0,0 +1,42 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.annotation.FirestormObject;
+import com.raylabz.firestorm.android.annotation.Searchable;
+
+/**
+ * A class with searchable text fields.
+ * @version 1.4.0
+ */
+@FirestormObject
+public class BenchmarkNote {
+
+    private String id;
+
+    @Searchable(weight = 3)
+    private String title;
+
+    @Searchable
+    private String body;
+
+    public BenchmarkNote() {
+    }
+
+    public BenchmarkNote(String id, String title, String body) {
+        this.id = id;
+        this.title = title;
+        this.body = body;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.annotation.FirestormObject;
+
+/**
+ * A class that declares its own ID field.
+ * @version 1.4.0
+ */
+@FirestormObject
+public class BenchmarkPerson {
+
+    private String id;
+    private String name;
+    private String email;
+    private int age;
+    private boolean active;
+    private double score;
+
+    public BenchmarkPerson() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.raylabz.firestorm.android;
+
+import com.google.gson.Gson;
+import com.raylabz.firestorm.android.codec.BinaryCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks encoding and decoding a person with {@link BinaryCodec}, compared with its JSON encoding by Gson.
+ * @version 1.4.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    private final Gson gson = new Gson();
+    private BenchmarkPerson person;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setup() {
+        person = Snapshots.person(1).toObject(BenchmarkPerson.class);
+        binary = BinaryCodec.encode(person);
+        json = gson.toJson(person).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return BinaryCodec.encode(person);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return gson.toJson(person).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public BenchmarkPerson decodeBinary() {
+        return BinaryCodec.decode(binary, BenchmarkPerson.class);
+    }
+
+    @Benchmark
+    public BenchmarkPerson decodeJson() {
+        return gson.fromJson(new String(json, StandardCharsets.UTF_8), BenchmarkPerson.class);
+    }
+
+}
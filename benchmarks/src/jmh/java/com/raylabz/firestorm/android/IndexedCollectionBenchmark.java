@@ -0,0 +1,91 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.Query;
+import com.raylabz.firestorm.android.index.IndexedCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks re-filtering a locally held collection of people through its secondary indexes, compared with a scan
+ * of the list, and the incremental maintenance of the indexes.
+ * @version 1.4.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IndexedCollectionBenchmark {
+
+    @Param({"10000"})
+    public int size;
+
+    private IndexedCollection<BenchmarkPerson> collection;
+    private List<BenchmarkPerson> list;
+    private List<ObjectChange<BenchmarkPerson>> modification;
+
+    @Setup
+    public void setup() {
+        collection = new IndexedCollection.Builder<>(BenchmarkPerson.class)
+                .addHashIndex("age")
+                .addHashIndex("active")
+                .addSortedIndex("score")
+                .build();
+        final List<ObjectChange<BenchmarkPerson>> changes = ObjectChange.fromChanges(Snapshots.changes(size, false), BenchmarkPerson.class);
+        collection.apply(changes);
+        list = new ArrayList<>();
+        for (ObjectChange<BenchmarkPerson> change : changes) {
+            list.add(change.getObject());
+        }
+        modification = Collections.singletonList(changes.get(size / 2));
+    }
+
+    @Benchmark
+    public List<BenchmarkPerson> equalityIndexed() {
+        return collection.query().whereEqualTo("age", 30).whereEqualTo("active", true).get();
+    }
+
+    @Benchmark
+    public List<BenchmarkPerson> equalityScan() {
+        final ArrayList<BenchmarkPerson> results = new ArrayList<>();
+        for (BenchmarkPerson person : list) {
+            if (person.getAge() == 30 && person.isActive()) {
+                results.add(person);
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    public List<BenchmarkPerson> rangeOrderedIndexed() {
+        return collection.query().whereGreaterThan("score", size * 0.75).orderBy("score", Query.Direction.DESCENDING).limit(20).get();
+    }
+
+    @Benchmark
+    public List<BenchmarkPerson> rangeOrderedScan() {
+        final ArrayList<BenchmarkPerson> results = new ArrayList<>();
+        for (BenchmarkPerson person : list) {
+            if (person.getScore() > size * 0.75) {
+                results.add(person);
+            }
+        }
+        Collections.sort(results, (a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return new ArrayList<>(results.subList(0, Math.min(20, results.size())));
+    }
+
+    @Benchmark
+    public IndexedCollection<BenchmarkPerson> applyModification() {
+        collection.apply(modification);
+        return collection;
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.BackendWrite;
+import com.raylabz.firestorm.android.backend.MemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the queries and writes of a {@link MemoryStore} holding a large collection of persons, as answered
+ * from its indexes. A query listener is attached to the collection, so writes include the cost of updating it.
+ * @version 1.4.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemoryStoreBenchmark {
+
+    private static final String COLLECTION = "BenchmarkPerson";
+
+    @Param({"1000000"})
+    public int documents;
+
+    private MemoryStore store;
+    private ListenerRegistration registration;
+    private int counter = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = new MemoryStore();
+        final ArrayList<BackendWrite> writes = new ArrayList<>(500);
+        for (int i = 0; i < documents; i++) {
+            writes.add(write(i));
+            if (writes.size() == 500) {
+                store.commit(writes);
+                writes.clear();
+            }
+        }
+        store.commit(writes);
+        registration = store.addQueryListener(new BackendQuery(COLLECTION).where("age", BackendQuery.Operator.EQUAL, 20), (changes, error) -> {});
+
+        //Create the indexes used by the queries:
+        equalityQuery();
+        rangeQuery();
+        pageQuery();
+        inQuery();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registration.remove();
+    }
+
+    /**
+     * Creates the write of a person.
+     * @param index The index of the person.
+     * @return Returns a BackendWrite.
+     */
+    private static BackendWrite write(final int index) {
+        final BenchmarkPerson person = Snapshots.person(index).toObject(BenchmarkPerson.class);
+        return BackendWrite.set(COLLECTION, person.getId(), person);
+    }
+
+    /**
+     * Retrieves the index of the next person to read or write.
+     * @return Returns an integer.
+     */
+    private int next() {
+        counter = (counter + 7919) % documents;
+        return counter;
+    }
+
+    @Benchmark
+    public List<BackendDocument> equalityQuery() {
+        return store.query(new BackendQuery(COLLECTION).where("age", BackendQuery.Operator.EQUAL, 20 + next() % 50).limit(20));
+    }
+
+    @Benchmark
+    public List<BackendDocument> rangeQuery() {
+        final double score = next() * 1.5;
+        return store.query(new BackendQuery(COLLECTION)
+                .where("score", BackendQuery.Operator.GREATER_THAN_OR_EQUAL, score)
+                .where("score", BackendQuery.Operator.LESS_THAN, score + 75)
+                .limit(50));
+    }
+
+    @Benchmark
+    public List<BackendDocument> pageQuery() {
+        return store.query(new BackendQuery(COLLECTION).orderBy("name", false).startAfter("Person " + next()).limit(10));
+    }
+
+    @Benchmark
+    public List<BackendDocument> inQuery() {
+        final int age = 20 + next() % 48;
+        return store.query(new BackendQuery(COLLECTION).where("age", BackendQuery.Operator.IN, Arrays.asList(age, age + 1, age + 2)).limit(20));
+    }
+
+    @Benchmark
+    public void update() {
+        store.commit(Collections.singletonList(write(next())));
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.backend.BackendChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the mapping of a query snapshot's document changes to object changes, as done by the class and
+ * filterable listeners.
+ * @version 1.4.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ObjectChangeBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int changes;
+
+    private List<BackendChange> personChanges;
+    private List<BackendChange> employeeChanges;
+
+    @Setup
+    public void setup() {
+        personChanges = Snapshots.changes(changes, false);
+        employeeChanges = Snapshots.changes(changes, true);
+    }
+
+    @Benchmark
+    public ArrayList<ObjectChange<BenchmarkPerson>> mapDeclared() {
+        return ObjectChange.fromChanges(personChanges, BenchmarkPerson.class);
+    }
+
+    @Benchmark
+    public ArrayList<ObjectChange<BenchmarkEmployee>> mapInherited() {
+        return ObjectChange.fromChanges(employeeChanges, BenchmarkEmployee.class);
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.exception.FirestormObjectException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the reflection paths of {@link Reflector} used by every operation.
+ * Each path is measured for a class declaring its own ID field (person) and for a class inheriting it (employee).
+ * @version 1.4.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReflectorBenchmark {
+
+    private BenchmarkPerson person;
+    private BenchmarkEmployee employee;
+    private BenchmarkPerson personTarget;
+    private BenchmarkEmployee employeeTarget;
+
+    @Setup
+    public void setup() {
+        person = Snapshots.person(1).toObject(BenchmarkPerson.class);
+        employee = Snapshots.employee(1).toObject(BenchmarkEmployee.class);
+        personTarget = new BenchmarkPerson();
+        employeeTarget = new BenchmarkEmployee();
+    }
+
+    @Benchmark
+    public String getIDFieldDeclared() throws NoSuchFieldException, IllegalAccessException {
+        return Reflector.getIDField(person);
+    }
+
+    @Benchmark
+    public String getIDFieldInherited() throws NoSuchFieldException, IllegalAccessException {
+        return Reflector.getIDField(employee);
+    }
+
+    @Benchmark
+    public BenchmarkPerson setIDFieldDeclared() throws NoSuchFieldException, IllegalAccessException {
+        Reflector.setIDField(person, "person-1");
+        return person;
+    }
+
+    @Benchmark
+    public BenchmarkEmployee setIDFieldInherited() throws NoSuchFieldException, IllegalAccessException {
+        Reflector.setIDField(employee, "employee-1");
+        return employee;
+    }
+
+    @Benchmark
+    public Class<?> checkClassDeclared() throws FirestormObjectException {
+        Reflector.checkClass(BenchmarkPerson.class);
+        return BenchmarkPerson.class;
+    }
+
+    @Benchmark
+    public Class<?> checkClassInherited() throws FirestormObjectException {
+        Reflector.checkClass(BenchmarkEmployee.class);
+        return BenchmarkEmployee.class;
+    }
+
+    @Benchmark
+    public ArrayList<Field> getSuperclassFields() {
+        return Reflector.getSuperclassFields(BenchmarkEmployee.class, Object.class);
+    }
+
+    @Benchmark
+    public BenchmarkPerson copyFieldsDeclared() throws IllegalAccessException {
+        Reflector.copyFields(person, personTarget);
+        return personTarget;
+    }
+
+    @Benchmark
+    public BenchmarkEmployee copyFieldsInherited() throws IllegalAccessException {
+        Reflector.copyFields(employee, employeeTarget);
+        return employeeTarget;
+    }
+
+}
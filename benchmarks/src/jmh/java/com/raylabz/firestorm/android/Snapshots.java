@@ -0,0 +1,72 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.raylabz.firestorm.android.backend.BackendChange;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Creates fake snapshot inputs for the benchmarks.
+ * @version 1.4.0
+ */
+final class Snapshots {
+
+    private static final BackendChange.Type[] TYPES = BackendChange.Type.values();
+
+    private Snapshots() {
+    }
+
+    /**
+     * Creates the document of a person.
+     * @param index The index of the document.
+     * @return Returns a QueryDocumentSnapshot.
+     */
+    static QueryDocumentSnapshot person(final int index) {
+        final String id = "person-" + index;
+        final HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("name", "Person " + index);
+        data.put("email", "person" + index + "@example.com");
+        data.put("age", 20 + index % 50);
+        data.put("active", index % 2 == 0);
+        data.put("score", index * 1.5);
+        return new QueryDocumentSnapshot(id, data);
+    }
+
+    /**
+     * Creates the document of an employee.
+     * @param index The index of the document.
+     * @return Returns a QueryDocumentSnapshot.
+     */
+    static QueryDocumentSnapshot employee(final int index) {
+        final String id = "employee-" + index;
+        final HashMap<String, Object> data = new HashMap<>();
+        data.put("id", id);
+        data.put("createdAt", 1_600_000_000_000L + index);
+        data.put("name", "Employee " + index);
+        data.put("department", "Department " + index % 10);
+        data.put("level", index % 5);
+        data.put("salary", 1000.0 + index);
+        return new QueryDocumentSnapshot(id, data);
+    }
+
+    /**
+     * Creates a list of document changes, as delivered by the Firestore backend for a query snapshot.
+     * @param size The number of changes.
+     * @param employees Whether to create employee (true) or person (false) documents.
+     * @return Returns a list of document changes.
+     */
+    static List<BackendChange> changes(final int size, final boolean employees) {
+        final ArrayList<BackendChange> changes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final QueryDocumentSnapshot document = employees ? employee(i) : person(i);
+            final BackendChange.Type type = TYPES[i % TYPES.length];
+            changes.add(new BackendChange(type, new FirestoreDocument(document), type == BackendChange.Type.ADDED ? -1 : i, type == BackendChange.Type.REMOVED ? -1 : i));
+        }
+        return changes;
+    }
+
+}
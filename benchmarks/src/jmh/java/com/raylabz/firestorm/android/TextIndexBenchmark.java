@@ -0,0 +1,85 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.index.IndexedCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks type-ahead search over notes of random words through a text index, compared with scanning the notes
+ * with {@link String#contains(CharSequence)}.
+ * @version 1.4.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextIndexBenchmark {
+
+    @Param({"50000"})
+    public int size;
+
+    @Param({"m", "mor", "morel ca"})
+    public String query;
+
+    private IndexedCollection<BenchmarkNote> collection;
+    private List<BenchmarkNote> notes;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(1);
+        final String[] vocabulary = new String[5000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            final StringBuilder word = new StringBuilder();
+            for (int j = 3 + random.nextInt(7); j > 0; j--) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        vocabulary[0] = "morel";
+        vocabulary[1] = "cake";
+        notes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            notes.add(new BenchmarkNote("note" + i, words(random, vocabulary, 3), words(random, vocabulary, 20)));
+        }
+        collection = new IndexedCollection.Builder<>(BenchmarkNote.class).addTextIndex().build();
+        collection.putAll(notes);
+    }
+
+    private static String words(final Random random, final String[] vocabulary, final int count) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i > 0 ? " " : "").append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return text.toString();
+    }
+
+    @Benchmark
+    public List<BenchmarkNote> searchIndexed() {
+        return collection.search(query, 20);
+    }
+
+    @Benchmark
+    public List<BenchmarkNote> searchScan() {
+        final ArrayList<BenchmarkNote> results = new ArrayList<>();
+        for (BenchmarkNote note : notes) {
+            if (note.getTitle().contains(query) || note.getBody().contains(query)) {
+                results.add(note);
+                if (results.size() == 20) {
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,471 @@
+package com.raylabz.firestorm.android;
+
+import android.os.Looper;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.raylabz.firestorm.android.exception.BulkheadFullException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An interceptor bounding the number of Firestorm operations in flight, so that a producer issuing operations faster
+ * than they complete (e.g. creating objects in a loop) cannot accumulate an unbounded number of dispatched work items
+ * and pending tasks.
+ * <p>
+ * Reads and writes have separate limits, and each operation type may have its own limit as well. An operation
+ * holds a permit from the moment it proceeds until its task completes. When no permit is available, the
+ * {@link OverflowPolicy} decides whether the caller waits, the operation fails at once, or it is queued, up to a
+ * bound, and started when a permit is released. Operations which must wait do not overtake those of the same kind
+ * (read or write) waiting before them.
+ * <p>
+ * The number of operations in flight and waiting is exposed, so that producers can throttle themselves, e.g. by
+ * pausing while {@link #getPendingWrites()} exceeds a threshold.
+ * <p>
+ * A bulkhead is added using <i>FirestormSettings.Builder.addInterceptor()</i>. Interceptors added before it, such as
+ * caches, run before permits are taken.
+ * @version 1.4.0
+ */
+public final class Bulkhead implements FirestormInterceptor {
+
+    /**
+     * What happens to an operation when no permit is available.
+     */
+    public enum OverflowPolicy {
+
+        /**
+         * The calling thread blocks until a permit is available, or fails after the maximum wait time. Operations
+         * started on the main thread are queued instead, since their permits are released on the main thread.
+         */
+        WAIT,
+
+        /**
+         * The operation fails at once with a {@link BulkheadFullException}.
+         */
+        FAIL_FAST,
+
+        /**
+         * The operation is queued and started when a permit is available. It fails with a
+         * {@link BulkheadFullException} if the queue is full.
+         */
+        QUEUE
+
+    }
+
+    /**
+     * The default maximum number of reads in flight.
+     */
+    public static final int DEFAULT_MAX_READS = 64;
+
+    /**
+     * The default maximum number of writes, batches and transactions in flight.
+     */
+    public static final int DEFAULT_MAX_WRITES = 32;
+
+    /**
+     * The default maximum number of queued operations.
+     */
+    public static final int DEFAULT_MAX_QUEUE_SIZE = 1000;
+
+    /**
+     * Releases permits on the thread completing the operation.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private final int maxReads;
+    private final int maxWrites;
+    private final EnumMap<OperationType, Integer> typeLimits;
+    private final OverflowPolicy overflowPolicy;
+    private final int maxQueueSize;
+    private final long maxWaitMillis;
+
+    private int activeReads;
+    private int activeWrites;
+    private final int[] activeByType = new int[OperationType.values().length];
+    private final ArrayDeque<Queued<?>> queue = new ArrayDeque<>();
+    private int waitingReads;
+    private int waitingWrites;
+
+    /**
+     * Constructs a bulkhead from a builder.
+     * @param builder The builder.
+     */
+    private Bulkhead(final Builder builder) {
+        this.maxReads = builder.maxReads;
+        this.maxWrites = builder.maxWrites;
+        this.typeLimits = new EnumMap<>(builder.typeLimits);
+        this.overflowPolicy = builder.overflowPolicy;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.maxWaitMillis = builder.maxWaitMillis;
+    }
+
+    @Override
+    public Task<?> intercept(final Chain<?> chain) {
+        return admit(chain);
+    }
+
+    /**
+     * Admits an operation, running it now, queueing it, waiting for a permit or failing it, depending on the
+     * overflow policy.
+     * @param chain The chain of the operation.
+     * @param <R> The type of the operation's result.
+     * @return Returns the Task of the operation.
+     */
+    private <R> Task<R> admit(final Chain<R> chain) {
+        final OperationType type = chain.getContext().getType();
+        final boolean read = type.isRead();
+        synchronized (this) {
+            if (waitingOf(read) > 0 || !tryAcquire(type)) {
+                OverflowPolicy policy = overflowPolicy;
+                if (policy == OverflowPolicy.WAIT && Looper.myLooper() == Looper.getMainLooper()) {
+                    policy = OverflowPolicy.QUEUE;
+                }
+                switch (policy) {
+                    case FAIL_FAST:
+                        return Tasks.forException(new BulkheadFullException(type, "Too many " + (read ? "reads" : "writes") + " in flight to start a " + type + " operation."));
+                    case QUEUE:
+                        if (queue.size() >= maxQueueSize) {
+                            return Tasks.forException(new BulkheadFullException(type, "The bulkhead queue is full (" + maxQueueSize + " operations)."));
+                        }
+                        final Queued<R> queued = new Queued<>(chain, type);
+                        queue.add(queued);
+                        addWaiting(read, 1);
+                        return queued.source.getTask();
+                    default:
+                        if (!await(type)) {
+                            return Tasks.forException(new BulkheadFullException(type, "Timed out after " + maxWaitMillis + "ms waiting to start a " + type + " operation."));
+                        }
+                }
+            }
+        }
+        return run(chain, type);
+    }
+
+    /**
+     * Blocks the calling thread until a permit is available and takes it. Must be called while synchronized.
+     * @param type The type of the operation.
+     * @return Returns true if a permit was taken, false if the maximum wait time elapsed.
+     */
+    private boolean await(final OperationType type) {
+        final boolean read = type.isRead();
+        final long deadline = System.nanoTime() + maxWaitMillis * 1000000;
+        addWaiting(read, 1);
+        try {
+            while (!tryAcquire(type)) {
+                final long remainingMillis = (deadline - System.nanoTime()) / 1000000;
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                wait(remainingMillis);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            addWaiting(read, -1);
+        }
+    }
+
+    /**
+     * Runs an operation which holds a permit, releasing the permit when the operation completes.
+     * @param chain The chain of the operation.
+     * @param type The type of the operation.
+     * @param <R> The type of the operation's result.
+     * @return Returns the Task of the operation.
+     */
+    private <R> Task<R> run(final Chain<R> chain, final OperationType type) {
+        final Task<R> task;
+        try {
+            task = chain.proceed();
+        } catch (RuntimeException e) {
+            release(type);
+            throw e;
+        }
+        task.addOnCompleteListener(DIRECT, result -> release(type));
+        return task;
+    }
+
+    /**
+     * Releases a permit, and starts the queued operations which can take the released permits.
+     * @param type The type of the completed operation.
+     */
+    private void release(final OperationType type) {
+        final ArrayList<Queued<?>> started = new ArrayList<>();
+        synchronized (this) {
+            activeByType[type.ordinal()]--;
+            if (type.isRead()) {
+                activeReads--;
+            }
+            else {
+                activeWrites--;
+            }
+            boolean blockedReads = false;
+            boolean blockedWrites = false;
+            final Iterator<Queued<?>> iterator = queue.iterator();
+            while (iterator.hasNext() && !(blockedReads && blockedWrites)) {
+                final Queued<?> queued = iterator.next();
+                final boolean read = queued.type.isRead();
+                if (read ? blockedReads : blockedWrites) {
+                    continue;
+                }
+                if (tryAcquire(queued.type)) {
+                    iterator.remove();
+                    addWaiting(read, -1);
+                    started.add(queued);
+                }
+                else if (read) {
+                    blockedReads = true;
+                }
+                else {
+                    blockedWrites = true;
+                }
+            }
+            notifyAll();
+        }
+        for (Queued<?> queued : started) {
+            queued.start();
+        }
+    }
+
+    /**
+     * Takes a permit if one is available. Must be called while synchronized.
+     * @param type The type of the operation.
+     * @return Returns true if a permit was taken, false otherwise.
+     */
+    private boolean tryAcquire(final OperationType type) {
+        final Integer typeLimit = typeLimits.get(type);
+        if (typeLimit != null && activeByType[type.ordinal()] >= typeLimit) {
+            return false;
+        }
+        if (type.isRead()) {
+            if (activeReads >= maxReads) {
+                return false;
+            }
+            activeReads++;
+        }
+        else {
+            if (activeWrites >= maxWrites) {
+                return false;
+            }
+            activeWrites++;
+        }
+        activeByType[type.ordinal()]++;
+        return true;
+    }
+
+    /**
+     * Retrieves the number of operations of a kind waiting for a permit. Must be called while synchronized.
+     * @param read True for reads, false for writes.
+     * @return Returns an integer.
+     */
+    private int waitingOf(final boolean read) {
+        return read ? waitingReads : waitingWrites;
+    }
+
+    /**
+     * Adds to the number of operations of a kind waiting for a permit. Must be called while synchronized.
+     * @param read True for reads, false for writes.
+     * @param count The number to add.
+     */
+    private void addWaiting(final boolean read, final int count) {
+        if (read) {
+            waitingReads += count;
+        }
+        else {
+            waitingWrites += count;
+        }
+    }
+
+    /**
+     * Retrieves the number of operations in flight.
+     * @return Returns an integer.
+     */
+    public synchronized int getActiveCount() {
+        return activeReads + activeWrites;
+    }
+
+    /**
+     * Retrieves the number of operations of a type in flight.
+     * @param type The type.
+     * @return Returns an integer.
+     */
+    public synchronized int getActiveCount(final OperationType type) {
+        return activeByType[type.ordinal()];
+    }
+
+    /**
+     * Retrieves the backlog: the number of operations queued or blocked waiting for a permit.
+     * @return Returns an integer.
+     */
+    public synchronized int getBacklog() {
+        return waitingReads + waitingWrites;
+    }
+
+    /**
+     * Retrieves the number of writes, batches and transactions which have not completed, in flight or waiting.
+     * @return Returns an integer.
+     */
+    public synchronized int getPendingWrites() {
+        return activeWrites + waitingWrites;
+    }
+
+    /**
+     * Retrieves the overflow policy.
+     * @return Returns an OverflowPolicy.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * An operation waiting in the queue for a permit.
+     * @param <R> The type of the operation's result.
+     */
+    private final class Queued<R> {
+
+        private final Chain<R> chain;
+        private final OperationType type;
+        private final TaskCompletionSource<R> source = new TaskCompletionSource<>();
+
+        Queued(final Chain<R> chain, final OperationType type) {
+            this.chain = chain;
+            this.type = type;
+        }
+
+        /**
+         * Starts the operation, which holds a permit, and completes its task with the operation's result.
+         */
+        void start() {
+            final Task<R> task;
+            try {
+                task = run(chain, type);
+            } catch (RuntimeException e) {
+                source.setException(e);
+                return;
+            }
+            task.addOnCompleteListener(DIRECT, result -> {
+                if (result.isSuccessful()) {
+                    source.setResult(result.getResult());
+                }
+                else {
+                    source.setException(result.getException() != null ? result.getException()
+                            : new BulkheadFullException(type, "The " + type + " operation failed."));
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Builds a Bulkhead.
+     */
+    public static final class Builder {
+
+        private int maxReads = DEFAULT_MAX_READS;
+        private int maxWrites = DEFAULT_MAX_WRITES;
+        private final Map<OperationType, Integer> typeLimits = new EnumMap<>(OperationType.class);
+        private OverflowPolicy overflowPolicy = OverflowPolicy.QUEUE;
+        private int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+        private long maxWaitMillis = 30000;
+
+        /**
+         * Sets the maximum number of reads in flight.
+         * @param maxReads The limit. The default is {@value Bulkhead#DEFAULT_MAX_READS}.
+         * @return Returns the builder.
+         */
+        public Builder setMaxConcurrentReads(final int maxReads) {
+            this.maxReads = checkLimit(maxReads);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of writes, batches and transactions in flight.
+         * @param maxWrites The limit. The default is {@value Bulkhead#DEFAULT_MAX_WRITES}.
+         * @return Returns the builder.
+         */
+        public Builder setMaxConcurrentWrites(final int maxWrites) {
+            this.maxWrites = checkLimit(maxWrites);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of operations of a type in flight, on top of the limit of reads or writes.
+         * @param type The operation type.
+         * @param limit The limit.
+         * @return Returns the builder.
+         */
+        public Builder setMaxConcurrent(final OperationType type, final int limit) {
+            typeLimits.put(type, checkLimit(limit));
+            return this;
+        }
+
+        /**
+         * Sets what happens to an operation when no permit is available.
+         * @param overflowPolicy The policy. The default is {@link OverflowPolicy#QUEUE}.
+         * @return Returns the builder.
+         */
+        public Builder setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+            if (overflowPolicy == null) {
+                throw new IllegalArgumentException("The overflow policy cannot be null.");
+            }
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of queued operations, used by the {@link OverflowPolicy#QUEUE} policy.
+         * @param maxQueueSize The size. The default is {@value Bulkhead#DEFAULT_MAX_QUEUE_SIZE}.
+         * @return Returns the builder.
+         */
+        public Builder setMaxQueueSize(final int maxQueueSize) {
+            if (maxQueueSize < 0) {
+                throw new IllegalArgumentException("The maximum queue size cannot be negative.");
+            }
+            this.maxQueueSize = maxQueueSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a caller blocks, used by the {@link OverflowPolicy#WAIT} policy.
+         * @param maxWaitMillis The time in milliseconds. The default is 30 seconds.
+         * @return Returns the builder.
+         */
+        public Builder setMaxWaitMillis(final long maxWaitMillis) {
+            if (maxWaitMillis < 0) {
+                throw new IllegalArgumentException("The maximum wait time cannot be negative.");
+            }
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * Builds the bulkhead.
+         * @return Returns a Bulkhead.
+         */
+        public Bulkhead build() {
+            return new Bulkhead(this);
+        }
+
+        /**
+         * Checks a limit.
+         * @param limit The limit.
+         * @return Returns the limit.
+         * @throws IllegalArgumentException Thrown when the limit is not positive.
+         */
+        private static int checkLimit(final int limit) {
+            if (limit < 1) {
+                throw new IllegalArgumentException("The limit must be at least 1.");
+            }
+            return limit;
+        }
+
+    }
+
+}
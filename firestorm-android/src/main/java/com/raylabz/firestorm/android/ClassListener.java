@@ -1,13 +1,12 @@
 package com.raylabz.firestorm.android;
 
-import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.raylabz.firestorm.android.backend.BackendChange;
+import com.raylabz.firestorm.android.backend.FirestoreBackend;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,20 +35,22 @@ public abstract class ClassListener<T> implements EventListener<QuerySnapshot> {
      */
     @Override
     public final void onEvent(@Nullable QuerySnapshot querySnapshot, @Nullable FirebaseFirestoreException e) {
+        onChanges(querySnapshot != null ? FirestoreBackend.changesOf(querySnapshot) : null, e);
+    }
+
+    /**
+     * Executes when the backend delivers changes to the documents listened to.
+     * @param changes The document changes.
+     * @param e An exception thrown by the backend if the data retrieval was not successful.
+     */
+    final void onChanges(@Nullable List<BackendChange> changes, @Nullable Exception e) {
         if (e != null) {
             onFailure(e.getMessage());
             return;
         }
 
-        if (querySnapshot != null) {
-            List<DocumentChange> documentChanges = querySnapshot.getDocumentChanges();
-            ArrayList<ObjectChange<T>> objectChanges = new ArrayList<>();
-            for (DocumentChange documentChange : documentChanges) {
-                QueryDocumentSnapshot document = documentChange.getDocument();
-                ObjectChange<T> objectChange = new ObjectChange<T>(document.toObject(objectClass), document, documentChange.getOldIndex(), documentChange.getNewIndex(), ObjectChange.Type.fromDocumentChangeType(documentChange.getType()));
-                objectChanges.add(objectChange);
-            }
-            onSuccess(objectChanges);
+        if (changes != null) {
+            onSuccess(ObjectChange.fromChanges(changes, objectClass));
 
         }
         else {
@@ -0,0 +1,296 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.raylabz.firestorm.android.backend.CachingBackend;
+import com.raylabz.firestorm.android.backend.FirestormBackend;
+import com.raylabz.firestorm.android.exception.DeadlineExceededException;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.util.EnumMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Bounds the time Firestorm operations take, so that a poor network cannot keep the tasks they return pending for
+ * tens of seconds.
+ * <p>
+ * Each operation has a deadline, counted from the moment it is started and including the time it spends in
+ * interceptors, retries and transaction attempts. An operation which has not completed by its deadline fails with a
+ * {@link DeadlineExceededException}, which is recorded in the metrics with the error code DEADLINE_EXCEEDED. The
+ * backend operation itself is not aborted: it is recorded again when it completes, and its result is discarded.
+ * Transactions and other retried operations do not start another attempt after their deadline.
+ * <p>
+ * With the cache fallback enabled, reads (gets, lists and fetches) which time out are served from the local cache
+ * instead, if the backend keeps one. Fetched {@link QueryResult}s served from the cache are marked as stale; the
+ * {@link Listener} is told about every operation which timed out, and whether it was served from the cache.
+ * <p>
+ * Deadlines are set using <i>FirestormSettings.Builder.setDeadlines()</i>.
+ * @version 1.4.0
+ */
+public final class Deadlines {
+
+    /**
+     * The default deadline of reads, in milliseconds.
+     */
+    public static final long DEFAULT_READ_DEADLINE_MILLIS = 10000;
+
+    /**
+     * The default deadline of writes, batches and transactions, in milliseconds.
+     */
+    public static final long DEFAULT_WRITE_DEADLINE_MILLIS = 30000;
+
+    /**
+     * The default deadlines, with the cache fallback enabled. Exports and imports are not bounded.
+     */
+    public static final Deadlines DEFAULT = new Builder().build();
+
+    /**
+     * Listens for operations which did not complete before their deadline.
+     */
+    public interface Listener {
+
+        /**
+         * Called when an operation did not complete before its deadline.
+         * @param context The context of the operation.
+         * @param stale True if the operation was served from the local cache, false if it failed.
+         */
+        void onDeadlineExceeded(OperationContext context, boolean stale);
+
+    }
+
+    /**
+     * Repeats a read against the local cache of the backend.
+     * @param <R> The type of the read's result.
+     */
+    interface Fallback<R> {
+
+        /**
+         * Runs the read.
+         * @param cache The view of the backend reading from the local cache.
+         * @return Returns the Task of the read.
+         */
+        Task<R> read(FirestormBackend cache);
+
+    }
+
+    /**
+     * Completes the bounded tasks on the thread completing the operation.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private final long readDeadlineMillis;
+    private final long writeDeadlineMillis;
+    private final EnumMap<OperationType, Long> typeDeadlines;
+    private final boolean cacheFallback;
+    private final Listener listener;
+
+    /**
+     * Constructs the deadlines from a builder.
+     * @param builder The builder.
+     */
+    private Deadlines(final Builder builder) {
+        this.readDeadlineMillis = builder.readDeadlineMillis;
+        this.writeDeadlineMillis = builder.writeDeadlineMillis;
+        this.typeDeadlines = new EnumMap<>(builder.typeDeadlines);
+        this.cacheFallback = builder.cacheFallback;
+        this.listener = builder.listener;
+    }
+
+    /**
+     * Retrieves the deadline of a type of operation.
+     * @param type The type of operation.
+     * @return Returns a time in milliseconds, or 0 if operations of this type are not bounded.
+     */
+    public long getDeadlineMillis(final OperationType type) {
+        final Long deadlineMillis = typeDeadlines.get(type);
+        if (deadlineMillis != null) {
+            return deadlineMillis;
+        }
+        if (type == OperationType.EXPORT || type == OperationType.IMPORT || type == OperationType.CUSTOM) {
+            return 0;
+        }
+        return type.isRead() ? readDeadlineMillis : writeDeadlineMillis;
+    }
+
+    /**
+     * Checks if reads which time out are served from the local cache.
+     * @return Returns true if the cache fallback is enabled, false otherwise.
+     */
+    public boolean isCacheFallback() {
+        return cacheFallback;
+    }
+
+    /**
+     * Bounds the task of an operation by the operation's deadline.
+     * @param context The context of the operation, whose deadline is set.
+     * @param task The task of the operation.
+     * @param fallback The read repeated against the local cache if the operation times out, or null.
+     * @param <R> The type of the operation's result.
+     * @return Returns a Task which completes with the result of the operation, or of the fallback, or fails once the
+     * deadline has passed.
+     */
+    <R> Task<R> bound(final OperationContext context, final Task<R> task, final Fallback<R> fallback) {
+        final long deadlineMillis = context.getDeadlineMillis();
+        if (deadlineMillis <= 0 || task.isComplete()) {
+            return task;
+        }
+        final CancellationTokenSource cancellation = new CancellationTokenSource();
+        final TaskCompletionSource<R> source = new TaskCompletionSource<>(cancellation.getToken());
+        final ScheduledFuture<?> timeout = Firestorm.dispatchDelayed(context.getPriority(), context.getRemainingMillis(),
+                () -> expire(context, source, fallback));
+        task.addOnCompleteListener(DIRECT, result -> {
+            timeout.cancel(false);
+            if (result.isSuccessful()) {
+                source.trySetResult(result.getResult());
+            }
+            else if (result.isCanceled()) {
+                cancellation.cancel();
+            }
+            else {
+                source.trySetException(result.getException() != null ? result.getException()
+                        : new FirestormException("The " + context.getType() + " operation failed."));
+            }
+        });
+        return source.getTask();
+    }
+
+    /**
+     * Completes an operation whose deadline has passed, from the local cache if possible.
+     * @param context The context of the operation.
+     * @param source The task completion source of the bounded task.
+     * @param fallback The read repeated against the local cache, or null.
+     * @param <R> The type of the operation's result.
+     */
+    private <R> void expire(final OperationContext context, final TaskCompletionSource<R> source, final Fallback<R> fallback) {
+        if (source.getTask().isComplete()) {
+            return;
+        }
+        OperationTrace.expired(context);
+        final DeadlineExceededException exception = new DeadlineExceededException(context.getType(), context.getDeadlineMillis());
+        final FirestormBackend backend = Firestorm.backend;
+        if (!cacheFallback || fallback == null || !context.getType().isRead() || !(backend instanceof CachingBackend)) {
+            fail(context, source, exception);
+            return;
+        }
+        final FirestormBackend cache = ((CachingBackend) backend).getCache();
+        Firestorm.dispatch(context.getPriority(), () -> {
+            final Task<R> read;
+            try {
+                read = fallback.read(cache);
+            } catch (RuntimeException e) {
+                fail(context, source, exception);
+                return;
+            }
+            read.addOnCompleteListener(DIRECT, result -> {
+                if (!result.isSuccessful()) {
+                    fail(context, source, exception);
+                }
+                else if (source.trySetResult(result.getResult()) && listener != null) {
+                    listener.onDeadlineExceeded(context, true);
+                }
+            });
+        });
+    }
+
+    /**
+     * Fails an operation whose deadline has passed, unless it has completed meanwhile.
+     * @param context The context of the operation.
+     * @param source The task completion source of the bounded task.
+     * @param exception The exception.
+     * @param <R> The type of the operation's result.
+     */
+    private <R> void fail(final OperationContext context, final TaskCompletionSource<R> source, final DeadlineExceededException exception) {
+        if (source.trySetException(exception) && listener != null) {
+            listener.onDeadlineExceeded(context, false);
+        }
+    }
+
+    /**
+     * Builds Deadlines.
+     */
+    public static final class Builder {
+
+        private long readDeadlineMillis = DEFAULT_READ_DEADLINE_MILLIS;
+        private long writeDeadlineMillis = DEFAULT_WRITE_DEADLINE_MILLIS;
+        private final EnumMap<OperationType, Long> typeDeadlines = new EnumMap<>(OperationType.class);
+        private boolean cacheFallback = true;
+        private Listener listener = null;
+
+        /**
+         * Sets the deadline of reads.
+         * @param readDeadlineMillis The deadline in milliseconds, or 0 to not bound reads. The default is
+         *                           {@value Deadlines#DEFAULT_READ_DEADLINE_MILLIS}.
+         * @return Returns the builder.
+         */
+        public Builder setReadDeadlineMillis(final long readDeadlineMillis) {
+            this.readDeadlineMillis = checkDeadline(readDeadlineMillis);
+            return this;
+        }
+
+        /**
+         * Sets the deadline of writes, batches and transactions.
+         * @param writeDeadlineMillis The deadline in milliseconds, or 0 to not bound writes. The default is
+         *                            {@value Deadlines#DEFAULT_WRITE_DEADLINE_MILLIS}.
+         * @return Returns the builder.
+         */
+        public Builder setWriteDeadlineMillis(final long writeDeadlineMillis) {
+            this.writeDeadlineMillis = checkDeadline(writeDeadlineMillis);
+            return this;
+        }
+
+        /**
+         * Sets the deadline of a type of operation, overriding the read or write deadline.
+         * @param type The type of operation.
+         * @param deadlineMillis The deadline in milliseconds, or 0 to not bound operations of this type.
+         * @return Returns the builder.
+         */
+        public Builder setDeadlineMillis(final OperationType type, final long deadlineMillis) {
+            typeDeadlines.put(type, checkDeadline(deadlineMillis));
+            return this;
+        }
+
+        /**
+         * Enables or disables serving reads which time out from the local cache.
+         * @param cacheFallback True to serve reads from the cache (the default), false to fail them.
+         * @return Returns the builder.
+         */
+        public Builder setCacheFallback(final boolean cacheFallback) {
+            this.cacheFallback = cacheFallback;
+            return this;
+        }
+
+        /**
+         * Sets a listener told about the operations which did not complete before their deadline.
+         * @param listener The listener, or null.
+         * @return Returns the builder.
+         */
+        public Builder setListener(final Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Checks that a deadline is valid.
+         * @param deadlineMillis The deadline.
+         * @return Returns the deadline.
+         */
+        private static long checkDeadline(final long deadlineMillis) {
+            if (deadlineMillis < 0) {
+                throw new IllegalArgumentException("The deadline cannot be negative.");
+            }
+            return deadlineMillis;
+        }
+
+        /**
+         * Builds the deadlines.
+         * @return Returns Deadlines.
+         */
+        public Deadlines build() {
+            return new Deadlines(this);
+        }
+
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.raylabz.firestorm.android;
 
+import com.google.android.gms.tasks.CancellationToken;
 import com.google.android.gms.tasks.Task;
 
 /**
@@ -16,4 +17,12 @@ public interface Filterable<T> {
      */
     Task<QueryResult<T>> fetch();
 
+    /**
+     * Fetches the results of a filterable. Once the token is cancelled, the returned task is cancelled and the
+     * results are neither converted to objects nor delivered.
+     * @param token The cancellation token, or null.
+     * @return An ArrayList containing the results of a filter.
+     */
+    Task<QueryResult<T>> fetch(CancellationToken token);
+
 }
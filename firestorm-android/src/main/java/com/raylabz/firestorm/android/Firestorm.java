@@ -1,22 +1,43 @@
 package com.raylabz.firestorm.android;
 
 import android.os.Handler;
+import android.os.Looper;
 
+import com.google.android.gms.tasks.CancellationToken;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Source;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.FirestoreBackend;
+import com.raylabz.firestorm.android.backend.FirestormBackend;
+import com.raylabz.firestorm.android.backend.Predicate;
+import com.raylabz.firestorm.android.backend.QueryPlanner;
 import com.raylabz.firestorm.android.exception.ClassRegistrationException;
 import com.raylabz.firestorm.android.exception.FirestormException;
 import com.raylabz.firestorm.android.exception.FirestormObjectException;
 import com.raylabz.firestorm.android.exception.NotInitializedException;
+import com.raylabz.firestorm.android.geo.Geohash;
+import com.raylabz.firestorm.android.metrics.FirestormMetrics;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Firestorm is an object-oriented data access API for Firestore.
@@ -30,27 +51,387 @@ import java.util.List;
 public final class Firestorm {
 
     /**
-     * Static Firestore object used to make queries on Firestore.
+     * Static Firestore object used to make queries on Firestore, or null if another backend is used.
      */
     static FirebaseFirestore firestore;
 
     /**
-     * Stores a list of listeners registered to objects.
+     * The backend storing documents: a FirestoreBackend, unless another backend is set in the settings.
      */
-    private static final HashMap<Object, ListenerRegistration> registeredObjectListeners = new HashMap<>();
-    private static final HashMap<Class<?>, ListenerRegistration> registeredClassListeners = new HashMap<>();
+    static FirestormBackend backend;
+
+    /**
+     * Tracks the listeners attached to objects, classes, references and filterables.
+     */
+    static final ListenerRegistry listeners = new ListenerRegistry();
+
+    /**
+     * The Firestore instance the persistence and cache size settings were applied to, which Firestore does not allow
+     * to change once the instance has been used.
+     */
+    private static FirebaseFirestore configuredFirestore;
+
+    /**
+     * The settings Firestorm was initialized with.
+     */
+    private static FirestormSettings settings = FirestormSettings.DEFAULT;
+
+    /**
+     * The write outbox, or null if no outbox file was configured.
+     */
+    static FirestormOutbox outbox;
+
+    /**
+     * The document read to open the connection during warm-up when no hot collections or documents are configured.
+     */
+    private static final String WARM_UP_COLLECTION = "__firestorm__";
+    private static final String WARM_UP_DOCUMENT = "__warmup__";
+
+    /**
+     * Runs the continuations of reads served from the local cache on the thread completing them.
+     */
+    static final Executor DIRECT = Runnable::run;
 
     /**
      * Initializes Firestorm <b><u>after Firebase has been initialized</u></b> using <i>Firebase.initializeApp()</i>.
      */
     public static void init() {
-        firestore = FirebaseFirestore.getInstance();
+        init(FirestormSettings.DEFAULT);
+    }
+
+    /**
+     * Initializes Firestorm <b><u>after Firebase has been initialized</u></b> using <i>Firebase.initializeApp()</i>,
+     * applying the provided settings. Warm-up is carried out in the background and does not block the caller.
+     * Firestorm may be initialized again, e.g. after a configuration change, but the persistence and cache size
+     * settings are only applied by the first initialization with a Firestore instance.
+     *
+     * @param firestormSettings The settings to initialize Firestorm with.
+     * @throws FirestormException Thrown when the persistence and cache size settings cannot be applied because
+     * Firestore was used before Firestorm was initialized.
+     */
+    public static void init(final FirestormSettings firestormSettings) throws FirestormException {
+        final FirestormBackend newBackend = firestormSettings.getBackend() != null ? firestormSettings.getBackend()
+                : new FirestoreBackend(FirebaseFirestore.getInstance());
+        final FirebaseFirestore newFirestore = newBackend instanceof FirestoreBackend ? ((FirestoreBackend) newBackend).getFirestore() : null;
+        if (newFirestore != null && newFirestore != configuredFirestore) {
+            applyFirestoreSettings(newFirestore, firestormSettings);
+        }
+        backend = newBackend;
+        firestore = newFirestore;
+        settings = firestormSettings;
+        if (firestormSettings.getOutboxFile() != null) {
+            outbox = new FirestormOutbox(firestormSettings.getOutboxFile());
+            dispatch(Priority.BACKGROUND, outbox::drain);
+        }
+        else {
+            outbox = null;
+        }
+        warmUp(firestormSettings);
+    }
+
+    /**
+     * Applies the persistence and cache size settings to a Firestore instance, unless they are already in effect.
+     * @param instance The Firestore instance.
+     * @param firestormSettings The settings.
+     * @throws FirestormException Thrown when the instance has already been used, after which Firestore does not allow
+     * its settings to change.
+     */
+    private static void applyFirestoreSettings(final FirebaseFirestore instance, final FirestormSettings firestormSettings) throws FirestormException {
+        final FirebaseFirestoreSettings current = instance.getFirestoreSettings();
+        final FirebaseFirestoreSettings updated = firestormSettings.toFirestoreSettings(current);
+        if (!updated.equals(current)) {
+            try {
+                instance.setFirestoreSettings(updated);
+            } catch (IllegalStateException e) {
+                throw new FirestormException("The persistence and cache size settings cannot be applied because Firestore "
+                        + "was used before Firestorm was initialized. Initialize Firestorm before any other use of Firestore.");
+            }
+        }
+        configuredFirestore = instance;
+    }
+
+    /**
+     * Warms up Firestore in the background: The initial call to Firestore has high latency so it is preferable to
+     * open the connection and pre-load hot collections and documents into the local cache as soon as Firestorm is
+     * initialized, instead of waiting for the first actual request.
+     *
+     * @param firestormSettings The settings containing the warm-up configuration.
+     */
+    private static void warmUp(final FirestormSettings firestormSettings) {
+        if (firestore == null || !firestormSettings.hasWarmUp()) {
+            return;
+        }
+        dispatch(() -> {
+            boolean connectionOpened = false;
+            for (Class<?> objectClass : firestormSettings.getWarmUpCollections()) {
+                firestore.collection(objectClass.getSimpleName())
+                        .limit(firestormSettings.getWarmUpLimit())
+                        .get(Source.SERVER);
+                connectionOpened = true;
+            }
+            for (Map.Entry<Class<?>, List<String>> entry : firestormSettings.getWarmUpDocuments().entrySet()) {
+                for (String documentID : entry.getValue()) {
+                    firestore.collection(entry.getKey().getSimpleName()).document(documentID).get(Source.SERVER);
+                    connectionOpened = true;
+                }
+            }
+            if (firestormSettings.isWarmUpConnection() && !connectionOpened) {
+                firestore.collection(WARM_UP_COLLECTION).document(WARM_UP_DOCUMENT).get(Source.SERVER);
+            }
+        });
+    }
+
+    /**
+     * Retrieves the backend storing documents.
+     * @return Returns a FirestormBackend.
+     */
+    public static FirestormBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Retrieves the settings Firestorm was initialized with.
+     * @return Returns FirestormSettings.
+     */
+    public static FirestormSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Retrieves the metrics sink receiving a record for every operation.
+     * @return Returns FirestormMetrics.
+     */
+    public static FirestormMetrics getMetrics() {
+        return settings.getMetrics();
+    }
 
-        /* Dummy request used for initialization:
-            The initial call to Firestore has high latency so it is preferable to make a dummy request
-            as soon as Firebase is initialized instead of waiting to make the first connection when an actual request is made.
-         */
-        firestore.getFirestoreSettings();
+    /**
+     * Retrieves the write outbox, which durably queues and compacts writes until they are applied to Firestore.
+     * @return Returns a FirestormOutbox.
+     * @throws FirestormException Thrown when no outbox file was configured in the settings.
+     */
+    public static FirestormOutbox getOutbox() throws FirestormException {
+        if (outbox == null) {
+            throw new FirestormException("The outbox is not enabled. Set an outbox file using FirestormSettings.Builder.setOutboxFile().");
+        }
+        return outbox;
+    }
+
+    /**
+     * Runs an operation using the configured retry policy.
+     *
+     * @param attempt The operation to run.
+     * @param <R> The type of the operation's result.
+     * @return Returns a Task which completes when the operation succeeds or cannot be retried any further.
+     */
+    static <R> Task<R> retry(final RetryPolicy.Attempt<R> attempt) {
+        return settings.getRetryPolicy().execute(attempt);
+    }
+
+    /**
+     * Runs an operation through the interceptor chain configured in the settings.
+     *
+     * @param context The context of the operation.
+     * @param operation The operation, run after the last interceptor.
+     * @param <R> The type of the operation's result.
+     * @return Returns the Task of the operation.
+     */
+    static <R> Task<R> intercept(final OperationContext context, final RetryPolicy.Attempt<R> operation) {
+        return intercept(context, operation, null);
+    }
+
+    /**
+     * Runs an operation through the interceptor chain configured in the settings, bounded by the deadline of its
+     * type if deadlines are configured.
+     *
+     * @param context The context of the operation.
+     * @param operation The operation, run after the last interceptor.
+     * @param fallback The read repeated against the local cache if the operation times out, or null.
+     * @param <R> The type of the operation's result.
+     * @return Returns the Task of the operation.
+     */
+    static <R> Task<R> intercept(final OperationContext context, final RetryPolicy.Attempt<R> operation, final Deadlines.Fallback<R> fallback) {
+        final Deadlines deadlines = settings.getDeadlines();
+        if (deadlines != null) {
+            context.setDeadlineMillis(deadlines.getDeadlineMillis(context.getType()));
+        }
+        final List<FirestormInterceptor> interceptors = settings.getInterceptors();
+        final Task<R> task = interceptors.isEmpty() ? context.run(operation) : new InterceptorChain<>(interceptors, 0, context, operation).proceed();
+        final PriorityScheduler scheduler = settings.getScheduler();
+        if (scheduler != null) {
+            scheduler.track(context.getPriority(), task);
+        }
+        return deadlines != null ? deadlines.bound(context, task, fallback) : task;
+    }
+
+    /**
+     * Creates the task completion source of a cancellable operation, whose task is cancelled with the token.
+     *
+     * @param token The cancellation token, or null.
+     * @param <R> The type of the operation's result.
+     * @return Returns a TaskCompletionSource.
+     */
+    static <R> TaskCompletionSource<R> completionSource(final CancellationToken token) {
+        return token != null ? new TaskCompletionSource<R>(token) : new TaskCompletionSource<R>();
+    }
+
+    /**
+     * Checks if a cancellable operation was cancelled, in which case its trace is completed.
+     *
+     * @param token The cancellation token, or null.
+     * @param trace The trace of the operation.
+     * @return Returns true if the operation was cancelled and must stop, false otherwise.
+     */
+    static boolean isCancelled(final CancellationToken token, final OperationTrace trace) {
+        if (token != null && token.isCancellationRequested()) {
+            trace.cancelled();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs a write to a document through the write rate limiter configured in the settings, if any.
+     *
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param write The write.
+     * @return Returns a Task which completes with the result of the write, or of the later write it was merged into.
+     */
+    static Task<Void> limit(final String collection, final String documentID, final RetryPolicy.Attempt<Void> write) {
+        final WriteRateLimiter limiter = settings.getWriteRateLimiter();
+        return limiter != null ? limiter.submit(collection + "/" + documentID, write) : write.run();
+    }
+
+    /**
+     * Dispatches a unit of work using the configured dispatcher, or posts it to a Handler of the calling thread
+     * if no dispatcher was configured. The work has the priority of the operation being started, if any.
+     *
+     * @param runnable The work to dispatch.
+     */
+    static void dispatch(final Runnable runnable) {
+        final OperationContext context = OperationContext.current();
+        dispatch(context != null ? context.getPriority() : Priority.NORMAL, runnable);
+    }
+
+    /**
+     * Dispatches a unit of work with a priority through the configured scheduler, or using the configured
+     * dispatcher, or posts it to a Handler of the calling thread if neither was configured.
+     *
+     * @param priority The priority of the work.
+     * @param runnable The work to dispatch.
+     */
+    static void dispatch(final Priority priority, final Runnable runnable) {
+        final PriorityScheduler scheduler = settings.getScheduler();
+        final Executor dispatcher = settings.getDispatcher();
+        if (scheduler != null) {
+            scheduler.execute(priority, runnable);
+        }
+        else if (dispatcher != null) {
+            dispatcher.execute(runnable);
+        }
+        else {
+            new Handler().post(runnable);
+        }
+    }
+
+    /**
+     * Dispatches a unit of work with a priority after a delay. The configured timer waits out the delay and then
+     * dispatches the work like {@link #dispatch(Priority, Runnable)}. If neither a scheduler nor a dispatcher was
+     * configured, the work is posted to the Handler of the main thread instead, where it would have been dispatched.
+     *
+     * @param priority The priority of the work.
+     * @param delayMillis The delay in milliseconds.
+     * @param runnable The work to dispatch.
+     * @return Returns a ScheduledFuture, which cancels the work if it is cancelled before the delay has passed.
+     */
+    static ScheduledFuture<?> dispatchDelayed(final Priority priority, final long delayMillis, final Runnable runnable) {
+        final boolean mainThread = settings.getScheduler() == null && settings.getDispatcher() == null;
+        return settings.getTimer().schedule(() -> {
+            if (mainThread) {
+                getMainHandler().post(runnable);
+            }
+            else {
+                dispatch(priority, runnable);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Retrieves the Handler of the main thread, which is only created once it is first needed, so that classes
+     * posting to it can be loaded off the device.
+     *
+     * @return Returns a Handler.
+     */
+    static Handler getMainHandler() {
+        return MainHandler.INSTANCE;
+    }
+
+    /**
+     * Runs a unit of work with a priority through the configured scheduler, or using the configured dispatcher, or
+     * at once on the calling thread if neither was configured.
+     *
+     * @param priority The priority of the work.
+     * @param runnable The work to run.
+     */
+    static void schedule(final Priority priority, final Runnable runnable) {
+        final PriorityScheduler scheduler = settings.getScheduler();
+        final Executor dispatcher = settings.getDispatcher();
+        if (scheduler != null) {
+            scheduler.execute(priority, runnable);
+        }
+        else if (dispatcher != null) {
+            dispatcher.execute(runnable);
+        }
+        else {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Starts an asynchronous unit of work with a priority through the configured scheduler, or at once on the
+     * calling thread if no scheduler was configured.
+     *
+     * @param priority The priority of the work.
+     * @param attempt The work.
+     * @param <R> The type of the work's result.
+     * @return Returns a Task which completes with the result of the work.
+     */
+    static <R> Task<R> admit(final Priority priority, final RetryPolicy.Attempt<R> attempt) {
+        final PriorityScheduler scheduler = settings.getScheduler();
+        if (scheduler == null) {
+            return attempt.run();
+        }
+        final TaskCompletionSource<R> source = new TaskCompletionSource<>();
+        scheduler.execute(priority, () -> {
+            try {
+                attempt.run().addOnCompleteListener(DIRECT, task -> {
+                    if (task.isSuccessful()) {
+                        source.setResult(task.getResult());
+                    }
+                    else {
+                        source.setException(task.getException() != null ? task.getException() : new FirestormException("The operation failed."));
+                    }
+                });
+            } catch (RuntimeException e) {
+                source.setException(e);
+            }
+        });
+        return source.getTask();
+    }
+
+    /**
+     * Blocks a long-running background operation between two of its steps while interactive operations are
+     * waiting or in flight, if a scheduler was configured.
+     *
+     * @param context The context of the operation.
+     * @throws InterruptedException Thrown when the thread is interrupted.
+     */
+    static void yieldToInteractive(final OperationContext context) throws InterruptedException {
+        final PriorityScheduler scheduler = settings.getScheduler();
+        if (scheduler != null) {
+            scheduler.yieldToInteractive(context);
+        }
     }
 
     /**
@@ -99,14 +480,42 @@ public final class Firestorm {
 
     /**
      * Retrieves the Firestore instance.
-     * @return Returns FirebaseFirestore.
+     * @return Returns FirebaseFirestore, or null if Firestorm was initialized with a backend other than Firestore.
      */
     public static FirebaseFirestore getFirestore() {
         return firestore;
     }
 
     /**
-     * Creates a Firestore document from an object.
+     * Retrieves the Firestore instance for operations which are only available with Firestore.
+     * @return Returns FirebaseFirestore.
+     * @throws FirestormException Thrown when Firestorm was initialized with a backend other than Firestore.
+     */
+    static FirebaseFirestore requireFirestore() throws FirestormException {
+        if (firestore == null) {
+            throw new FirestormException("This operation is only available when Firestorm is initialized with Firestore.");
+        }
+        return firestore;
+    }
+
+    /**
+     * Converts documents to objects.
+     * @param documents The documents.
+     * @param objectClass The class of the objects.
+     * @param <T> The type of the objects.
+     * @return Returns a list of objects.
+     */
+    static <T> List<T> toObjects(final List<BackendDocument> documents, final Class<T> objectClass) {
+        final ArrayList<T> objects = new ArrayList<>(documents.size());
+        for (BackendDocument document : documents) {
+            objects.add(document.toObject(objectClass));
+        }
+        return objects;
+    }
+
+    /**
+     * Creates a Firestore document from an object. When an outbox file is configured, the creation is queued in
+     * the outbox and the returned task completes once it has been applied.
      *
      * @param object An object containing the data to be written in Firestore.
      * @return Returns the document ID of the created document.
@@ -115,26 +524,39 @@ public final class Firestorm {
     public static Task<String> create(final Object object) throws FirestormException {
         try {
             checkRegistration(object);
-            final DocumentReference reference = firestore.collection(object.getClass().getSimpleName()).document();
-            Reflector.setIDField(object, reference.getId());
+            final String collection = object.getClass().getSimpleName();
+            final String documentID = backend.newDocumentID(collection);
+            Reflector.setIDField(object, documentID);
+            GeohashFields.apply(object);
 
-            TaskCompletionSource<String> source = new TaskCompletionSource<>();
-            new Handler().post(() -> {
-                reference.set(object).addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        source.setResult(reference.getId());
-                    }
-                    else {
-                        if (task.getException() != null) {
-                            source.setException(task.getException());
+            return intercept(new OperationContext(OperationType.CREATE, object.getClass(), documentID), () -> {
+                final OperationTrace trace = new OperationTrace(OperationType.CREATE, object.getClass());
+                TaskCompletionSource<String> source = new TaskCompletionSource<>();
+                dispatch(() -> {
+                    trace.dispatched();
+                    final FirestormOutbox currentOutbox = outbox;
+                    final Task<Void> write = currentOutbox != null
+                            ? currentOutbox.submit(Collections.singletonList(new FirestormOutbox.Write(object.getClass(), documentID, object)))
+                            : retry(() -> backend.set(collection, documentID, object));
+                    write.addOnCompleteListener(task -> {
+                        trace.received();
+                        if (task.isSuccessful()) {
+                            trace.succeeded(1, trace.isEstimatingPayload() ? OperationTrace.estimateObject(object) : 0);
+                            source.setResult(documentID);
                         }
                         else {
-                            source.setException(new FirestormObjectException("Could not write object with ID '" + reference.getId() + "'."));
+                            trace.failed(task.getException());
+                            if (task.getException() != null) {
+                                source.setException(task.getException());
+                            }
+                            else {
+                                source.setException(new FirestormObjectException("Could not write object with ID '" + documentID + "'."));
+                            }
                         }
-                    }
+                    });
                 });
+                return source.getTask();
             });
-            return source.getTask();
 
         } catch (ClassRegistrationException | NoSuchFieldException | IllegalAccessException | NotInitializedException e) {
             throw new FirestormException(e);
@@ -142,7 +564,8 @@ public final class Firestorm {
     }
 
     /**
-     * Creates a Firestore document from an object with a specific ID.
+     * Creates a Firestore document from an object with a specific ID. When an outbox file is configured, the
+     * creation is queued in the outbox and the returned task completes once it has been applied.
      *
      * @param object An object containing the data to be written in Firestore.
      * @param id     The ID of the object to create.
@@ -151,26 +574,39 @@ public final class Firestorm {
     public static Task<String> create(final Object object, final String id) {
         try {
             checkRegistration(object);
-            final DocumentReference reference = firestore.collection(object.getClass().getSimpleName()).document(id);
-            Reflector.setIDField(object, reference.getId());
+            final String collection = object.getClass().getSimpleName();
+            final String documentID = id;
+            Reflector.setIDField(object, documentID);
+            GeohashFields.apply(object);
 
-            TaskCompletionSource<String> source = new TaskCompletionSource<>();
-            new Handler().post(() -> {
-                reference.set(object).addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        source.setResult(reference.getId());
-                    }
-                    else {
-                        if (task.getException() != null) {
-                            source.setException(task.getException());
+            return intercept(new OperationContext(OperationType.CREATE, object.getClass(), documentID), () -> {
+                final OperationTrace trace = new OperationTrace(OperationType.CREATE, object.getClass());
+                TaskCompletionSource<String> source = new TaskCompletionSource<>();
+                dispatch(() -> {
+                    trace.dispatched();
+                    final FirestormOutbox currentOutbox = outbox;
+                    final Task<Void> write = currentOutbox != null
+                            ? currentOutbox.submit(Collections.singletonList(new FirestormOutbox.Write(object.getClass(), documentID, object)))
+                            : limit(collection, documentID, () -> retry(() -> backend.set(collection, documentID, object)));
+                    write.addOnCompleteListener(task -> {
+                        trace.received();
+                        if (task.isSuccessful()) {
+                            trace.succeeded(1, trace.isEstimatingPayload() ? OperationTrace.estimateObject(object) : 0);
+                            source.setResult(documentID);
                         }
                         else {
-                            source.setException(new FirestormObjectException("Could not write object with ID '" + id + "'."));
+                            trace.failed(task.getException());
+                            if (task.getException() != null) {
+                                source.setException(task.getException());
+                            }
+                            else {
+                                source.setException(new FirestormObjectException("Could not write object with ID '" + id + "'."));
+                            }
                         }
-                    }
+                    });
                 });
+                return source.getTask();
             });
-            return source.getTask();
 
         } catch (ClassRegistrationException | NoSuchFieldException | IllegalAccessException | NotInitializedException e) {
             throw new FirestormException(e);
@@ -186,22 +622,65 @@ public final class Firestorm {
      * @return Returns an object of type T (objectClass).
      */
     public static <T> Task<T> get(final Class<T> objectClass, final String documentID) {
-        DocumentReference docRef = firestore.collection(objectClass.getSimpleName()).document(documentID);
-        TaskCompletionSource<T> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            docRef.get().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    T object = task.getResult().toObject(objectClass);
-                    if (object == null) {
-                        source.setException(new FirestormObjectException("Object with ID '" + documentID + "' not found."));
+        return get(objectClass, documentID, null);
+    }
+
+    /**
+     * Retrieves a document as an object from Firestore. Once the token is cancelled, the returned task is cancelled
+     * and the document is neither converted to an object nor delivered.
+     *
+     * @param objectClass The class of the object retrieved.
+     * @param documentID  The documentID of the object to retrieve.
+     * @param token       The cancellation token, or null.
+     * @param <T>         A type matching the type of objectClass.
+     * @return Returns an object of type T (objectClass).
+     */
+    public static <T> Task<T> get(final Class<T> objectClass, final String documentID, final CancellationToken token) {
+        final String collection = objectClass.getSimpleName();
+        return intercept(new OperationContext(OperationType.GET, objectClass, documentID), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.GET, objectClass);
+            TaskCompletionSource<T> source = completionSource(token);
+            dispatch(() -> {
+                if (isCancelled(token, trace)) {
+                    return;
+                }
+                trace.dispatched();
+                retry(() -> backend.get(collection, documentID)).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (isCancelled(token, trace)) {
+                        return;
+                    }
+                    if (task.isSuccessful()) {
+                        T object = task.getResult().toObject(objectClass);
+                        if (object == null) {
+                            final FirestormObjectException exception = new FirestormObjectException("Object with ID '" + documentID + "' not found.");
+                            trace.failed(exception);
+                            source.trySetException(exception);
+                        }
+                        else {
+                            trace.succeeded(1, trace.isEstimatingPayload() ? OperationTrace.estimate(task.getResult()) : 0);
+                            source.trySetResult(object);
+                        }
                     }
                     else {
-                        source.setResult(object);
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.trySetException(task.getException());
+                        }
+                        else {
+                            source.trySetException(new FirestormObjectException("Could not retrieve object with ID '" + documentID + "'."));
+                        }
                     }
-                }
+                });
             });
-        });
-        return source.getTask();
+            return source.getTask();
+        }, cache -> cache.get(collection, documentID).continueWith(DIRECT, task -> {
+            final T object = task.getResult().toObject(objectClass);
+            if (object == null) {
+                throw new FirestormObjectException("Object with ID '" + documentID + "' not found.");
+            }
+            return object;
+        }));
     }
 
     /**
@@ -213,28 +692,53 @@ public final class Firestorm {
      * @return Returns a list of type T.
      */
     public static <T> Task<List<T>> getMany(final Class<T> objectClass, List<String> ids) {
-        TaskCompletionSource<List<T>> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            firestore
-                    .collection(objectClass.getSimpleName())
-                    .whereIn("id", ids)
-                    .get().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    List<T> objects = task.getResult().toObjects(objectClass);
-                    source.setResult(objects);
+        return getMany(objectClass, ids, null);
+    }
+
+    /**
+     * Retrieves multiple documents of a class as a list of objects. Once the token is cancelled, the returned task is
+     * cancelled and the documents are neither converted to objects nor delivered.
+     *
+     * @param objectClass The class of the objects.
+     * @param ids         A list of IDs of the objects to retrieve.
+     * @param token       The cancellation token, or null.
+     * @param <T>         A type matching the type of object class.
+     * @return Returns a list of type T.
+     */
+    public static <T> Task<List<T>> getMany(final Class<T> objectClass, final List<String> ids, final CancellationToken token) {
+        return intercept(new OperationContext(OperationType.GET_MANY, objectClass, ids), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.GET_MANY, objectClass);
+            TaskCompletionSource<List<T>> source = completionSource(token);
+            dispatch(() -> {
+                if (isCancelled(token, trace)) {
+                    return;
                 }
-                else {
-                    if (task.getException() != null) {
-                        source.setException(task.getException());
+                trace.dispatched();
+                backend.query(new BackendQuery(objectClass.getSimpleName()).where("id", BackendQuery.Operator.IN, ids)).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (isCancelled(token, trace)) {
+                        return;
+                    }
+                    if (task.isSuccessful()) {
+                        List<T> objects = toObjects(task.getResult(), objectClass);
+                        trace.succeeded(objects.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(task.getResult()) : 0);
+                        source.trySetResult(objects);
                     }
                     else {
-                        source.setException(new FirestormException("Failed to retrieve items."));
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.trySetException(task.getException());
+                        }
+                        else {
+                            source.trySetException(new FirestormException("Failed to retrieve items."));
+                        }
                     }
-                }
+                });
             });
-        });
 
-        return source.getTask();
+            return source.getTask();
+        }, cache -> cache.query(new BackendQuery(objectClass.getSimpleName()).where("id", BackendQuery.Operator.IN, ids))
+                .continueWith(DIRECT, task -> toObjects(task.getResult(), objectClass)));
     }
 
     /**
@@ -258,29 +762,37 @@ public final class Firestorm {
      * @throws FirestormException Thrown when Firestorm encounters an error.
      */
     public static Task<Boolean> exists(final Class<?> objectClass, final String documentID) throws FirestormException {
-        DocumentReference docRef = firestore.collection(objectClass.getSimpleName()).document(documentID);
-        TaskCompletionSource<Boolean> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            docRef.get().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    boolean exists = task.getResult().exists();
-                    source.setResult(exists);
-                }
-                else {
-                    if (task.getException() != null) {
-                        source.setException(task.getException());
+        final String collection = objectClass.getSimpleName();
+        return intercept(new OperationContext(OperationType.EXISTS, objectClass, documentID), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.EXISTS, objectClass);
+            TaskCompletionSource<Boolean> source = new TaskCompletionSource<>();
+            dispatch(() -> {
+                trace.dispatched();
+                retry(() -> backend.get(collection, documentID)).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (task.isSuccessful()) {
+                        boolean exists = task.getResult().exists();
+                        trace.succeeded(exists ? 1 : 0, trace.isEstimatingPayload() ? OperationTrace.estimate(task.getResult()) : 0);
+                        source.setResult(exists);
                     }
                     else {
-                        source.setException(new FirestormObjectException("Could not check object with ID '" + documentID + "'."));
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.setException(task.getException());
+                        }
+                        else {
+                            source.setException(new FirestormObjectException("Could not check object with ID '" + documentID + "'."));
+                        }
                     }
-                }
+                });
             });
+            return source.getTask();
         });
-        return source.getTask();
     }
 
     /**
-     * Updates a document in Firestore.
+     * Updates a document in Firestore. When an outbox file is configured, the update is queued in the outbox and
+     * the returned task completes once it has been applied.
      *
      * @param object An object which provides data and the document ID for the update.
      * @throws FirestormException Thrown when Firestorm encounters an error.
@@ -288,43 +800,81 @@ public final class Firestorm {
     public static Task<String> update(final Object object) throws FirestormException {
         try {
             checkRegistration(object);
+            final String collection = object.getClass().getSimpleName();
             final String documentID = Reflector.getIDField(object);
-            final DocumentReference reference = firestore.collection(object.getClass().getSimpleName()).document(documentID);
-            TaskCompletionSource<String> source = new TaskCompletionSource<>();
-            new Handler().post(() -> {
-                reference.set(object).addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        source.setResult(reference.getId());
-                    }
-                    else {
-                        if (task.getException() != null) {
-                            source.setException(task.getException());
+            GeohashFields.apply(object);
+            return intercept(new OperationContext(OperationType.UPDATE, object.getClass(), documentID), () -> {
+                final OperationTrace trace = new OperationTrace(OperationType.UPDATE, object.getClass());
+                TaskCompletionSource<String> source = new TaskCompletionSource<>();
+                dispatch(() -> {
+                    trace.dispatched();
+                    final FirestormOutbox currentOutbox = outbox;
+                    final Task<Void> write = currentOutbox != null
+                            ? currentOutbox.submit(Collections.singletonList(new FirestormOutbox.Write(object.getClass(), documentID, object)))
+                            : limit(collection, documentID, () -> retry(() -> backend.set(collection, documentID, object)));
+                    write.addOnCompleteListener(task -> {
+                        trace.received();
+                        if (task.isSuccessful()) {
+                            trace.succeeded(1, trace.isEstimatingPayload() ? OperationTrace.estimateObject(object) : 0);
+                            source.setResult(documentID);
                         }
                         else {
-                            source.setException(new FirestormObjectException("Could not update object with ID '" + reference.getId() + "'."));
+                            trace.failed(task.getException());
+                            if (task.getException() != null) {
+                                source.setException(task.getException());
+                            }
+                            else {
+                                source.setException(new FirestormObjectException("Could not update object with ID '" + documentID + "'."));
+                            }
                         }
-                    }
+                    });
                 });
+                return source.getTask();
             });
-            return source.getTask();
         } catch (ClassRegistrationException | NoSuchFieldException | IllegalAccessException | NotInitializedException e) {
             throw new FirestormException(e);
         }
     }
 
     /**
-     * Deletes an object from Firestore.
+     * Deletes an object from Firestore. When an outbox file is configured, the deletion is queued in the outbox and
+     * the returned task completes once it has been applied.
      *
      * @param objectClass The class of the object to delete.
      * @param objectID    The ID of the object/document in Firestore.
      * @param <T>         The type (class) of the object.
      */
     public static <T> Task<Void> delete(final Class<T> objectClass, final String objectID) {
-        final DocumentReference reference = firestore.collection(objectClass.getSimpleName()).document(objectID);
+        final String collection = objectClass.getSimpleName();
         try {
-            TaskCompletionSource<Void> source = new TaskCompletionSource<>();
-            new Handler().post(reference::delete);
-            return source.getTask();
+            return intercept(new OperationContext(OperationType.DELETE, objectClass, objectID), () -> {
+                final OperationTrace trace = new OperationTrace(OperationType.DELETE, objectClass);
+                TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+                dispatch(() -> {
+                    trace.dispatched();
+                    final FirestormOutbox currentOutbox = outbox;
+                    final Task<Void> write = currentOutbox != null
+                            ? currentOutbox.submit(Collections.singletonList(new FirestormOutbox.Write(objectClass, objectID, null)))
+                            : limit(collection, objectID, () -> backend.delete(collection, objectID));
+                    write.addOnCompleteListener(task -> {
+                        trace.received();
+                        if (task.isSuccessful()) {
+                            trace.succeeded(1, 0);
+                            source.setResult(null);
+                        }
+                        else {
+                            trace.failed(task.getException());
+                            if (task.getException() != null) {
+                                source.setException(task.getException());
+                            }
+                            else {
+                                source.setException(new FirestormObjectException("Could not delete object with ID '" + objectID + "'."));
+                            }
+                        }
+                    });
+                });
+                return source.getTask();
+            });
         } catch (NotInitializedException e) {
             throw new FirestormException(e);
         }
@@ -339,27 +889,52 @@ public final class Firestorm {
      * @return Returns an ArrayList of objects of type objectClass.
      */
     public static <T> Task<List<T>> list(final Class<T> objectClass, final int limit) {
-        TaskCompletionSource<List<T>> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            firestore
-                    .collection(objectClass.getSimpleName())
-                    .limit(limit)
-                    .get().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    List<T> objects = task.getResult().toObjects(objectClass);
-                    source.setResult(objects);
+        return list(objectClass, limit, null);
+    }
+
+    /**
+     * Lists available documents of a given type. Once the token is cancelled, the returned task is cancelled and the
+     * documents are neither converted to objects nor delivered.
+     *
+     * @param objectClass The type of the documents to filter.
+     * @param limit       The maximum number of objects to return.
+     * @param token       The cancellation token, or null.
+     * @param <T>         A type matching the type of objectClass.
+     * @return Returns an ArrayList of objects of type objectClass.
+     */
+    public static <T> Task<List<T>> list(final Class<T> objectClass, final int limit, final CancellationToken token) {
+        return intercept(new OperationContext(OperationType.LIST, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.LIST, objectClass);
+            TaskCompletionSource<List<T>> source = completionSource(token);
+            dispatch(() -> {
+                if (isCancelled(token, trace)) {
+                    return;
                 }
-                else {
-                    if (task.getException() != null) {
-                        source.setException(task.getException());
+                trace.dispatched();
+                backend.query(new BackendQuery(objectClass.getSimpleName()).limit(limit)).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (isCancelled(token, trace)) {
+                        return;
+                    }
+                    if (task.isSuccessful()) {
+                        List<T> objects = toObjects(task.getResult(), objectClass);
+                        trace.succeeded(objects.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(task.getResult()) : 0);
+                        source.trySetResult(objects);
                     }
                     else {
-                        source.setException(new FirestormException("Failed to retrieve items."));
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.trySetException(task.getException());
+                        }
+                        else {
+                            source.trySetException(new FirestormException("Failed to retrieve items."));
+                        }
                     }
-                }
+                });
             });
-        });
-        return source.getTask();
+            return source.getTask();
+        }, cache -> cache.query(new BackendQuery(objectClass.getSimpleName()).limit(limit))
+                .continueWith(DIRECT, task -> toObjects(task.getResult(), objectClass)));
     }
 
     /**
@@ -370,26 +945,51 @@ public final class Firestorm {
      * @return Returns an ArrayList of objects of type objectClass.
      */
     public static <T> Task<List<T>> listAll(final Class<T> objectClass) {
-        TaskCompletionSource<List<T>> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            firestore
-                    .collection(objectClass.getSimpleName())
-                    .get().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    List<T> objects = task.getResult().toObjects(objectClass);
-                    source.setResult(objects);
+        return listAll(objectClass, null);
+    }
+
+    /**
+     * Lists ALL available documents of a given type. Once the token is cancelled, the returned task is cancelled and
+     * the documents are neither converted to objects nor delivered.
+     *
+     * @param objectClass The type of the documents to filter.
+     * @param token       The cancellation token, or null.
+     * @param <T>         A type matching the type of objectClass.
+     * @return Returns an ArrayList of objects of type objectClass.
+     */
+    public static <T> Task<List<T>> listAll(final Class<T> objectClass, final CancellationToken token) {
+        return intercept(new OperationContext(OperationType.LIST, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.LIST, objectClass);
+            TaskCompletionSource<List<T>> source = completionSource(token);
+            dispatch(() -> {
+                if (isCancelled(token, trace)) {
+                    return;
                 }
-                else {
-                    if (task.getException() != null) {
-                        source.setException(task.getException());
+                trace.dispatched();
+                backend.query(new BackendQuery(objectClass.getSimpleName())).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (isCancelled(token, trace)) {
+                        return;
+                    }
+                    if (task.isSuccessful()) {
+                        List<T> objects = toObjects(task.getResult(), objectClass);
+                        trace.succeeded(objects.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(task.getResult()) : 0);
+                        source.trySetResult(objects);
                     }
                     else {
-                        source.setException(new FirestormException("Failed to retrieve items."));
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.trySetException(task.getException());
+                        }
+                        else {
+                            source.trySetException(new FirestormException("Failed to retrieve items."));
+                        }
                     }
-                }
+                });
             });
-        });
-        return source.getTask();
+            return source.getTask();
+        }, cache -> cache.query(new BackendQuery(objectClass.getSimpleName()))
+                .continueWith(DIRECT, task -> toObjects(task.getResult(), objectClass)));
     }
 
     /**
@@ -400,7 +1000,117 @@ public final class Firestorm {
      * @return Returns a FirestormFilterable which can be used to append filter parameters.
      */
     public static <T> FirestormFilterable<T> filter(final Class<T> objectClass) {
-        return new FirestormFilterable<>(firestore.collection(objectClass.getSimpleName()), objectClass);
+        return new FirestormFilterable<>(new BackendQuery(objectClass.getSimpleName()), objectClass);
+    }
+
+    /**
+     * Lists the documents which match a predicate. Predicates may combine disjunctions, range filters on several
+     * fields and IN lists of any length, which are decomposed into several queries by the {@link QueryPlanner}.
+     *
+     * @param objectClass The type of the documents to filter.
+     * @param predicate The predicate the documents must match.
+     * @param <T>         A type matching the type of objectClass.
+     * @return Returns a PlannedFilterable which can be used to order and limit the results.
+     */
+    public static <T> PlannedFilterable<T> filter(final Class<T> objectClass, final Predicate predicate) {
+        return new PlannedFilterable<>(predicate, objectClass);
+    }
+
+    /**
+     * Lists the objects within a distance of a point, nearest first. The objects are located by their only
+     * {@link com.raylabz.firestorm.android.annotation.GeohashField}.
+     *
+     * @param objectClass The type of the objects.
+     * @param latitude The latitude of the point, in degrees.
+     * @param longitude The longitude of the point, in degrees.
+     * @param radius The distance from the point, in metres.
+     * @param <T> A type matching the type of objectClass.
+     * @return Returns a Task with the objects, in ascending order of distance.
+     * @throws FirestormException Thrown when the class is not registered or does not have exactly one geohash field.
+     */
+    public static <T> Task<List<T>> near(final Class<T> objectClass, final double latitude, final double longitude, final double radius) throws FirestormException {
+        return near(objectClass, null, latitude, longitude, radius);
+    }
+
+    /**
+     * Lists the objects within a distance of a point, nearest first.
+     * The circle is covered by a few ranges of geohashes, which are queried in parallel; the objects in the ranges
+     * but outside the circle are filtered out.
+     *
+     * @param objectClass The type of the objects.
+     * @param geohashField The {@link com.raylabz.firestorm.android.annotation.GeohashField} locating the objects.
+     * @param latitude The latitude of the point, in degrees.
+     * @param longitude The longitude of the point, in degrees.
+     * @param radius The distance from the point, in metres.
+     * @param <T> A type matching the type of objectClass.
+     * @return Returns a Task with the objects, in ascending order of distance.
+     * @throws FirestormException Thrown when the class is not registered or has no such geohash field.
+     */
+    public static <T> Task<List<T>> near(final Class<T> objectClass, final String geohashField, final double latitude,
+                                         final double longitude, final double radius) throws FirestormException {
+        final GeohashFields geohashFields;
+        final int field;
+        final List<Geohash.Range> ranges;
+        try {
+            checkRegistration(objectClass);
+            geohashFields = GeohashFields.of(objectClass);
+            field = geohashFields.indexOf(geohashField);
+            ranges = Geohash.cover(latitude, longitude, radius, geohashFields.getPrecision(field), GeohashFields.MAX_QUERIES);
+        } catch (ClassRegistrationException | FirestormObjectException | IllegalArgumentException e) {
+            throw new FirestormException(e);
+        }
+        return intercept(new OperationContext(OperationType.FETCH, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.FETCH, objectClass);
+            TaskCompletionSource<List<T>> source = new TaskCompletionSource<>();
+            dispatch(() -> {
+                trace.dispatched();
+                final ArrayList<Task<List<BackendDocument>>> tasks = new ArrayList<>(ranges.size());
+                for (Geohash.Range range : ranges) {
+                    final BackendQuery query = new BackendQuery(objectClass.getSimpleName())
+                            .where(geohashFields.getName(field), BackendQuery.Operator.GREATER_THAN_OR_EQUAL, range.getStart())
+                            .where(geohashFields.getName(field), BackendQuery.Operator.LESS_THAN, range.getEnd());
+                    tasks.add(retry(() -> backend.query(query)));
+                }
+                Tasks.whenAll(tasks).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (task.isSuccessful()) {
+                        final LinkedHashMap<String, BackendDocument> documents = new LinkedHashMap<>();
+                        for (Task<List<BackendDocument>> rangeTask : tasks) {
+                            for (BackendDocument document : rangeTask.getResult()) {
+                                documents.put(document.getId(), document);
+                            }
+                        }
+                        final List<BackendDocument> read = new ArrayList<>(documents.values());
+                        final List<T> objects = toObjects(read, objectClass);
+                        final double[] distances = new double[objects.size()];
+                        final ArrayList<Integer> nearest = new ArrayList<>();
+                        for (int i = 0; i < objects.size(); i++) {
+                            distances[i] = geohashFields.distance(objects.get(i), field, latitude, longitude);
+                            if (distances[i] <= radius) {
+                                nearest.add(i);
+                            }
+                        }
+                        Collections.sort(nearest, (a, b) -> Double.compare(distances[a], distances[b]));
+                        final ArrayList<T> matches = new ArrayList<>(nearest.size());
+                        for (int i : nearest) {
+                            matches.add(objects.get(i));
+                        }
+                        trace.succeeded(read.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(read) : 0);
+                        source.setResult(matches);
+                    }
+                    else {
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.setException(task.getException());
+                        }
+                        else {
+                            source.setException(new FirestormException("Failed to retrieve items."));
+                        }
+                    }
+                });
+            });
+            return source.getTask();
+        });
     }
 
     /**
@@ -412,7 +1122,7 @@ public final class Firestorm {
      * @return Returns DocumentReference.
      */
     public static <T> DocumentReference getObjectReference(final Class<T> objectClass, final String documentID) {
-        return firestore.collection(objectClass.getSimpleName()).document(documentID);
+        return requireFirestore().collection(objectClass.getSimpleName()).document(documentID);
     }
 
     /**
@@ -427,7 +1137,7 @@ public final class Firestorm {
         try {
             checkRegistration(object);
             final String documentID = Reflector.getIDField(object);
-            return firestore.collection(object.getClass().getSimpleName()).document(documentID);
+            return requireFirestore().collection(object.getClass().getSimpleName()).document(documentID);
         } catch (IllegalAccessException | NoSuchFieldException | ClassRegistrationException | NotInitializedException e) {
             throw new FirestormException(e);
         }
@@ -441,51 +1151,12 @@ public final class Firestorm {
      * @return Returns a CollectionReference.
      */
     public static <T> CollectionReference getCollectionReference(final Class<T> objectClass) {
-        return firestore.collection(objectClass.getSimpleName());
-    }
-
-    /**
-     * Utility method. Registers a listener in the registeredListeners map.
-     * @param object The object being listened to.
-     * @param listenerRegistration The listener of the object.
-     */
-    private static void registerObjectListener(final Object object, final ListenerRegistration listenerRegistration) {
-        registeredObjectListeners.put(object, listenerRegistration);
+        return requireFirestore().collection(objectClass.getSimpleName());
     }
 
     /**
-     * Unregisters a listener from the registeredListeners map for an object provided.
-     * @param object The object being listened to.
-     */
-    private static void unregisterObjectListener(final Object object) {
-        final ListenerRegistration listenerRegistration = registeredObjectListeners.get(object);
-        if (listenerRegistration != null) {
-            listenerRegistration.remove();
-            registeredObjectListeners.remove(object);
-        }
-    }
-
-    /**
-     * Utility method. Registers a class listener in the registeredListeners map.
-     * @param objectClass The class being listened to.
-     * @param listenerRegistration The listener of the class.
-     */
-    private static void registerClassListener(final Class<?> objectClass, final ListenerRegistration listenerRegistration) {
-        registeredClassListeners.put(objectClass, listenerRegistration);
-    }
-
-    /**
-     * Unregisters a listener for a class provided.
-     * @param objectClass The class being listened to.
-     */
-    private static void unregisterClassListener(final Class<?> objectClass) {
-        final ListenerRegistration listenerRegistration = registeredClassListeners.get(objectClass);
-        listenerRegistration.remove();
-        registeredClassListeners.remove(objectClass);
-    }
-
-    /**
-     * Utility method. Attaches an event listener which listens for updates to an object.
+     * Utility method. Attaches an event listener which listens for updates to an object. The object is referenced
+     * weakly: once it is garbage collected, the listener is detached.
      *
      * @param eventListener An implementation of a FirestormEventListener.
      * @return Returns a ListenerRegistration.
@@ -493,11 +1164,12 @@ public final class Firestorm {
      */
     public static ListenerRegistration attachListener(final ObjectListener eventListener) throws FirestormException {
         try {
-            checkRegistration(eventListener.getObjectToListenFor());
-            final String documentID = Reflector.getIDField(eventListener.getObjectToListenFor());
-            final ListenerRegistration listenerRegistration = firestore.collection(eventListener.getObjectToListenFor().getClass().getSimpleName()).document(documentID).addSnapshotListener(eventListener);
-            registerObjectListener(eventListener.getObjectToListenFor(), listenerRegistration);
-            return listenerRegistration;
+            final Object object = eventListener.getObjectToListenFor();
+            checkRegistration(object);
+            final String collection = object.getClass().getSimpleName();
+            final String documentID = Reflector.getIDField(object);
+            return listeners.attachObject(object, listener -> backend.addDocumentListener(collection, documentID, listener),
+                    eventListener::onDocument, eventListener::onFailure);
         } catch (NoSuchFieldException | IllegalAccessException | ClassRegistrationException | NotInitializedException e) {
             throw new FirestormException(e);
         }
@@ -510,7 +1182,8 @@ public final class Firestorm {
      * @return Returns a ListenerRegistration.
      */
     public static ListenerRegistration attachListener(final ReferenceListener eventListener) {
-        return firestore.collection(eventListener.getObjectClass().getSimpleName()).document(eventListener.getDocumentID()).addSnapshotListener(eventListener);
+        return listeners.attach(listener -> backend.addDocumentListener(eventListener.getObjectClass().getSimpleName(), eventListener.getDocumentID(), listener),
+                eventListener::onDocument, eventListener::onFailure);
     }
 
     /**
@@ -522,11 +1195,8 @@ public final class Firestorm {
     public static <T> ListenerRegistration attachListener(final ClassListener<T> eventListener) throws FirestormException {
         try {
             checkRegistration(eventListener.getObjectClass());
-            ListenerRegistration listenerRegistration = firestore.
-                    collection(eventListener.getObjectClass().getSimpleName())
-                    .addSnapshotListener(eventListener);
-            registerClassListener(eventListener.getObjectClass(), listenerRegistration);
-            return listenerRegistration;
+            return listeners.attachClass(eventListener.getObjectClass(), listener -> backend.addQueryListener(new BackendQuery(eventListener.getObjectClass().getSimpleName()), listener),
+                    eventListener::onChanges, eventListener::onFailure);
         } catch (ClassRegistrationException | NotInitializedException e) {
             throw new FirestormException(e);
         }
@@ -541,31 +1211,26 @@ public final class Firestorm {
     public static <T> ListenerRegistration attachListener(final FilterableListener<T> eventListener) throws FirestormException {
         try {
             checkRegistration(eventListener.getFilterable().objectClass);
-            return eventListener.getFilterable()
-                    .addSnapshotListener(eventListener);
+            return listeners.attach(eventListener.getFilterable()::addListener, eventListener::onChanges, eventListener::onFailure);
         } catch (ClassRegistrationException | NotInitializedException e) {
             throw new FirestormException(e);
         }
     }
 
     /**
-     * Detaches a listener for a specific class.
+     * Detaches the listeners attached to a specific class.
      * @param objectClass The class.
      */
     public static void detachListener(Class<?> objectClass) {
-        final ListenerRegistration listenerRegistration = registeredClassListeners.get(objectClass);
-        listenerRegistration.remove();
-        unregisterClassListener(objectClass);
+        listeners.detachClass(objectClass);
     }
 
     /**
-     * Unregisters a listener from an object.
+     * Detaches the listeners attached to an object.
      * @param object The object being listened to.
      */
     public static void detachListener(Object object) {
-        final ListenerRegistration listenerRegistration = registeredObjectListeners.get(object);
-        listenerRegistration.remove();
-        unregisterObjectListener(listenerRegistration);
+        listeners.detachObject(object);
     }
 
     /**
@@ -583,46 +1248,78 @@ public final class Firestorm {
      * @return Returns true if the object has a registered listener, false otherwise.
      */
     public static boolean hasListener(Object object) {
-        return registeredObjectListeners.get(object) != null;
+        return listeners.get(object) != null;
     }
 
     /**
-     * Retrieves a ListenerRegistration attached to the provided object, or null if no listener is attached.
+     * Retrieves the latest ListenerRegistration attached to the provided object, or null if no listener is attached.
      * @param object The object.
      * @return Returns a ListenerRegistration.
      */
     public static ListenerRegistration getListener(Object object) {
-        return registeredObjectListeners.get(object);
+        return listeners.get(object);
+    }
+
+    /**
+     * Retrieves the number of listeners attached through Firestorm which have not been detached.
+     * @return Returns an int.
+     */
+    public static int getActiveListenerCount() {
+        return listeners.size();
     }
 
     /**
-     * Runs a transaction operation.
+     * Runs a transaction operation, retrying it using the transaction retry policy of the settings.
      *
      * @param transaction The transaction to run.
      */
     public static <T> Task<T> runTransaction(final FirestormTransaction<T> transaction) {
-        TaskCompletionSource<T> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            Firestorm.firestore.runTransaction(transaction).addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    T result = task.getResult();
-                    source.setResult(result);
-                }
-                else {
-                    if (task.getException() != null) {
-                        source.setException(task.getException());
+        return runTransaction(transaction, settings.getTransactionRetryPolicy());
+    }
+
+    /**
+     * Runs a transaction operation. Each attempt of the retry policy runs the transaction through Firestore, which
+     * may itself retry it upon contention. All attempts are recorded in the transaction's attempts.
+     *
+     * @param transaction The transaction to run.
+     * @param retryPolicy The policy used to retry the transaction when it fails with a transient error.
+     */
+    public static <T> Task<T> runTransaction(final FirestormTransaction<T> transaction, final RetryPolicy retryPolicy) {
+        final OperationContext context = new OperationContext(OperationType.TRANSACTION, null);
+        transaction.setContext(context);
+        return intercept(context, () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.TRANSACTION, null);
+            TaskCompletionSource<T> source = new TaskCompletionSource<>();
+            dispatch(() -> {
+                trace.dispatched();
+                retryPolicy.execute(() -> backend.runTransaction(transaction).continueWithTask(task -> {
+                    transaction.completeAttempt(task.isSuccessful() ? null : task.getException());
+                    return task;
+                }), context).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (task.isSuccessful()) {
+                        T result = task.getResult();
+                        trace.succeeded(transaction.getDocumentCount(), 0);
+                        source.setResult(result);
                     }
                     else {
-                        source.setException(new FirestormException("Failed to run transaction."));
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.setException(task.getException());
+                        }
+                        else {
+                            source.setException(new FirestormException("Failed to run transaction."));
+                        }
                     }
-                }
+                });
             });
+            return source.getTask();
         });
-        return source.getTask();
     }
 
     /**
-     * Runs a batch write operation.
+     * Runs a batch write operation. When an outbox file is configured, the writes of the batch are queued in the
+     * outbox and the returned task completes once they have been applied.
      *
      * @param batch The batch to run.
      */
@@ -630,4 +1327,84 @@ public final class Firestorm {
         return batch.doBatch();
     }
 
+    /**
+     * Exports all documents of a class to a stream as NDJSON (one JSON object per line), reading them in pages.
+     * Runs in the background in constant memory.
+     *
+     * @param objectClass The class of the objects to export.
+     * @param outputStream The stream to write to. It is flushed but not closed.
+     * @param <T> The type of the objects.
+     * @return Returns a Task with the number of documents exported.
+     * @throws FirestormException Thrown when the class is not registered.
+     */
+    public static <T> Task<Long> export(final Class<T> objectClass, final OutputStream outputStream) throws FirestormException {
+        return export(objectClass, outputStream, TransferOptions.DEFAULT);
+    }
+
+    /**
+     * Exports all documents of a class to a stream as NDJSON (one JSON object per line), reading them in pages.
+     * Runs in the background in constant memory.
+     *
+     * @param objectClass The class of the objects to export.
+     * @param outputStream The stream to write to. It is flushed but not closed.
+     * @param options The transfer options.
+     * @param <T> The type of the objects.
+     * @return Returns a Task with the number of documents exported.
+     * @throws FirestormException Thrown when the class is not registered.
+     */
+    public static <T> Task<Long> export(final Class<T> objectClass, final OutputStream outputStream, final TransferOptions options) throws FirestormException {
+        try {
+            checkRegistration(objectClass);
+            return FirestormTransfer.export(objectClass, outputStream, options);
+        } catch (ClassRegistrationException | NotInitializedException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Imports objects of a class from a stream of NDJSON (one JSON object per line), as written by <i>export()</i>.
+     * The input is parsed incrementally and written in batch writes of up to 500 objects. Objects without an ID
+     * are given a new document ID. Runs in the background in constant memory.
+     *
+     * @param objectClass The class of the objects to import.
+     * @param inputStream The stream to read from. It is not closed.
+     * @param <T> The type of the objects.
+     * @return Returns a Task with the number of documents imported.
+     * @throws FirestormException Thrown when the class is not registered.
+     */
+    public static <T> Task<Long> importFrom(final Class<T> objectClass, final InputStream inputStream) throws FirestormException {
+        return importFrom(objectClass, inputStream, TransferOptions.DEFAULT);
+    }
+
+    /**
+     * Imports objects of a class from a stream of NDJSON (one JSON object per line), as written by <i>export()</i>.
+     * The input is parsed incrementally and written in batch writes, keeping the configured number of them in flight.
+     * Objects without an ID are given a new document ID. If the options have a checkpoint file, an interrupted import
+     * can be resumed by importing the same input again. Runs in the background in constant memory.
+     *
+     * @param objectClass The class of the objects to import.
+     * @param inputStream The stream to read from. It is not closed.
+     * @param options The transfer options.
+     * @param <T> The type of the objects.
+     * @return Returns a Task with the number of documents imported, excluding the ones skipped using the checkpoint.
+     * @throws FirestormException Thrown when the class is not registered.
+     */
+    public static <T> Task<Long> importFrom(final Class<T> objectClass, final InputStream inputStream, final TransferOptions options) throws FirestormException {
+        try {
+            checkRegistration(objectClass);
+            return FirestormTransfer.importFrom(objectClass, inputStream, options);
+        } catch (ClassRegistrationException | NotInitializedException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Holds the Handler of the main thread.
+     */
+    private static final class MainHandler {
+
+        private static final Handler INSTANCE = new Handler(Looper.getMainLooper());
+
+    }
+
 }
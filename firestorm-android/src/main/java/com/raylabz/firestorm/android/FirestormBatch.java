@@ -1,28 +1,27 @@
 package com.raylabz.firestorm.android;
 
 import com.google.android.gms.tasks.Task;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.WriteBatch;
+import com.raylabz.firestorm.android.backend.BackendWrite;
 import com.raylabz.firestorm.android.exception.BatchException;
 import com.raylabz.firestorm.android.exception.ClassRegistrationException;
 import com.raylabz.firestorm.android.exception.TooManyOperationsException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Enables Firestore batch writes.
+ * Enables batch writes.
  * @author Nicos Kasenides
  * @version 1.0.0
  */
 public abstract class FirestormBatch extends FirestormOperation<Void> {
 
     private int numOfOperations = 0;
-    private WriteBatch batch;
 
     /**
-     * Initializes the batch.
+     * The logical writes of this batch, committed through the backend or queued in a {@link FirestormOutbox}.
      */
-    public FirestormBatch() {
-        this.batch = Firestorm.firestore.batch();
-    }
+    private final ArrayList<FirestormOutbox.Write> writes = new ArrayList<>();
 
     /**
      * Creates a Firestore document from an object as part of a batch write.
@@ -32,9 +31,10 @@ public abstract class FirestormBatch extends FirestormOperation<Void> {
     public final void create(final Object object) throws BatchException {
         try {
             Firestorm.checkRegistration(object);
-            final DocumentReference reference = Firestorm.firestore.collection(object.getClass().getSimpleName()).document();
-            Reflector.setIDField(object, reference.getId());
-            batch = batch.set(reference, object);
+            final String id = Firestorm.backend.newDocumentID(object.getClass().getSimpleName());
+            Reflector.setIDField(object, id);
+            GeohashFields.apply(object);
+            writes.add(new FirestormOutbox.Write(object.getClass(), id, object));
             numOfOperations++;
         } catch (IllegalAccessException | ClassRegistrationException | NoSuchFieldException e) {
             throw new BatchException(e);
@@ -50,8 +50,8 @@ public abstract class FirestormBatch extends FirestormOperation<Void> {
         try {
             Firestorm.checkRegistration(object);
             final String id = Reflector.getIDField(object);
-            final DocumentReference reference = Firestorm.firestore.collection(object.getClass().getSimpleName()).document(id);
-            batch = batch.set(reference, object);
+            GeohashFields.apply(object);
+            writes.add(new FirestormOutbox.Write(object.getClass(), id, object));
             numOfOperations++;
         } catch (IllegalAccessException | ClassRegistrationException | NoSuchFieldException e) {
             throw new BatchException(e);
@@ -67,8 +67,7 @@ public abstract class FirestormBatch extends FirestormOperation<Void> {
         try {
             Firestorm.checkRegistration(object);
             final String id = Reflector.getIDField(object);
-            final DocumentReference reference = Firestorm.firestore.collection(object.getClass().getSimpleName()).document(id);
-            batch = batch.delete(reference);
+            writes.add(new FirestormOutbox.Write(object.getClass(), id, null));
             Reflector.setIDField(object, null);
             numOfOperations++;
         } catch (IllegalAccessException | ClassRegistrationException | NoSuchFieldException e) {
@@ -85,23 +84,69 @@ public abstract class FirestormBatch extends FirestormOperation<Void> {
     public final void delete(final Class<?> objectClass, final String objectID) throws BatchException {
         try {
             Firestorm.checkRegistration(objectClass);
-            final DocumentReference reference = Firestorm.firestore.collection(objectClass.getSimpleName()).document(objectID);
-            batch = batch.delete(reference);
+            writes.add(new FirestormOutbox.Write(objectClass, objectID, null));
             numOfOperations++;
         } catch (ClassRegistrationException e) {
             throw new BatchException(e);
         }
     }
 
+    /**
+     * Retrieves the logical writes of this batch.
+     * @return Returns a list of writes.
+     */
+    List<FirestormOutbox.Write> getWrites() {
+        return writes;
+    }
+
     /**
      * Performs a batch operation.
      */
     Task<Void> doBatch() {
+        final OperationContext context = new OperationContext(OperationType.BATCH, null);
+        setContext(context);
+        managedExecute();
         if (numOfOperations > 500) {
             throw new TooManyOperationsException("The number of operations in a batch write cannot exceed 500.");
         }
-        managedExecute();
-        return batch.commit();
+        for (FirestormOutbox.Write write : writes) {
+            context.addDocumentID(write.documentID);
+        }
+        return Firestorm.intercept(context, () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.BATCH, null);
+            final int operations = numOfOperations;
+            final ArrayList<BackendWrite> backendWrites = new ArrayList<>(writes.size());
+            for (FirestormOutbox.Write write : writes) {
+                backendWrites.add(write.toBackendWrite());
+            }
+            final FirestormOutbox outbox = Firestorm.outbox;
+            final Task<Void> commit;
+            if (outbox != null) {
+                trace.dispatched();
+                commit = outbox.submit(new ArrayList<>(writes));
+            }
+            else {
+                commit = Firestorm.admit(context.getPriority(), () -> {
+                    trace.dispatched();
+                    return Firestorm.backend.commit(backendWrites);
+                });
+            }
+            return commit.addOnCompleteListener(task -> {
+                trace.received();
+                if (task.isSuccessful()) {
+                    long payloadBytes = 0;
+                    if (trace.isEstimatingPayload()) {
+                        for (FirestormOutbox.Write write : writes) {
+                            payloadBytes += write.object != null ? OperationTrace.estimateObject(write.object) : 0;
+                        }
+                    }
+                    trace.succeeded(operations, payloadBytes);
+                }
+                else {
+                    trace.failed(task.getException());
+                }
+            });
+        });
     }
 
 }
@@ -1,16 +1,21 @@
 package com.raylabz.firestorm.android;
 
-import android.os.Handler;
-
+import com.google.android.gms.tasks.CancellationToken;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
-//import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import com.raylabz.firestorm.android.backend.BackendChange;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendListener;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.FirestoreBackend;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
 import com.raylabz.firestorm.android.exception.FirestormException;
 
 import javax.annotation.Nonnull;
@@ -21,17 +26,22 @@ import java.util.concurrent.Executor;
 
 /**
  * An object that enables quick use of Firestore filters without using additional DocumentReferences.
+ * Filters are collected in a {@link BackendQuery}, which runs on the backend Firestorm was initialized with.
  * @param <T> The type of objects this FirestormFilterable is able to interact with.
  * @author Nicos Kasenides
  * @version 1.0.0
  */
 public class FirestormFilterable<T> {
 
-    protected Query query;
+    /**
+     * The initial Firestore query of the filterable, or null if the filterable runs on the backend.
+     */
+    protected final Query query;
     protected final Class<T> objectClass;
+    private BackendQuery backendQuery;
 
     /**
-     * Instantiates a class of FirestormFilterable.
+     * Instantiates a class of FirestormFilterable which runs an initial Firestore query.
      *
      * @param query  The initial query of the filterable.
      * @param objectClass The type of objects this filterable can interact with.
@@ -39,14 +49,37 @@ public class FirestormFilterable<T> {
     public FirestormFilterable(Query query, final Class<T> objectClass) {
         this.query = query;
         this.objectClass = objectClass;
+        this.backendQuery = new BackendQuery(objectClass.getSimpleName());
     }
 
     /**
-     * Retrieves the current query.
+     * Instantiates a class of FirestormFilterable which runs on the backend.
+     *
+     * @param backendQuery The initial query of the filterable.
+     * @param objectClass The type of objects this filterable can interact with.
+     */
+    public FirestormFilterable(final BackendQuery backendQuery, final Class<T> objectClass) {
+        this.query = null;
+        this.objectClass = objectClass;
+        this.backendQuery = backendQuery;
+    }
+
+    /**
+     * Retrieves the current query as a Firestore query.
      * @return Returns Query.
+     * @throws FirestormException Thrown when Firestorm was initialized with a backend other than Firestore.
+     */
+    public Query getQuery() throws FirestormException {
+        final Query base = query != null ? query : Firestorm.requireFirestore().collection(backendQuery.getCollection());
+        return FirestoreBackend.toQuery(base, backendQuery);
+    }
+
+    /**
+     * Retrieves the current query.
+     * @return Returns a BackendQuery.
      */
-    public Query getQuery() {
-        return query;
+    public BackendQuery getBackendQuery() {
+        return backendQuery;
     }
 
     /**
@@ -57,7 +90,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereEqualTo(@Nonnull String field, @Nullable Object value) {
-        query = query.whereEqualTo(field, value);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.EQUAL, value);
         return this;
     }
 
@@ -69,7 +102,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereEqualTo(@Nonnull FieldPath fieldPath, @Nullable Object value) {
-        query = query.whereEqualTo(fieldPath, value);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.EQUAL, value);
         return this;
     }
 
@@ -81,7 +114,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereLessThan(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereLessThan(field, value);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.LESS_THAN, value);
         return this;
     }
 
@@ -93,7 +126,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereLessThan(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereLessThan(fieldPath, value);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.LESS_THAN, value);
         return this;
     }
 
@@ -105,7 +138,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereLessThanOrEqualTo(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereLessThanOrEqualTo(field, value);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.LESS_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -117,7 +150,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereLessThanOrEqualTo(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereLessThanOrEqualTo(fieldPath, value);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.LESS_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -129,7 +162,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereGreaterThan(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereGreaterThan(field, value);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.GREATER_THAN, value);
         return this;
     }
 
@@ -141,7 +174,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereGreaterThan(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereGreaterThan(fieldPath, value);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.GREATER_THAN, value);
         return this;
     }
 
@@ -153,7 +186,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereGreaterThanOrEqualTo(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereGreaterThanOrEqualTo(field, value);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.GREATER_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -165,7 +198,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereGreaterThanOrEqualTo(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereGreaterThanOrEqualTo(fieldPath, value);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.GREATER_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -177,7 +210,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereArrayContains(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereArrayContains(field, value);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.ARRAY_CONTAINS, value);
         return this;
     }
 
@@ -189,7 +222,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereArrayContains(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereArrayContains(fieldPath, value);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.ARRAY_CONTAINS, value);
         return this;
     }
 
@@ -201,7 +234,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereArrayContainsAny(@Nonnull String field, @Nonnull List<?> values) {
-        query = query.whereArrayContainsAny(field, values);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.ARRAY_CONTAINS_ANY, values);
         return this;
     }
 
@@ -213,7 +246,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereArrayContainsAny(@Nonnull FieldPath fieldPath, @Nonnull List<?> values) {
-        query = query.whereArrayContainsAny(fieldPath, values);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.ARRAY_CONTAINS_ANY, values);
         return this;
     }
 
@@ -225,7 +258,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereIn(@Nonnull String field, @Nonnull List<?> values) {
-        query = query.whereIn(field, values);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.IN, values);
         return this;
     }
 
@@ -237,7 +270,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereIn(@Nonnull FieldPath fieldPath, @Nonnull List<?> values) {
-        query = query.whereIn(fieldPath, values);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.IN, values);
         return this;
     }
 
@@ -249,7 +282,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereNotIn(@Nonnull String field, @Nonnull List<?> values) {
-        query = query.whereNotIn(field, values);
+        backendQuery = backendQuery.where(field, BackendQuery.Operator.NOT_IN, values);
         return this;
     }
 
@@ -261,7 +294,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> whereNotIn(@Nonnull FieldPath fieldPath, @Nonnull List<?> values) {
-        query = query.whereNotIn(fieldPath, values);
+        backendQuery = backendQuery.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.NOT_IN, values);
         return this;
     }
 
@@ -272,7 +305,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> orderBy(@Nonnull String field) {
-        query = query.orderBy(field);
+        backendQuery = backendQuery.orderBy(field, false);
         return this;
     }
 
@@ -283,7 +316,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> orderBy(@Nonnull FieldPath fieldPath) {
-        query = query.orderBy(fieldPath);
+        backendQuery = backendQuery.orderBy(BackendQuery.fieldPathOf(fieldPath.toString()), false);
         return this;
     }
 
@@ -295,7 +328,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> orderBy(@Nonnull String field, @Nonnull Query.Direction direction) {
-        query = query.orderBy(field, direction);
+        backendQuery = backendQuery.orderBy(field, direction == Query.Direction.DESCENDING);
         return this;
     }
 
@@ -307,7 +340,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> orderBy(@Nonnull FieldPath fieldPath, @Nonnull Query.Direction direction) {
-        query = query.orderBy(fieldPath, direction);
+        backendQuery = backendQuery.orderBy(BackendQuery.fieldPathOf(fieldPath.toString()), direction == Query.Direction.DESCENDING);
         return this;
     }
 
@@ -318,7 +351,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> limit(int limit) {
-        query = query.limit(limit);
+        backendQuery = backendQuery.limit(limit);
         return this;
     }
 
@@ -341,7 +374,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> startAt(@Nonnull DocumentSnapshot snapshot) {
-        query = query.startAt(snapshot);
+        backendQuery = backendQuery.startAt(new FirestoreDocument(snapshot));
         return this;
     }
 
@@ -352,7 +385,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> startAt(Object... fieldValues) {
-        query = query.startAt(fieldValues);
+        backendQuery = backendQuery.startAt(fieldValues);
         return this;
     }
 
@@ -363,7 +396,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> startAfter(@Nonnull DocumentSnapshot snapshot) {
-        query = query.startAfter(snapshot);
+        backendQuery = backendQuery.startAfter(new FirestoreDocument(snapshot));
         return this;
     }
 
@@ -373,7 +406,7 @@ public class FirestormFilterable<T> {
      * @return Returns a filterable.
      */
     public FirestormFilterable<T> startAfter(Object... fieldValues) {
-        query = query.startAfter(fieldValues);
+        backendQuery = backendQuery.startAfter(fieldValues);
         return this;
     }
 
@@ -384,7 +417,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> endBefore(@Nonnull DocumentSnapshot snapshot) {
-        query = query.endBefore(snapshot);
+        backendQuery = backendQuery.endBefore(new FirestoreDocument(snapshot));
         return this;
     }
 
@@ -395,7 +428,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> endBefore(Object... fieldValues) {
-        query = query.endBefore(fieldValues);
+        backendQuery = backendQuery.endBefore(fieldValues);
         return this;
     }
 
@@ -406,7 +439,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> endAt(Object... fieldValues) {
-        query = query.endAt(fieldValues);
+        backendQuery = backendQuery.endAt(fieldValues);
         return this;
     }
 
@@ -417,7 +450,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public FirestormFilterable<T> endAt(@Nonnull DocumentSnapshot snapshot) {
-        query = query.endAt(snapshot);
+        backendQuery = backendQuery.endAt(new FirestoreDocument(snapshot));
         return this;
     }
 
@@ -427,7 +460,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public Task<QuerySnapshot> get() {
-        return query.get();
+        return getQuery().get();
     }
 
     /**
@@ -437,7 +470,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public ListenerRegistration addSnapshotListener(@Nonnull EventListener<QuerySnapshot> listener) {
-        return query.addSnapshotListener(listener);
+        return getQuery().addSnapshotListener(listener);
     }
 
     /**
@@ -448,7 +481,7 @@ public class FirestormFilterable<T> {
      */
     @Nonnull
     public ListenerRegistration addSnapshotListener(@Nonnull Executor executor, @Nonnull EventListener<QuerySnapshot> listener) {
-        return query.addSnapshotListener(executor, listener);
+        return getQuery().addSnapshotListener(executor, listener);
     }
 
     /**
@@ -456,7 +489,19 @@ public class FirestormFilterable<T> {
      * @return Returns an integer hash code.
      */
     public int hashCode() {
-        return query.hashCode();
+        return backendQuery.hashCode();
+    }
+
+    /**
+     * Listens to the changes in the results of the filterable.
+     * @param listener The listener.
+     * @return Returns a ListenerRegistration.
+     */
+    ListenerRegistration addListener(final BackendListener<List<BackendChange>> listener) {
+        if (query != null) {
+            return FirestoreBackend.addQueryListener(getQuery(), listener);
+        }
+        return Firestorm.backend.addQueryListener(backendQuery, listener);
     }
 
     /**
@@ -464,34 +509,58 @@ public class FirestormFilterable<T> {
      * @return An ArrayList containing the results of a filter.
      */
     public Task<QueryResult<T>> fetch() {
-        TaskCompletionSource<QueryResult<T>> source = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-            query.get().addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    QuerySnapshot result = task.getResult();
-                    List<T> objects = result.toObjects(objectClass);
-                    List<DocumentSnapshot> documents = result.getDocuments();
-                    QueryResult<T> queryResult;
-                    if (objects.isEmpty()) {
-                        queryResult = new QueryResult<>(new ArrayList<>(), null, null);
-                    }
-                    else {
-                        queryResult = new QueryResult<T>(objects, documents, documents.get(documents.size() - 1).getId());
-                    }
+        return fetch(null);
+    }
 
-                    source.setResult(queryResult);
+    /**
+     * Fetches the results of a filterable. Once the token is cancelled, the returned task is cancelled and the
+     * results are neither converted to objects nor delivered.
+     * @param token The cancellation token, or null.
+     * @return An ArrayList containing the results of a filter.
+     */
+    public Task<QueryResult<T>> fetch(final CancellationToken token) {
+        return Firestorm.intercept(new OperationContext(OperationType.FETCH, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.FETCH, objectClass);
+            TaskCompletionSource<QueryResult<T>> source = Firestorm.completionSource(token);
+            Firestorm.dispatch(() -> {
+                if (Firestorm.isCancelled(token, trace)) {
+                    return;
                 }
-                else {
-                    if (task.getException() != null) {
-                        source.setException(task.getException());
+                trace.dispatched();
+                final BackendQuery currentQuery = backendQuery;
+                Firestorm.retry(() -> query != null ? FirestoreBackend.query(FirestoreBackend.toQuery(query, currentQuery)) : Firestorm.backend.query(currentQuery)).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (Firestorm.isCancelled(token, trace)) {
+                        return;
+                    }
+                    if (task.isSuccessful()) {
+                        List<BackendDocument> documents = task.getResult();
+                        List<T> objects = Firestorm.toObjects(documents, objectClass);
+                        QueryResult<T> queryResult;
+                        if (objects.isEmpty()) {
+                            queryResult = new QueryResult<>(new ArrayList<>(), null, null);
+                        }
+                        else {
+                            queryResult = new QueryResult<T>(objects, FirestoreDocument.snapshotsOf(documents), documents.get(documents.size() - 1).getId());
+                        }
+
+                        trace.succeeded(objects.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(documents) : 0);
+                        source.trySetResult(queryResult);
                     }
                     else {
-                        source.setException(new FirestormException("Failed to retrieve items."));
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.trySetException(task.getException());
+                        }
+                        else {
+                            source.trySetException(new FirestormException("Failed to retrieve items."));
+                        }
                     }
-                }
+                });
             });
-        });
-        return source.getTask();
+            return source.getTask();
+        }, cache -> (query != null ? FirestoreBackend.query(FirestoreBackend.toQuery(query, backendQuery), Source.CACHE) : cache.query(backendQuery))
+                .continueWith(Firestorm.DIRECT, task -> QueryResult.stale(task.getResult(), objectClass)));
     }
 
 }
@@ -0,0 +1,51 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+
+/**
+ * Intercepts Firestorm operations. Interceptors are registered in {@link FirestormSettings} and run in the order
+ * they were added, each one wrapping the ones after it. An interceptor can observe or modify the operation
+ * (e.g. for tracing, timing or rate limiting), or complete it without proceeding (e.g. for caching).
+ * <p>
+ * Interceptors can be written as lambdas, e.g. to time every operation:
+ * <pre>
+ * builder.addInterceptor(chain -&gt; {
+ *     final long start = System.nanoTime();
+ *     final Task&lt;?&gt; task = chain.proceed();
+ *     task.addOnCompleteListener(result -&gt; Log.d("Firestorm", chain.getContext().getType() + " took " + (System.nanoTime() - start) + "ns"));
+ *     return task;
+ * });
+ * </pre>
+ * @version 1.4.0
+ */
+public interface FirestormInterceptor {
+
+    /**
+     * Intercepts an operation.
+     * @param chain The chain, which provides the operation's context and proceeds to the next interceptor.
+     * @return Returns the Task of the operation, usually the one returned by <i>chain.proceed()</i>. An interceptor
+     * which completes the operation without proceeding must return a Task of the operation's result type.
+     */
+    Task<?> intercept(Chain<?> chain);
+
+    /**
+     * The rest of the interceptor chain of an operation.
+     * @param <R> The type of the operation's result.
+     */
+    interface Chain<R> {
+
+        /**
+         * Retrieves the context of the operation.
+         * @return Returns an OperationContext.
+         */
+        OperationContext getContext();
+
+        /**
+         * Proceeds to the next interceptor, or runs the operation if this is the last interceptor.
+         * @return Returns the Task of the operation.
+         */
+        Task<R> proceed();
+
+    }
+
+}
@@ -1,8 +1,14 @@
 package com.raylabz.firestorm.android;
 
 
+import android.os.Looper;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.raylabz.firestorm.android.exception.FirestormException;
 
+import java.util.concurrent.ExecutionException;
+
 /**
  * Abstracts a Firestorm operation, its execution and callbacks.
  * @author Nicos Kasenides
@@ -11,10 +17,73 @@ import com.raylabz.firestorm.android.exception.FirestormException;
 public abstract class FirestormOperation<T> {
 
     /**
-     * Managed execution.
+     * The context of the operation while it runs through the interceptor chain.
+     */
+    private OperationContext context;
+
+    /**
+     * Retrieves the context of the operation.
+     * @return Returns an OperationContext, or null if the operation has not been run.
+     */
+    public final OperationContext getContext() {
+        return context;
+    }
+
+    /**
+     * Sets the context of the operation.
+     * @param context The context.
+     */
+    final void setContext(final OperationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Managed execution. Batches and transactions execute within their own intercepted operation; other operations
+     * run through the interceptor chain as a {@link OperationType#CUSTOM} operation.
+     * @return Returns the result of the operation.
+     * @throws FirestormException Thrown when the operation fails, or when an interceptor defers it on the main thread.
      */
     public final T managedExecute() throws FirestormException {
-        return execute();
+        if (context != null && context.getType() != OperationType.CUSTOM) {
+            return execute();
+        }
+        context = new OperationContext(OperationType.CUSTOM, null);
+        final Task<T> task = Firestorm.intercept(context, () -> {
+            try {
+                return Tasks.forResult(execute());
+            } catch (RuntimeException e) {
+                return Tasks.forException(e);
+            }
+        });
+        if (!task.isComplete()) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                throw new FirestormException("An interceptor deferred the operation, which cannot be awaited on the main thread.");
+            }
+            try {
+                return Tasks.await(task);
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FirestormException(e);
+            }
+        }
+        if (task.isSuccessful()) {
+            return task.getResult();
+        }
+        throw unwrap(task.getException());
+    }
+
+    /**
+     * Converts the failure of an operation to an unchecked exception.
+     * @param e The failure, or null if the operation was cancelled.
+     * @return Returns a RuntimeException.
+     */
+    private static RuntimeException unwrap(final Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return e instanceof Exception ? new FirestormException((Exception) e) : new FirestormException("The operation was cancelled.");
     }
 
     /**
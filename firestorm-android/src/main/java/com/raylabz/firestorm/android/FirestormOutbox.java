@@ -0,0 +1,703 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.GeoPoint;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.raylabz.firestorm.android.backend.BackendWrite;
+import com.raylabz.firestorm.android.exception.ClassRegistrationException;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A durable queue of writes kept by Firestorm until they are applied to Firestore.
+ * Writes are appended to a local journal file, so they survive the app being killed, and successive writes to the
+ * same object (class and ID) are collapsed into a single net write. The outbox drains its writes in batch writes
+ * of up to 500 operations, keeping only one batch in flight at a time, so while the device is offline further
+ * writes are compacted locally instead of piling up in the pending writes of Firestore. When a batch fails with a
+ * transient error, draining is attempted again after the backoff delay of the retry policy, until it succeeds.
+ * <p>
+ * When an outbox file is configured, <i>Firestorm.create()</i>, <i>Firestorm.update()</i>, <i>Firestorm.delete()</i>
+ * and <i>Firestorm.runBatch()</i> queue their writes in the outbox, so that all writes are applied in the order they
+ * were submitted. Their tasks complete once the writes, or later writes to the same documents which replaced them, are
+ * applied. The writes of a batch are then committed as net writes along with the other queued writes, so they are no
+ * longer guaranteed to be applied atomically.
+ * @version 1.4.0
+ */
+public final class FirestormOutbox {
+
+    /**
+     * The maximum number of operations drained in a single batch write.
+     */
+    static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * The number of journal records above the pending writes after which the journal is rewritten.
+     */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final String OPERATION_SET = "SET";
+    private static final String OPERATION_DELETE = "DELETE";
+    private static final String OPERATION_ACK = "ACK";
+
+    private static final String TYPE_ARRAY = "array";
+    private static final String TYPE_DOUBLE = "double";
+    private static final String TYPE_DATE = "date";
+    private static final String TYPE_TIMESTAMP = "timestamp";
+    private static final String TYPE_GEOPOINT = "geopoint";
+    private static final String TYPE_BYTES = "bytes";
+    private static final String TYPE_REFERENCE = "reference";
+    private static final String TYPE_SERVER_TIMESTAMP = "serverTimestamp";
+
+    /**
+     * Receives notifications about the outbox being drained.
+     */
+    public interface Listener {
+
+        /**
+         * Executes when a batch of writes was applied to Firestore.
+         * @param count The number of writes applied.
+         */
+        void onDrained(int count);
+
+        /**
+         * Executes when a batch of writes could not be applied. Writes failing with a transient error stay in the
+         * outbox, other writes are discarded.
+         * @param exception The exception.
+         * @param discarded True if the writes of the batch were discarded, false if they remain queued.
+         */
+        void onFailure(Exception exception, boolean discarded);
+
+    }
+
+    /**
+     * A logical write: sets an object or deletes a document. Queued writes set the fields the object was mapped to
+     * by the backend when it was submitted, so later changes to the object are not written.
+     */
+    static final class Write {
+
+        final Class<?> objectClass;
+        final String documentID;
+        final Object object;
+
+        /**
+         * Constructs a write.
+         * @param objectClass The class of the object.
+         * @param documentID The ID of the document.
+         * @param object The object or fields to set, or null to delete the document.
+         */
+        Write(final Class<?> objectClass, final String documentID, final Object object) {
+            this.objectClass = objectClass;
+            this.documentID = documentID;
+            this.object = object;
+        }
+
+        /**
+         * Retrieves the key identifying the written document.
+         * @return Returns a string.
+         */
+        String key() {
+            return objectClass.getName() + "/" + documentID;
+        }
+
+        /**
+         * Converts this write to a backend write.
+         * @return Returns a BackendWrite.
+         */
+        BackendWrite toBackendWrite() {
+            return object != null ? BackendWrite.set(objectClass.getSimpleName(), documentID, object) :
+                    BackendWrite.delete(objectClass.getSimpleName(), documentID);
+        }
+
+    }
+
+    /**
+     * A write stored in the outbox, along with the sequence number of its journal record.
+     */
+    private static final class Entry {
+
+        final long sequence;
+        final Write write;
+
+        /**
+         * The tasks completed once the write is applied. They are not persisted, so they are lost on restart.
+         */
+        final ArrayList<TaskCompletionSource<Void>> waiting = new ArrayList<>(0);
+
+        Entry(final long sequence, final Write write) {
+            this.sequence = sequence;
+            this.write = write;
+        }
+
+    }
+
+    /**
+     * A record of the journal file. Each record is stored as a line of JSON.
+     */
+    private static final class Record {
+
+        long sequence;
+        String operation;
+        String className;
+        String documentID;
+        JsonElement data;
+
+    }
+
+    private final File journalFile;
+    private final Gson gson = new Gson();
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    private Writer journal;
+    private long sequence = 0;
+    private int journalRecords = 0;
+    private boolean loaded = false;
+    private boolean draining = false;
+    private int failures = 0;
+    private Listener listener;
+
+    /**
+     * Creates an outbox backed by a journal file. The journal is read when the outbox is first used.
+     * @param journalFile The journal file.
+     */
+    public FirestormOutbox(final File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Sets a listener notified about the outbox being drained.
+     * @param listener The listener.
+     */
+    public synchronized void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues the creation of a Firestore document from an object.
+     * @param object An object containing the data to be written in Firestore.
+     * @return Returns the document ID of the created document.
+     * @throws FirestormException Thrown when Firestorm encounters an error.
+     */
+    public String create(final Object object) throws FirestormException {
+        try {
+            Firestorm.checkRegistration(object);
+            final String id = Firestorm.backend.newDocumentID(object.getClass().getSimpleName());
+            Reflector.setIDField(object, id);
+            GeohashFields.apply(object);
+            enqueue(new Write(object.getClass(), id, object));
+            return id;
+        } catch (ClassRegistrationException | NoSuchFieldException | IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Queues an update of a document.
+     * @param object An object which provides data and the document ID for the update.
+     * @throws FirestormException Thrown when Firestorm encounters an error.
+     */
+    public void update(final Object object) throws FirestormException {
+        try {
+            Firestorm.checkRegistration(object);
+            GeohashFields.apply(object);
+            enqueue(new Write(object.getClass(), Reflector.getIDField(object), object));
+        } catch (ClassRegistrationException | NoSuchFieldException | IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Queues the deletion of an object.
+     * @param object The object to delete.
+     * @throws FirestormException Thrown when Firestorm encounters an error.
+     */
+    public void delete(final Object object) throws FirestormException {
+        try {
+            Firestorm.checkRegistration(object);
+            enqueue(new Write(object.getClass(), Reflector.getIDField(object), null));
+        } catch (ClassRegistrationException | NoSuchFieldException | IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Queues the deletion of an object using its ID.
+     * @param objectClass The class of the object.
+     * @param objectID The object's ID.
+     * @throws FirestormException Thrown when Firestorm encounters an error.
+     */
+    public void delete(final Class<?> objectClass, final String objectID) throws FirestormException {
+        try {
+            Firestorm.checkRegistration(objectClass);
+            enqueue(new Write(objectClass, objectID, null));
+        } catch (ClassRegistrationException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Queues all the writes of a batch instead of committing it directly.
+     * @param batch The batch.
+     * @throws FirestormException Thrown when Firestorm encounters an error.
+     */
+    public void enqueue(final FirestormBatch batch) throws FirestormException {
+        batch.setContext(new OperationContext(OperationType.BATCH, null));
+        batch.managedExecute();
+        submit(batch.getWrites());
+    }
+
+    /**
+     * Queues writes and starts draining them.
+     * @param writes The writes.
+     * @return Returns a Task which completes once all the writes, or later writes to the same documents, have been
+     * applied, or fails if one of them is discarded or if an object cannot be stored as a document.
+     */
+    Task<Void> submit(final List<Write> writes) {
+        final ArrayList<Write> snapshots = new ArrayList<>(writes.size());
+        try {
+            for (Write write : writes) {
+                snapshots.add(snapshot(write));
+            }
+        } catch (IllegalArgumentException e) {
+            return Tasks.forException(new FirestormException(e));
+        }
+        final ArrayList<Task<Void>> tasks = new ArrayList<>(writes.size());
+        synchronized (this) {
+            for (Write write : snapshots) {
+                final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+                append(write).waiting.add(source);
+                tasks.add(source.getTask());
+            }
+        }
+        drain();
+        return tasks.size() == 1 ? tasks.get(0) : Tasks.whenAll(tasks);
+    }
+
+    /**
+     * Retrieves the number of net writes waiting in the outbox.
+     * @return Returns an integer.
+     */
+    public synchronized int getPendingCount() {
+        load();
+        return pending.size();
+    }
+
+    /**
+     * Starts draining the outbox, unless a batch is already in flight.
+     * Batches are committed one after the other until the outbox is empty. When a {@link PriorityScheduler} is
+     * configured, each batch is committed as background work, and otherwise using the dispatcher, if any.
+     */
+    public void drain() {
+        synchronized (this) {
+            load();
+            if (draining || pending.isEmpty()) {
+                return;
+            }
+            draining = true;
+        }
+        Firestorm.schedule(Priority.BACKGROUND, this::commitNext);
+    }
+
+    /**
+     * Commits the next batch of the outbox, and starts draining the rest when it succeeds.
+     */
+    private void commitNext() {
+        final List<Entry> entries;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                draining = false;
+                return;
+            }
+            entries = new ArrayList<>(Math.min(pending.size(), MAX_BATCH_SIZE));
+            final Iterator<Entry> iterator = pending.values().iterator();
+            while (iterator.hasNext() && entries.size() < MAX_BATCH_SIZE) {
+                entries.add(iterator.next());
+            }
+        }
+
+        final ArrayList<BackendWrite> writes = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            writes.add(entry.write.toBackendWrite());
+        }
+
+        final RetryPolicy retryPolicy = Firestorm.getSettings().getRetryPolicy();
+        final Task<Void> commit = Firestorm.retry(() -> Firestorm.backend.commit(writes));
+        commit.addOnCompleteListener(Firestorm.DIRECT, task -> {
+            final Exception exception = task.isSuccessful() ? null
+                    : task.getException() != null ? task.getException() : new FirestormException("Failed to drain outbox.");
+            final Listener currentListener;
+            final boolean discarded = exception != null && !retryPolicy.isRetryable(exception);
+            final List<TaskCompletionSource<Void>> completed = new ArrayList<>();
+            final long retryDelayMillis;
+            synchronized (this) {
+                draining = false;
+                currentListener = listener;
+                if (exception == null || discarded) {
+                    acknowledge(entries, completed);
+                }
+                failures = exception != null && !discarded ? failures + 1 : 0;
+                retryDelayMillis = failures > 0 ? retryPolicy.getDelayMillis(failures) : 0;
+            }
+            for (TaskCompletionSource<Void> source : completed) {
+                if (exception == null) {
+                    source.trySetResult(null);
+                }
+                else {
+                    source.trySetException(exception);
+                }
+            }
+            if (currentListener != null) {
+                if (exception == null) {
+                    currentListener.onDrained(entries.size());
+                }
+                else {
+                    currentListener.onFailure(exception, discarded);
+                }
+            }
+            if (exception != null && !discarded) {
+                Firestorm.dispatchDelayed(Priority.BACKGROUND, retryDelayMillis, this::drain);
+            }
+            else {
+                drain();
+            }
+        });
+    }
+
+    /**
+     * Adds a write to the outbox and starts draining it.
+     * @param write The write.
+     */
+    private void enqueue(final Write write) {
+        final Write snapshot;
+        try {
+            snapshot = snapshot(write);
+        } catch (IllegalArgumentException e) {
+            throw new FirestormException(e);
+        }
+        synchronized (this) {
+            append(snapshot);
+        }
+        drain();
+    }
+
+    /**
+     * Maps the object of a write to the fields of a document using the backend, so that the write is committed and
+     * journaled as the object was when it was submitted, and as the backend would write the object itself.
+     * @param write The write.
+     * @return Returns a write setting the fields of the object, or the write itself if it deletes a document.
+     * @throws IllegalArgumentException Thrown when the object cannot be stored as a document.
+     */
+    private static Write snapshot(final Write write) {
+        return write.object != null ? new Write(write.objectClass, write.documentID, Firestorm.backend.toData(write.object)) : write;
+    }
+
+    /**
+     * Appends a write to the journal and replaces any pending write to the same document, whose waiting tasks are
+     * then completed with the new write.
+     * @param write The write.
+     * @return Returns the entry of the write.
+     */
+    private Entry append(final Write write) {
+        load();
+        final Record record = new Record();
+        record.sequence = ++sequence;
+        record.operation = write.object != null ? OPERATION_SET : OPERATION_DELETE;
+        record.className = write.objectClass.getName();
+        record.documentID = write.documentID;
+        record.data = write.object != null ? encode(write.object) : null;
+        writeRecord(record);
+        final Entry entry = new Entry(record.sequence, write);
+        final Entry replaced = pending.remove(write.key());
+        if (replaced != null) {
+            entry.waiting.addAll(replaced.waiting);
+            replaced.waiting.clear();
+        }
+        pending.put(write.key(), entry);
+        return entry;
+    }
+
+    /**
+     * Removes applied entries from the outbox, unless they have been superseded by a newer write in the meantime.
+     * @param entries The entries applied.
+     * @param completed Receives the waiting tasks of the entries removed.
+     */
+    private void acknowledge(final List<Entry> entries, final List<TaskCompletionSource<Void>> completed) {
+        for (Entry entry : entries) {
+            final String key = entry.write.key();
+            if (pending.get(key) == entry) {
+                pending.remove(key);
+                completed.addAll(entry.waiting);
+                entry.waiting.clear();
+            }
+            final Record record = new Record();
+            record.sequence = entry.sequence;
+            record.operation = OPERATION_ACK;
+            record.className = entry.write.objectClass.getName();
+            record.documentID = entry.write.documentID;
+            writeRecord(record);
+        }
+        if (journalRecords > pending.size() + COMPACTION_THRESHOLD || pending.isEmpty()) {
+            compact();
+        }
+    }
+
+    /**
+     * Writes a record to the journal.
+     * @param record The record.
+     */
+    private void writeRecord(final Record record) {
+        try {
+            if (journal == null) {
+                journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+            }
+            journal.write(gson.toJson(record));
+            journal.write('\n');
+            journal.flush();
+            journalRecords++;
+        } catch (IOException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Rewrites the journal so that it only contains the pending writes.
+     */
+    private void compact() {
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            final File temporaryFile = new File(journalFile.getPath() + ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8))) {
+                for (Entry entry : pending.values()) {
+                    final Record record = new Record();
+                    record.sequence = entry.sequence;
+                    record.operation = entry.write.object != null ? OPERATION_SET : OPERATION_DELETE;
+                    record.className = entry.write.objectClass.getName();
+                    record.documentID = entry.write.documentID;
+                    record.data = entry.write.object != null ? encode(entry.write.object) : null;
+                    writer.write(gson.toJson(record));
+                    writer.write('\n');
+                }
+            }
+            if (!temporaryFile.renameTo(journalFile)) {
+                throw new IOException("Could not replace outbox journal '" + journalFile.getPath() + "'.");
+            }
+            journalRecords = pending.size();
+        } catch (IOException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Reads the journal into memory, collapsing its records into net writes. Runs once.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!journalFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Record record;
+                try {
+                    record = gson.fromJson(line, Record.class);
+                } catch (JsonParseException e) {
+                    //A partially written record left behind when the app was killed:
+                    continue;
+                }
+                if (record == null || record.operation == null) {
+                    continue;
+                }
+                journalRecords++;
+                sequence = Math.max(sequence, record.sequence);
+                final String key = record.className + "/" + record.documentID;
+                if (OPERATION_ACK.equals(record.operation)) {
+                    final Entry entry = pending.get(key);
+                    if (entry != null && entry.sequence == record.sequence) {
+                        pending.remove(key);
+                    }
+                }
+                else {
+                    final Class<?> objectClass = Class.forName(record.className);
+                    final Object object;
+                    try {
+                        object = OPERATION_SET.equals(record.operation) ? decode(record.data) : null;
+                    } catch (JsonParseException e) {
+                        continue;
+                    }
+                    pending.remove(key);
+                    pending.put(key, new Entry(record.sequence, new Write(objectClass, record.documentID, object)));
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new FirestormException(e);
+        }
+        compact();
+    }
+
+    /**
+     * Encodes the value of a field in JSON, keeping the types of Firestore values. Maps are encoded as objects, and
+     * other values which are not booleans, integers or strings as arrays starting with the name of their type.
+     * @param value The value.
+     * @return Returns a JSON element.
+     * @throws IllegalArgumentException Thrown when the value has a type which cannot be journaled.
+     */
+    private static JsonElement encode(final Object value) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        }
+        if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+        if (value instanceof String) {
+            return new JsonPrimitive((String) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return new JsonPrimitive(((Number) value).longValue());
+        }
+        if (value instanceof Map) {
+            final JsonObject object = new JsonObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                object.add(String.valueOf(entry.getKey()), encode(entry.getValue()));
+            }
+            return object;
+        }
+        final JsonArray array = new JsonArray();
+        if (value instanceof List) {
+            array.add(TYPE_ARRAY);
+            for (Object item : (List<?>) value) {
+                array.add(encode(item));
+            }
+        }
+        else if (value instanceof Double || value instanceof Float) {
+            array.add(TYPE_DOUBLE);
+            array.add(Double.toString(((Number) value).doubleValue()));
+        }
+        else if (value instanceof Date) {
+            array.add(TYPE_DATE);
+            array.add(((Date) value).getTime());
+        }
+        else if (value instanceof Timestamp) {
+            array.add(TYPE_TIMESTAMP);
+            array.add(((Timestamp) value).getSeconds());
+            array.add(((Timestamp) value).getNanoseconds());
+        }
+        else if (value instanceof GeoPoint) {
+            array.add(TYPE_GEOPOINT);
+            array.add(((GeoPoint) value).getLatitude());
+            array.add(((GeoPoint) value).getLongitude());
+        }
+        else if (value instanceof Blob) {
+            array.add(TYPE_BYTES);
+            for (byte b : ((Blob) value).toBytes()) {
+                array.add(b);
+            }
+        }
+        else if (value instanceof DocumentReference) {
+            array.add(TYPE_REFERENCE);
+            array.add(((DocumentReference) value).getPath());
+        }
+        else if (FieldValue.serverTimestamp().equals(value)) {
+            array.add(TYPE_SERVER_TIMESTAMP);
+        }
+        else {
+            throw new IllegalArgumentException("Values of type " + value.getClass().getSimpleName() + " cannot be queued in the outbox.");
+        }
+        return array;
+    }
+
+    /**
+     * Decodes the value of a field encoded by {@link #encode(Object)}.
+     * @param element The JSON element.
+     * @return Returns the value.
+     * @throws JsonParseException Thrown when the element is not an encoded value.
+     */
+    private static Object decode(final JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonPrimitive()) {
+            final JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+            return primitive.isNumber() ? (Object) primitive.getAsLong() : primitive.getAsString();
+        }
+        if (element.isJsonObject()) {
+            final LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                map.put(entry.getKey(), decode(entry.getValue()));
+            }
+            return map;
+        }
+        final JsonArray array = element.getAsJsonArray();
+        if (array.size() == 0) {
+            throw new JsonParseException("Missing value type.");
+        }
+        final String type = array.get(0).getAsString();
+        switch (type) {
+            case TYPE_ARRAY:
+                final ArrayList<Object> list = new ArrayList<>(array.size() - 1);
+                for (int i = 1; i < array.size(); i++) {
+                    list.add(decode(array.get(i)));
+                }
+                return list;
+            case TYPE_DOUBLE:
+                return Double.parseDouble(array.get(1).getAsString());
+            case TYPE_DATE:
+                return new Date(array.get(1).getAsLong());
+            case TYPE_TIMESTAMP:
+                return new Timestamp(array.get(1).getAsLong(), array.get(2).getAsInt());
+            case TYPE_GEOPOINT:
+                return new GeoPoint(array.get(1).getAsDouble(), array.get(2).getAsDouble());
+            case TYPE_BYTES:
+                final byte[] bytes = new byte[array.size() - 1];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = array.get(i + 1).getAsByte();
+                }
+                return Blob.fromBytes(bytes);
+            case TYPE_REFERENCE:
+                if (Firestorm.firestore == null) {
+                    throw new JsonParseException("Document references can only be replayed to Firestore.");
+                }
+                return Firestorm.firestore.document(array.get(1).getAsString());
+            case TYPE_SERVER_TIMESTAMP:
+                return FieldValue.serverTimestamp();
+            default:
+                throw new JsonParseException("Unknown value type '" + type + "'.");
+        }
+    }
+
+}
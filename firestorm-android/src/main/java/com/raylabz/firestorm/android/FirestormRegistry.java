@@ -17,12 +17,16 @@ public class FirestormRegistry {
     private static final HashSet<Class<?>> REGISTERED_CLASSES = new HashSet<>();
 
     /**
-     * Checks a class for a valid structure and registers it.
+     * Checks a class for a valid structure and registers it. The geohash fields of the class are checked too, so that
+     * invalid geohash fields are reported when registering. The binary descriptor of the class is only built when an
+     * object of the class is first encoded, so that classes which are never encoded cannot fail to register because
+     * of conflicting binary field IDs.
      * @param aClass The class to register.
      * @throws FirestormObjectException Thrown when the class provided does not have a valid structure.
      */
     static void register(Class<?> aClass) throws FirestormObjectException {
         Reflector.checkClass(aClass);
+        GeohashFields.of(aClass);
         REGISTERED_CLASSES.add(aClass);
     }
 
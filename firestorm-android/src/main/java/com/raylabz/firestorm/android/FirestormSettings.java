@@ -0,0 +1,629 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.raylabz.firestorm.android.backend.FirestormBackend;
+import com.raylabz.firestorm.android.metrics.FirestormMetrics;
+import com.raylabz.firestorm.android.metrics.InMemoryMetrics;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Stores the settings used to initialize Firestorm, such as local persistence, cache size, the dispatcher used
+ * to run operations and the warm-up performed right after initialization.
+ * Settings are created using a {@link FirestormSettings.Builder} and passed to <i>Firestorm.init()</i>.
+ * @version 1.4.0
+ */
+public final class FirestormSettings {
+
+    /**
+     * The default number of documents pre-loaded per hot collection during warm-up.
+     */
+    public static final int DEFAULT_WARM_UP_LIMIT = 50;
+
+    /**
+     * The default time after which a listener which has not been notified is idle, and can be evicted when the
+     * maximum number of active listeners is reached.
+     */
+    public static final long DEFAULT_LISTENER_IDLE_MILLIS = 60000;
+
+    /**
+     * Settings which keep all Firestore defaults and only warm up the connection.
+     */
+    public static final FirestormSettings DEFAULT = new Builder().build();
+
+    /**
+     * Enables or disables local persistence. Null keeps the Firestore default.
+     */
+    private final Boolean persistenceEnabled;
+
+    /**
+     * The size of the local cache in bytes. Null keeps the Firestore default.
+     */
+    private final Long cacheSizeBytes;
+
+    /**
+     * The executor used to dispatch Firestorm operations. Null posts operations to a Handler of the calling thread.
+     */
+    private final Executor dispatcher;
+
+    /**
+     * The executor waiting out delays, such as retry backoff, before the delayed work is dispatched. Null uses a
+     * shared daemon thread.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The policy used to retry operations failing with transient errors.
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * The policy used to retry transactions which Firestore could not commit.
+     */
+    private final RetryPolicy transactionRetryPolicy;
+
+    /**
+     * The sink receiving a record for every operation.
+     */
+    private final FirestormMetrics metrics;
+
+    /**
+     * Whether the metrics record the approximate size of the documents read and written.
+     */
+    private final boolean payloadEstimation;
+
+    /**
+     * The interceptors wrapping every operation, in order.
+     */
+    private final List<FirestormInterceptor> interceptors;
+
+    /**
+     * The journal file of the write outbox. Null disables the outbox.
+     */
+    private final File outboxFile;
+
+    /**
+     * The backend storing documents. Null uses Firestore.
+     */
+    private final FirestormBackend backend;
+
+    /**
+     * The limiter of the write rate to each document. Null does not limit writes.
+     */
+    private final WriteRateLimiter writeRateLimiter;
+
+    /**
+     * The deadlines of operations. Null does not bound operations.
+     */
+    private final Deadlines deadlines;
+
+    /**
+     * The scheduler dispatching work by priority. Null dispatches work in FIFO order.
+     */
+    private final PriorityScheduler scheduler;
+
+    /**
+     * The maximum number of active listeners. 0 does not limit listeners.
+     */
+    private final int maxActiveListeners;
+
+    /**
+     * The time after which a listener which has not been notified is idle.
+     */
+    private final long listenerIdleMillis;
+
+    /**
+     * Whether to open the connection to Firestore in the background right after initialization.
+     */
+    private final boolean warmUpConnection;
+
+    /**
+     * The collections (classes) pre-loaded into the local cache during warm-up.
+     */
+    private final List<Class<?>> warmUpCollections;
+
+    /**
+     * The documents pre-loaded into the local cache during warm-up, grouped by class.
+     */
+    private final Map<Class<?>, List<String>> warmUpDocuments;
+
+    /**
+     * The maximum number of documents pre-loaded for each warm-up collection.
+     */
+    private final int warmUpLimit;
+
+    /**
+     * Constructs the settings from a builder.
+     * @param builder The builder.
+     */
+    private FirestormSettings(final Builder builder) {
+        this.persistenceEnabled = builder.persistenceEnabled;
+        this.cacheSizeBytes = builder.cacheSizeBytes;
+        this.dispatcher = builder.dispatcher;
+        this.timer = builder.timer;
+        this.retryPolicy = builder.retryPolicy;
+        this.transactionRetryPolicy = builder.transactionRetryPolicy;
+        this.metrics = builder.metrics != null ? builder.metrics : new InMemoryMetrics();
+        this.payloadEstimation = builder.payloadEstimation;
+        this.interceptors = Collections.unmodifiableList(new ArrayList<>(builder.interceptors));
+        this.outboxFile = builder.outboxFile;
+        this.backend = builder.backend;
+        this.writeRateLimiter = builder.writeRateLimiter;
+        this.deadlines = builder.deadlines;
+        this.scheduler = builder.scheduler;
+        this.maxActiveListeners = builder.maxActiveListeners;
+        this.listenerIdleMillis = builder.listenerIdleMillis;
+        this.warmUpConnection = builder.warmUpConnection;
+        this.warmUpCollections = Collections.unmodifiableList(new ArrayList<>(builder.warmUpCollections));
+        this.warmUpDocuments = Collections.unmodifiableMap(new LinkedHashMap<>(builder.warmUpDocuments));
+        this.warmUpLimit = builder.warmUpLimit;
+    }
+
+    /**
+     * Checks if local persistence is enabled.
+     * @return Returns true/false, or null if the Firestore default is used.
+     */
+    public Boolean isPersistenceEnabled() {
+        return persistenceEnabled;
+    }
+
+    /**
+     * Retrieves the size of the local cache.
+     * @return Returns the cache size in bytes, or null if the Firestore default is used.
+     */
+    public Long getCacheSizeBytes() {
+        return cacheSizeBytes;
+    }
+
+    /**
+     * Retrieves the dispatcher.
+     * @return Returns an Executor, or null if operations are posted to a Handler of the calling thread.
+     */
+    public Executor getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Retrieves the executor waiting out delays before the delayed work is dispatched.
+     * @return Returns a ScheduledExecutorService: the configured one, or a shared daemon thread.
+     */
+    public ScheduledExecutorService getTimer() {
+        return timer != null ? timer : DefaultTimer.INSTANCE;
+    }
+
+    /**
+     * Retrieves the retry policy.
+     * @return Returns a RetryPolicy.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Retrieves the transaction retry policy.
+     * @return Returns a RetryPolicy.
+     */
+    public RetryPolicy getTransactionRetryPolicy() {
+        return transactionRetryPolicy;
+    }
+
+    /**
+     * Retrieves the metrics sink.
+     * @return Returns FirestormMetrics. By default, an {@link InMemoryMetrics} which can be snapshotted.
+     */
+    public FirestormMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Checks if the metrics record the approximate size of the documents read and written.
+     * @return Returns true if payload sizes are estimated, false otherwise.
+     */
+    public boolean isPayloadEstimation() {
+        return payloadEstimation;
+    }
+
+    /**
+     * Retrieves the interceptors wrapping every operation.
+     * @return Returns a list of interceptors, in the order they run.
+     */
+    public List<FirestormInterceptor> getInterceptors() {
+        return interceptors;
+    }
+
+    /**
+     * Retrieves the journal file of the write outbox.
+     * @return Returns a File, or null if the outbox is disabled.
+     */
+    public File getOutboxFile() {
+        return outboxFile;
+    }
+
+    /**
+     * Retrieves the limiter of the write rate to each document.
+     * @return Returns a WriteRateLimiter, or null if writes are not limited.
+     */
+    public WriteRateLimiter getWriteRateLimiter() {
+        return writeRateLimiter;
+    }
+
+    /**
+     * Retrieves the deadlines of operations.
+     * @return Returns Deadlines, or null if operations are not bounded.
+     */
+    public Deadlines getDeadlines() {
+        return deadlines;
+    }
+
+    /**
+     * Retrieves the scheduler dispatching work by priority.
+     * @return Returns a PriorityScheduler, or null if work is dispatched in FIFO order.
+     */
+    public PriorityScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Retrieves the maximum number of active listeners.
+     * @return Returns an int, or 0 if listeners are not limited.
+     */
+    public int getMaxActiveListeners() {
+        return maxActiveListeners;
+    }
+
+    /**
+     * Retrieves the time after which a listener which has not been notified is idle.
+     * @return Returns a time in milliseconds.
+     */
+    public long getListenerIdleMillis() {
+        return listenerIdleMillis;
+    }
+
+    /**
+     * Checks if the connection is warmed up after initialization.
+     * @return Returns true if the connection is warmed up, false otherwise.
+     */
+    public boolean isWarmUpConnection() {
+        return warmUpConnection;
+    }
+
+    /**
+     * Retrieves the collections pre-loaded during warm-up.
+     * @return Returns a list of classes.
+     */
+    public List<Class<?>> getWarmUpCollections() {
+        return warmUpCollections;
+    }
+
+    /**
+     * Retrieves the documents pre-loaded during warm-up.
+     * @return Returns a map of classes to document IDs.
+     */
+    public Map<Class<?>, List<String>> getWarmUpDocuments() {
+        return warmUpDocuments;
+    }
+
+    /**
+     * Retrieves the maximum number of documents pre-loaded for each warm-up collection.
+     * @return Returns an integer.
+     */
+    public int getWarmUpLimit() {
+        return warmUpLimit;
+    }
+
+    /**
+     * Retrieves the backend storing documents.
+     * @return Returns a FirestormBackend, or null if Firestore is used.
+     */
+    public FirestormBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Checks if any warm-up work needs to be done.
+     * @return Returns true if there is warm-up work, false otherwise.
+     */
+    boolean hasWarmUp() {
+        return warmUpConnection || !warmUpCollections.isEmpty() || !warmUpDocuments.isEmpty();
+    }
+
+    /**
+     * Applies these settings on top of existing Firestore settings.
+     * @param current The current Firestore settings.
+     * @return Returns FirebaseFirestoreSettings.
+     */
+    FirebaseFirestoreSettings toFirestoreSettings(final FirebaseFirestoreSettings current) {
+        final FirebaseFirestoreSettings.Builder builder = new FirebaseFirestoreSettings.Builder(current);
+        if (persistenceEnabled != null) {
+            builder.setPersistenceEnabled(persistenceEnabled);
+        }
+        if (cacheSizeBytes != null) {
+            builder.setCacheSizeBytes(cacheSizeBytes);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds FirestormSettings.
+     */
+    public static final class Builder {
+
+        private Boolean persistenceEnabled = null;
+        private Long cacheSizeBytes = null;
+        private Executor dispatcher = null;
+        private ScheduledExecutorService timer = null;
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private RetryPolicy transactionRetryPolicy = RetryPolicy.NONE;
+        private FirestormMetrics metrics = null;
+        private boolean payloadEstimation = false;
+        private final List<FirestormInterceptor> interceptors = new ArrayList<>();
+        private File outboxFile = null;
+        private FirestormBackend backend = null;
+        private WriteRateLimiter writeRateLimiter = null;
+        private Deadlines deadlines = null;
+        private PriorityScheduler scheduler = null;
+        private int maxActiveListeners = 0;
+        private long listenerIdleMillis = DEFAULT_LISTENER_IDLE_MILLIS;
+        private boolean warmUpConnection = true;
+        private final List<Class<?>> warmUpCollections = new ArrayList<>();
+        private final Map<Class<?>, List<String>> warmUpDocuments = new LinkedHashMap<>();
+        private int warmUpLimit = DEFAULT_WARM_UP_LIMIT;
+
+        /**
+         * Enables or disables local persistence.
+         * @param persistenceEnabled True to enable persistence, false to disable it.
+         * @return Returns the builder.
+         */
+        public Builder setPersistenceEnabled(final boolean persistenceEnabled) {
+            this.persistenceEnabled = persistenceEnabled;
+            return this;
+        }
+
+        /**
+         * Sets the size of the local cache.
+         * @param cacheSizeBytes The size in bytes, or FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED.
+         * @return Returns the builder.
+         */
+        public Builder setCacheSizeBytes(final long cacheSizeBytes) {
+            this.cacheSizeBytes = cacheSizeBytes;
+            return this;
+        }
+
+        /**
+         * Sets the executor used to dispatch Firestorm operations.
+         * @param dispatcher The executor.
+         * @return Returns the builder.
+         */
+        public Builder setDispatcher(final Executor dispatcher) {
+            this.dispatcher = dispatcher;
+            return this;
+        }
+
+        /**
+         * Sets the executor waiting out delays, such as retry backoff. It only hands the delayed work to the
+         * dispatcher, so a single thread is enough. By default, a shared daemon thread is used.
+         * @param timer The executor, or null to use the shared daemon thread.
+         * @return Returns the builder.
+         */
+        public Builder setTimer(final ScheduledExecutorService timer) {
+            this.timer = timer;
+            return this;
+        }
+
+        /**
+         * Sets the policy used to retry operations failing with transient errors.
+         * @param retryPolicy The retry policy, or RetryPolicy.NONE to disable retries.
+         * @return Returns the builder.
+         */
+        public Builder setRetryPolicy(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the policy used to retry transactions which Firestore could not commit, on top of the retries
+         * Firestore performs itself upon contention.
+         * @param transactionRetryPolicy The retry policy, or RetryPolicy.NONE to disable retries.
+         * @return Returns the builder.
+         */
+        public Builder setTransactionRetryPolicy(final RetryPolicy transactionRetryPolicy) {
+            this.transactionRetryPolicy = transactionRetryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the sink receiving a record for every operation.
+         * @param metrics The metrics sink, or FirestormMetrics.NONE to disable metrics.
+         * @return Returns the builder.
+         */
+        public Builder setMetrics(final FirestormMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Enables or disables recording the approximate size of the documents read and written. Estimating a size
+         * walks the whole document or object, so it adds to the latency being measured and is disabled by default,
+         * in which case payload sizes are recorded as 0.
+         * @param payloadEstimation True to estimate payload sizes, false otherwise.
+         * @return Returns the builder.
+         */
+        public Builder setPayloadEstimation(final boolean payloadEstimation) {
+            this.payloadEstimation = payloadEstimation;
+            return this;
+        }
+
+        /**
+         * Adds an interceptor wrapping every operation. Interceptors run in the order they are added.
+         * @param interceptor The interceptor.
+         * @return Returns the builder.
+         */
+        public Builder addInterceptor(final FirestormInterceptor interceptor) {
+            this.interceptors.add(interceptor);
+            return this;
+        }
+
+        /**
+         * Enables the write outbox, persisting its writes to a journal file.
+         * @param outboxFile The journal file, usually located in the app's files directory.
+         * @return Returns the builder.
+         */
+        public Builder setOutboxFile(final File outboxFile) {
+            this.outboxFile = outboxFile;
+            return this;
+        }
+
+        /**
+         * Sets the backend storing documents, e.g. a MemoryBackend to run without Firestore.
+         * Firestore settings and warm-up only apply when the backend is a FirestoreBackend.
+         * @param backend The backend, or null to use Firestore.
+         * @return Returns the builder.
+         */
+        public Builder setBackend(final FirestormBackend backend) {
+            this.backend = backend;
+            return this;
+        }
+
+        /**
+         * Limits the rate of the updates, deletes and creations with a given ID made to each document, merging the
+         * excess writes to a document into its latest one.
+         * @param writeRateLimiter The limiter, or null to not limit writes (the default).
+         * @return Returns the builder.
+         */
+        public Builder setWriteRateLimiter(final WriteRateLimiter writeRateLimiter) {
+            this.writeRateLimiter = writeRateLimiter;
+            return this;
+        }
+
+        /**
+         * Bounds the time operations take, optionally serving reads from the local cache when they time out.
+         * @param deadlines The deadlines, or null to not bound operations (the default).
+         * @return Returns the builder.
+         */
+        public Builder setDeadlines(final Deadlines deadlines) {
+            this.deadlines = deadlines;
+            return this;
+        }
+
+        /**
+         * Dispatches the work of operations by priority, so that interactive operations are not delayed by
+         * background work.
+         * @param scheduler The scheduler, or null to dispatch work in FIFO order (the default).
+         * @return Returns the builder.
+         */
+        public Builder setScheduler(final PriorityScheduler scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Limits the number of listeners attached through Firestorm. Attaching a listener beyond the limit detaches
+         * the least-recently-notified idle listeners, whose <i>onFailure()</i> is called. Listeners which are not
+         * idle are never detached, so the limit may be exceeded while all listeners are busy.
+         * @param maxActiveListeners The maximum, or 0 to not limit listeners (the default).
+         * @return Returns the builder.
+         */
+        public Builder setMaxActiveListeners(final int maxActiveListeners) {
+            if (maxActiveListeners < 0) {
+                throw new IllegalArgumentException("The maximum number of active listeners cannot be negative.");
+            }
+            this.maxActiveListeners = maxActiveListeners;
+            return this;
+        }
+
+        /**
+         * Sets the time after which a listener which has not been notified is idle, and can be detached when the
+         * maximum number of active listeners is reached.
+         * @param listenerIdleMillis The time in milliseconds. The default is {@value FirestormSettings#DEFAULT_LISTENER_IDLE_MILLIS}.
+         * @return Returns the builder.
+         */
+        public Builder setListenerIdleMillis(final long listenerIdleMillis) {
+            if (listenerIdleMillis < 0) {
+                throw new IllegalArgumentException("The idle time cannot be negative.");
+            }
+            this.listenerIdleMillis = listenerIdleMillis;
+            return this;
+        }
+
+        /**
+         * Enables or disables opening the connection in the background after initialization.
+         * @param warmUpConnection True to warm up the connection, false otherwise.
+         * @return Returns the builder.
+         */
+        public Builder setWarmUpConnection(final boolean warmUpConnection) {
+            this.warmUpConnection = warmUpConnection;
+            return this;
+        }
+
+        /**
+         * Adds collections to pre-load into the local cache during warm-up.
+         * @param classes The classes of the collections.
+         * @return Returns the builder.
+         */
+        public Builder warmUpCollections(final Class<?>... classes) {
+            warmUpCollections.addAll(Arrays.asList(classes));
+            return this;
+        }
+
+        /**
+         * Adds documents to pre-load into the local cache during warm-up.
+         * @param objectClass The class of the documents.
+         * @param documentIDs The IDs of the documents.
+         * @return Returns the builder.
+         */
+        public Builder warmUpDocuments(final Class<?> objectClass, final String... documentIDs) {
+            List<String> ids = warmUpDocuments.get(objectClass);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                warmUpDocuments.put(objectClass, ids);
+            }
+            ids.addAll(Arrays.asList(documentIDs));
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of documents pre-loaded for each warm-up collection.
+         * @param warmUpLimit The limit.
+         * @return Returns the builder.
+         */
+        public Builder setWarmUpLimit(final int warmUpLimit) {
+            if (warmUpLimit <= 0) {
+                throw new IllegalArgumentException("The warm-up limit must be positive.");
+            }
+            this.warmUpLimit = warmUpLimit;
+            return this;
+        }
+
+        /**
+         * Builds the settings.
+         * @return Returns FirestormSettings.
+         */
+        public FirestormSettings build() {
+            return new FirestormSettings(this);
+        }
+
+    }
+
+    /**
+     * Holds the shared timer, which is only created once a delay is first needed.
+     */
+    private static final class DefaultTimer {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "firestorm-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.backend.BackendChange;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.exception.ClassRegistrationException;
+import com.raylabz.firestorm.android.exception.FirestormException;
+import com.raylabz.firestorm.android.exception.NotInitializedException;
+
+import org.reactivestreams.Publisher;
+
+import java.util.List;
+
+/**
+ * Creates reactive-streams publishers of listener updates and paged scans, which respect the demand of their
+ * subscribers and can be composed with any reactive-streams library.
+ * <p>
+ * Listener publishers attach a listener for each subscriber, and detach it when the subscription is cancelled or
+ * fails. The snapshots a slow subscriber has not requested wait in a bounded buffer, configured by
+ * {@link StreamOptions}: once it is full, either the snapshot arriving or the oldest buffered snapshot is dropped.
+ * Snapshots are only converted to objects when they are delivered, so dropped snapshots are never converted. Note
+ * that dropping a list of changes loses those changes; subscribers of change streams which cannot afford to lose
+ * changes should request them without bound or use a large buffer. Listeners attached by publishers count towards
+ * the maximum number of active listeners, and a publisher whose listener is evicted fails with a
+ * {@link FirestormException}.
+ * <p>
+ * Scan publishers fetch the objects of a query page by page, each page only once the subscriber has requested more
+ * objects than are left of the previous page, so a slow subscriber throttles how fast pages are fetched and decoded.
+ * @version 1.4.0
+ */
+public final class FirestormStreams {
+
+    private FirestormStreams() { }
+
+    /**
+     * Publishes an object whenever its document changes, using the default options. Updates to a document which
+     * does not exist are not published.
+     * @param objectClass The type of the object.
+     * @param documentID The ID of the document.
+     * @param <T> The type of the object.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<T> document(final Class<T> objectClass, final String documentID) throws FirestormException {
+        return document(objectClass, documentID, StreamOptions.DEFAULT);
+    }
+
+    /**
+     * Publishes an object whenever its document changes. Updates to a document which does not exist are not
+     * published.
+     * @param objectClass The type of the object.
+     * @param documentID The ID of the document.
+     * @param options The options of the stream.
+     * @param <T> The type of the object.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<T> document(final Class<T> objectClass, final String documentID, final StreamOptions options) throws FirestormException {
+        check(objectClass);
+        final String collection = objectClass.getSimpleName();
+        return new ListenerPublisher<BackendDocument, T>(listener -> Firestorm.backend.addDocumentListener(collection, documentID, listener),
+                document -> document.exists() ? document.toObject(objectClass) : null, options);
+    }
+
+    /**
+     * Publishes the changes to the objects of a class, using the default options.
+     * @param objectClass The class.
+     * @param <T> The type of the objects.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<List<ObjectChange<T>>> changes(final Class<T> objectClass) throws FirestormException {
+        return changes(objectClass, StreamOptions.DEFAULT);
+    }
+
+    /**
+     * Publishes the changes to the objects of a class.
+     * @param objectClass The class.
+     * @param options The options of the stream.
+     * @param <T> The type of the objects.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<List<ObjectChange<T>>> changes(final Class<T> objectClass, final StreamOptions options) throws FirestormException {
+        check(objectClass);
+        final BackendQuery query = new BackendQuery(objectClass.getSimpleName());
+        return new ListenerPublisher<List<BackendChange>, List<ObjectChange<T>>>(listener -> Firestorm.backend.addQueryListener(query, listener),
+                changes -> ObjectChange.fromChanges(changes, objectClass), options);
+    }
+
+    /**
+     * Publishes the changes to the results of a filterable, using the default options.
+     * @param filterable The filterable.
+     * @param <T> The type of the objects.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<List<ObjectChange<T>>> changes(final FirestormFilterable<T> filterable) throws FirestormException {
+        return changes(filterable, StreamOptions.DEFAULT);
+    }
+
+    /**
+     * Publishes the changes to the results of a filterable.
+     * @param filterable The filterable.
+     * @param options The options of the stream.
+     * @param <T> The type of the objects.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<List<ObjectChange<T>>> changes(final FirestormFilterable<T> filterable, final StreamOptions options) throws FirestormException {
+        check(filterable.objectClass);
+        return new ListenerPublisher<>(filterable::addListener,
+                changes -> ObjectChange.fromChanges(changes, filterable.objectClass), options);
+    }
+
+    /**
+     * Publishes all the objects of a class, ordered by document ID and fetched page by page.
+     * @param objectClass The class.
+     * @param pageSize The number of documents fetched per page.
+     * @param <T> The type of the objects.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<T> scan(final Class<T> objectClass, final int pageSize) throws FirestormException {
+        return scan(Paginator.next(objectClass, null, pageSize));
+    }
+
+    /**
+     * Publishes the objects matching a paginator, starting at its position and fetching pages of its size. Every
+     * subscriber scans the results from that position to the end.
+     * @param paginator The paginator.
+     * @param <T> The type of the objects.
+     * @return Returns a Publisher.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    public static <T> Publisher<T> scan(final Paginator<T> paginator) throws FirestormException {
+        check(paginator.getObjectClass());
+        if (paginator.getLimit() < 1) {
+            throw new IllegalArgumentException("The page size must be at least 1.");
+        }
+        return new ScanPublisher<>(paginator.getObjectClass(), paginator.getQuery(), paginator.getLastDocumentID(), paginator.getLimit());
+    }
+
+    /**
+     * Checks that a class can be published.
+     * @param objectClass The class.
+     * @throws FirestormException Thrown when the class is not registered or Firestorm is not initialized.
+     */
+    private static void check(final Class<?> objectClass) throws FirestormException {
+        try {
+            Firestorm.checkRegistration(objectClass);
+        } catch (ClassRegistrationException | NotInitializedException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+}
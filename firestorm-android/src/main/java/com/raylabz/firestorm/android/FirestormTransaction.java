@@ -2,23 +2,39 @@ package com.raylabz.firestorm.android;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.Transaction;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendTransaction;
+import com.raylabz.firestorm.android.backend.FirestoreBackend;
 import com.raylabz.firestorm.android.exception.ClassRegistrationException;
 import com.raylabz.firestorm.android.exception.FirestormException;
 import com.raylabz.firestorm.android.exception.TransactionException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
 
 /**
- * Enables Firestore transactions.
+ * Enables transactions.
  * @author Nicos Kasenides
  * @version 1.0.0
  */
-public abstract class FirestormTransaction<T> extends FirestormOperation<T> implements Transaction.Function<T> {
+public abstract class FirestormTransaction<T> extends FirestormOperation<T> implements Transaction.Function<T>, BackendTransaction.Function<T> {
+
+    private BackendTransaction transaction;
+
+    /**
+     * Caches the documents read during the current attempt of the transaction, by path.
+     */
+    private final HashMap<String, BackendDocument> readCache = new HashMap<>();
 
-    private Transaction transaction;
+    /**
+     * The attempts made to run this transaction, including the retries carried out by Firestore itself.
+     */
+    private final ArrayList<TransactionAttempt> attempts = new ArrayList<>();
+    private TransactionAttempt currentAttempt;
 
     /**
      * Creates a Firestore document from an object as part of a transaction.
@@ -28,9 +44,12 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
     public final void create(final Object object) throws TransactionException {
         try {
             Firestorm.checkRegistration(object);
-            final DocumentReference reference = Firestorm.firestore.collection(object.getClass().getSimpleName()).document();
-            Reflector.setIDField(object, reference.getId());
-            transaction = transaction.set(reference, object);
+            final String collection = object.getClass().getSimpleName();
+            final String id = Firestorm.backend.newDocumentID(collection);
+            Reflector.setIDField(object, id);
+            GeohashFields.apply(object);
+            transaction.set(collection, id, object);
+            recordWrite(collection, id);
         } catch (ClassRegistrationException | IllegalAccessException | NoSuchFieldException e) {
             throw new TransactionException(e);
         }
@@ -38,6 +57,7 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
 
     /**
      * Retrieves an object using its documentID as part of a transaction.
+     * Documents already read during the current attempt of the transaction are served from its read cache.
      * @param objectClass The class of the object.
      * @param documentID The object's document ID.
      * @param <T> The type of the object (same with objectClass).
@@ -46,11 +66,10 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
      */
     public final <T> T get(final Class<T> objectClass, final String documentID) throws TransactionException {
         try {
-            final DocumentReference documentReference = Firestorm.firestore.collection(objectClass.getSimpleName()).document(documentID);
             Firestorm.checkRegistration(objectClass);
-            DocumentSnapshot snapshot = transaction.get(documentReference);
-            if (snapshot.exists()) {
-                return snapshot.toObject(objectClass);
+            final BackendDocument document = read(objectClass, documentID);
+            if (document.exists()) {
+                return document.toObject(objectClass);
             }
             else {
                 return null;
@@ -60,6 +79,55 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
         }
     }
 
+    /**
+     * Retrieves multiple objects using their document IDs as part of a transaction.
+     * Duplicate IDs and documents already read during the current attempt of the transaction are read only once.
+     * @param objectClass The class of the objects.
+     * @param documentIDs The objects' document IDs.
+     * @param <T> The type of the objects (same with objectClass).
+     * @return Returns a list of objects of type T/objectClass, in the order of the IDs provided. Objects that do not exist are null.
+     * @throws TransactionException Thrown when the transaction encounters an error.
+     */
+    public final <T> List<T> getAll(final Class<T> objectClass, final String... documentIDs) throws TransactionException {
+        try {
+            Firestorm.checkRegistration(objectClass);
+            final ArrayList<T> objects = new ArrayList<>(documentIDs.length);
+            for (String documentID : documentIDs) {
+                final BackendDocument document = read(objectClass, documentID);
+                objects.add(document.exists() ? document.toObject(objectClass) : null);
+            }
+            return objects;
+        } catch (ClassRegistrationException | FirebaseFirestoreException e) {
+            throw new TransactionException(e);
+        }
+    }
+
+    /**
+     * Reads a document as part of the transaction, using the read cache of the current attempt.
+     * @param objectClass The class of the object.
+     * @param documentID The object's document ID.
+     * @return Returns a BackendDocument.
+     * @throws FirebaseFirestoreException Thrown when the document cannot be read.
+     */
+    private BackendDocument read(final Class<?> objectClass, final String documentID) throws FirebaseFirestoreException {
+        final String collection = objectClass.getSimpleName();
+        final String path = collection + "/" + documentID;
+        BackendDocument document = readCache.get(path);
+        if (document == null) {
+            document = transaction.get(collection, documentID);
+            readCache.put(path, document);
+            synchronized (attempts) {
+                if (currentAttempt != null) {
+                    currentAttempt.recordRead(path);
+                }
+            }
+            if (getContext() != null) {
+                getContext().addDocumentID(documentID);
+            }
+        }
+        return document;
+    }
+
     /**
      * Updates an object as part of a transaction.
      * @param object The object to update.
@@ -68,9 +136,11 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
     public final void update(final Object object) throws TransactionException {
         try {
             Firestorm.checkRegistration(object);
+            final String collection = object.getClass().getSimpleName();
             final String id = Reflector.getIDField(object);
-            final DocumentReference reference = Firestorm.firestore.collection(object.getClass().getSimpleName()).document(id);
-            transaction = transaction.set(reference, object);
+            GeohashFields.apply(object);
+            transaction.set(collection, id, object);
+            recordWrite(collection, id);
         } catch (IllegalAccessException | NoSuchFieldException | ClassRegistrationException e) {
             throw new TransactionException(e);
         }
@@ -84,9 +154,10 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
     public final void delete(final Object object) throws TransactionException {
         try {
             Firestorm.checkRegistration(object);
+            final String collection = object.getClass().getSimpleName();
             final String id = Reflector.getIDField(object);
-            final DocumentReference reference = Firestorm.firestore.collection(object.getClass().getSimpleName()).document(id);
-            transaction = transaction.delete(reference);
+            transaction.delete(collection, id);
+            recordWrite(collection, id);
             Reflector.setIDField(object, null);
         } catch (IllegalAccessException | ClassRegistrationException | NoSuchFieldException e) {
             throw new TransactionException(e);
@@ -103,28 +174,148 @@ public abstract class FirestormTransaction<T> extends FirestormOperation<T> impl
     public <T> void delete(final Class<T> objectClass, final String objectID) throws TransactionException {
         try {
             Firestorm.checkRegistration(objectClass);
-            final DocumentReference reference = Firestorm.firestore.collection(objectClass.getSimpleName()).document(objectID);
-            transaction = transaction.delete(reference);
+            final String collection = objectClass.getSimpleName();
+            transaction.delete(collection, objectID);
+            recordWrite(collection, objectID);
         } catch (ClassRegistrationException e) {
             throw new TransactionException(e);
         }
     }
 
     /**
-     * Overrides method <b>apply()</b> of the Transaction.Function interface.
+     * Records a document written by the current attempt.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     */
+    private void recordWrite(final String collection, final String documentID) {
+        synchronized (attempts) {
+            if (currentAttempt != null) {
+                currentAttempt.recordWrite(collection + "/" + documentID);
+            }
+        }
+        if (getContext() != null) {
+            getContext().addDocumentID(documentID);
+        }
+    }
+
+    /**
+     * Starts a new attempt. If a previous attempt is still running, Firestore has aborted and retried it.
+     */
+    private void startAttempt() {
+        final TransactionAttempt retriedAttempt;
+        synchronized (attempts) {
+            retriedAttempt = currentAttempt;
+            if (retriedAttempt != null) {
+                retriedAttempt.complete(TransactionAttempt.Outcome.RETRIED, TransactionAttempt.CONTENTION_REASON, null);
+            }
+            currentAttempt = new TransactionAttempt(attempts.size() + 1);
+            attempts.add(currentAttempt);
+        }
+        if (retriedAttempt != null) {
+            onAttempt(retriedAttempt);
+        }
+    }
+
+    /**
+     * Completes the current attempt once Firestore reports the result of the transaction.
+     * @param exception The exception the transaction failed with, or null if it was committed.
+     */
+    void completeAttempt(final Exception exception) {
+        final TransactionAttempt attempt;
+        synchronized (attempts) {
+            attempt = currentAttempt;
+            currentAttempt = null;
+            if (attempt == null) {
+                return;
+            }
+            if (exception == null) {
+                attempt.complete(TransactionAttempt.Outcome.COMMITTED, null, null);
+            }
+            else {
+                final String reason = exception instanceof FirebaseFirestoreException ?
+                        ((FirebaseFirestoreException) exception).getCode() + ": " + exception.getMessage() : exception.getMessage();
+                attempt.complete(TransactionAttempt.Outcome.FAILED, reason, exception);
+            }
+        }
+        onAttempt(attempt);
+    }
+
+    /**
+     * Retrieves the attempts made to run this transaction so far, including the retries carried out by Firestore.
+     * @return Returns a list of attempts.
+     */
+    public final List<TransactionAttempt> getAttempts() {
+        synchronized (attempts) {
+            return new ArrayList<>(attempts);
+        }
+    }
+
+    /**
+     * Retrieves the number of attempts made to run this transaction so far.
+     * @return Returns an integer.
+     */
+    public final int getAttemptCount() {
+        synchronized (attempts) {
+            return attempts.size();
+        }
+    }
+
+    /**
+     * Retrieves the number of documents read and written by the latest attempt of this transaction.
+     * @return Returns an integer.
+     */
+    final int getDocumentCount() {
+        synchronized (attempts) {
+            if (attempts.isEmpty()) {
+                return 0;
+            }
+            final TransactionAttempt attempt = attempts.get(attempts.size() - 1);
+            return attempt.getReads().size() + attempt.getWrites().size();
+        }
+    }
+
+    /**
+     * Executes when an attempt of this transaction completes, whether committed, retried or failed.
+     * Override this method to report contention, e.g. the documents read and written by retried attempts.
+     * @param attempt The completed attempt.
+     */
+    protected void onAttempt(final TransactionAttempt attempt) {
+    }
+
+    /**
+     * Overrides method <b>apply()</b> of the Transaction.Function interface, for transactions run directly through
+     * Firestore.
+     * @param transaction The transaction object.
+     * @return Returns the result of the transaction code.
+     * @throws FirebaseFirestoreException Thrown when a read of the transaction fails, so that Firestore can retry it.
+     */
+    @Nullable
+    @Override
+    public T apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+        return apply(FirestoreBackend.wrap(Firestorm.firestore, transaction));
+    }
+
+    /**
+     * Overrides method <b>apply()</b> of the BackendTransaction.Function interface.
      * Initializes the transaction object used to carry out the transaction and then executes the transaction code
      * provided by the developer.
      * @param transaction The transaction object.
-     * @return Returns null.
+     * @return Returns the result of the transaction code.
+     * @throws FirebaseFirestoreException Thrown when a read of the transaction fails, so that the backend can retry it.
      */
     @Nullable
     @Override
-    public T apply(@NonNull Transaction transaction) throws FirebaseFirestoreException {
+    public T apply(@NonNull BackendTransaction transaction) throws FirebaseFirestoreException {
         this.transaction = transaction;
+        readCache.clear();
+        startAttempt();
         try {
             return managedExecute();
         } catch (FirestormException e) {
-            return null;
+            if (e.getCause() instanceof FirebaseFirestoreException) {
+                throw (FirebaseFirestoreException) e.getCause();
+            }
+            throw e;
         }
     }
 
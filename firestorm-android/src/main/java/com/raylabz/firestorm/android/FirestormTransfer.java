@@ -0,0 +1,399 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.BackendWrite;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams collections to and from NDJSON (one JSON object per line) in constant memory.
+ * Each transfer runs on its own thread, which blocks on reading and writing the stream and on the backend:
+ * <ul>
+ *     <li>Exports read the collection in pages ordered by document ID, fetching the next page while the current one
+ *     is being written.</li>
+ *     <li>Imports parse the input line by line and commit it in batch writes, keeping a bounded number of them in
+ *     flight. The number of input lines durably written can be recorded in a checkpoint file to resume an import.</li>
+ * </ul>
+ * Objects are converted to and from JSON using Gson, like the writes of the {@link FirestormOutbox}.
+ * @version 1.4.0
+ */
+final class FirestormTransfer {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Gson gson = new Gson();
+
+    /**
+     * Private constructor.
+     */
+    private FirestormTransfer() {
+    }
+
+    /**
+     * Exports a collection.
+     * @param objectClass The class of the objects.
+     * @param outputStream The stream the NDJSON is written to. It is flushed but not closed.
+     * @param options The transfer options.
+     * @param <T> The type of the objects.
+     * @return Returns a Task with the number of documents exported.
+     */
+    static <T> Task<Long> export(final Class<T> objectClass, final OutputStream outputStream, final TransferOptions options) {
+        return start(OperationType.EXPORT, objectClass, (context, trace) -> {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+            final BackendQuery query = new BackendQuery(objectClass.getSimpleName()).limit(options.getPageSize());
+            Task<List<BackendDocument>> nextPage = fetch(query);
+            long count = 0;
+            long bytes = 0;
+            while (nextPage != null) {
+                final List<BackendDocument> page = await(nextPage);
+                Firestorm.yieldToInteractive(context);
+                nextPage = page.size() < options.getPageSize() ? null : fetch(query.startAfter(page.get(page.size() - 1)));
+                for (BackendDocument document : page) {
+                    final String line = gson.toJson(document.toObject(objectClass));
+                    writer.write(line);
+                    writer.write('\n');
+                    bytes += utf8Length(line) + 1;
+                    count++;
+                }
+            }
+            writer.flush();
+            trace.received();
+            trace.succeeded((int) Math.min(count, Integer.MAX_VALUE), bytes);
+            return count;
+        });
+    }
+
+    /**
+     * Imports a collection.
+     * @param objectClass The class of the objects.
+     * @param inputStream The stream the NDJSON is read from. It is not closed.
+     * @param options The transfer options.
+     * @param <T> The type of the objects.
+     * @return Returns a Task with the number of documents imported, excluding the ones skipped using the checkpoint.
+     */
+    static <T> Task<Long> importFrom(final Class<T> objectClass, final InputStream inputStream, final TransferOptions options) {
+        return start(OperationType.IMPORT, objectClass, (context, trace) -> {
+            final Import<T> transfer = new Import<>(context, objectClass, options);
+            final long bytes = transfer.run(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+            trace.received();
+            trace.succeeded((int) Math.min(transfer.imported, Integer.MAX_VALUE), bytes);
+            return transfer.imported;
+        });
+    }
+
+    /**
+     * A transfer running on its own thread.
+     */
+    private interface Body {
+
+        /**
+         * Runs the transfer.
+         * @param context The context of the operation.
+         * @param trace The trace of the operation.
+         * @return Returns the number of documents transferred.
+         * @throws Exception Thrown when the transfer fails.
+         */
+        long run(OperationContext context, OperationTrace trace) throws Exception;
+
+    }
+
+    /**
+     * Starts a transfer through the interceptor chain, on a new thread.
+     * @param type The type of the operation.
+     * @param objectClass The class of the objects.
+     * @param body The transfer.
+     * @return Returns a Task with the number of documents transferred.
+     */
+    private static Task<Long> start(final OperationType type, final Class<?> objectClass, final Body body) {
+        final OperationContext context = new OperationContext(type, objectClass);
+        return Firestorm.intercept(context, () -> {
+            final OperationTrace trace = new OperationTrace(type, objectClass);
+            final TaskCompletionSource<Long> source = new TaskCompletionSource<>();
+            final Thread thread = new Thread(() -> {
+                trace.dispatched();
+                try {
+                    source.setResult(body.run(context, trace));
+                } catch (Exception e) {
+                    trace.failed(e);
+                    source.setException(e);
+                }
+            }, "Firestorm-" + type.name().toLowerCase() + "-" + objectClass.getSimpleName());
+            thread.start();
+            return source.getTask();
+        });
+    }
+
+    /**
+     * Fetches a page of documents.
+     * @param query The query of the page.
+     * @return Returns a Task with the documents.
+     */
+    private static Task<List<BackendDocument>> fetch(final BackendQuery query) {
+        return Firestorm.retry(() -> Firestorm.backend.query(query));
+    }
+
+    /**
+     * Waits for a Task on the transfer thread.
+     * @param task The task.
+     * @param <R> The type of the result.
+     * @return Returns the result of the task.
+     * @throws Exception Thrown when the task fails, or the thread is interrupted.
+     */
+    private static <R> R await(final Task<R> task) throws Exception {
+        try {
+            return Tasks.await(task);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Computes the length of a string encoded in UTF-8, as written to and read from the transfer streams.
+     * @param value The string.
+     * @return Returns a number of bytes.
+     */
+    private static long utf8Length(final String value) {
+        final int length = value.length();
+        long utf8Length = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utf8Length += 1;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 2;
+                i++;
+            }
+            else if (!Character.isSurrogate(c)) {
+                utf8Length += 2;
+            }
+        }
+        return utf8Length;
+    }
+
+    /**
+     * The state of an import: the chunks of input in flight and the progress recorded in the checkpoint.
+     * @param <T> The type of the objects.
+     */
+    private static final class Import<T> {
+
+        /**
+         * A chunk of input lines committed as a single batch write.
+         */
+        private static final class Chunk {
+
+            final long lastLine;
+            final int documents;
+            boolean committed = false;
+
+            Chunk(final long lastLine, final int documents) {
+                this.lastLine = lastLine;
+                this.documents = documents;
+            }
+
+        }
+
+        private final OperationContext context;
+        private final Class<T> objectClass;
+        private final String collection;
+        private final TransferOptions options;
+        private final Semaphore slots;
+        private final ArrayDeque<Chunk> inFlight = new ArrayDeque<>();
+        private long imported = 0;
+        private Exception failure = null;
+
+        /**
+         * Constructs an import.
+         * @param context The context of the import.
+         * @param objectClass The class of the objects.
+         * @param options The transfer options.
+         */
+        Import(final OperationContext context, final Class<T> objectClass, final TransferOptions options) {
+            this.context = context;
+            this.objectClass = objectClass;
+            this.collection = objectClass.getSimpleName();
+            this.options = options;
+            this.slots = new Semaphore(options.getParallelism());
+        }
+
+        /**
+         * Reads the input, commits it and waits for the last batch write to complete.
+         * @param reader The input.
+         * @return Returns the number of bytes of the lines imported, in UTF-8.
+         * @throws Exception Thrown when the input is invalid or a batch write fails.
+         */
+        long run(final BufferedReader reader) throws Exception {
+            final long skippedLines = readCheckpoint();
+            long lineNumber = 0;
+            long bytes = 0;
+            ArrayList<BackendWrite> writes = new ArrayList<>(options.getBatchSize());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber <= skippedLines || line.trim().isEmpty()) {
+                    continue;
+                }
+                bytes += utf8Length(line) + 1;
+                writes.add(toWrite(line, lineNumber));
+                if (writes.size() == options.getBatchSize()) {
+                    commit(writes, lineNumber);
+                    writes = new ArrayList<>(options.getBatchSize());
+                }
+            }
+            if (!writes.isEmpty()) {
+                commit(writes, lineNumber);
+            }
+
+            //Wait for the batch writes in flight:
+            slots.acquire(options.getParallelism());
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            if (options.getCheckpointFile() != null && options.getCheckpointFile().exists() && !options.getCheckpointFile().delete()) {
+                throw new IOException("Could not delete the import checkpoint '" + options.getCheckpointFile().getPath() + "'.");
+            }
+            return bytes;
+        }
+
+        /**
+         * Converts a line of input to a write. Objects without an ID are given a new document ID.
+         * @param line The line.
+         * @param lineNumber The number of the line.
+         * @return Returns a BackendWrite.
+         * @throws Exception Thrown when the line is not a valid object.
+         */
+        private BackendWrite toWrite(final String line, final long lineNumber) throws Exception {
+            final T object;
+            try {
+                object = gson.fromJson(line, objectClass);
+            } catch (JsonParseException e) {
+                throw new FirestormException("Invalid object on line " + lineNumber + ": " + e.getMessage());
+            }
+            if (object == null) {
+                throw new FirestormException("Invalid object on line " + lineNumber + ".");
+            }
+            String id = Reflector.getIDField(object);
+            if (id == null || id.isEmpty()) {
+                id = Firestorm.backend.newDocumentID(collection);
+                Reflector.setIDField(object, id);
+            }
+            return BackendWrite.set(collection, id, object);
+        }
+
+        /**
+         * Commits a chunk of input as a batch write, waiting while the maximum number of batch writes is in flight.
+         * @param writes The writes of the chunk.
+         * @param lastLine The number of the last line of the chunk.
+         * @throws Exception Thrown when a previous batch write failed, or the thread is interrupted.
+         */
+        private void commit(final List<BackendWrite> writes, final long lastLine) throws Exception {
+            Firestorm.yieldToInteractive(context);
+            slots.acquire();
+            final Chunk chunk = new Chunk(lastLine, writes.size());
+            synchronized (this) {
+                if (failure != null) {
+                    slots.release();
+                    throw failure;
+                }
+                inFlight.add(chunk);
+            }
+            Firestorm.retry(() -> Firestorm.backend.commit(writes)).addOnCompleteListener(Firestorm.DIRECT, task -> {
+                try {
+                    synchronized (this) {
+                        if (!task.isSuccessful()) {
+                            if (failure == null) {
+                                failure = task.getException() != null ? task.getException() : new FirestormException("Failed to import objects.");
+                            }
+                            return;
+                        }
+                        chunk.committed = true;
+                        long checkpoint = -1;
+                        while (!inFlight.isEmpty() && inFlight.peek().committed) {
+                            final Chunk committedChunk = inFlight.poll();
+                            imported += committedChunk.documents;
+                            checkpoint = committedChunk.lastLine;
+                        }
+                        if (checkpoint >= 0) {
+                            writeCheckpoint(checkpoint);
+                        }
+                    }
+                } catch (IOException e) {
+                    synchronized (this) {
+                        if (failure == null) {
+                            failure = e;
+                        }
+                    }
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+
+        /**
+         * Reads the number of input lines written by a previous import.
+         * @return Returns a number of lines, or 0 if there is no checkpoint.
+         * @throws IOException Thrown when the checkpoint cannot be read.
+         */
+        private long readCheckpoint() throws IOException {
+            final File file = options.getCheckpointFile();
+            if (file == null || !file.exists()) {
+                return 0;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                final String line = reader.readLine();
+                return line != null ? Long.parseLong(line.trim()) : 0;
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid import checkpoint '" + file.getPath() + "'.", e);
+            }
+        }
+
+        /**
+         * Records the number of input lines written, replacing the checkpoint file atomically.
+         * @param lines The number of lines.
+         * @throws IOException Thrown when the checkpoint cannot be written.
+         */
+        private void writeCheckpoint(final long lines) throws IOException {
+            final File file = options.getCheckpointFile();
+            if (file == null) {
+                return;
+            }
+            final File temporaryFile = new File(file.getPath() + ".tmp");
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8))) {
+                writer.write(Long.toString(lines));
+            }
+            if (!temporaryFile.renameTo(file)) {
+                throw new IOException("Could not replace import checkpoint '" + file.getPath() + "'.");
+            }
+        }
+
+    }
+
+}
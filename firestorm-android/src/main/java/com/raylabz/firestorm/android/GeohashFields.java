@@ -0,0 +1,205 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.annotation.GeohashField;
+import com.raylabz.firestorm.android.exception.FirestormException;
+import com.raylabz.firestorm.android.exception.FirestormObjectException;
+import com.raylabz.firestorm.android.geo.Geohash;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes the {@link GeohashField} fields of a class, and computes them from their coordinate fields.
+ * Descriptors are built once per class and cached.
+ * @version 1.4.0
+ */
+final class GeohashFields {
+
+    /**
+     * The maximum number of geohash range queries run to find the objects near a point.
+     */
+    static final int MAX_QUERIES = 9;
+
+    private static final ConcurrentHashMap<Class<?>, GeohashFields> DESCRIPTORS = new ConcurrentHashMap<>();
+
+    private final Class<?> objectClass;
+    private final Field[] geohashFields;
+    private final Field[] latitudeFields;
+    private final Field[] longitudeFields;
+    private final int[] precisions;
+
+    /**
+     * Constructs a descriptor.
+     * @param objectClass The class.
+     * @throws FirestormObjectException Thrown when a geohash field is not a String, or its coordinate fields or
+     * precision are invalid.
+     */
+    private GeohashFields(final Class<?> objectClass) throws FirestormObjectException {
+        this.objectClass = objectClass;
+        final ArrayList<Field> fields = new ArrayList<>();
+        for (Class<?> aClass = objectClass; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()) {
+            for (Field field : aClass.getDeclaredFields()) {
+                if (field.getAnnotation(GeohashField.class) != null && !Modifier.isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+        }
+        geohashFields = new Field[fields.size()];
+        latitudeFields = new Field[fields.size()];
+        longitudeFields = new Field[fields.size()];
+        precisions = new int[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            final Field field = fields.get(i);
+            final GeohashField annotation = field.getAnnotation(GeohashField.class);
+            if (field.getType() != String.class) {
+                throw new FirestormObjectException("The @" + GeohashField.class.getSimpleName() + " field '" + field.getName() + "' of class '"
+                        + objectClass.getSimpleName() + "' must be a String.");
+            }
+            if (annotation.precision() < 1 || annotation.precision() > Geohash.MAX_PRECISION) {
+                throw new FirestormObjectException("The precision of the @" + GeohashField.class.getSimpleName() + " field '" + field.getName()
+                        + "' must be between 1 and " + Geohash.MAX_PRECISION + ", but " + annotation.precision() + " found.");
+            }
+            field.setAccessible(true);
+            geohashFields[i] = field;
+            latitudeFields[i] = coordinateField(annotation.latitude());
+            longitudeFields[i] = coordinateField(annotation.longitude());
+            precisions[i] = annotation.precision();
+        }
+    }
+
+    /**
+     * Retrieves the descriptor of a class, building it when first requested.
+     * @param objectClass The class.
+     * @return Returns a GeohashFields.
+     * @throws FirestormObjectException Thrown when the geohash fields of the class are invalid.
+     */
+    static GeohashFields of(final Class<?> objectClass) throws FirestormObjectException {
+        final GeohashFields cached = DESCRIPTORS.get(objectClass);
+        if (cached != null) {
+            return cached;
+        }
+        final GeohashFields descriptor = new GeohashFields(objectClass);
+        final GeohashFields previous = DESCRIPTORS.putIfAbsent(objectClass, descriptor);
+        return previous != null ? previous : descriptor;
+    }
+
+    /**
+     * Computes the geohash fields of an object from its coordinates. Geohashes of missing coordinates are set to null.
+     * @param object The object.
+     * @throws FirestormException Thrown when the geohash fields of the class of the object are invalid, or its
+     * coordinates are out of range.
+     */
+    static void apply(final Object object) {
+        final GeohashFields descriptor;
+        try {
+            descriptor = of(object.getClass());
+        } catch (FirestormObjectException e) {
+            throw new FirestormException(e);
+        }
+        for (int i = 0; i < descriptor.geohashFields.length; i++) {
+            final Number latitude = descriptor.coordinate(object, descriptor.latitudeFields[i]);
+            final Number longitude = descriptor.coordinate(object, descriptor.longitudeFields[i]);
+            try {
+                final String geohash = latitude != null && longitude != null
+                        ? Geohash.encode(latitude.doubleValue(), longitude.doubleValue(), descriptor.precisions[i]) : null;
+                descriptor.geohashFields[i].set(object, geohash);
+            } catch (IllegalArgumentException e) {
+                throw new FirestormException("Cannot compute the @" + GeohashField.class.getSimpleName() + " field '"
+                        + descriptor.geohashFields[i].getName() + "' of class '" + descriptor.objectClass.getSimpleName() + "': " + e.getMessage());
+            } catch (IllegalAccessException e) {
+                throw new FirestormException(e);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the index of a geohash field.
+     * @param fieldName The name of the field, or null for the only geohash field of the class.
+     * @return Returns the index.
+     * @throws IllegalArgumentException Thrown when there is no such geohash field, or the name is null and the class
+     * does not have exactly one.
+     */
+    int indexOf(final String fieldName) {
+        if (fieldName == null) {
+            if (geohashFields.length != 1) {
+                throw new IllegalArgumentException("The class '" + objectClass.getSimpleName() + "' has " + geohashFields.length
+                        + " @" + GeohashField.class.getSimpleName() + " fields; the field to query must be specified.");
+            }
+            return 0;
+        }
+        for (int i = 0; i < geohashFields.length; i++) {
+            if (geohashFields[i].getName().equals(fieldName)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("The class '" + objectClass.getSimpleName() + "' has no @" + GeohashField.class.getSimpleName()
+                + " field named '" + fieldName + "'.");
+    }
+
+    /**
+     * Retrieves the name of a geohash field.
+     * @param index The index of the field.
+     * @return Returns a field name.
+     */
+    String getName(final int index) {
+        return geohashFields[index].getName();
+    }
+
+    /**
+     * Retrieves the precision of a geohash field.
+     * @param index The index of the field.
+     * @return Returns the number of characters of its geohashes.
+     */
+    int getPrecision(final int index) {
+        return precisions[index];
+    }
+
+    /**
+     * Computes the distance of an object from a point, using the coordinates of a geohash field.
+     * @param object The object.
+     * @param index The index of the geohash field.
+     * @param latitude The latitude of the point, in degrees.
+     * @param longitude The longitude of the point, in degrees.
+     * @return Returns the distance in metres, or infinity if the object has no coordinates.
+     */
+    double distance(final Object object, final int index, final double latitude, final double longitude) {
+        final Number objectLatitude = coordinate(object, latitudeFields[index]);
+        final Number objectLongitude = coordinate(object, longitudeFields[index]);
+        if (objectLatitude == null || objectLongitude == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Geohash.distance(latitude, longitude, objectLatitude.doubleValue(), objectLongitude.doubleValue());
+    }
+
+    /**
+     * Finds a numeric coordinate field of the class.
+     * @param fieldName The name of the field.
+     * @return Returns the field.
+     * @throws FirestormObjectException Thrown when the class has no such numeric field.
+     */
+    private Field coordinateField(final String fieldName) throws FirestormObjectException {
+        for (Class<?> aClass = objectClass; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()) {
+            try {
+                final Field field = aClass.getDeclaredField(fieldName);
+                final Class<?> type = field.getType();
+                if (type != double.class && type != float.class && !Number.class.isAssignableFrom(type)) {
+                    throw new FirestormObjectException("The coordinate field '" + fieldName + "' of class '" + objectClass.getSimpleName() + "' must be a number.");
+                }
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException ignored) {}
+        }
+        throw new FirestormObjectException("The class '" + objectClass.getSimpleName() + "' has no coordinate field named '" + fieldName + "'.");
+    }
+
+    private Number coordinate(final Object object, final Field field) {
+        try {
+            return (Number) field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.List;
+
+/**
+ * Runs an operation through a list of interceptors.
+ * @param <R> The type of the operation's result.
+ * @version 1.4.0
+ */
+final class InterceptorChain<R> implements FirestormInterceptor.Chain<R> {
+
+    private final List<FirestormInterceptor> interceptors;
+    private final int index;
+    private final OperationContext context;
+    private final RetryPolicy.Attempt<R> operation;
+
+    /**
+     * Constructs an InterceptorChain.
+     * @param interceptors The interceptors.
+     * @param index The index of the next interceptor to run.
+     * @param context The context of the operation.
+     * @param operation The operation, run after the last interceptor.
+     */
+    InterceptorChain(final List<FirestormInterceptor> interceptors, final int index, final OperationContext context, final RetryPolicy.Attempt<R> operation) {
+        this.interceptors = interceptors;
+        this.index = index;
+        this.context = context;
+        this.operation = operation;
+    }
+
+    @Override
+    public OperationContext getContext() {
+        return context;
+    }
+
+    @Override
+    public Task<R> proceed() {
+        if (index >= interceptors.size()) {
+            return context.run(operation);
+        }
+        //Interceptors return the task of the chain they were given, or one of the operation's result type:
+        @SuppressWarnings("unchecked")
+        final Task<R> task = (Task<R>) interceptors.get(index).intercept(new InterceptorChain<>(interceptors, index + 1, context, operation));
+        return task;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Task;
+
+/**
+ * Runs requests of which only the latest one matters, such as the reads issued on every keystroke of a type-ahead
+ * search: starting a request cancels the previous one, so that its results are neither decoded nor delivered.
+ * <p>
+ * For example: <i>latest.run(token -&gt; Firestorm.filter(User.class).whereEqualTo("name", text).fetch(token))</i>.
+ * @param <R> The type of the requests' results.
+ * @version 1.4.0
+ */
+public final class LatestOnly<R> {
+
+    /**
+     * A cancellable request.
+     * @param <R> The type of the request's result.
+     */
+    public interface Request<R> {
+
+        /**
+         * Starts the request.
+         * @param token The token cancelled when a newer request starts.
+         * @return Returns the Task of the request.
+         */
+        Task<R> start(CancellationToken token);
+
+    }
+
+    private CancellationTokenSource current;
+
+    /**
+     * Cancels the previous request and starts a new one.
+     * @param request The request.
+     * @return Returns the Task of the request, which is cancelled if a newer request starts before it completes.
+     */
+    public Task<R> run(final Request<R> request) {
+        return request.start(next());
+    }
+
+    /**
+     * Cancels the previous request and creates the token of a new one.
+     * @return Returns a CancellationToken.
+     */
+    public synchronized CancellationToken next() {
+        if (current != null) {
+            current.cancel();
+        }
+        current = new CancellationTokenSource();
+        return current.getToken();
+    }
+
+    /**
+     * Cancels the latest request, e.g. when the screen issuing the requests is closed.
+     */
+    public synchronized void cancel() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+
+}
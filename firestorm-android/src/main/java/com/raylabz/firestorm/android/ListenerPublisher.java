@@ -0,0 +1,238 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the snapshots delivered to a backend listener, which is attached for each subscriber and detached when
+ * the subscription is cancelled or fails.
+ * <p>
+ * Snapshots the subscriber has not requested wait in a bounded buffer, and are only converted to objects when they
+ * are delivered, so snapshots dropped on overflow are never converted.
+ * @param <V> The type of the snapshots delivered to the listener.
+ * @param <T> The type of the items published.
+ * @version 1.4.0
+ */
+final class ListenerPublisher<V, T> implements Publisher<T> {
+
+    /**
+     * Converts the snapshots delivered to the listener to published items.
+     * @param <V> The type of the snapshots.
+     * @param <T> The type of the items.
+     */
+    interface Decoder<V, T> {
+
+        /**
+         * Converts a snapshot.
+         * @param value The snapshot.
+         * @return Returns the item, or null if the snapshot is not published.
+         */
+        T decode(V value);
+
+    }
+
+    private final ListenerRegistry.Attacher<V> attacher;
+    private final Decoder<V, T> decoder;
+    private final StreamOptions options;
+
+    /**
+     * Creates a ListenerPublisher.
+     * @param attacher Attaches the listener to the backend.
+     * @param decoder Converts the snapshots to published items.
+     * @param options The options of the stream.
+     */
+    ListenerPublisher(final ListenerRegistry.Attacher<V> attacher, final Decoder<V, T> decoder, final StreamOptions options) {
+        this.attacher = attacher;
+        this.decoder = decoder;
+        this.options = options;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber cannot be null.");
+        }
+        final ListenerSubscription subscription = new ListenerSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.attach();
+    }
+
+    /**
+     * The subscription of a subscriber, which buffers the snapshots it has not requested.
+     */
+    private final class ListenerSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final ArrayDeque<V> buffer = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private ListenerRegistration registration;
+        private Throwable error;
+        private volatile boolean cancelled;
+
+        ListenerSubscription(final Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Attaches the listener, unless the subscription was cancelled meanwhile.
+         */
+        void attach() {
+            final ListenerRegistration attached;
+            try {
+                attached = Firestorm.listeners.attach(attacher, this::onEvent,
+                        message -> fail(new FirestormException(message)));
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            synchronized (this) {
+                if (!cancelled && error == null) {
+                    registration = attached;
+                    return;
+                }
+            }
+            attached.remove();
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("The number of items requested must be positive."));
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    break;
+                }
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            detach();
+        }
+
+        /**
+         * Buffers a snapshot delivered to the listener, dropping a snapshot if the buffer is full.
+         * @param value The snapshot.
+         * @param e The error of the listener, or null.
+         */
+        private void onEvent(final V value, final Exception e) {
+            if (e != null) {
+                fail(e);
+                return;
+            }
+            if (value == null) {
+                return;
+            }
+            synchronized (this) {
+                if (cancelled || error != null) {
+                    return;
+                }
+                if (buffer.size() >= options.getBufferSize()) {
+                    if (options.getOverflow() == StreamOptions.Overflow.DROP) {
+                        return;
+                    }
+                    buffer.poll();
+                }
+                buffer.add(value);
+            }
+            drain();
+        }
+
+        /**
+         * Fails the subscription, discarding the buffered snapshots. Errors are delivered whether or not the
+         * subscriber has requested items.
+         * @param e The error.
+         */
+        private void fail(final Throwable e) {
+            synchronized (this) {
+                if (error != null) {
+                    return;
+                }
+                error = e;
+                buffer.clear();
+            }
+            detach();
+            drain();
+        }
+
+        /**
+         * Detaches the listener and discards the buffered snapshots.
+         */
+        private void detach() {
+            final ListenerRegistration detached;
+            synchronized (this) {
+                detached = registration;
+                registration = null;
+                if (cancelled) {
+                    buffer.clear();
+                }
+            }
+            if (detached != null) {
+                detached.remove();
+            }
+        }
+
+        /**
+         * Delivers the buffered snapshots while the subscriber has requested items. Only one thread delivers at a
+         * time; the others leave their work to it.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                while (!cancelled) {
+                    final V value;
+                    final Throwable e;
+                    synchronized (this) {
+                        e = error;
+                        value = e == null && requested.get() > 0 ? buffer.poll() : null;
+                    }
+                    if (e != null) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (value == null) {
+                        break;
+                    }
+                    final T item;
+                    try {
+                        item = decoder.decode(value);
+                    } catch (RuntimeException decodingError) {
+                        fail(decodingError);
+                        continue;
+                    }
+                    if (item != null) {
+                        if (requested.get() != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        subscriber.onNext(item);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
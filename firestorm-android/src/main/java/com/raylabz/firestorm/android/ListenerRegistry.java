@@ -0,0 +1,379 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import com.raylabz.firestorm.android.backend.BackendListener;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Tracks the listeners attached through Firestorm.
+ * <p>
+ * Object listeners are keyed by the identity of the objects they listen for, which are only weakly referenced:
+ * once an object is garbage collected, its listeners are detached automatically, at the latest when they are next
+ * notified. Class listeners are keyed by class.
+ * Every listener records when it was last notified, so that when a budget of active listeners is set in the
+ * settings, attaching a listener beyond the budget detaches the least-recently-notified idle listeners first.
+ * @version 1.4.0
+ */
+final class ListenerRegistry {
+
+    /**
+     * Attaches a backend listener.
+     * @param <V> The type of the values delivered to the listener.
+     */
+    interface Attacher<V> {
+
+        /**
+         * Attaches the listener to the backend.
+         * @param listener The listener.
+         * @return Returns the backend's ListenerRegistration.
+         */
+        ListenerRegistration attach(BackendListener<V> listener);
+
+    }
+
+    /**
+     * Tells a listener it was detached by the registry.
+     */
+    interface Eviction {
+
+        /**
+         * Called when the listener is detached because the budget of active listeners was exceeded.
+         * @param message The reason.
+         */
+        void onFailure(String message);
+
+    }
+
+    private static final String EVICTED_MESSAGE = "The listener was detached because the maximum number of active listeners was reached.";
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final HashMap<WeakKey, List<Registration>> objectRegistrations = new HashMap<>();
+    private final HashMap<Class<?>, List<Registration>> classRegistrations = new HashMap<>();
+    private final LinkedHashSet<Registration> active = new LinkedHashSet<>();
+
+    /**
+     * Attaches a listener for an object, which is referenced weakly.
+     * @param object The object.
+     * @param attacher Attaches the listener to the backend.
+     * @param listener The listener.
+     * @param eviction Told when the listener is evicted.
+     * @param <V> The type of the values delivered to the listener.
+     * @return Returns the ListenerRegistration of the listener.
+     */
+    <V> ListenerRegistration attachObject(final Object object, final Attacher<V> attacher, final BackendListener<V> listener, final Eviction eviction) {
+        return attach(new WeakKey(object, queue), attacher, listener, eviction);
+    }
+
+    /**
+     * Attaches a listener for a class.
+     * @param objectClass The class.
+     * @param attacher Attaches the listener to the backend.
+     * @param listener The listener.
+     * @param eviction Told when the listener is evicted.
+     * @param <V> The type of the values delivered to the listener.
+     * @return Returns the ListenerRegistration of the listener.
+     */
+    <V> ListenerRegistration attachClass(final Class<?> objectClass, final Attacher<V> attacher, final BackendListener<V> listener, final Eviction eviction) {
+        return attach(objectClass, attacher, listener, eviction);
+    }
+
+    /**
+     * Attaches a listener which is not keyed, e.g. a reference or filterable listener.
+     * @param attacher Attaches the listener to the backend.
+     * @param listener The listener.
+     * @param eviction Told when the listener is evicted.
+     * @param <V> The type of the values delivered to the listener.
+     * @return Returns the ListenerRegistration of the listener.
+     */
+    <V> ListenerRegistration attach(final Attacher<V> attacher, final BackendListener<V> listener, final Eviction eviction) {
+        return attach(null, attacher, listener, eviction);
+    }
+
+    /**
+     * Attaches a listener, evicting idle listeners first if the budget of active listeners is reached.
+     * @param key The key of the listener: a WeakKey, a class, or null.
+     * @param attacher Attaches the listener to the backend.
+     * @param listener The listener.
+     * @param eviction Told when the listener is evicted.
+     * @param <V> The type of the values delivered to the listener.
+     * @return Returns the ListenerRegistration of the listener.
+     */
+    private <V> ListenerRegistration attach(final Object key, final Attacher<V> attacher, final BackendListener<V> listener, final Eviction eviction) {
+        expunge();
+        final List<Registration> evicted = evict();
+        for (Registration registration : evicted) {
+            registration.eviction.onFailure(EVICTED_MESSAGE);
+        }
+
+        final Registration registration = new Registration(key, eviction);
+        final ListenerRegistration attached = attacher.attach((value, error) -> {
+            //The object was garbage collected, so its listener is detached right away:
+            if (key instanceof WeakKey && ((WeakKey) key).get() == null) {
+                registration.remove();
+                return;
+            }
+            registration.lastNotifiedNanos = System.nanoTime();
+            listener.onEvent(value, error);
+            expunge();
+        });
+        synchronized (this) {
+            if (!registration.removed) {
+                registration.delegate = attached;
+                active.add(registration);
+                if (key instanceof WeakKey) {
+                    registration.key = register(objectRegistrations, (WeakKey) key, registration);
+                }
+                else if (key instanceof Class) {
+                    registration.key = register(classRegistrations, (Class<?>) key, registration);
+                }
+                return registration;
+            }
+        }
+        //The listener was removed by its first event, before the backend returned its registration:
+        attached.remove();
+        return registration;
+    }
+
+    /**
+     * Retrieves the latest listener attached for an object.
+     * @param object The object.
+     * @return Returns a ListenerRegistration, or null if no listener is attached for the object.
+     */
+    synchronized ListenerRegistration get(final Object object) {
+        final List<Registration> registrations = objectRegistrations.get(new WeakKey(object, null));
+        return registrations != null ? registrations.get(registrations.size() - 1) : null;
+    }
+
+    /**
+     * Detaches the listeners attached for an object.
+     * @param object The object.
+     */
+    void detachObject(final Object object) {
+        final List<Registration> registrations;
+        synchronized (this) {
+            registrations = objectRegistrations.get(new WeakKey(object, null));
+        }
+        detachAll(registrations);
+        expunge();
+    }
+
+    /**
+     * Detaches the listeners attached for a class.
+     * @param objectClass The class.
+     */
+    void detachClass(final Class<?> objectClass) {
+        final List<Registration> registrations;
+        synchronized (this) {
+            registrations = classRegistrations.get(objectClass);
+        }
+        detachAll(registrations);
+        expunge();
+    }
+
+    /**
+     * Retrieves the number of active listeners.
+     * @return Returns an int.
+     */
+    int size() {
+        expunge();
+        synchronized (this) {
+            return active.size();
+        }
+    }
+
+    /**
+     * Detaches a list of listeners.
+     * @param registrations The listeners, or null.
+     */
+    private void detachAll(final List<Registration> registrations) {
+        if (registrations == null) {
+            return;
+        }
+        final ArrayList<Registration> copy;
+        synchronized (this) {
+            copy = new ArrayList<>(registrations);
+        }
+        for (Registration registration : copy) {
+            registration.remove();
+        }
+    }
+
+    /**
+     * Detaches the listeners of the objects which were garbage collected.
+     */
+    private void expunge() {
+        Reference<?> reference;
+        while ((reference = queue.poll()) != null) {
+            final List<Registration> registrations;
+            synchronized (this) {
+                registrations = objectRegistrations.get(reference);
+            }
+            detachAll(registrations);
+        }
+    }
+
+    /**
+     * Removes the least-recently-notified idle listeners while the budget of active listeners is reached.
+     * Listeners are never evicted before they have been idle for the configured time, so the budget may be
+     * exceeded while all listeners are busy.
+     * @return Returns the evicted listeners, already detached.
+     */
+    private List<Registration> evict() {
+        final FirestormSettings settings = Firestorm.getSettings();
+        final int maxActiveListeners = settings.getMaxActiveListeners();
+        final ArrayList<Registration> evicted = new ArrayList<>();
+        if (maxActiveListeners <= 0) {
+            return evicted;
+        }
+        final long idleNanos = settings.getListenerIdleMillis() * 1000000;
+        while (true) {
+            final long now = System.nanoTime();
+            Registration leastRecent = null;
+            synchronized (this) {
+                if (active.size() < maxActiveListeners) {
+                    break;
+                }
+                for (Registration registration : active) {
+                    if (now - registration.lastNotifiedNanos >= idleNanos
+                            && (leastRecent == null || registration.lastNotifiedNanos < leastRecent.lastNotifiedNanos)) {
+                        leastRecent = registration;
+                    }
+                }
+            }
+            if (leastRecent == null) {
+                break;
+            }
+            leastRecent.remove();
+            evicted.add(leastRecent);
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes a listener from the registry. Must be called while synchronized.
+     * @param registration The listener.
+     */
+    private void unregister(final Registration registration) {
+        active.remove(registration);
+        if (registration.key instanceof WeakKey) {
+            unregister(objectRegistrations, (WeakKey) registration.key, registration);
+        }
+        else if (registration.key instanceof Class) {
+            unregister(classRegistrations, (Class<?>) registration.key, registration);
+        }
+    }
+
+    /**
+     * Adds a listener to the list of listeners of a key, creating the list if needed. Must be called while
+     * synchronized.
+     * @param map The map of listeners.
+     * @param key The key.
+     * @param registration The listener.
+     * @param <K> The type of the key.
+     * @return Returns the key the list is stored under, which all the listeners of the list share.
+     */
+    @SuppressWarnings("unchecked")
+    private static <K> K register(final HashMap<K, List<Registration>> map, final K key, final Registration registration) {
+        List<Registration> registrations = map.get(key);
+        if (registrations == null) {
+            registrations = new ArrayList<>(1);
+            map.put(key, registrations);
+            registrations.add(registration);
+            return key;
+        }
+        registrations.add(registration);
+        return (K) registrations.get(0).key;
+    }
+
+    /**
+     * Removes a listener from the list of listeners of a key, and the list once it is empty. Must be called while
+     * synchronized.
+     * @param map The map of listeners.
+     * @param key The key.
+     * @param registration The listener.
+     * @param <K> The type of the key.
+     */
+    private static <K> void unregister(final HashMap<K, List<Registration>> map, final K key, final Registration registration) {
+        final List<Registration> registrations = map.get(key);
+        if (registrations != null) {
+            registrations.remove(registration);
+            if (registrations.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * The registration of a listener attached through Firestorm, which removes the listener from the registry
+     * when it is removed.
+     */
+    private final class Registration implements ListenerRegistration {
+
+        private Object key;
+        private final Eviction eviction;
+        private ListenerRegistration delegate;
+        private volatile long lastNotifiedNanos = System.nanoTime();
+        private boolean removed;
+
+        Registration(final Object key, final Eviction eviction) {
+            this.key = key;
+            this.eviction = eviction;
+        }
+
+        @Override
+        public void remove() {
+            final ListenerRegistration attached;
+            synchronized (ListenerRegistry.this) {
+                if (removed) {
+                    return;
+                }
+                removed = true;
+                unregister(this);
+                attached = delegate;
+            }
+            if (attached != null) {
+                attached.remove();
+            }
+        }
+
+    }
+
+    /**
+     * A weak reference to an object, compared by the identity of the object.
+     */
+    private static final class WeakKey extends WeakReference<Object> {
+
+        private final int hashCode;
+
+        WeakKey(final Object object, final ReferenceQueue<Object> queue) {
+            super(object, queue);
+            this.hashCode = System.identityHashCode(object);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WeakKey)) {
+                return false;
+            }
+            final Object object = get();
+            return object != null && object == ((WeakKey) other).get();
+        }
+
+    }
+
+}
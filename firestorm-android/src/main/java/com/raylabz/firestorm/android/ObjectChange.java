@@ -2,7 +2,12 @@ package com.raylabz.firestorm.android;
 
 import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.raylabz.firestorm.android.backend.BackendChange;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -38,6 +43,23 @@ public class ObjectChange<T> {
             throw new NoSuchElementException("Invalid DocumentChange.Type provided");
         }
 
+        /**
+         * Converts a BackendChange.Type into the corresponding ObjectChange.Type.
+         * @param t The backend change type.
+         * @return Returns a type.
+         */
+        public static Type fromBackendChangeType(BackendChange.Type t) {
+            switch (t) {
+                case ADDED:
+                    return ADDED;
+                case MODIFIED:
+                    return MODIFIED;
+                case REMOVED:
+                    return REMOVED;
+            }
+            throw new NoSuchElementException("Invalid BackendChange.Type provided");
+        }
+
     }
 
     final T object;
@@ -62,6 +84,35 @@ public class ObjectChange<T> {
         this.type = type;
     }
 
+    /**
+     * Maps the document changes delivered by a backend to object changes.
+     * @param changes The document changes.
+     * @param objectClass The class of the objects.
+     * @param <T> The type of the objects.
+     * @return Returns a list of object changes.
+     */
+    static <T> ArrayList<ObjectChange<T>> fromChanges(final List<BackendChange> changes, final Class<T> objectClass) {
+        ArrayList<ObjectChange<T>> objectChanges = new ArrayList<>(changes.size());
+        for (BackendChange change : changes) {
+            final BackendDocument document = change.getDocument();
+            ObjectChange<T> objectChange = new ObjectChange<T>(document.toObject(objectClass), snapshotOf(document), change.getOldIndex(), change.getNewIndex(), Type.fromBackendChangeType(change.getType()));
+            objectChanges.add(objectChange);
+        }
+        return objectChanges;
+    }
+
+    /**
+     * Retrieves the Firestore snapshot of a changed document.
+     * @param document The document.
+     * @return Returns a QueryDocumentSnapshot, or null if the document was not read from Firestore.
+     */
+    private static QueryDocumentSnapshot snapshotOf(final BackendDocument document) {
+        if (document instanceof FirestoreDocument && ((FirestoreDocument) document).getSnapshot() instanceof QueryDocumentSnapshot) {
+            return (QueryDocumentSnapshot) ((FirestoreDocument) document).getSnapshot();
+        }
+        return null;
+    }
+
     /**
      * Retrieves the object returned.
      * @return Returns an object.
@@ -72,7 +123,7 @@ public class ObjectChange<T> {
 
     /**
      * Retrieves the updated object's document.
-     * @return Returns a {@link QueryDocumentSnapshot}.
+     * @return Returns a {@link QueryDocumentSnapshot}, or null if the document was not read from Firestore.
      */
     public QueryDocumentSnapshot getDocument() {
         return document;
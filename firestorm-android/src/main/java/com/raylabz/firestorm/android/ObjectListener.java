@@ -3,12 +3,13 @@ package com.raylabz.firestorm.android;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
 import com.raylabz.firestorm.android.exception.ClassRegistrationException;
 
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.util.ArrayList;
 
 /**
  * Implements logic for Firestore update events.
@@ -20,16 +21,17 @@ public abstract class ObjectListener implements EventListener<DocumentSnapshot>
     private static final String NO_SNAPSHOT_EXISTS_MESSAGE = "This object does not exist [No snapshot].";
 
     /**
-     * The listener is listening for changes to this object.
+     * The listener is listening for changes to this object, which is referenced weakly so that a listener does not
+     * keep it from being garbage collected.
      */
-    private final Object objectToListenFor;
+    private final WeakReference<Object> objectToListenFor;
 
     /**
      * Instantiates a FirestormEventListener.
      * @param object The object to attach the listener to.
      */
     public ObjectListener(final Object object) {
-        this.objectToListenFor = object;
+        this.objectToListenFor = new WeakReference<>(object);
     }
 
     /**
@@ -39,6 +41,19 @@ public abstract class ObjectListener implements EventListener<DocumentSnapshot>
      */
     @Override
     public final void onEvent(@Nullable DocumentSnapshot documentSnapshot, @Nullable FirebaseFirestoreException e) {
+        onDocument(documentSnapshot != null ? new FirestoreDocument(documentSnapshot) : null, e);
+    }
+
+    /**
+     * Executes when the backend delivers an update to the document listened to.
+     * @param document The document retrieved upon update.
+     * @param e An exception thrown by the backend if the data retrieval was not successful.
+     */
+    final void onDocument(@Nullable BackendDocument document, @Nullable Exception e) {
+        final Object objectToListenFor = this.objectToListenFor.get();
+        if (objectToListenFor == null) {
+            return;
+        }
         if (e != null) {
             onFailure(e.getMessage());
             return;
@@ -64,8 +79,8 @@ public abstract class ObjectListener implements EventListener<DocumentSnapshot>
             return;
         }
 
-        if (documentSnapshot != null && documentSnapshot.exists()) {
-            Object fetchedObject = documentSnapshot.toObject(objectToListenFor.getClass());
+        if (document != null && document.exists()) {
+            Object fetchedObject = document.toObject(objectToListenFor.getClass());
 
             if (fetchedObject != null) {
                 if (fetchedObject.getClass() != objectToListenFor.getClass()) {
@@ -73,38 +88,12 @@ public abstract class ObjectListener implements EventListener<DocumentSnapshot>
                     return;
                 }
 
-                //Retrieve values for fields for this class:
-                final Field[] declaredFields = objectToListenFor.getClass().getDeclaredFields();
-                for (Field f : declaredFields) {
-                    if (!Modifier.isStatic(f.getModifiers())) {
-                        try {
-                            final boolean accessible = f.isAccessible();
-                            f.setAccessible(true);
-                            final Object valueOfFetchedObject = f.get(fetchedObject);
-                            f.set(objectToListenFor, valueOfFetchedObject);
-                            f.setAccessible(accessible);
-                        } catch (IllegalAccessException ex) {
-                            onFailure(ex.getMessage());
-                            return;
-                        }
-                    }
-                }
-
-                //Retrieve values for non-static fields for this class' superclasses:
-                final ArrayList<Field> superclassFields = Reflector.getSuperclassFields(objectToListenFor.getClass(), Object.class);
-                for (Field f : superclassFields) {
-                    if (!Modifier.isStatic(f.getModifiers())) {
-                        try {
-                            final boolean accessible = f.isAccessible();
-                            f.setAccessible(true);
-                            final Object valueOfFetchedObject = f.get(fetchedObject);
-                            f.set(objectToListenFor, valueOfFetchedObject);
-                            f.setAccessible(accessible);
-                        } catch (IllegalAccessException ex) {
-                            onFailure(ex.getMessage());
-                            return;
-                        }
-                    }
+                //Retrieve values for the fields of this class and its superclasses:
+                try {
+                    Reflector.copyFields(fetchedObject, objectToListenFor);
+                } catch (IllegalAccessException ex) {
+                    onFailure(ex.getMessage());
+                    return;
                 }
 
                 onSuccess();
@@ -121,10 +110,10 @@ public abstract class ObjectListener implements EventListener<DocumentSnapshot>
 
     /**
      * Returns the object being listened at by this listener.
-     * @return Returns the object being listened at by this listener.
+     * @return Returns the object being listened at by this listener, or null if it was garbage collected.
      */
     public Object getObjectToListenFor() {
-        return objectToListenFor;
+        return objectToListenFor.get();
     }
 
     /**
@@ -0,0 +1,227 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes an operation passing through the interceptor chain: its type, the class and document IDs it concerns
+ * and the time it started. Interceptors can also share state through the context's attributes.
+ * @version 1.4.0
+ */
+public final class OperationContext {
+
+    /**
+     * The context of the operation running on each thread, if any.
+     */
+    private static final ThreadLocal<OperationContext> CURRENT = new ThreadLocal<>();
+
+    private final OperationType type;
+    private final Class<?> objectClass;
+    private final LinkedHashSet<String> documentIDs = new LinkedHashSet<>();
+    private final long startTimeMillis;
+    private final long startNanos;
+    private volatile long deadlineMillis;
+    private volatile Priority priority;
+    private final ConcurrentHashMap<String, Object> attributes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an OperationContext.
+     * @param type The type of the operation.
+     * @param objectClass The class of the objects the operation works on, or null if it spans several classes.
+     * @param documentIDs The IDs of the documents the operation works on, if known in advance.
+     */
+    OperationContext(final OperationType type, final Class<?> objectClass, final String... documentIDs) {
+        this.type = type;
+        this.objectClass = objectClass;
+        this.startTimeMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.priority = Priority.of(type);
+        for (String documentID : documentIDs) {
+            addDocumentID(documentID);
+        }
+    }
+
+    /**
+     * Constructs an OperationContext.
+     * @param type The type of the operation.
+     * @param objectClass The class of the objects the operation works on, or null if it spans several classes.
+     * @param documentIDs The IDs of the documents the operation works on.
+     */
+    OperationContext(final OperationType type, final Class<?> objectClass, final Collection<String> documentIDs) {
+        this(type, objectClass);
+        for (String documentID : documentIDs) {
+            addDocumentID(documentID);
+        }
+    }
+
+    /**
+     * Adds the ID of a document the operation works on. Used by transactions, whose documents become known as they run.
+     * @param documentID The document ID.
+     */
+    void addDocumentID(final String documentID) {
+        if (documentID == null) {
+            return;
+        }
+        synchronized (documentIDs) {
+            documentIDs.add(documentID);
+        }
+    }
+
+    /**
+     * Retrieves the type of the operation.
+     * @return Returns an OperationType.
+     */
+    public OperationType getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the class of the objects the operation works on.
+     * @return Returns a class, or null if the operation spans several classes (batches and transactions).
+     */
+    public Class<?> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Retrieves the IDs of the documents the operation works on. Queries have no document IDs.
+     * @return Returns a list of document IDs.
+     */
+    public List<String> getDocumentIDs() {
+        synchronized (documentIDs) {
+            return Collections.unmodifiableList(new ArrayList<>(documentIDs));
+        }
+    }
+
+    /**
+     * Retrieves the time the operation started.
+     * @return Returns a time in milliseconds since the epoch.
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * Retrieves the time elapsed since the operation started.
+     * @return Returns a time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Sets the deadline of the operation.
+     * @param deadlineMillis The time the operation may take since it started, in milliseconds, or 0 for no deadline.
+     */
+    void setDeadlineMillis(final long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Retrieves the deadline of the operation, set from the {@link Deadlines} of the settings.
+     * @return Returns the time the operation may take since it started, in milliseconds, or 0 if it has no deadline.
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Retrieves the time left until the deadline of the operation.
+     * @return Returns a time in milliseconds, which is 0 once the deadline has passed, or Long.MAX_VALUE if the
+     * operation has no deadline.
+     */
+    public long getRemainingMillis() {
+        if (deadlineMillis <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineMillis - getElapsedNanos() / 1000000);
+    }
+
+    /**
+     * Retrieves the priority of the operation.
+     * @return Returns a Priority.
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the operation. Interceptors may change it before proceeding.
+     * @param priority The priority.
+     */
+    public void setPriority(final Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("The priority cannot be null.");
+        }
+        this.priority = priority;
+    }
+
+    /**
+     * Runs an operation, making this context the current context of the calling thread while it starts.
+     * @param operation The operation.
+     * @param <R> The type of the operation's result.
+     * @return Returns the Task of the operation.
+     */
+    <R> Task<R> run(final RetryPolicy.Attempt<R> operation) {
+        final OperationContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return operation.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            }
+            else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the context of the operation being started on the calling thread.
+     * @return Returns an OperationContext, or null if no operation is being started.
+     */
+    static OperationContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets an attribute, used by interceptors to share state.
+     * @param key The key of the attribute.
+     * @param value The value of the attribute, or null to remove it.
+     */
+    public void setAttribute(final String key, final Object value) {
+        if (value == null) {
+            attributes.remove(key);
+        }
+        else {
+            attributes.put(key, value);
+        }
+    }
+
+    /**
+     * Retrieves an attribute.
+     * @param key The key of the attribute.
+     * @return Returns the value of the attribute, or null if it is not set.
+     */
+    public Object getAttribute(final String key) {
+        return attributes.get(key);
+    }
+
+    @Override
+    public String toString() {
+        return "OperationContext{" +
+                "type=" + type +
+                ", objectClass=" + (objectClass != null ? objectClass.getSimpleName() : null) +
+                ", documentIDs=" + getDocumentIDs() +
+                ", startTimeMillis=" + startTimeMillis +
+                '}';
+    }
+
+}
@@ -0,0 +1,255 @@
+package com.raylabz.firestorm.android;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.exception.DeadlineExceededException;
+import com.raylabz.firestorm.android.metrics.FirestormMetrics;
+import com.raylabz.firestorm.android.metrics.OperationRecord;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the phases of a single operation and reports it to the configured metrics sink.
+ * The phases are: waiting to be dispatched, waiting for Firestore (network) and converting documents to objects (decoding).
+ * @version 1.4.0
+ */
+final class OperationTrace {
+
+    /**
+     * The maximum depth of nested objects walked when estimating payload sizes.
+     */
+    private static final int MAX_ESTIMATION_DEPTH = 8;
+
+    /**
+     * The error code recorded for cancelled operations.
+     */
+    static final String CANCELLED = "CANCELLED";
+
+    /**
+     * The error code recorded for operations which did not complete before their deadline.
+     */
+    static final String DEADLINE_EXCEEDED = "DEADLINE_EXCEEDED";
+
+    private final OperationType type;
+    private final Class<?> objectClass;
+    private final long createdNanos;
+    private long dispatchedNanos = -1;
+    private long receivedNanos = -1;
+
+    /**
+     * Starts tracing an operation.
+     * @param type The type of the operation.
+     * @param objectClass The class of the objects the operation works on, or null.
+     */
+    OperationTrace(final OperationType type, final Class<?> objectClass) {
+        this.type = type;
+        this.objectClass = objectClass;
+        this.createdNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the dispatch wait and the start of the network phase.
+     */
+    void dispatched() {
+        dispatchedNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the network phase and the start of decoding.
+     */
+    void received() {
+        receivedNanos = System.nanoTime();
+    }
+
+    /**
+     * Checks if payload sizes need to be estimated: only when enabled in the settings, and never when metrics are
+     * disabled.
+     * @return Returns true if payload sizes are estimated, false otherwise.
+     */
+    boolean isEstimatingPayload() {
+        final FirestormSettings settings = Firestorm.getSettings();
+        return settings.isPayloadEstimation() && settings.getMetrics() != FirestormMetrics.NONE;
+    }
+
+    /**
+     * Completes the trace of a successful operation.
+     * @param documentCount The number of documents read or written.
+     * @param payloadBytes The approximate size of the documents read or written.
+     */
+    void succeeded(final int documentCount, final long payloadBytes) {
+        report(documentCount, payloadBytes, null);
+    }
+
+    /**
+     * Completes the trace of a failed operation.
+     * @param exception The exception the operation failed with.
+     */
+    void failed(final Exception exception) {
+        report(0, 0, errorCodeOf(exception));
+    }
+
+    /**
+     * Completes the trace of an operation cancelled before its results were delivered.
+     */
+    void cancelled() {
+        report(0, 0, CANCELLED);
+    }
+
+    /**
+     * Reports an operation which did not complete before its deadline. The operation itself is still reported when
+     * it completes, so that the latency of the backend remains visible.
+     * @param context The context of the operation.
+     */
+    static void expired(final OperationContext context) {
+        final FirestormMetrics metrics = Firestorm.getMetrics();
+        if (metrics == FirestormMetrics.NONE) {
+            return;
+        }
+        metrics.record(new OperationRecord(context.getType(), context.getObjectClass(), 0, context.getElapsedNanos(), 0, 0, 0, DEADLINE_EXCEEDED));
+    }
+
+    /**
+     * Reports the trace to the metrics sink.
+     * @param documentCount The number of documents read or written.
+     * @param payloadBytes The approximate size of the documents.
+     * @param errorCode The error code, or null.
+     */
+    private void report(final int documentCount, final long payloadBytes, final String errorCode) {
+        final FirestormMetrics metrics = Firestorm.getMetrics();
+        if (metrics == FirestormMetrics.NONE) {
+            return;
+        }
+        final long now = System.nanoTime();
+        final long dispatched = dispatchedNanos >= 0 ? dispatchedNanos : createdNanos;
+        final long received = receivedNanos >= 0 ? receivedNanos : now;
+        metrics.record(new OperationRecord(type, objectClass, dispatched - createdNanos, received - dispatched, now - received, documentCount, payloadBytes, errorCode));
+    }
+
+    /**
+     * Retrieves the error code of an exception.
+     * @param exception The exception.
+     * @return Returns the Firestore error code if the exception was caused by Firestore, otherwise the exception's name.
+     */
+    static String errorCodeOf(final Exception exception) {
+        if (exception == null) {
+            return "UNKNOWN";
+        }
+        if (exception instanceof DeadlineExceededException) {
+            return DEADLINE_EXCEEDED;
+        }
+        Throwable current = exception;
+        while (current != null) {
+            if (current instanceof FirebaseFirestoreException) {
+                return ((FirebaseFirestoreException) current).getCode().name();
+            }
+            current = current.getCause();
+        }
+        return exception.getClass().getSimpleName();
+    }
+
+    /**
+     * Estimates the stored size of documents, following the Firestore storage size rules.
+     * @param documents The documents.
+     * @return Returns a size in bytes.
+     */
+    static long estimate(final List<? extends BackendDocument> documents) {
+        long size = 0;
+        for (BackendDocument document : documents) {
+            size += estimate(document);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the stored size of a document, following the Firestore storage size rules.
+     * @param document The document.
+     * @return Returns a size in bytes.
+     */
+    static long estimate(final BackendDocument document) {
+        if (document == null || !document.exists()) {
+            return 0;
+        }
+        return document.getPath().length() + 16 + 32 + estimateValue(document.getData(), 0);
+    }
+
+    /**
+     * Estimates the stored size of an object written to Firestore.
+     * @param object The object.
+     * @return Returns a size in bytes.
+     */
+    static long estimateObject(final Object object) {
+        return 32 + estimateValue(object, 0);
+    }
+
+    /**
+     * Estimates the stored size of a value.
+     * @param value The value.
+     * @param depth The depth of the value in the document.
+     * @return Returns a size in bytes.
+     */
+    private static long estimateValue(final Object value, final int depth) {
+        if (value == null || value instanceof Boolean) {
+            return 1;
+        }
+        if (value instanceof String) {
+            return ((String) value).length() + 1;
+        }
+        if (value instanceof Number || value instanceof Date || value instanceof Enum) {
+            return 8;
+        }
+        if (depth >= MAX_ESTIMATION_DEPTH) {
+            return 0;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 1 + estimateValue(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 0;
+            for (Object item : (Collection<?>) value) {
+                size += estimateValue(item, depth + 1);
+            }
+            return size;
+        }
+        if (value.getClass().isArray()) {
+            final int length = Array.getLength(value);
+            if (value.getClass().getComponentType().isPrimitive()) {
+                return 8L * length;
+            }
+            long size = 0;
+            for (int i = 0; i < length; i++) {
+                size += estimateValue(Array.get(value, i), depth + 1);
+            }
+            return size;
+        }
+        if (value.getClass().getName().startsWith("com.google.firebase")) {
+            //Timestamps, GeoPoints, Blobs and DocumentReferences:
+            return 16;
+        }
+        long size = 0;
+        for (Field field : Reflector.getSuperclassFields(value.getClass(), Object.class)) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                continue;
+            }
+            try {
+                final boolean accessible = field.isAccessible();
+                field.setAccessible(true);
+                final Object fieldValue = field.get(value);
+                field.setAccessible(accessible);
+                size += field.getName().length() + 1 + estimateValue(fieldValue, depth + 1);
+            } catch (IllegalAccessException ignored) {
+            }
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.raylabz.firestorm.android;
+
+/**
+ * The types of operations carried out by Firestorm.
+ * @version 1.4.0
+ */
+public enum OperationType {
+
+    CREATE(false),
+    GET(true),
+    GET_MANY(true),
+    EXISTS(true),
+    UPDATE(false),
+    DELETE(false),
+    LIST(true),
+    FETCH(true),
+    PAGINATE(true),
+    BATCH(false),
+    TRANSACTION(false),
+    EXPORT(true),
+    IMPORT(false),
+    CUSTOM(false)
+    ;
+
+    private final boolean read;
+
+    /**
+     * Constructs an OperationType.
+     * @param read True if the operation only reads data, false otherwise.
+     */
+    OperationType(final boolean read) {
+        this.read = read;
+    }
+
+    /**
+     * Checks if the operation only reads data.
+     * @return Returns true for reads, false for writes, batches and transactions.
+     */
+    public boolean isRead() {
+        return read;
+    }
+
+}
@@ -1,18 +1,20 @@
 package com.raylabz.firestorm.android;
 
-import android.os.Handler;
-
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.Query;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
 import com.raylabz.firestorm.android.exception.FirestormException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -27,7 +29,7 @@ public class Paginator<T> implements Filterable<T> {
     private final int DEFAULT_LIMIT = 10;
     private final Class<T> objectClass;
     private String lastDocumentID = null;
-    private Query query;
+    private BackendQuery query;
     private int limit = DEFAULT_LIMIT;
 
     /**
@@ -36,7 +38,7 @@ public class Paginator<T> implements Filterable<T> {
      * @param objectClass The type of objects returned by the Paginator.
      */
     private Paginator(Class<T> objectClass, final String lastDocumentID) {
-        query = Firestorm.firestore.collection(objectClass.getSimpleName());
+        query = new BackendQuery(objectClass.getSimpleName());
         this.objectClass = objectClass;
         this.lastDocumentID = lastDocumentID;
     }
@@ -69,7 +71,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereEqualTo(@Nonnull String field, @Nullable Object value) {
-        query = query.whereEqualTo(field, value);
+        query = query.where(field, BackendQuery.Operator.EQUAL, value);
         return this;
     }
 
@@ -82,7 +84,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereEqualTo(@Nonnull FieldPath fieldPath, @Nullable Object value) {
-        query = query.whereEqualTo(fieldPath, value);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.EQUAL, value);
         return this;
     }
 
@@ -95,7 +97,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereLessThan(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereLessThan(field, value);
+        query = query.where(field, BackendQuery.Operator.LESS_THAN, value);
         return this;
     }
 
@@ -108,7 +110,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereLessThan(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereLessThan(fieldPath, value);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.LESS_THAN, value);
         return this;
     }
 
@@ -121,7 +123,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereLessThanOrEqualTo(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereLessThanOrEqualTo(field, value);
+        query = query.where(field, BackendQuery.Operator.LESS_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -134,7 +136,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereLessThanOrEqualTo(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereLessThanOrEqualTo(fieldPath, value);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.LESS_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -147,7 +149,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereGreaterThan(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereGreaterThan(field, value);
+        query = query.where(field, BackendQuery.Operator.GREATER_THAN, value);
         return this;
     }
 
@@ -160,7 +162,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereGreaterThan(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereGreaterThan(fieldPath, value);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.GREATER_THAN, value);
         return this;
     }
 
@@ -173,7 +175,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereGreaterThanOrEqualTo(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereGreaterThanOrEqualTo(field, value);
+        query = query.where(field, BackendQuery.Operator.GREATER_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -186,7 +188,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereGreaterThanOrEqualTo(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereGreaterThanOrEqualTo(fieldPath, value);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.GREATER_THAN_OR_EQUAL, value);
         return this;
     }
 
@@ -199,7 +201,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereArrayContains(@Nonnull String field, @Nonnull Object value) {
-        query = query.whereArrayContains(field, value);
+        query = query.where(field, BackendQuery.Operator.ARRAY_CONTAINS, value);
         return this;
     }
 
@@ -212,7 +214,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereArrayContains(@Nonnull FieldPath fieldPath, @Nonnull Object value) {
-        query = query.whereArrayContains(fieldPath, value);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.ARRAY_CONTAINS, value);
         return this;
     }
 
@@ -225,7 +227,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereArrayContainsAny(@Nonnull String field, @Nonnull List<?> values) {
-        query = query.whereArrayContainsAny(field, values);
+        query = query.where(field, BackendQuery.Operator.ARRAY_CONTAINS_ANY, values);
         return this;
     }
 
@@ -238,7 +240,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereArrayContainsAny(@Nonnull FieldPath fieldPath, @Nonnull List<?> values) {
-        query = query.whereArrayContainsAny(fieldPath, values);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.ARRAY_CONTAINS_ANY, values);
         return this;
     }
 
@@ -251,7 +253,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereIn(@Nonnull String field, @Nonnull List<?> values) {
-        query = query.whereIn(field, values);
+        query = query.where(field, BackendQuery.Operator.IN, values);
         return this;
     }
 
@@ -264,7 +266,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereIn(@Nonnull FieldPath fieldPath, @Nonnull List<?> values) {
-        query = query.whereIn(fieldPath, values);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.IN, values);
         return this;
     }
 
@@ -277,7 +279,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereNotIn(@Nonnull String field, @Nonnull List<?> values) {
-        query = query.whereNotIn(field, values);
+        query = query.where(field, BackendQuery.Operator.NOT_IN, values);
         return this;
     }
 
@@ -290,7 +292,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> whereNotIn(@Nonnull FieldPath fieldPath, @Nonnull List<?> values) {
-        query = query.whereNotIn(fieldPath, values);
+        query = query.where(BackendQuery.fieldPathOf(fieldPath.toString()), BackendQuery.Operator.NOT_IN, values);
         return this;
     }
 
@@ -302,7 +304,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> orderBy(@Nonnull String field) {
-        query = query.orderBy(field);
+        query = query.orderBy(field, false);
         return this;
     }
 
@@ -314,7 +316,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> orderBy(@Nonnull FieldPath fieldPath) {
-        query = query.orderBy(fieldPath);
+        query = query.orderBy(BackendQuery.fieldPathOf(fieldPath.toString()), false);
         return this;
     }
 
@@ -327,7 +329,7 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> orderBy(@Nonnull String field, @Nonnull Query.Direction direction) {
-        query = query.orderBy(field, direction);
+        query = query.orderBy(field, direction == Query.Direction.DESCENDING);
         return this;
     }
 
@@ -340,78 +342,144 @@ public class Paginator<T> implements Filterable<T> {
      */
     @Nonnull
     public Paginator<T> orderBy(@Nonnull FieldPath fieldPath, @Nonnull Query.Direction direction) {
-        query = query.orderBy(fieldPath, direction);
+        query = query.orderBy(BackendQuery.fieldPathOf(fieldPath.toString()), direction == Query.Direction.DESCENDING);
         return this;
     }
 
 
     @Override
     public Task<QueryResult<T>> fetch() {
+        return fetch(null);
+    }
 
-        TaskCompletionSource<QueryResult<T>> queryResultSource = new TaskCompletionSource<>();
-        new Handler().post(() -> {
-
-            //If there is a last document, set the query to start after it:
-            if (lastDocumentID != null) {
-
-                DocumentReference lastDocumentReference = Firestorm.firestore.collection(objectClass.getSimpleName()).document(lastDocumentID);
-
-                lastDocumentReference.get().addOnCompleteListener(task -> {
-                    if (task.isSuccessful()) {
-                        DocumentSnapshot lastDocumentSnapshot = task.getResult();
-                        if (lastDocumentSnapshot != null) {
-                            query = query.startAfter(lastDocumentSnapshot);
-                        }
-                        runQuery(queryResultSource);
+    /**
+     * Fetches the page. Once the token is cancelled, the returned task is cancelled and the results are neither
+     * converted to objects nor delivered.
+     * @param token The cancellation token, or null.
+     * @return Returns a Task with the results of the page.
+     */
+    @Override
+    public Task<QueryResult<T>> fetch(final CancellationToken token) {
+        return Firestorm.intercept(new OperationContext(OperationType.PAGINATE, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.PAGINATE, objectClass);
+            TaskCompletionSource<QueryResult<T>> queryResultSource = Firestorm.completionSource(token);
+            Firestorm.dispatch(() -> {
+                if (Firestorm.isCancelled(token, trace)) {
+                    return;
+                }
+                trace.dispatched();
+                fetchPage(objectClass, query, lastDocumentID, limit, queryResultSource, trace, token, "Failed to run Paginator.", documents -> {
+                    List<T> objects = Firestorm.toObjects(documents, objectClass);
+                    QueryResult<T> queryResult;
+                    if (!documents.isEmpty()) {
+                        queryResult = new QueryResult<>(objects, FirestoreDocument.snapshotsOf(documents), documents.get(documents.size() - 1).getId());
                     }
                     else {
-                        if (task.getException() != null) {
-                            queryResultSource.setException(task.getException());
-                        } else {
-                            queryResultSource.setException(new FirestormException("Failed to run Paginator."));
-                        }
+                        queryResult = new QueryResult<>(objects, new ArrayList<>(), null);
                     }
+                    trace.succeeded(objects.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(documents) : 0);
+                    queryResultSource.trySetResult(queryResult);
                 });
+            });
+
+            return queryResultSource.getTask();
+        });
+
+    }
+
+    /**
+     * Fetches a page of a query, starting after the document with an ID if it exists. Shared by paginators and the
+     * publishers of scans, from the dispatched work of a PAGINATE operation.
+     * @param objectClass The type of objects of the query.
+     * @param query The query, without a limit.
+     * @param lastDocumentID The ID of the document the page starts after, or null to start at the first document.
+     * @param limit The number of documents of the page.
+     * @param source The task completion source of the operation, which fails if the page cannot be fetched.
+     * @param trace The trace of the operation.
+     * @param token The cancellation token, or null.
+     * @param failure The message of the exception the operation fails with if the backend reports none.
+     * @param listener Receives the documents of the page, unless the operation is cancelled.
+     */
+    static void fetchPage(final Class<?> objectClass, final BackendQuery query, final String lastDocumentID, final int limit,
+                          final TaskCompletionSource<?> source, final OperationTrace trace, final CancellationToken token,
+                          final String failure, final OnSuccessListener<List<BackendDocument>> listener) {
+        //Without a last document, the page starts at the first document:
+        if (lastDocumentID == null) {
+            queryPage(query.limit(limit), source, trace, token, failure, listener);
+            return;
+        }
+        Firestorm.retry(() -> Firestorm.backend.get(objectClass.getSimpleName(), lastDocumentID)).addOnCompleteListener(task -> {
+            if (Firestorm.isCancelled(token, trace)) {
+                return;
+            }
+            if (task.isSuccessful()) {
+                final BackendDocument lastDocument = task.getResult();
+                final BackendQuery pageQuery = lastDocument != null && lastDocument.exists() ? query.startAfter(lastDocument) : query;
+                queryPage(pageQuery.limit(limit), source, trace, token, failure, listener);
             }
             else {
-                runQuery(queryResultSource);
+                trace.failed(task.getException());
+                source.trySetException(task.getException() != null ? task.getException() : new FirestormException(failure));
             }
         });
-
-        return queryResultSource.getTask();
-
     }
 
     /**
-     * Runs the query and retrieves the results.
-     * @param queryResultSource The task completion source.
+     * Runs the query of a page and retrieves its documents.
+     * @param limitedQuery The query of the page, with its limit.
+     * @param source The task completion source of the operation.
+     * @param trace The trace of the operation.
+     * @param token The cancellation token, or null.
+     * @param failure The message of the exception the operation fails with if the backend reports none.
+     * @param listener Receives the documents of the page.
      */
-    private void runQuery(TaskCompletionSource<QueryResult<T>> queryResultSource) {
-        //Query limits:
-        query = query.limit(limit);
-
-        //Run the query and return the results:
-        query.get().addOnCompleteListener(task -> {
+    private static void queryPage(final BackendQuery limitedQuery, final TaskCompletionSource<?> source, final OperationTrace trace,
+                                  final CancellationToken token, final String failure, final OnSuccessListener<List<BackendDocument>> listener) {
+        Firestorm.retry(() -> Firestorm.backend.query(limitedQuery)).addOnCompleteListener(task -> {
+            trace.received();
+            if (Firestorm.isCancelled(token, trace)) {
+                return;
+            }
             if (task.isSuccessful()) {
-                List<T> objects = task.getResult().toObjects(objectClass);
-                List<DocumentSnapshot> documents = task.getResult().getDocuments();
-                QueryResult<T> queryResult;
-                if (!documents.isEmpty()) {
-                    queryResult = new QueryResult<>(objects, documents, documents.get(documents.size() - 1).getId());
-                }
-                else {
-                    queryResult = new QueryResult<>(objects, documents, null);
-                }
-                queryResultSource.setResult(queryResult);
+                listener.onSuccess(task.getResult());
             }
             else {
-                if (task.getException() != null) {
-                    queryResultSource.setException(task.getException());
-                } else {
-                    queryResultSource.setException(new FirestormException("Failed to run Paginator."));
-                }
+                trace.failed(task.getException());
+                source.trySetException(task.getException() != null ? task.getException() : new FirestormException(failure));
             }
         });
     }
 
+    /**
+     * Retrieves the type of objects returned by the paginator.
+     * @return Returns a class.
+     */
+    Class<T> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Retrieves the query of the paginator, without its limit.
+     * @return Returns a BackendQuery.
+     */
+    BackendQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Retrieves the ID of the document the pages start after.
+     * @return Returns a document ID, or null if the pages start at the first document.
+     */
+    String getLastDocumentID() {
+        return lastDocumentID;
+    }
+
+    /**
+     * Retrieves the number of results of each page.
+     * @return Returns an integer.
+     */
+    int getLimit() {
+        return limit;
+    }
+
 }
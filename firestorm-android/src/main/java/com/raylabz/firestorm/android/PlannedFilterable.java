@@ -0,0 +1,145 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.firestore.Query;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
+import com.raylabz.firestorm.android.backend.Predicate;
+import com.raylabz.firestorm.android.backend.QueryPlan;
+import com.raylabz.firestorm.android.backend.QueryPlanner;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fetches the objects matching a {@link Predicate}, which may combine disjunctions, range filters on several fields
+ * and IN lists of any length. The predicate is decomposed by the {@link QueryPlanner} into queries which run in
+ * parallel on the backend Firestorm was initialized with, and whose results are merged in order.
+ * @param <T> The type of objects this filterable is able to interact with.
+ * @version 1.4.0
+ */
+public class PlannedFilterable<T> implements Filterable<T> {
+
+    private final Class<T> objectClass;
+    private final Predicate predicate;
+    private BackendQuery backendQuery;
+
+    /**
+     * Instantiates a PlannedFilterable.
+     * @param predicate The predicate the objects must match.
+     * @param objectClass The type of objects this filterable can interact with.
+     */
+    public PlannedFilterable(@Nonnull final Predicate predicate, @Nonnull final Class<T> objectClass) {
+        this.objectClass = objectClass;
+        this.predicate = predicate;
+        this.backendQuery = new BackendQuery(objectClass.getSimpleName());
+    }
+
+    /**
+     * Orders results by a field.
+     * @param field The field.
+     * @return Returns a filterable.
+     */
+    @Nonnull
+    public PlannedFilterable<T> orderBy(@Nonnull String field) {
+        backendQuery = backendQuery.orderBy(field, false);
+        return this;
+    }
+
+    /**
+     * Orders results by a field in a specified direction.
+     * @param field The field.
+     * @param direction The direction (ascending/descending) of ordering.
+     * @return Returns a filterable.
+     */
+    @Nonnull
+    public PlannedFilterable<T> orderBy(@Nonnull String field, @Nonnull Query.Direction direction) {
+        backendQuery = backendQuery.orderBy(field, direction == Query.Direction.DESCENDING);
+        return this;
+    }
+
+    /**
+     * Limits the number of results.
+     * @param limit The maximum number of results to fetch.
+     * @return Returns a filterable.
+     */
+    @Nonnull
+    public PlannedFilterable<T> limit(int limit) {
+        backendQuery = backendQuery.limit(limit);
+        return this;
+    }
+
+    /**
+     * Retrieves the plan the results are fetched with.
+     * @return Returns a QueryPlan.
+     */
+    public QueryPlan getPlan() {
+        return QueryPlanner.plan(backendQuery, predicate);
+    }
+
+    /**
+     * Fetches the results of the filterable.
+     * @return Returns a Task with the results, in the order of the filterable.
+     */
+    @Override
+    public Task<QueryResult<T>> fetch() {
+        return fetch(null);
+    }
+
+    /**
+     * Fetches the results of the filterable. Once the token is cancelled, the returned task is cancelled and the
+     * results are neither converted to objects nor delivered.
+     * @param token The cancellation token, or null.
+     * @return Returns a Task with the results, in the order of the filterable.
+     */
+    @Override
+    public Task<QueryResult<T>> fetch(final CancellationToken token) {
+        return Firestorm.intercept(new OperationContext(OperationType.FETCH, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.FETCH, objectClass);
+            TaskCompletionSource<QueryResult<T>> source = Firestorm.completionSource(token);
+            final QueryPlan plan = getPlan();
+            Firestorm.dispatch(() -> {
+                if (Firestorm.isCancelled(token, trace)) {
+                    return;
+                }
+                trace.dispatched();
+                Firestorm.retry(() -> plan.execute(Firestorm.backend)).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (Firestorm.isCancelled(token, trace)) {
+                        return;
+                    }
+                    if (task.isSuccessful()) {
+                        List<BackendDocument> documents = task.getResult();
+                        List<T> objects = Firestorm.toObjects(documents, objectClass);
+                        QueryResult<T> queryResult;
+                        if (objects.isEmpty()) {
+                            queryResult = new QueryResult<>(new ArrayList<>(), null, null);
+                        }
+                        else {
+                            queryResult = new QueryResult<T>(objects, FirestoreDocument.snapshotsOf(documents), documents.get(documents.size() - 1).getId());
+                        }
+
+                        trace.succeeded(objects.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(documents) : 0);
+                        source.trySetResult(queryResult);
+                    }
+                    else {
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.trySetException(task.getException());
+                        }
+                        else {
+                            source.trySetException(new FirestormException("Failed to retrieve items."));
+                        }
+                    }
+                });
+            });
+            return source.getTask();
+        }, cache -> getPlan().execute(cache).continueWith(Firestorm.DIRECT, task -> QueryResult.stale(task.getResult(), objectClass)));
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+
+/**
+ * The priority of a Firestorm operation, used by the {@link PriorityScheduler} to decide which operations are
+ * dispatched first.
+ * <p>
+ * Operations are started with the priority of the block they are started in, e.g.
+ * <i>Priority.INTERACTIVE.run(() -&gt; Firestorm.get(User.class, id))</i>. Otherwise, exports and imports are
+ * {@link #BACKGROUND} and all other operations are {@link #NORMAL}. Interceptors may change the priority of an
+ * operation through its {@link OperationContext}.
+ * @version 1.4.0
+ */
+public enum Priority {
+
+    /**
+     * Operations the user is waiting on, such as the reads filling the current screen.
+     */
+    INTERACTIVE,
+
+    /**
+     * Operations without particular urgency.
+     */
+    NORMAL,
+
+    /**
+     * Operations nobody is waiting on, such as synchronization, exports and imports, which yield to interactive
+     * operations.
+     */
+    BACKGROUND
+    ;
+
+    /**
+     * A block of code starting operations.
+     * @param <R> The type of the block's result.
+     */
+    public interface Block<R> {
+
+        /**
+         * Runs the block.
+         * @return Returns the Task of the operations started.
+         */
+        Task<R> start();
+
+    }
+
+    /**
+     * The priority of the block running on each thread, if any.
+     */
+    private static final ThreadLocal<Priority> SCOPE = new ThreadLocal<>();
+
+    /**
+     * Runs a block of code, starting the operations it starts on the calling thread with this priority.
+     * @param block The block.
+     * @param <R> The type of the block's result.
+     * @return Returns the Task returned by the block.
+     */
+    public <R> Task<R> run(final Block<R> block) {
+        final Priority previous = SCOPE.get();
+        SCOPE.set(this);
+        try {
+            return block.start();
+        } finally {
+            if (previous == null) {
+                SCOPE.remove();
+            }
+            else {
+                SCOPE.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the priority an operation starts with.
+     * @param type The type of the operation.
+     * @return Returns the priority of the block running on the calling thread, or the default priority of the type.
+     */
+    static Priority of(final OperationType type) {
+        final Priority scoped = SCOPE.get();
+        if (scoped != null) {
+            return scoped;
+        }
+        return type == OperationType.EXPORT || type == OperationType.IMPORT ? BACKGROUND : NORMAL;
+    }
+
+}
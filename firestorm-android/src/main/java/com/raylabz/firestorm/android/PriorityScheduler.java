@@ -0,0 +1,313 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches the work of Firestorm operations by {@link Priority} instead of in FIFO order, so that a background
+ * synchronization queueing hundreds of writes does not delay the read the user is waiting on.
+ * <p>
+ * Work waits in one FIFO queue per priority, and at most a fixed number of units of work are handed to the
+ * dispatcher at once. When a slot is free, the oldest unit of the highest priority is dispatched. Work ages while it
+ * waits: every aging period it has waited raises it by one priority, so that normal and background work are never
+ * starved, however much interactive work arrives.
+ * <p>
+ * Background work also yields to interactive operations: it is not dispatched while interactive operations are
+ * waiting or in flight, unless it has aged. Exports and imports pause between pages and batch writes, and the
+ * outbox between batches, for the same reason.
+ * <p>
+ * A scheduler is set using <i>FirestormSettings.Builder.setScheduler()</i>. It dispatches work using the dispatcher
+ * of the settings, or on the main thread if no dispatcher is set, and waits for yielding work to age using the timer
+ * of the settings.
+ * @version 1.4.0
+ */
+public final class PriorityScheduler {
+
+    /**
+     * The default maximum number of units of work dispatched at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+
+    /**
+     * The default time after which waiting work is raised by one priority, in milliseconds.
+     */
+    public static final long DEFAULT_AGING_MILLIS = 500;
+
+    /**
+     * Tracks the completion of interactive operations on the thread completing them.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private final int maxConcurrent;
+    private final long agingMillis;
+    private final ArrayDeque<Queued>[] queues;
+    private int running;
+    private int interactiveInFlight;
+    private boolean wakeUpScheduled;
+
+    /**
+     * Constructs a scheduler from a builder.
+     * @param builder The builder.
+     */
+    @SuppressWarnings("unchecked")
+    private PriorityScheduler(final Builder builder) {
+        this.maxConcurrent = builder.maxConcurrent;
+        this.agingMillis = builder.agingMillis;
+        this.queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Retrieves the maximum number of units of work dispatched at once.
+     * @return Returns an int.
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Retrieves the time after which waiting work is raised by one priority.
+     * @return Returns a time in milliseconds.
+     */
+    public long getAgingMillis() {
+        return agingMillis;
+    }
+
+    /**
+     * Retrieves the number of units of work waiting with a priority.
+     * @param priority The priority.
+     * @return Returns an int.
+     */
+    public synchronized int getQueued(final Priority priority) {
+        return queues[priority.ordinal()].size();
+    }
+
+    /**
+     * Retrieves the number of units of work dispatched and not yet finished.
+     * @return Returns an int.
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Retrieves the number of interactive operations started and not yet completed.
+     * @return Returns an int.
+     */
+    public synchronized int getInteractiveInFlight() {
+        return interactiveInFlight;
+    }
+
+    /**
+     * Queues a unit of work, and dispatches it when a slot is free and no work of a higher priority is waiting.
+     * @param priority The priority of the work.
+     * @param runnable The work.
+     */
+    void execute(final Priority priority, final Runnable runnable) {
+        synchronized (this) {
+            queues[priority.ordinal()].add(new Queued(runnable, System.nanoTime()));
+        }
+        drain();
+    }
+
+    /**
+     * Tracks an operation, so that background work yields to it until it completes if it is interactive.
+     * @param priority The priority of the operation.
+     * @param task The task of the operation.
+     */
+    void track(final Priority priority, final Task<?> task) {
+        if (priority != Priority.INTERACTIVE || task.isComplete()) {
+            return;
+        }
+        synchronized (this) {
+            interactiveInFlight++;
+        }
+        task.addOnCompleteListener(DIRECT, result -> {
+            synchronized (this) {
+                interactiveInFlight--;
+                notifyAll();
+            }
+            drain();
+        });
+    }
+
+    /**
+     * Blocks the calling thread while interactive operations are waiting or in flight, for at most the aging period.
+     * Used by long-running background operations between steps. Does nothing for other priorities.
+     * @param context The context of the operation.
+     * @throws InterruptedException Thrown when the thread is interrupted.
+     */
+    void yieldToInteractive(final OperationContext context) throws InterruptedException {
+        if (context.getPriority() != Priority.BACKGROUND) {
+            return;
+        }
+        final long deadlineNanos = System.nanoTime() + agingMillis * 1000000;
+        synchronized (this) {
+            while (isInteractiveActive()) {
+                final long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return;
+                }
+                wait(remainingNanos / 1000000 + 1);
+            }
+        }
+    }
+
+    /**
+     * Checks if interactive operations are waiting or in flight. Must be called while synchronized.
+     * @return Returns true if background work must yield, false otherwise.
+     */
+    private boolean isInteractiveActive() {
+        return interactiveInFlight > 0 || !queues[Priority.INTERACTIVE.ordinal()].isEmpty();
+    }
+
+    /**
+     * Dispatches waiting work while slots are free.
+     */
+    private void drain() {
+        while (true) {
+            final Queued next;
+            synchronized (this) {
+                if (running >= maxConcurrent) {
+                    return;
+                }
+                next = poll(System.nanoTime());
+                if (next == null) {
+                    return;
+                }
+                running++;
+            }
+            final Executor dispatcher = Firestorm.getSettings().getDispatcher();
+            final Runnable work = () -> {
+                try {
+                    next.runnable.run();
+                } finally {
+                    synchronized (PriorityScheduler.this) {
+                        running--;
+                    }
+                    drain();
+                }
+            };
+            if (dispatcher != null) {
+                dispatcher.execute(work);
+            }
+            else {
+                Firestorm.getMainHandler().post(work);
+            }
+        }
+    }
+
+    /**
+     * Removes the next unit of work to dispatch: the oldest of those with the highest priority after aging. Must be
+     * called while synchronized.
+     * @param nowNanos The current time.
+     * @return Returns the unit of work, or null if no work can be dispatched.
+     */
+    private Queued poll(final long nowNanos) {
+        final long agingNanos = agingMillis * 1000000;
+        final boolean yielding = isInteractiveActive();
+        int bestIndex = -1;
+        long bestLevel = Long.MAX_VALUE;
+        long wakeUpNanos = Long.MAX_VALUE;
+        for (int i = 0; i < queues.length; i++) {
+            final Queued head = queues[i].peek();
+            if (head == null) {
+                continue;
+            }
+            final long waitedNanos = nowNanos - head.queuedNanos;
+            final long level = Math.max(0, i - waitedNanos / agingNanos);
+            if (yielding && i == Priority.BACKGROUND.ordinal() && level == i) {
+                wakeUpNanos = Math.min(wakeUpNanos, agingNanos - waitedNanos % agingNanos);
+                continue;
+            }
+            if (level < bestLevel || (level == bestLevel && head.queuedNanos < queues[bestIndex].peek().queuedNanos)) {
+                bestIndex = i;
+                bestLevel = level;
+            }
+        }
+        if (bestIndex < 0) {
+            if (wakeUpNanos != Long.MAX_VALUE && !wakeUpScheduled) {
+                wakeUpScheduled = true;
+                Firestorm.getSettings().getTimer().schedule(() -> {
+                    synchronized (PriorityScheduler.this) {
+                        wakeUpScheduled = false;
+                    }
+                    drain();
+                }, wakeUpNanos / 1000000 + 1, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }
+        final Queued next = queues[bestIndex].poll();
+        if (bestIndex == Priority.INTERACTIVE.ordinal()) {
+            notifyAll();
+        }
+        return next;
+    }
+
+    /**
+     * A unit of work waiting to be dispatched.
+     */
+    private static final class Queued {
+
+        private final Runnable runnable;
+        private final long queuedNanos;
+
+        Queued(final Runnable runnable, final long queuedNanos) {
+            this.runnable = runnable;
+            this.queuedNanos = queuedNanos;
+        }
+
+    }
+
+    /**
+     * Builds a PriorityScheduler.
+     */
+    public static final class Builder {
+
+        private int maxConcurrent = DEFAULT_MAX_CONCURRENT;
+        private long agingMillis = DEFAULT_AGING_MILLIS;
+
+        /**
+         * Sets the maximum number of units of work dispatched at once. Lower values give priorities more effect,
+         * higher values more parallelism.
+         * @param maxConcurrent The maximum, at least 1. The default is {@value PriorityScheduler#DEFAULT_MAX_CONCURRENT}.
+         * @return Returns the builder.
+         */
+        public Builder setMaxConcurrent(final int maxConcurrent) {
+            if (maxConcurrent < 1) {
+                throw new IllegalArgumentException("The maximum number of units of work dispatched at once must be at least 1.");
+            }
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        /**
+         * Sets the time after which waiting work is raised by one priority, which bounds how long normal and
+         * background work can be delayed by work of a higher priority.
+         * @param agingMillis The time in milliseconds, at least 1. The default is {@value PriorityScheduler#DEFAULT_AGING_MILLIS}.
+         * @return Returns the builder.
+         */
+        public Builder setAgingMillis(final long agingMillis) {
+            if (agingMillis < 1) {
+                throw new IllegalArgumentException("The aging period must be at least 1 ms.");
+            }
+            this.agingMillis = agingMillis;
+            return this;
+        }
+
+        /**
+         * Builds the scheduler.
+         * @return Returns a PriorityScheduler.
+         */
+        public PriorityScheduler build() {
+            return new PriorityScheduler(this);
+        }
+
+    }
+
+}
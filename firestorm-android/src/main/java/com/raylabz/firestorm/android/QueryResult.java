@@ -1,6 +1,10 @@
 package com.raylabz.firestorm.android;
 
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,17 +18,34 @@ public class QueryResult<T> {
     private final List<T> items;
     private final List<DocumentSnapshot> snapshots;
     private final String lastDocumentID;
+    private final boolean stale;
 
     public QueryResult(List<T> items, List<DocumentSnapshot> snapshots, String lastDocumentID) {
+        this(items, snapshots, lastDocumentID, false);
+    }
+
+    /**
+     * Constructs a QueryResult.
+     * @param items The objects.
+     * @param snapshots The Firestore snapshots of the objects, or null.
+     * @param lastDocumentID The ID of the last document, or null if there are no results.
+     * @param stale True if the results were served from the local cache after the query timed out.
+     */
+    public QueryResult(List<T> items, List<DocumentSnapshot> snapshots, String lastDocumentID, boolean stale) {
         this.items = items;
         this.snapshots = snapshots;
         this.lastDocumentID = lastDocumentID;
+        this.stale = stale;
     }
 
     public List<T> getItems() {
         return items;
     }
 
+    /**
+     * Retrieves the Firestore snapshots of the results.
+     * @return Returns a list of DocumentSnapshots, or null if the results were not read from Firestore.
+     */
     public List<DocumentSnapshot> getSnapshots() {
         return snapshots;
     }
@@ -37,4 +58,28 @@ public class QueryResult<T> {
         return (!items.isEmpty());
     }
 
+    /**
+     * Converts documents served from the local cache to a stale result.
+     * @param documents The documents.
+     * @param objectClass The class of the objects.
+     * @param <T> The type of the objects.
+     * @return Returns a QueryResult marked as stale.
+     */
+    static <T> QueryResult<T> stale(final List<BackendDocument> documents, final Class<T> objectClass) {
+        if (documents.isEmpty()) {
+            return new QueryResult<>(new ArrayList<>(), null, null, true);
+        }
+        return new QueryResult<>(Firestorm.toObjects(documents, objectClass), FirestoreDocument.snapshotsOf(documents),
+                documents.get(documents.size() - 1).getId(), true);
+    }
+
+    /**
+     * Checks if the results are stale, having been served from the local cache because the query did not complete
+     * before its deadline.
+     * @return Returns true if the results are stale, false otherwise.
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
 }
@@ -3,6 +3,8 @@ package com.raylabz.firestorm.android;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.FirestoreDocument;
 
 import javax.annotation.Nullable;
 
@@ -42,13 +44,22 @@ public abstract class ReferenceListener implements EventListener<DocumentSnapsho
      */
     @Override
     public final void onEvent(@Nullable DocumentSnapshot documentSnapshot, @Nullable FirebaseFirestoreException e) {
+        onDocument(documentSnapshot != null ? new FirestoreDocument(documentSnapshot) : null, e);
+    }
+
+    /**
+     * Executes when the backend delivers an update to the document listened to.
+     * @param document The document retrieved upon update.
+     * @param e An exception thrown by the backend if the data retrieval was not successful.
+     */
+    final void onDocument(@Nullable BackendDocument document, @Nullable Exception e) {
         if (e != null) {
             onFailure(e.getMessage());
             return;
         }
 
-        if (documentSnapshot != null && documentSnapshot.exists()) {
-            Object fetchedObject = documentSnapshot.toObject(objectClass);
+        if (document != null && document.exists()) {
+            Object fetchedObject = document.toObject(objectClass);
 
             if (fetchedObject != null) {
 
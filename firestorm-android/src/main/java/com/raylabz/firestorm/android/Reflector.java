@@ -233,6 +233,38 @@ final class Reflector {
         return null;
     }
 
+    /**
+     * Copies the values of all non-static fields of an object and its superclasses to another object of the same class.
+     * @param source The object to copy the values from.
+     * @param target The object to copy the values to.
+     * @throws IllegalAccessException Thrown when a field cannot be accessed.
+     */
+    static void copyFields(final Object source, final Object target) throws IllegalAccessException {
+        //Retrieve values for fields for this class:
+        final Field[] declaredFields = target.getClass().getDeclaredFields();
+        for (Field f : declaredFields) {
+            if (!Modifier.isStatic(f.getModifiers())) {
+                final boolean accessible = f.isAccessible();
+                f.setAccessible(true);
+                final Object valueOfSource = f.get(source);
+                f.set(target, valueOfSource);
+                f.setAccessible(accessible);
+            }
+        }
+
+        //Retrieve values for non-static fields for this class' superclasses:
+        final ArrayList<Field> superclassFields = getSuperclassFields(target.getClass(), Object.class);
+        for (Field f : superclassFields) {
+            if (!Modifier.isStatic(f.getModifiers())) {
+                final boolean accessible = f.isAccessible();
+                f.setAccessible(true);
+                final Object valueOfSource = f.get(source);
+                f.set(target, valueOfSource);
+                f.setAccessible(accessible);
+            }
+        }
+    }
+
     /**
      * Finds all fields from a startClasse's superclasses.
      * @param startClass The starting class to find the ID field for.
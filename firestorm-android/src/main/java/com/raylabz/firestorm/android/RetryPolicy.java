@@ -0,0 +1,292 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.raylabz.firestorm.android.exception.RetryException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how Firestorm retries operations that fail with a transient Firestore error.
+ * Retries use capped exponential backoff with full jitter, so that many clients failing at the same time
+ * do not retry in lockstep and overload Firestore further.
+ * @version 1.4.0
+ */
+public final class RetryPolicy {
+
+    /**
+     * The error codes retried by default.
+     */
+    public static final Set<FirebaseFirestoreException.Code> DEFAULT_RETRYABLE_CODES = Collections.unmodifiableSet(EnumSet.of(
+            FirebaseFirestoreException.Code.UNAVAILABLE,
+            FirebaseFirestoreException.Code.DEADLINE_EXCEEDED,
+            FirebaseFirestoreException.Code.RESOURCE_EXHAUSTED,
+            FirebaseFirestoreException.Code.ABORTED
+    ));
+
+    /**
+     * A policy that never retries.
+     */
+    public static final RetryPolicy NONE = new Builder().setMaxAttempts(1).build();
+
+    /**
+     * The default policy: 3 attempts, 200ms initial delay, doubling up to 5 seconds.
+     */
+    public static final RetryPolicy DEFAULT = new Builder().build();
+
+    /**
+     * Receives a notification every time an operation is retried.
+     */
+    public interface Listener {
+
+        /**
+         * Executes before a failed attempt is retried.
+         * @param attempt The number of the attempt that failed, starting from 1.
+         * @param delayMillis The delay before the next attempt.
+         * @param exception The exception the attempt failed with.
+         */
+        void onRetry(int attempt, long delayMillis, Exception exception);
+
+    }
+
+    /**
+     * A single attempt of an operation.
+     * @param <R> The type of the operation's result.
+     */
+    interface Attempt<R> {
+
+        /**
+         * Runs the attempt.
+         * @return Returns a Task.
+         */
+        Task<R> run();
+
+    }
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final double multiplier;
+    private final Set<FirebaseFirestoreException.Code> retryableCodes;
+    private final Listener listener;
+
+    /**
+     * Constructs a policy from a builder.
+     * @param builder The builder.
+     */
+    private RetryPolicy(final Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialDelayMillis = builder.initialDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.multiplier = builder.multiplier;
+        this.retryableCodes = Collections.unmodifiableSet(EnumSet.copyOf(builder.retryableCodes));
+        this.listener = builder.listener;
+    }
+
+    /**
+     * Retrieves the maximum number of attempts, including the first one.
+     * @return Returns an integer.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Retrieves the error codes treated as transient.
+     * @return Returns a set of codes.
+     */
+    public Set<FirebaseFirestoreException.Code> getRetryableCodes() {
+        return retryableCodes;
+    }
+
+    /**
+     * Checks if an exception is caused by a transient Firestore error.
+     * @param exception The exception.
+     * @return Returns true if the exception can be retried, false otherwise.
+     */
+    public boolean isRetryable(final Exception exception) {
+        Throwable current = exception;
+        while (current != null) {
+            if (current instanceof FirebaseFirestoreException) {
+                return retryableCodes.contains(((FirebaseFirestoreException) current).getCode());
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Computes the delay before retrying an attempt, using full jitter over the capped exponential backoff.
+     * @param attempt The number of the attempt that failed, starting from 1.
+     * @return Returns the delay in milliseconds.
+     */
+    public long getDelayMillis(final int attempt) {
+        final double backoff = initialDelayMillis * Math.pow(multiplier, attempt - 1);
+        final long cap = (long) Math.min(maxDelayMillis, backoff);
+        if (cap <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Executes an operation, retrying it while it fails with a transient error.
+     * @param attempt The operation.
+     * @param <R> The type of the result.
+     * @return Returns a Task which completes with the result of the first successful attempt, or fails with the
+     * exception of the last attempt. If more than one attempt was made, the exception is a {@link RetryException}.
+     */
+    <R> Task<R> execute(final Attempt<R> attempt) {
+        return execute(attempt, null);
+    }
+
+    /**
+     * Executes an operation, retrying it while it fails with a transient error and the next attempt would start
+     * before the deadline of the operation.
+     * @param attempt The operation.
+     * @param context The context of the operation, or null if the operation has no deadline.
+     * @param <R> The type of the result.
+     * @return Returns a Task which completes with the result of the first successful attempt, or fails with the
+     * exception of the last attempt. If more than one attempt was made, the exception is a {@link RetryException}.
+     */
+    <R> Task<R> execute(final Attempt<R> attempt, final OperationContext context) {
+        final TaskCompletionSource<R> source = new TaskCompletionSource<>();
+        final OperationContext current = context != null ? context : OperationContext.current();
+        execute(attempt, context, current != null ? current.getPriority() : Priority.NORMAL, 1, source);
+        return source.getTask();
+    }
+
+    /**
+     * Runs an attempt and schedules the next one upon a transient failure. The next attempt is dispatched with the
+     * priority of the operation once the backoff delay has passed.
+     * @param attempt The operation.
+     * @param context The context of the operation, or null.
+     * @param priority The priority of the operation.
+     * @param attemptNumber The number of this attempt.
+     * @param source The task completion source of the operation.
+     * @param <R> The type of the result.
+     */
+    private <R> void execute(final Attempt<R> attempt, final OperationContext context, final Priority priority, final int attemptNumber, final TaskCompletionSource<R> source) {
+        final Task<R> task;
+        try {
+            task = attempt.run();
+        } catch (RuntimeException e) {
+            source.setException(e);
+            return;
+        }
+        task.addOnCompleteListener(Firestorm.DIRECT, result -> {
+            if (result.isSuccessful()) {
+                source.setResult(result.getResult());
+                return;
+            }
+            final Exception exception = result.getException() != null ? result.getException() : new RetryException("Operation failed.", attemptNumber);
+            final long delayMillis = attemptNumber < maxAttempts ? getDelayMillis(attemptNumber) : 0;
+            if (attemptNumber < maxAttempts && isRetryable(exception) && (context == null || delayMillis < context.getRemainingMillis())) {
+                if (listener != null) {
+                    listener.onRetry(attemptNumber, delayMillis, exception);
+                }
+                Firestorm.dispatchDelayed(priority, delayMillis, () -> execute(attempt, context, priority, attemptNumber + 1, source));
+            }
+            else if (attemptNumber > 1) {
+                source.setException(new RetryException(exception, attemptNumber));
+            }
+            else {
+                source.setException(exception);
+            }
+        });
+    }
+
+    /**
+     * Builds a RetryPolicy.
+     */
+    public static final class Builder {
+
+        private int maxAttempts = 3;
+        private long initialDelayMillis = 200;
+        private long maxDelayMillis = 5000;
+        private double multiplier = 2;
+        private Set<FirebaseFirestoreException.Code> retryableCodes = EnumSet.copyOf(DEFAULT_RETRYABLE_CODES);
+        private Listener listener = null;
+
+        /**
+         * Sets the maximum number of attempts, including the first one.
+         * @param maxAttempts The number of attempts.
+         * @return Returns the builder.
+         */
+        public Builder setMaxAttempts(final int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("The maximum number of attempts must be at least 1.");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the base delay of the first retry.
+         * @param initialDelayMillis The delay in milliseconds.
+         * @return Returns the builder.
+         */
+        public Builder setInitialDelayMillis(final long initialDelayMillis) {
+            this.initialDelayMillis = initialDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum delay between attempts.
+         * @param maxDelayMillis The delay in milliseconds.
+         * @return Returns the builder.
+         */
+        public Builder setMaxDelayMillis(final long maxDelayMillis) {
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the factor the delay is multiplied by after each attempt.
+         * @param multiplier The multiplier.
+         * @return Returns the builder.
+         */
+        public Builder setMultiplier(final double multiplier) {
+            if (multiplier < 1) {
+                throw new IllegalArgumentException("The multiplier must be at least 1.");
+            }
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * Sets the error codes treated as transient.
+         * @param codes The codes.
+         * @return Returns the builder.
+         */
+        public Builder setRetryableCodes(final FirebaseFirestoreException.Code... codes) {
+            this.retryableCodes = codes.length == 0 ? EnumSet.noneOf(FirebaseFirestoreException.Code.class) : EnumSet.copyOf(Arrays.asList(codes));
+            return this;
+        }
+
+        /**
+         * Sets a listener notified of every retry.
+         * @param listener The listener.
+         * @return Returns the builder.
+         */
+        public Builder setListener(final Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Builds the policy.
+         * @return Returns a RetryPolicy.
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the objects of a query page by page. Each subscriber scans the query from the start: a page is only
+ * fetched once the subscriber has requested more objects than are left of the previous page, and its documents are
+ * only converted to objects when they are delivered. Each page is fetched as a PAGINATE operation.
+ * @param <T> The type of objects published.
+ * @version 1.4.0
+ */
+final class ScanPublisher<T> implements Publisher<T> {
+
+    private final Class<T> objectClass;
+    private final BackendQuery query;
+    private final String lastDocumentID;
+    private final int pageSize;
+
+    /**
+     * Creates a ScanPublisher.
+     * @param objectClass The type of objects published.
+     * @param query The query, without a limit.
+     * @param lastDocumentID The ID of the document the scan starts after, or null to start at the first document.
+     * @param pageSize The number of documents fetched per page.
+     */
+    ScanPublisher(final Class<T> objectClass, final BackendQuery query, final String lastDocumentID, final int pageSize) {
+        this.objectClass = objectClass;
+        this.query = query;
+        this.lastDocumentID = lastDocumentID;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber cannot be null.");
+        }
+        subscriber.onSubscribe(new ScanSubscription(subscriber));
+    }
+
+    /**
+     * Fetches a page of documents. The first page starts after the last document, if any.
+     * @param cursor The last document of the previous page, or null for the first page.
+     * @param token The cancellation token.
+     * @return Returns a Task with the documents of the page.
+     */
+    private Task<List<BackendDocument>> fetch(final BackendDocument cursor, final CancellationToken token) {
+        return Firestorm.intercept(new OperationContext(OperationType.PAGINATE, objectClass), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.PAGINATE, objectClass);
+            final TaskCompletionSource<List<BackendDocument>> source = Firestorm.completionSource(token);
+            Firestorm.dispatch(() -> {
+                if (Firestorm.isCancelled(token, trace)) {
+                    return;
+                }
+                trace.dispatched();
+                final BackendQuery pageQuery = cursor != null ? query.startAfter(cursor) : query;
+                Paginator.fetchPage(objectClass, pageQuery, cursor != null ? null : lastDocumentID, pageSize, source, trace, token, "Failed to scan query.", documents -> {
+                    trace.succeeded(documents.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(documents) : 0);
+                    source.trySetResult(documents);
+                });
+            });
+            return source.getTask();
+        });
+    }
+
+    /**
+     * The subscription of a subscriber, which holds what is left of the last page fetched.
+     */
+    private final class ScanSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final CancellationTokenSource cancellation = new CancellationTokenSource();
+        private final ArrayDeque<BackendDocument> page = new ArrayDeque<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private BackendDocument cursor;
+        private boolean fetching;
+        private boolean exhausted;
+        private Throwable error;
+        private volatile boolean cancelled;
+
+        ScanSubscription(final Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("The number of items requested must be positive."));
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+                if (current == Long.MAX_VALUE) {
+                    break;
+                }
+            } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            cancellation.cancel();
+            synchronized (this) {
+                page.clear();
+            }
+        }
+
+        /**
+         * Fails the subscription.
+         * @param e The error.
+         */
+        private void fail(final Throwable e) {
+            synchronized (this) {
+                if (error != null) {
+                    return;
+                }
+                error = e;
+                page.clear();
+            }
+            cancellation.cancel();
+            drain();
+        }
+
+        /**
+         * Receives a fetched page.
+         * @param task The task of the page.
+         */
+        private void onPage(final Task<List<BackendDocument>> task) {
+            if (task.isCanceled()) {
+                if (!cancelled) {
+                    fail(new FirestormException("Failed to scan query."));
+                }
+                return;
+            }
+            if (!task.isSuccessful()) {
+                fail(task.getException() != null ? task.getException() : new FirestormException("Failed to scan query."));
+                return;
+            }
+            final List<BackendDocument> documents = task.getResult();
+            synchronized (this) {
+                if (cancelled || error != null) {
+                    return;
+                }
+                page.addAll(documents);
+                exhausted = documents.size() < pageSize;
+                if (!documents.isEmpty()) {
+                    cursor = documents.get(documents.size() - 1);
+                }
+                fetching = false;
+            }
+            drain();
+        }
+
+        /**
+         * Delivers the objects left of the last page while the subscriber has requested objects, fetching the next
+         * page once none are left. Only one thread delivers at a time; the others leave their work to it.
+         */
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                while (!cancelled) {
+                    final BackendDocument document;
+                    final Throwable e;
+                    boolean complete = false;
+                    BackendDocument fetchAfter = null;
+                    boolean fetch = false;
+                    synchronized (this) {
+                        e = error;
+                        document = e == null && requested.get() > 0 ? page.poll() : null;
+                        if (e == null && document == null && page.isEmpty() && !fetching) {
+                            if (exhausted) {
+                                complete = true;
+                            }
+                            else if (requested.get() > 0) {
+                                fetching = true;
+                                fetch = true;
+                                fetchAfter = cursor;
+                            }
+                        }
+                    }
+                    if (e != null) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                        return;
+                    }
+                    if (complete) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (fetch) {
+                        final Task<List<BackendDocument>> next;
+                        try {
+                            next = fetch(fetchAfter, cancellation.getToken());
+                        } catch (RuntimeException fetchError) {
+                            fail(fetchError);
+                            continue;
+                        }
+                        next.addOnCompleteListener(Firestorm.DIRECT, this::onPage);
+                        break;
+                    }
+                    if (document == null) {
+                        break;
+                    }
+                    final T object;
+                    try {
+                        object = document.toObject(objectClass);
+                    } catch (RuntimeException decodingError) {
+                        fail(decodingError);
+                        continue;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(object);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
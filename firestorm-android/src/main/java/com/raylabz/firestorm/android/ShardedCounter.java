@@ -0,0 +1,451 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+import com.raylabz.firestorm.android.backend.BackendWrite;
+import com.raylabz.firestorm.android.exception.ClassRegistrationException;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts a numeric field of the objects of a registered class, such as the likes or views of a post, without the
+ * contention of incrementing a single document.
+ * <p>
+ * Firestore sustains about one write per second to a document, so concurrent updates of a counter stored in its
+ * object are aborted and retried under load. A sharded counter instead spreads the increments of each object over
+ * several shard documents, in the subcollection <i>&lt;Class&gt;/&lt;objectID&gt;/&lt;field&gt;_shards</i>: every
+ * increment is a blind <i>FieldValue.increment()</i> of a random shard, which never conflicts, and the total is read
+ * by summing all shards of the object.
+ * <p>
+ * Totals may be cached for a duration, in which case the increments made through this counter are applied to the
+ * cached totals, so that the caller sees its own increments without reading the shards again.
+ * <p>
+ * The number of shards can be changed online with {@link #setShards(int)}: totals sum every shard document, whatever
+ * the number of shards, so increments are never lost, even when clients use different numbers of shards at once.
+ * After reducing the number of shards, {@link #compact(String)} folds the shards beyond it into the first shard.
+ * <p>
+ * Counters are created using a {@link ShardedCounter.Builder}.
+ * @param <T> The type of the counted objects.
+ * @version 1.4.0
+ */
+public final class ShardedCounter<T> {
+
+    /**
+     * The default number of shards of each object.
+     */
+    public static final int DEFAULT_SHARDS = 10;
+
+    /**
+     * The maximum number of shards of each object, so that compacting them fits in a transaction.
+     */
+    public static final int MAX_SHARDS = 250;
+
+    /**
+     * The field of shard documents holding their count.
+     */
+    public static final String COUNT_FIELD = "count";
+
+    private final Class<T> objectClass;
+    private final String field;
+    private final long cacheDurationMillis;
+    private volatile int shards;
+    private final Random random = new Random();
+    private final ConcurrentHashMap<String, CachedTotal> totals = new ConcurrentHashMap<>();
+
+    /**
+     * The increments of this counter in flight, and the number completed, which tell whether a total read from the
+     * shards may have missed an increment applied to the cached totals meanwhile.
+     */
+    private final AtomicInteger incrementsInFlight = new AtomicInteger();
+    private final AtomicLong incrementsCompleted = new AtomicLong();
+
+    /**
+     * Constructs a counter.
+     * @param builder The builder.
+     */
+    private ShardedCounter(final Builder<T> builder) {
+        this.objectClass = builder.objectClass;
+        this.field = builder.field;
+        this.cacheDurationMillis = builder.cacheDurationMillis;
+        this.shards = builder.shards;
+    }
+
+    /**
+     * Retrieves the class of the counted objects.
+     * @return Returns a class.
+     */
+    public Class<T> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Retrieves the name of the counted field.
+     * @return Returns a string.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Retrieves the number of shards increments are spread over.
+     * @return Returns an integer.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the number of shards increments are spread over. The change takes effect immediately, and totals remain
+     * exact: shards beyond the new number are still summed until they are folded with {@link #compact(String)}.
+     * @param shards The number of shards, between 1 and {@value #MAX_SHARDS}.
+     * @throws IllegalArgumentException Thrown when the number of shards is out of range.
+     */
+    public void setShards(final int shards) {
+        checkShards(shards);
+        this.shards = shards;
+    }
+
+    /**
+     * Retrieves the collection of the shards of an object.
+     * @param objectID The ID of the object.
+     * @return Returns a collection path.
+     */
+    public String getShardCollection(final String objectID) {
+        return objectClass.getSimpleName() + "/" + objectID + "/" + field + "_shards";
+    }
+
+    /**
+     * Increments the counter of an object by one.
+     * @param objectID The ID of the object.
+     * @return Returns a Task which completes when the increment is written.
+     */
+    public Task<Void> increment(final String objectID) {
+        return increment(objectID, 1);
+    }
+
+    /**
+     * Adds an amount to the counter of an object, by incrementing one of its shards at random.
+     * Increments are not retried by the retry policy, since a write reported as failed may still have been applied.
+     * @param objectID The ID of the object.
+     * @param delta The amount to add, which may be negative.
+     * @return Returns a Task which completes when the increment is written.
+     */
+    public Task<Void> increment(final String objectID, final long delta) {
+        final String collection = getShardCollection(objectID);
+        final String shard = String.valueOf(random.nextInt(shards));
+        return Firestorm.intercept(new OperationContext(OperationType.UPDATE, objectClass, objectID), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.UPDATE, objectClass);
+            TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+            Firestorm.dispatch(() -> {
+                trace.dispatched();
+                incrementsInFlight.incrementAndGet();
+                Firestorm.backend.commit(Collections.singletonList(BackendWrite.increment(collection, shard, COUNT_FIELD, delta))).addOnCompleteListener(task -> {
+                    trace.received();
+                    incrementsCompleted.incrementAndGet();
+                    incrementsInFlight.decrementAndGet();
+                    if (task.isSuccessful()) {
+                        final CachedTotal cached = totals.get(objectID);
+                        if (cached != null) {
+                            cached.total.addAndGet(delta);
+                        }
+                        trace.succeeded(1, 0);
+                        source.setResult(null);
+                    }
+                    else {
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.setException(task.getException());
+                        }
+                        else {
+                            source.setException(new FirestormException("Could not increment the counter of object with ID '" + objectID + "'."));
+                        }
+                    }
+                });
+            });
+            return source.getTask();
+        });
+    }
+
+    /**
+     * Retrieves the total of the counter of an object, by summing its shards. When totals are cached, a total read
+     * within the cache duration is returned without reading the shards.
+     * @param objectID The ID of the object.
+     * @return Returns a Task with the total, which is 0 if the object was never counted.
+     */
+    public Task<Long> get(final String objectID) {
+        if (cacheDurationMillis > 0) {
+            final CachedTotal cached = totals.get(objectID);
+            if (cached != null && System.currentTimeMillis() - cached.readTimeMillis < cacheDurationMillis) {
+                return Tasks.forResult(cached.total.get());
+            }
+        }
+        final String collection = getShardCollection(objectID);
+        return Firestorm.intercept(new OperationContext(OperationType.GET, objectClass, objectID), () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.GET, objectClass);
+            TaskCompletionSource<Long> source = new TaskCompletionSource<>();
+            Firestorm.dispatch(() -> {
+                trace.dispatched();
+                final boolean cacheable = cacheDurationMillis > 0 && incrementsInFlight.get() == 0;
+                final long completed = incrementsCompleted.get();
+                Firestorm.retry(() -> Firestorm.backend.query(new BackendQuery(collection))).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (task.isSuccessful()) {
+                        final List<BackendDocument> documents = task.getResult();
+                        long total = 0;
+                        for (BackendDocument document : documents) {
+                            total += countOf(document);
+                        }
+                        if (cacheable) {
+                            cache(objectID, new CachedTotal(total, System.currentTimeMillis()), completed);
+                        }
+                        trace.succeeded(documents.size(), trace.isEstimatingPayload() ? OperationTrace.estimate(documents) : 0);
+                        source.setResult(total);
+                    }
+                    else {
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.setException(task.getException());
+                        }
+                        else {
+                            source.setException(new FirestormException("Could not read the counter of object with ID '" + objectID + "'."));
+                        }
+                    }
+                });
+            });
+            return source.getTask();
+        });
+    }
+
+    /**
+     * Caches a total read from the shards, unless increments of this counter were in flight or completed while it
+     * was read, since the shards may not have included them when they were read. The total is cached before the
+     * increments are checked, so that an increment completing in between is either applied to it or invalidates it.
+     * @param objectID The ID of the object.
+     * @param cachedTotal The total.
+     * @param completed The number of completed increments when the read was issued.
+     */
+    private void cache(final String objectID, final CachedTotal cachedTotal, final long completed) {
+        totals.put(objectID, cachedTotal);
+        if (incrementsInFlight.get() != 0 || incrementsCompleted.get() != completed) {
+            totals.remove(objectID, cachedTotal);
+        }
+    }
+
+    /**
+     * Removes the cached total of an object, so that the next read sums its shards.
+     * @param objectID The ID of the object.
+     */
+    public void invalidate(final String objectID) {
+        totals.remove(objectID);
+    }
+
+    /**
+     * Folds the shards of an object beyond the current number of shards into its first shard, in a transaction run
+     * with the transaction retry policy of the settings. The total is unchanged. Increments made meanwhile by clients
+     * still using more shards may recreate folded shards, which are summed and can be folded again later.
+     * @param objectID The ID of the object.
+     * @return Returns a Task which completes when the shards are folded.
+     */
+    public Task<Void> compact(final String objectID) {
+        final String collection = getShardCollection(objectID);
+        final int shardCount = shards;
+        final OperationContext context = new OperationContext(OperationType.TRANSACTION, objectClass, objectID);
+        return Firestorm.intercept(context, () -> {
+            final OperationTrace trace = new OperationTrace(OperationType.TRANSACTION, objectClass);
+            TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+            Firestorm.dispatch(() -> {
+                trace.dispatched();
+                Firestorm.retry(() -> Firestorm.backend.query(new BackendQuery(collection))).continueWithTask(task -> {
+                    final ArrayList<String> excess = new ArrayList<>();
+                    for (BackendDocument document : task.getResult()) {
+                        if (indexOf(document.getId()) >= shardCount) {
+                            excess.add(document.getId());
+                        }
+                    }
+                    if (excess.isEmpty()) {
+                        return Tasks.forResult(0);
+                    }
+                    return Firestorm.getSettings().getTransactionRetryPolicy().execute(() -> Firestorm.backend.runTransaction(transaction -> {
+                        final BackendDocument first = transaction.get(collection, "0");
+                        long folded = 0;
+                        for (String id : excess) {
+                            folded += countOf(transaction.get(collection, id));
+                        }
+                        for (String id : excess) {
+                            transaction.delete(collection, id);
+                        }
+                        transaction.set(collection, "0", Collections.singletonMap(COUNT_FIELD, countOf(first) + folded));
+                        return excess.size() + 1;
+                    }), context);
+                }).addOnCompleteListener(task -> {
+                    trace.received();
+                    if (task.isSuccessful()) {
+                        trace.succeeded(task.getResult(), 0);
+                        source.setResult(null);
+                    }
+                    else {
+                        trace.failed(task.getException());
+                        if (task.getException() != null) {
+                            source.setException(task.getException());
+                        }
+                        else {
+                            source.setException(new FirestormException("Could not compact the counter of object with ID '" + objectID + "'."));
+                        }
+                    }
+                });
+            });
+            return source.getTask();
+        });
+    }
+
+    /**
+     * Retrieves the count of a shard document.
+     * @param document The shard document.
+     * @return Returns the count, or 0 if the shard does not exist.
+     */
+    private static long countOf(final BackendDocument document) {
+        if (!document.exists()) {
+            return 0;
+        }
+        final Object count = document.getData().get(COUNT_FIELD);
+        return count instanceof Number ? ((Number) count).longValue() : 0;
+    }
+
+    /**
+     * Retrieves the index of a shard from its document ID.
+     * @param documentID The ID of the shard document.
+     * @return Returns the index, or {@link Integer#MAX_VALUE} if the ID is not an index, so that the shard is folded.
+     */
+    private static int indexOf(final String documentID) {
+        try {
+            final int index = Integer.parseInt(documentID);
+            return index >= 0 ? index : Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Checks a number of shards.
+     * @param shards The number of shards.
+     * @throws IllegalArgumentException Thrown when the number of shards is out of range.
+     */
+    private static void checkShards(final int shards) {
+        if (shards < 1 || shards > MAX_SHARDS) {
+            throw new IllegalArgumentException("The number of shards must be between 1 and " + MAX_SHARDS + ", but " + shards + " found.");
+        }
+    }
+
+    /**
+     * A total read from the shards of an object, with the increments made through this counter since.
+     */
+    private static final class CachedTotal {
+
+        private final AtomicLong total;
+        private final long readTimeMillis;
+
+        CachedTotal(final long total, final long readTimeMillis) {
+            this.total = new AtomicLong(total);
+            this.readTimeMillis = readTimeMillis;
+        }
+
+    }
+
+    /**
+     * Builds sharded counters.
+     * @param <T> The type of the counted objects.
+     */
+    public static class Builder<T> {
+
+        private final Class<T> objectClass;
+        private final String field;
+        private int shards = DEFAULT_SHARDS;
+        private long cacheDurationMillis = 0;
+
+        /**
+         * Instantiates a builder.
+         * @param objectClass The class of the counted objects, which must be registered.
+         * @param field The name of the counted field, which must be an integral number.
+         * @throws FirestormException Thrown when the class is not registered, or has no integral field with this name.
+         */
+        public Builder(final Class<T> objectClass, final String field) {
+            try {
+                Firestorm.checkRegistration(objectClass);
+            } catch (ClassRegistrationException e) {
+                throw new FirestormException(e);
+            }
+            final Class<?> type = fieldType(objectClass, field);
+            if (type != int.class && type != long.class && type != short.class && type != byte.class
+                    && type != Integer.class && type != Long.class && type != Short.class && type != Byte.class) {
+                throw new FirestormException("The field '" + field + "' of class '" + objectClass.getSimpleName() + "' must be an integral number to be counted, but " + type.getSimpleName() + " found.");
+            }
+            this.objectClass = objectClass;
+            this.field = field;
+        }
+
+        /**
+         * Sets the number of shards increments are spread over. Each shard sustains about one write per second.
+         * @param shards The number of shards, between 1 and {@value ShardedCounter#MAX_SHARDS}. The default is {@value ShardedCounter#DEFAULT_SHARDS}.
+         * @return Returns the builder.
+         * @throws IllegalArgumentException Thrown when the number of shards is out of range.
+         */
+        public Builder<T> setShards(final int shards) {
+            checkShards(shards);
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Sets the duration totals are cached for after they are read.
+         * @param cacheDurationMillis The duration in milliseconds, or 0 to read the shards on every read (the default).
+         * @return Returns the builder.
+         * @throws IllegalArgumentException Thrown when the duration is negative.
+         */
+        public Builder<T> setCacheDuration(final long cacheDurationMillis) {
+            if (cacheDurationMillis < 0) {
+                throw new IllegalArgumentException("The cache duration cannot be negative.");
+            }
+            this.cacheDurationMillis = cacheDurationMillis;
+            return this;
+        }
+
+        /**
+         * Builds the counter.
+         * @return Returns a ShardedCounter.
+         */
+        public ShardedCounter<T> build() {
+            return new ShardedCounter<>(this);
+        }
+
+        /**
+         * Retrieves the type of a field of a class or its superclasses.
+         * @param objectClass The class.
+         * @param field The name of the field.
+         * @return Returns a class.
+         * @throws FirestormException Thrown when the class has no such field.
+         */
+        private static Class<?> fieldType(final Class<?> objectClass, final String field) {
+            for (Class<?> aClass = objectClass; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()) {
+                for (Field declaredField : aClass.getDeclaredFields()) {
+                    if (declaredField.getName().equals(field)) {
+                        return declaredField.getType();
+                    }
+                }
+            }
+            throw new FirestormException("The class '" + objectClass.getSimpleName() + "' has no field '" + field + "'.");
+        }
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.raylabz.firestorm.android;
+
+/**
+ * Stores the options of a listener stream published by {@link FirestormStreams}: how many snapshots are buffered
+ * while the subscriber has not requested them, and which snapshots are dropped once the buffer is full.
+ * Options are created using a {@link StreamOptions.Builder}.
+ * @version 1.4.0
+ */
+public final class StreamOptions {
+
+    /**
+     * The default number of snapshots buffered while the subscriber has not requested them.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16;
+
+    /**
+     * Options using the default buffer size, keeping the latest snapshots.
+     */
+    public static final StreamOptions DEFAULT = new Builder().build();
+
+    /**
+     * Decides which snapshots are dropped when a snapshot arrives while the buffer is full.
+     */
+    public enum Overflow {
+
+        /**
+         * Drops the snapshot arriving, keeping the buffered ones.
+         */
+        DROP,
+
+        /**
+         * Drops the oldest buffered snapshot, keeping the latest ones. With a buffer size of 1, the subscriber
+         * always receives the latest snapshot.
+         */
+        LATEST
+
+    }
+
+    private final int bufferSize;
+    private final Overflow overflow;
+
+    /**
+     * Constructs the options from a builder.
+     * @param builder The builder.
+     */
+    private StreamOptions(final Builder builder) {
+        this.bufferSize = builder.bufferSize;
+        this.overflow = builder.overflow;
+    }
+
+    /**
+     * Retrieves the number of snapshots buffered while the subscriber has not requested them.
+     * @return Returns an integer.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Retrieves which snapshots are dropped once the buffer is full.
+     * @return Returns an Overflow.
+     */
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Builds StreamOptions.
+     */
+    public static final class Builder {
+
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private Overflow overflow = Overflow.LATEST;
+
+        /**
+         * Sets the number of snapshots buffered while the subscriber has not requested them.
+         * @param bufferSize The number of snapshots, at least 1. The default is {@value StreamOptions#DEFAULT_BUFFER_SIZE}.
+         * @return Returns the builder.
+         */
+        public Builder setBufferSize(final int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("The buffer size must be at least 1.");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets which snapshots are dropped once the buffer is full.
+         * @param overflow The overflow strategy. The default is {@link Overflow#LATEST}.
+         * @return Returns the builder.
+         */
+        public Builder setOverflow(final Overflow overflow) {
+            if (overflow == null) {
+                throw new IllegalArgumentException("The overflow strategy cannot be null.");
+            }
+            this.overflow = overflow;
+            return this;
+        }
+
+        /**
+         * Builds the options.
+         * @return Returns StreamOptions.
+         */
+        public StreamOptions build() {
+            return new StreamOptions(this);
+        }
+
+    }
+
+}
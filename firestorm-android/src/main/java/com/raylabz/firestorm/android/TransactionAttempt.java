@@ -0,0 +1,164 @@
+package com.raylabz.firestorm.android;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Models a single attempt of a {@link FirestormTransaction}: its timing, outcome and the documents it read and wrote.
+ * Attempts retried because of contention point to the documents that are contention hotspots.
+ * @version 1.4.0
+ */
+public final class TransactionAttempt {
+
+    /**
+     * The outcome of an attempt.
+     */
+    public enum Outcome {
+        /**
+         * The attempt is still running.
+         */
+        RUNNING,
+        /**
+         * The attempt was committed.
+         */
+        COMMITTED,
+        /**
+         * The attempt was aborted by Firestore (usually due to contention) and retried by Firestore.
+         */
+        RETRIED,
+        /**
+         * The attempt failed and the transaction was not retried by Firestore.
+         */
+        FAILED
+    }
+
+    /**
+     * The reason recorded for attempts retried by Firestore itself, which does not report the exact error.
+     */
+    static final String CONTENTION_REASON = "Aborted and retried by Firestore (document contention).";
+
+    private final int number;
+    private final long startTimeMillis;
+    private long durationMillis = -1;
+    private Outcome outcome = Outcome.RUNNING;
+    private String reason;
+    private Exception exception;
+    private final LinkedHashSet<String> reads = new LinkedHashSet<>();
+    private final LinkedHashSet<String> writes = new LinkedHashSet<>();
+
+    /**
+     * Constructs an attempt.
+     * @param number The number of the attempt, starting from 1.
+     */
+    TransactionAttempt(final int number) {
+        this.number = number;
+        this.startTimeMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a document read by this attempt.
+     * @param path The path of the document.
+     */
+    void recordRead(final String path) {
+        reads.add(path);
+    }
+
+    /**
+     * Records a document written by this attempt.
+     * @param path The path of the document.
+     */
+    void recordWrite(final String path) {
+        writes.add(path);
+    }
+
+    /**
+     * Completes the attempt.
+     * @param outcome The outcome.
+     * @param reason The reason of a retry or failure, or null.
+     * @param exception The exception of a failure, or null.
+     */
+    void complete(final Outcome outcome, final String reason, final Exception exception) {
+        this.durationMillis = System.currentTimeMillis() - startTimeMillis;
+        this.outcome = outcome;
+        this.reason = reason;
+        this.exception = exception;
+    }
+
+    /**
+     * Retrieves the number of the attempt.
+     * @return Returns an integer, starting from 1.
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Retrieves the time the attempt started.
+     * @return Returns a time in milliseconds since the epoch.
+     */
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    /**
+     * Retrieves the duration of the attempt.
+     * @return Returns the duration in milliseconds, or -1 if the attempt is still running.
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Retrieves the outcome of the attempt.
+     * @return Returns an Outcome.
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Retrieves the reason the attempt was retried or failed.
+     * @return Returns a string, or null if the attempt was committed or is still running.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Retrieves the exception the attempt failed with.
+     * @return Returns an Exception, or null if not available.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * Retrieves the paths of the documents read by the attempt.
+     * @return Returns a set of paths.
+     */
+    public Set<String> getReads() {
+        return Collections.unmodifiableSet(reads);
+    }
+
+    /**
+     * Retrieves the paths of the documents written by the attempt.
+     * @return Returns a set of paths.
+     */
+    public Set<String> getWrites() {
+        return Collections.unmodifiableSet(writes);
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionAttempt{" +
+                "number=" + number +
+                ", durationMillis=" + durationMillis +
+                ", outcome=" + outcome +
+                ", reason='" + reason + '\'' +
+                ", reads=" + reads +
+                ", writes=" + writes +
+                '}';
+    }
+
+}
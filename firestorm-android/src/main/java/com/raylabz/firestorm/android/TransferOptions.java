@@ -0,0 +1,146 @@
+package com.raylabz.firestorm.android;
+
+import java.io.File;
+
+/**
+ * Stores the options of a bulk export or import of a collection: the size of the pages read, the size of the batch
+ * writes committed, how many batch writes may be in flight and the checkpoint file which makes imports resumable.
+ * Options are created using a {@link TransferOptions.Builder}.
+ * @version 1.4.0
+ */
+public final class TransferOptions {
+
+    /**
+     * The default number of documents read per page during an export.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /**
+     * The default number of batch writes in flight during an import.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Options using the default page size, full batches, the default parallelism and no checkpoint.
+     */
+    public static final TransferOptions DEFAULT = new Builder().build();
+
+    private final int pageSize;
+    private final int batchSize;
+    private final int parallelism;
+    private final File checkpointFile;
+
+    /**
+     * Constructs the options from a builder.
+     * @param builder The builder.
+     */
+    private TransferOptions(final Builder builder) {
+        this.pageSize = builder.pageSize;
+        this.batchSize = builder.batchSize;
+        this.parallelism = builder.parallelism;
+        this.checkpointFile = builder.checkpointFile;
+    }
+
+    /**
+     * Retrieves the number of documents read per page during an export.
+     * @return Returns an integer.
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Retrieves the number of documents written by each batch write during an import.
+     * @return Returns an integer.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Retrieves the maximum number of batch writes in flight during an import.
+     * @return Returns an integer.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Retrieves the file recording the progress of an import.
+     * @return Returns a File, or null if imports are not resumable.
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Builds TransferOptions.
+     */
+    public static final class Builder {
+
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private int batchSize = FirestormOutbox.MAX_BATCH_SIZE;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private File checkpointFile = null;
+
+        /**
+         * Sets the number of documents read per page during an export.
+         * @param pageSize The page size.
+         * @return Returns the builder.
+         */
+        public Builder setPageSize(final int pageSize) {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("The page size must be positive.");
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of documents written by each batch write during an import.
+         * @param batchSize The batch size, between 1 and 500.
+         * @return Returns the builder.
+         */
+        public Builder setBatchSize(final int batchSize) {
+            if (batchSize <= 0 || batchSize > FirestormOutbox.MAX_BATCH_SIZE) {
+                throw new IllegalArgumentException("The batch size must be between 1 and " + FirestormOutbox.MAX_BATCH_SIZE + ".");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of batch writes in flight during an import.
+         * @param parallelism The number of batch writes.
+         * @return Returns the builder.
+         */
+        public Builder setParallelism(final int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("The parallelism must be positive.");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Makes imports resumable: the number of input lines durably written is recorded in a checkpoint file, and an
+         * import started with an existing checkpoint skips these lines. The file is deleted once an import completes.
+         * @param checkpointFile The checkpoint file, usually located in the app's files directory.
+         * @return Returns the builder.
+         */
+        public Builder setCheckpointFile(final File checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        /**
+         * Builds the options.
+         * @return Returns TransferOptions.
+         */
+        public TransferOptions build() {
+            return new TransferOptions(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,281 @@
+package com.raylabz.firestorm.android;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of the writes Firestorm makes to each document, so that bursts of updates to the same object do
+ * not exceed the rate at which Firestore can apply them to a document (about one per second, sustained).
+ * <p>
+ * Each document has a token bucket, which holds up to a burst of writes and refills at the permitted rate. A write
+ * proceeds at once while its document has a token and no other write to it is in flight. Otherwise it waits, and is
+ * merged with the writes to the same document which arrive meanwhile: only the latest write is applied, as soon as
+ * the bucket has a token again and the previous write has completed, and the tasks of all merged writes complete
+ * with its result. Writes to other documents are not delayed.
+ * <p>
+ * A limiter is set using <i>FirestormSettings.Builder.setWriteRateLimiter()</i>, and applies to the updates, the
+ * deletes and the creations with a given ID made through Firestorm.
+ * @version 1.4.0
+ */
+public final class WriteRateLimiter {
+
+    /**
+     * The default rate, in writes per second per document.
+     */
+    public static final double DEFAULT_WRITES_PER_SECOND = 1;
+
+    /**
+     * The default number of writes a document accepts at once after being idle.
+     */
+    public static final int DEFAULT_BURST = 5;
+
+    /**
+     * The number of buckets above which idle, full buckets are removed.
+     */
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final double writesPerSecond;
+    private final int burst;
+    private final HashMap<String, Bucket> buckets = new HashMap<>();
+    private final AtomicLong mergedWrites = new AtomicLong();
+
+    /**
+     * Constructs a limiter from a builder.
+     * @param builder The builder.
+     */
+    private WriteRateLimiter(final Builder builder) {
+        this.writesPerSecond = builder.writesPerSecond;
+        this.burst = builder.burst;
+    }
+
+    /**
+     * Retrieves the permitted rate.
+     * @return Returns the rate, in writes per second per document.
+     */
+    public double getWritesPerSecond() {
+        return writesPerSecond;
+    }
+
+    /**
+     * Retrieves the burst.
+     * @return Returns the number of writes a document accepts at once after being idle.
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Retrieves the number of writes which were merged into a later write to the same document, and so not applied.
+     * @return Returns a long.
+     */
+    public long getMergedWrites() {
+        return mergedWrites.get();
+    }
+
+    /**
+     * Submits a write to a document. The write runs at once if permitted; otherwise it replaces the write waiting
+     * for the document, if any.
+     * @param path The path of the document.
+     * @param write The write.
+     * @return Returns a Task which completes with the result of the write, or of the later write it was merged into.
+     */
+    Task<Void> submit(final String path, final RetryPolicy.Attempt<Void> write) {
+        final TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        synchronized (this) {
+            Bucket bucket = buckets.get(path);
+            if (bucket == null) {
+                if (buckets.size() >= PRUNE_THRESHOLD) {
+                    prune(System.nanoTime());
+                }
+                bucket = new Bucket(burst, System.nanoTime());
+                buckets.put(path, bucket);
+            }
+            if (bucket.pending != null) {
+                mergedWrites.incrementAndGet();
+            }
+            bucket.pending = write;
+            bucket.waiting.add(source);
+        }
+        flush(path);
+        return source.getTask();
+    }
+
+    /**
+     * Runs the write waiting for a document if its bucket has a token and no write to it is in flight, or schedules
+     * it for when the bucket will have a token.
+     * @param path The path of the document.
+     */
+    private void flush(final String path) {
+        final Bucket bucket;
+        final RetryPolicy.Attempt<Void> write;
+        final List<TaskCompletionSource<Void>> waiting;
+        synchronized (this) {
+            bucket = buckets.get(path);
+            if (bucket == null || bucket.pending == null || bucket.inFlight) {
+                return;
+            }
+            final long delayNanos = bucket.delayNanos(System.nanoTime(), writesPerSecond, burst);
+            if (delayNanos > 0) {
+                if (!bucket.scheduled) {
+                    bucket.scheduled = true;
+                    Firestorm.dispatchDelayed(Priority.NORMAL, (delayNanos + 999999) / 1000000, () -> {
+                        synchronized (WriteRateLimiter.this) {
+                            bucket.scheduled = false;
+                        }
+                        flush(path);
+                    });
+                }
+                return;
+            }
+            bucket.tokens -= 1;
+            bucket.inFlight = true;
+            write = bucket.pending;
+            waiting = bucket.waiting;
+            bucket.pending = null;
+            bucket.waiting = new ArrayList<>();
+        }
+
+        final Task<Void> task;
+        try {
+            task = write.run();
+        } catch (RuntimeException e) {
+            complete(bucket, path, waiting, e);
+            return;
+        }
+        task.addOnCompleteListener(Firestorm.DIRECT, result -> complete(bucket, path, waiting, result.isSuccessful() ? null
+                : result.getException() != null ? result.getException() : new FirestormException("Failed to write the document '" + path + "'.")));
+    }
+
+    /**
+     * Completes the tasks of the writes merged into a write, and runs the next write to the document.
+     * @param bucket The bucket of the document.
+     * @param path The path of the document.
+     * @param waiting The task completion sources of the merged writes.
+     * @param exception The exception the write failed with, or null if it succeeded.
+     */
+    private void complete(final Bucket bucket, final String path, final List<TaskCompletionSource<Void>> waiting, final Exception exception) {
+        synchronized (this) {
+            bucket.inFlight = false;
+        }
+        for (TaskCompletionSource<Void> source : waiting) {
+            if (exception == null) {
+                source.setResult(null);
+            }
+            else {
+                source.setException(exception);
+            }
+        }
+        flush(path);
+    }
+
+    /**
+     * Removes the buckets which are idle and full, and so behave as new buckets. Must be called while synchronized.
+     * @param nowNanos The current time.
+     */
+    private void prune(final long nowNanos) {
+        final Iterator<Bucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            final Bucket bucket = iterator.next();
+            if (bucket.pending == null && !bucket.inFlight && !bucket.scheduled) {
+                bucket.refill(nowNanos, writesPerSecond, burst);
+                if (bucket.tokens >= burst) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * The token bucket of a document, with the write waiting for it.
+     */
+    private static final class Bucket {
+
+        private double tokens;
+        private long refillNanos;
+        private RetryPolicy.Attempt<Void> pending;
+        private List<TaskCompletionSource<Void>> waiting = new ArrayList<>();
+        private boolean inFlight;
+        private boolean scheduled;
+
+        Bucket(final double tokens, final long refillNanos) {
+            this.tokens = tokens;
+            this.refillNanos = refillNanos;
+        }
+
+        /**
+         * Adds the tokens accrued since the last refill.
+         * @param nowNanos The current time.
+         * @param writesPerSecond The rate.
+         * @param burst The capacity of the bucket.
+         */
+        void refill(final long nowNanos, final double writesPerSecond, final int burst) {
+            tokens = Math.min(burst, tokens + (nowNanos - refillNanos) * writesPerSecond / 1e9);
+            refillNanos = nowNanos;
+        }
+
+        /**
+         * Computes the time until the bucket has a token.
+         * @param nowNanos The current time.
+         * @param writesPerSecond The rate.
+         * @param burst The capacity of the bucket.
+         * @return Returns the delay in nanoseconds, or 0 if the bucket has a token.
+         */
+        long delayNanos(final long nowNanos, final double writesPerSecond, final int burst) {
+            refill(nowNanos, writesPerSecond, burst);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * 1e9 / writesPerSecond);
+        }
+
+    }
+
+    /**
+     * Builds a WriteRateLimiter.
+     */
+    public static final class Builder {
+
+        private double writesPerSecond = DEFAULT_WRITES_PER_SECOND;
+        private int burst = DEFAULT_BURST;
+
+        /**
+         * Sets the permitted rate.
+         * @param writesPerSecond The rate, in writes per second per document. The default is 1.
+         * @return Returns the builder.
+         */
+        public Builder setWritesPerSecond(final double writesPerSecond) {
+            if (!(writesPerSecond > 0)) {
+                throw new IllegalArgumentException("The rate must be positive.");
+            }
+            this.writesPerSecond = writesPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the number of writes a document accepts at once after being idle.
+         * @param burst The burst, at least 1. The default is {@value WriteRateLimiter#DEFAULT_BURST}.
+         * @return Returns the builder.
+         */
+        public Builder setBurst(final int burst) {
+            if (burst < 1) {
+                throw new IllegalArgumentException("The burst must be at least 1.");
+            }
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Builds the limiter.
+         * @return Returns a WriteRateLimiter.
+         */
+        public WriteRateLimiter build() {
+            return new WriteRateLimiter(this);
+        }
+
+    }
+
+}
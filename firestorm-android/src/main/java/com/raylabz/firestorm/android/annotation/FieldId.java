@@ -0,0 +1,30 @@
+package com.raylabz.firestorm.android.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Assigns a fixed ID to a field of a @FirestormObject class in its binary encoding.
+ * Fields are identified by their IDs, so a field keeps reading previously encoded data when it is renamed, as long as
+ * its ID is kept. IDs between 1 and {@value #MAX_ID} take 1 or 2 bytes per field. Fields without an ID are identified
+ * by a hash of their name, which takes 4 bytes per field.
+ * @version 1.4.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface FieldId {
+
+    /**
+     * The largest ID which can be assigned to a field.
+     */
+    int MAX_ID = 2047;
+
+    /**
+     * The ID of the field, between 1 and {@value #MAX_ID}, unique within its class and superclasses.
+     * @return Returns the ID.
+     */
+    int value();
+
+}
@@ -0,0 +1,37 @@
+package com.raylabz.firestorm.android.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a String field of a @FirestormObject class as the geohash of a pair of coordinate fields. Firestorm computes
+ * the geohash whenever the object is created or updated, so that the objects can be queried by distance with
+ * {@link com.raylabz.firestorm.android.Firestorm#near(Class, double, double, double)}.
+ * @version 1.4.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface GeohashField {
+
+    /**
+     * The name of the latitude field, a number in degrees.
+     * @return Returns a field name.
+     */
+    String latitude();
+
+    /**
+     * The name of the longitude field, a number in degrees.
+     * @return Returns a field name.
+     */
+    String longitude();
+
+    /**
+     * The number of characters of the geohash, between 1 and {@value com.raylabz.firestorm.android.geo.Geohash#MAX_PRECISION}.
+     * The default precision of 10 locates objects to about a metre.
+     * @return Returns the precision.
+     */
+    int precision() default 10;
+
+}
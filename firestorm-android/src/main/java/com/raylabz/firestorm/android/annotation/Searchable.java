@@ -0,0 +1,23 @@
+package com.raylabz.firestorm.android.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a String field of a @FirestormObject class for full-text search, when the objects are held in an
+ * {@link com.raylabz.firestorm.android.index.IndexedCollection} with a text index.
+ * @version 1.4.0
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Searchable {
+
+    /**
+     * The weight of the words of the field in the ranking of results, relative to the other searchable fields.
+     * @return Returns a positive integer.
+     */
+    int weight() default 1;
+
+}
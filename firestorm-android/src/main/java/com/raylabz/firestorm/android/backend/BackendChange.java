@@ -0,0 +1,69 @@
+package com.raylabz.firestorm.android.backend;
+
+/**
+ * A change to a document in the results of a query listened to through a {@link FirestormBackend}.
+ * @version 1.4.0
+ */
+public final class BackendChange {
+
+    /**
+     * The types of change.
+     */
+    public enum Type {
+        ADDED,
+        MODIFIED,
+        REMOVED
+    }
+
+    private final Type type;
+    private final BackendDocument document;
+    private final int oldIndex;
+    private final int newIndex;
+
+    /**
+     * Constructs a change.
+     * @param type The type of change.
+     * @param document The document after the change, or before it if the document was removed.
+     * @param oldIndex The index of the document in the previous results, or -1 if it was added.
+     * @param newIndex The index of the document in the new results, or -1 if it was removed.
+     */
+    public BackendChange(final Type type, final BackendDocument document, final int oldIndex, final int newIndex) {
+        this.type = type;
+        this.document = document;
+        this.oldIndex = oldIndex;
+        this.newIndex = newIndex;
+    }
+
+    /**
+     * Retrieves the type of change.
+     * @return Returns a Type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the changed document.
+     * @return Returns a BackendDocument.
+     */
+    public BackendDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Retrieves the index of the document in the previous results.
+     * @return Returns an integer, or -1 if the document was added.
+     */
+    public int getOldIndex() {
+        return oldIndex;
+    }
+
+    /**
+     * Retrieves the index of the document in the new results.
+     * @return Returns an integer, or -1 if the document was removed.
+     */
+    public int getNewIndex() {
+        return newIndex;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.raylabz.firestorm.android.backend;
+
+import java.util.Map;
+
+/**
+ * A document read from a {@link FirestormBackend}.
+ * @version 1.4.0
+ */
+public interface BackendDocument {
+
+    /**
+     * Retrieves the ID of the document.
+     * @return Returns a string.
+     */
+    String getId();
+
+    /**
+     * Retrieves the path of the document, in the form <i>collection/documentID</i>.
+     * @return Returns a string.
+     */
+    String getPath();
+
+    /**
+     * Checks if the document exists.
+     * @return Returns true if the document exists, false otherwise.
+     */
+    boolean exists();
+
+    /**
+     * Retrieves the fields of the document.
+     * @return Returns a map of field names to values, or null if the document does not exist.
+     */
+    Map<String, Object> getData();
+
+    /**
+     * Converts the document to an object.
+     * @param objectClass The class of the object.
+     * @param <T> The type of the object.
+     * @return Returns an object of type T, or null if the document does not exist.
+     */
+    <T> T toObject(Class<T> objectClass);
+
+}
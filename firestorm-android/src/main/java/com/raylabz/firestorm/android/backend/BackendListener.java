@@ -0,0 +1,17 @@
+package com.raylabz.firestorm.android.backend;
+
+/**
+ * Listens for snapshots delivered by a {@link FirestormBackend}.
+ * @param <V> The type of value delivered.
+ * @version 1.4.0
+ */
+public interface BackendListener<V> {
+
+    /**
+     * Executes when a new snapshot is available or the listener fails.
+     * @param value The value, or null if an error occurred.
+     * @param error The error, or null if the snapshot was delivered successfully.
+     */
+    void onEvent(V value, Exception error);
+
+}
@@ -0,0 +1,533 @@
+package com.raylabz.firestorm.android.backend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A query on a collection of a {@link FirestormBackend}, supporting the filters, ordering, limits and cursors of
+ * Firestore queries. Queries are immutable: every method returns a new query.
+ * @version 1.4.0
+ */
+public final class BackendQuery {
+
+    /**
+     * The name of the field referring to the ID of a document, as in Firestore's <i>FieldPath.documentId()</i>.
+     */
+    public static final String DOCUMENT_ID = "__name__";
+
+    /**
+     * The operator of a filter.
+     */
+    public enum Operator {
+        EQUAL,
+        LESS_THAN,
+        LESS_THAN_OR_EQUAL,
+        GREATER_THAN,
+        GREATER_THAN_OR_EQUAL,
+        ARRAY_CONTAINS,
+        ARRAY_CONTAINS_ANY,
+        IN,
+        NOT_IN
+        ;
+
+        /**
+         * Checks if the operator is a range (inequality) operator.
+         * @return Returns true for less than and greater than operators, false otherwise.
+         */
+        public boolean isRange() {
+            return this == LESS_THAN || this == LESS_THAN_OR_EQUAL || this == GREATER_THAN || this == GREATER_THAN_OR_EQUAL;
+        }
+
+    }
+
+    /**
+     * A filter on the value of a field.
+     */
+    public static final class Filter {
+
+        private final List<String> fieldPath;
+        private final String field;
+        private final Operator operator;
+        private final Object value;
+
+        /**
+         * Constructs a filter.
+         * @param field The field.
+         * @param operator The operator.
+         * @param value The value, or a list of values for the ARRAY_CONTAINS_ANY, IN and NOT_IN operators.
+         */
+        Filter(final String field, final Operator operator, final Object value) {
+            this(fieldPathOf(field), operator, value);
+        }
+
+        /**
+         * Constructs a filter.
+         * @param fieldPath The segments of the path of the field.
+         * @param operator The operator.
+         * @param value The value, or a list of values for the ARRAY_CONTAINS_ANY, IN and NOT_IN operators.
+         */
+        Filter(final List<String> fieldPath, final Operator operator, final Object value) {
+            this.fieldPath = fieldPath;
+            this.field = fieldOf(fieldPath);
+            this.operator = operator;
+            this.value = value;
+        }
+
+        /**
+         * Retrieves the field.
+         * @return Returns a field name or dot-separated field path, as returned by {@link #fieldOf(List)}.
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * Retrieves the segments of the path of the field.
+         * @return Returns a list of field names.
+         */
+        public List<String> getFieldPath() {
+            return fieldPath;
+        }
+
+        /**
+         * Retrieves the operator.
+         * @return Returns an Operator.
+         */
+        public Operator getOperator() {
+            return operator;
+        }
+
+        /**
+         * Retrieves the value.
+         * @return Returns an object.
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Filter filter = (Filter) o;
+            return field.equals(filter.field) && operator == filter.operator && Objects.equals(value, filter.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, operator, value);
+        }
+
+    }
+
+    /**
+     * An ordering of the results by a field.
+     */
+    public static final class Order {
+
+        private final List<String> fieldPath;
+        private final String field;
+        private final boolean descending;
+
+        /**
+         * Constructs an ordering.
+         * @param fieldPath The segments of the path of the field.
+         * @param descending True to order in descending order, false for ascending.
+         */
+        Order(final List<String> fieldPath, final boolean descending) {
+            this.fieldPath = fieldPath;
+            this.field = fieldOf(fieldPath);
+            this.descending = descending;
+        }
+
+        /**
+         * Retrieves the field.
+         * @return Returns a field name or dot-separated field path, as returned by {@link #fieldOf(List)}.
+         */
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * Retrieves the segments of the path of the field.
+         * @return Returns a list of field names.
+         */
+        public List<String> getFieldPath() {
+            return fieldPath;
+        }
+
+        /**
+         * Checks if the ordering is descending.
+         * @return Returns true if descending, false if ascending.
+         */
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Order order = (Order) o;
+            return descending == order.descending && field.equals(order.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, descending);
+        }
+
+    }
+
+    /**
+     * A starting or ending point of a query, given either as values of the ordered fields or as a document.
+     */
+    public static final class Cursor {
+
+        private final List<Object> values;
+        private final BackendDocument document;
+        private final boolean inclusive;
+
+        /**
+         * Constructs a cursor.
+         * @param values The values of the ordered fields, or null if the cursor is a document.
+         * @param document The document, or null if the cursor consists of values.
+         * @param inclusive True if the results include the cursor position (startAt, endAt), false otherwise (startAfter, endBefore).
+         */
+        Cursor(final List<Object> values, final BackendDocument document, final boolean inclusive) {
+            this.values = values;
+            this.document = document;
+            this.inclusive = inclusive;
+        }
+
+        /**
+         * Retrieves the values of the ordered fields.
+         * @return Returns a list of values, or null if the cursor is a document.
+         */
+        public List<Object> getValues() {
+            return values;
+        }
+
+        /**
+         * Retrieves the document of the cursor.
+         * @return Returns a BackendDocument, or null if the cursor consists of values.
+         */
+        public BackendDocument getDocument() {
+            return document;
+        }
+
+        /**
+         * Checks if the results include the cursor position.
+         * @return Returns true for startAt and endAt cursors, false for startAfter and endBefore cursors.
+         */
+        public boolean isInclusive() {
+            return inclusive;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Cursor cursor = (Cursor) o;
+            return inclusive == cursor.inclusive && Objects.equals(values, cursor.values) &&
+                    (document == null ? cursor.document == null : cursor.document != null && document.getPath().equals(cursor.document.getPath()));
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(values, document != null ? document.getPath() : null, inclusive);
+        }
+
+    }
+
+    private final String collection;
+    private final List<Filter> filters;
+    private final List<Order> orders;
+    private final long limit;
+    private final Cursor start;
+    private final Cursor end;
+
+    /**
+     * Constructs a query returning all the documents of a collection.
+     * @param collection The collection.
+     */
+    public BackendQuery(final String collection) {
+        this(collection, Collections.<Filter>emptyList(), Collections.<Order>emptyList(), -1, null, null);
+    }
+
+    /**
+     * Constructs a query.
+     * @param collection The collection.
+     * @param filters The filters.
+     * @param orders The orderings.
+     * @param limit The limit, or -1 for no limit.
+     * @param start The starting point, or null.
+     * @param end The ending point, or null.
+     */
+    private BackendQuery(final String collection, final List<Filter> filters, final List<Order> orders, final long limit, final Cursor start, final Cursor end) {
+        this.collection = collection;
+        this.filters = filters;
+        this.orders = orders;
+        this.limit = limit;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Splits a dot-separated field path into its segments. Segments may be quoted with backticks, as in the string
+     * form of Firestore's <i>FieldPath</i>, to contain dots, and backslashes escape characters within quoted segments.
+     * @param field The field path.
+     * @return Returns a list of field names.
+     * @throws IllegalArgumentException Thrown when a quoted segment is not terminated.
+     */
+    public static List<String> fieldPathOf(final String field) {
+        final ArrayList<String> segments = new ArrayList<>();
+        final StringBuilder segment = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < field.length(); i++) {
+            final char c = field.charAt(i);
+            if (quoted && c == '\\' && i + 1 < field.length()) {
+                segment.append(field.charAt(++i));
+            }
+            else if (c == '`') {
+                quoted = !quoted;
+            }
+            else if (c == '.' && !quoted) {
+                segments.add(segment.toString());
+                segment.setLength(0);
+            }
+            else {
+                segment.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("The field path '" + field + "' has an unterminated quoted segment.");
+        }
+        segments.add(segment.toString());
+        return Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Joins the segments of a field path with dots, quoting segments which contain dots, backticks or backslashes
+     * with backticks, so that {@link #fieldPathOf(String)} splits the result into the same segments.
+     * @param fieldPath The segments.
+     * @return Returns a dot-separated field path.
+     */
+    public static String fieldOf(final List<String> fieldPath) {
+        final StringBuilder builder = new StringBuilder();
+        for (String segment : fieldPath) {
+            if (builder.length() > 0) {
+                builder.append('.');
+            }
+            if (!segment.isEmpty() && segment.indexOf('.') < 0 && segment.indexOf('`') < 0 && segment.indexOf('\\') < 0) {
+                builder.append(segment);
+                continue;
+            }
+            builder.append('`');
+            for (int i = 0; i < segment.length(); i++) {
+                final char c = segment.charAt(i);
+                if (c == '`' || c == '\\') {
+                    builder.append('\\');
+                }
+                builder.append(c);
+            }
+            builder.append('`');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Filters the results by the value of a field.
+     * @param field The field, or {@link #DOCUMENT_ID} to filter by document ID. Nested fields are separated by dots,
+     *              and segments containing dots are quoted with backticks, as split by {@link #fieldPathOf(String)}.
+     * @param operator The operator.
+     * @param value The value, or a list of values for the ARRAY_CONTAINS_ANY, IN and NOT_IN operators.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery where(final String field, final Operator operator, final Object value) {
+        return where(fieldPathOf(field), operator, value);
+    }
+
+    /**
+     * Filters the results by the value of a field.
+     * @param fieldPath The segments of the path of the field, whose names may contain dots.
+     * @param operator The operator.
+     * @param value The value, or a list of values for the ARRAY_CONTAINS_ANY, IN and NOT_IN operators.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery where(final List<String> fieldPath, final Operator operator, final Object value) {
+        final ArrayList<Filter> newFilters = new ArrayList<>(filters);
+        newFilters.add(new Filter(fieldPath, operator, value));
+        return new BackendQuery(collection, Collections.unmodifiableList(newFilters), orders, limit, start, end);
+    }
+
+    /**
+     * Orders the results by a field.
+     * @param field The field, or {@link #DOCUMENT_ID} to order by document ID. Nested fields are separated by dots,
+     *              and segments containing dots are quoted with backticks, as split by {@link #fieldPathOf(String)}.
+     * @param descending True to order in descending order, false for ascending.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery orderBy(final String field, final boolean descending) {
+        return orderBy(fieldPathOf(field), descending);
+    }
+
+    /**
+     * Orders the results by a field.
+     * @param fieldPath The segments of the path of the field, whose names may contain dots.
+     * @param descending True to order in descending order, false for ascending.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery orderBy(final List<String> fieldPath, final boolean descending) {
+        final ArrayList<Order> newOrders = new ArrayList<>(orders);
+        newOrders.add(new Order(fieldPath, descending));
+        return new BackendQuery(collection, filters, Collections.unmodifiableList(newOrders), limit, start, end);
+    }
+
+    /**
+     * Limits the number of results.
+     * @param limit The maximum number of results.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery limit(final long limit) {
+        return new BackendQuery(collection, filters, orders, limit, start, end);
+    }
+
+    /**
+     * Starts the results at the provided values of the ordered fields.
+     * @param values The values.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery startAt(final Object... values) {
+        return new BackendQuery(collection, filters, orders, limit, new Cursor(Collections.unmodifiableList(Arrays.asList(values)), null, true), end);
+    }
+
+    /**
+     * Starts the results at a document.
+     * @param document The document.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery startAt(final BackendDocument document) {
+        return new BackendQuery(collection, filters, orders, limit, new Cursor(null, document, true), end);
+    }
+
+    /**
+     * Starts the results after the provided values of the ordered fields.
+     * @param values The values.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery startAfter(final Object... values) {
+        return new BackendQuery(collection, filters, orders, limit, new Cursor(Collections.unmodifiableList(Arrays.asList(values)), null, false), end);
+    }
+
+    /**
+     * Starts the results after a document.
+     * @param document The document.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery startAfter(final BackendDocument document) {
+        return new BackendQuery(collection, filters, orders, limit, new Cursor(null, document, false), end);
+    }
+
+    /**
+     * Ends the results at the provided values of the ordered fields.
+     * @param values The values.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery endAt(final Object... values) {
+        return new BackendQuery(collection, filters, orders, limit, start, new Cursor(Collections.unmodifiableList(Arrays.asList(values)), null, true));
+    }
+
+    /**
+     * Ends the results at a document.
+     * @param document The document.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery endAt(final BackendDocument document) {
+        return new BackendQuery(collection, filters, orders, limit, start, new Cursor(null, document, true));
+    }
+
+    /**
+     * Ends the results before the provided values of the ordered fields.
+     * @param values The values.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery endBefore(final Object... values) {
+        return new BackendQuery(collection, filters, orders, limit, start, new Cursor(Collections.unmodifiableList(Arrays.asList(values)), null, false));
+    }
+
+    /**
+     * Ends the results before a document.
+     * @param document The document.
+     * @return Returns a new BackendQuery.
+     */
+    public BackendQuery endBefore(final BackendDocument document) {
+        return new BackendQuery(collection, filters, orders, limit, start, new Cursor(null, document, false));
+    }
+
+    /**
+     * Retrieves the collection queried.
+     * @return Returns a string.
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * Retrieves the filters of the query.
+     * @return Returns a list of filters.
+     */
+    public List<Filter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Retrieves the orderings of the query.
+     * @return Returns a list of orderings.
+     */
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * Retrieves the limit of the query.
+     * @return Returns the maximum number of results, or -1 if the query is not limited.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Retrieves the starting point of the query.
+     * @return Returns a Cursor, or null.
+     */
+    public Cursor getStart() {
+        return start;
+    }
+
+    /**
+     * Retrieves the ending point of the query.
+     * @return Returns a Cursor, or null.
+     */
+    public Cursor getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BackendQuery that = (BackendQuery) o;
+        return limit == that.limit && collection.equals(that.collection) && filters.equals(that.filters) &&
+                orders.equals(that.orders) && Objects.equals(start, that.start) && Objects.equals(end, that.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(collection, filters, orders, limit, start, end);
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+/**
+ * The reads and writes of a transaction run through a {@link FirestormBackend}.
+ * As in Firestore, all reads must be carried out before any writes.
+ * @version 1.4.0
+ */
+public interface BackendTransaction {
+
+    /**
+     * The code of a transaction.
+     * @param <R> The type of the transaction's result.
+     */
+    interface Function<R> {
+
+        /**
+         * Runs the transaction code. The code may run more than once if the backend retries the transaction.
+         * @param transaction The transaction.
+         * @return Returns the result of the transaction.
+         * @throws FirebaseFirestoreException Thrown when a read fails. The transaction is not committed.
+         */
+        R apply(BackendTransaction transaction) throws FirebaseFirestoreException;
+
+    }
+
+    /**
+     * Reads a document.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a BackendDocument, which may not exist.
+     * @throws FirebaseFirestoreException Thrown when the document cannot be read.
+     */
+    BackendDocument get(String collection, String documentID) throws FirebaseFirestoreException;
+
+    /**
+     * Sets a document to the contents of an object when the transaction commits.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param object The object.
+     */
+    void set(String collection, String documentID, Object object);
+
+    /**
+     * Deletes a document when the transaction commits.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     */
+    void delete(String collection, String documentID);
+
+}
@@ -0,0 +1,130 @@
+package com.raylabz.firestorm.android.backend;
+
+/**
+ * A write committed as part of a batch through a {@link FirestormBackend}: a set or a delete of a document, or an
+ * increment of one of its fields.
+ * @version 1.4.0
+ */
+public final class BackendWrite {
+
+    private final String collection;
+    private final String documentID;
+    private final Object object;
+    private final String field;
+    private final long delta;
+
+    /**
+     * Constructs a write.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param object The object to set, or null to delete the document or increment a field.
+     * @param field The field to increment, or null to set or delete the document.
+     * @param delta The amount to add to the field.
+     */
+    private BackendWrite(final String collection, final String documentID, final Object object, final String field, final long delta) {
+        this.collection = collection;
+        this.documentID = documentID;
+        this.object = object;
+        this.field = field;
+        this.delta = delta;
+    }
+
+    /**
+     * Creates a write which sets a document to the contents of an object.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param object The object.
+     * @return Returns a BackendWrite.
+     */
+    public static BackendWrite set(final String collection, final String documentID, final Object object) {
+        if (object == null) {
+            throw new IllegalArgumentException("The object of a set write cannot be null.");
+        }
+        return new BackendWrite(collection, documentID, object, null, 0);
+    }
+
+    /**
+     * Creates a write which deletes a document.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a BackendWrite.
+     */
+    public static BackendWrite delete(final String collection, final String documentID) {
+        return new BackendWrite(collection, documentID, null, null, 0);
+    }
+
+    /**
+     * Creates a write which adds an amount to a numeric field of a document, as with Firestore's
+     * <i>FieldValue.increment()</i>. The document is created if it does not exist, and a field which is missing or is
+     * not a number is set to the amount. Other fields are left unchanged.
+     * Unlike a read followed by a set, concurrent increments of a document never conflict.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param field The name of the top-level field.
+     * @param delta The amount to add, which may be negative.
+     * @return Returns a BackendWrite.
+     */
+    public static BackendWrite increment(final String collection, final String documentID, final String field, final long delta) {
+        if (field == null) {
+            throw new IllegalArgumentException("The field of an increment write cannot be null.");
+        }
+        return new BackendWrite(collection, documentID, null, field, delta);
+    }
+
+    /**
+     * Retrieves the collection of the document.
+     * @return Returns a string.
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * Retrieves the ID of the document.
+     * @return Returns a string.
+     */
+    public String getDocumentID() {
+        return documentID;
+    }
+
+    /**
+     * Retrieves the object written.
+     * @return Returns an object, or null if the write is a delete or an increment.
+     */
+    public Object getObject() {
+        return object;
+    }
+
+    /**
+     * Checks if the write deletes the document.
+     * @return Returns true if the write is a delete, false otherwise.
+     */
+    public boolean isDelete() {
+        return object == null && field == null;
+    }
+
+    /**
+     * Checks if the write increments a field.
+     * @return Returns true if the write is an increment, false otherwise.
+     */
+    public boolean isIncrement() {
+        return field != null;
+    }
+
+    /**
+     * Retrieves the incremented field.
+     * @return Returns a string, or null if the write is not an increment.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Retrieves the amount added to the incremented field.
+     * @return Returns a long.
+     */
+    public long getDelta() {
+        return delta;
+    }
+
+}
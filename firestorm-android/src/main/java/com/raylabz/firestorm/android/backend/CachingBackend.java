@@ -0,0 +1,17 @@
+package com.raylabz.firestorm.android.backend;
+
+/**
+ * A {@link FirestormBackend} keeping a local cache of the documents it has read, which can be queried when the
+ * backend cannot be reached in time.
+ * @version 1.4.0
+ */
+public interface CachingBackend extends FirestormBackend {
+
+    /**
+     * Retrieves a view of the backend whose reads are served from the local cache only. Cached documents may be
+     * stale, and reads of documents which are not cached fail.
+     * @return Returns a FirestormBackend.
+     */
+    FirestormBackend getCache();
+
+}
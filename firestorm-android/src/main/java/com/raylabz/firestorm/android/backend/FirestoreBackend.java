@@ -0,0 +1,368 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.firestore.util.CustomClassMapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link FirestormBackend} storing documents in Firestore. This is the default backend.
+ * @version 1.4.0
+ */
+public final class FirestoreBackend implements CachingBackend {
+
+    /**
+     * Runs the continuations converting Firestore results on the thread completing the Firestore task.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private final FirebaseFirestore firestore;
+
+    /**
+     * The source documents are read from.
+     */
+    private final Source source;
+
+    /**
+     * The view of this backend reading from the local cache, created when first needed.
+     */
+    private FirestoreBackend cache;
+
+    /**
+     * Constructs a FirestoreBackend.
+     * @param firestore The Firestore instance.
+     */
+    public FirestoreBackend(final FirebaseFirestore firestore) {
+        this(firestore, Source.DEFAULT);
+    }
+
+    /**
+     * Constructs a FirestoreBackend reading from a given source.
+     * @param firestore The Firestore instance.
+     * @param source The source documents are read from.
+     */
+    private FirestoreBackend(final FirebaseFirestore firestore, final Source source) {
+        this.firestore = firestore;
+        this.source = source;
+    }
+
+    /**
+     * Retrieves the Firestore instance.
+     * @return Returns FirebaseFirestore.
+     */
+    public FirebaseFirestore getFirestore() {
+        return firestore;
+    }
+
+    /**
+     * Retrieves a reference to a document.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a DocumentReference.
+     */
+    private DocumentReference reference(final String collection, final String documentID) {
+        return firestore.collection(collection).document(documentID);
+    }
+
+    @Override
+    public synchronized FirestormBackend getCache() {
+        if (source == Source.CACHE) {
+            return this;
+        }
+        if (cache == null) {
+            cache = new FirestoreBackend(firestore, Source.CACHE);
+        }
+        return cache;
+    }
+
+    @Override
+    public String newDocumentID(final String collection) {
+        return firestore.collection(collection).document().getId();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> toData(final Object object) {
+        final Object data = CustomClassMapper.convertToPlainJavaTypes(object);
+        if (!(data instanceof Map)) {
+            throw new IllegalArgumentException("Objects of type " + object.getClass().getSimpleName() + " cannot be stored as documents.");
+        }
+        return (Map<String, Object>) data;
+    }
+
+    @Override
+    public Task<BackendDocument> get(final String collection, final String documentID) {
+        return reference(collection, documentID).get(source).continueWith(DIRECT, task -> new FirestoreDocument(task.getResult()));
+    }
+
+    @Override
+    public Task<Void> set(final String collection, final String documentID, final Object object) {
+        return reference(collection, documentID).set(object);
+    }
+
+    @Override
+    public Task<Void> delete(final String collection, final String documentID) {
+        return reference(collection, documentID).delete();
+    }
+
+    @Override
+    public Task<List<BackendDocument>> query(final BackendQuery query) {
+        return query(toQuery(query), source);
+    }
+
+    @Override
+    public Task<Void> commit(final List<BackendWrite> writes) {
+        final WriteBatch batch = firestore.batch();
+        for (BackendWrite write : writes) {
+            if (write.isDelete()) {
+                batch.delete(reference(write.getCollection(), write.getDocumentID()));
+            }
+            else if (write.isIncrement()) {
+                batch.set(reference(write.getCollection(), write.getDocumentID()),
+                        Collections.singletonMap(write.getField(), FieldValue.increment(write.getDelta())), SetOptions.merge());
+            }
+            else {
+                batch.set(reference(write.getCollection(), write.getDocumentID()), write.getObject());
+            }
+        }
+        return batch.commit();
+    }
+
+    @Override
+    public <R> Task<R> runTransaction(final BackendTransaction.Function<R> function) {
+        return firestore.runTransaction(transaction -> function.apply(wrap(firestore, transaction)));
+    }
+
+    @Override
+    public ListenerRegistration addDocumentListener(final String collection, final String documentID, final BackendListener<BackendDocument> listener) {
+        return reference(collection, documentID).addSnapshotListener((snapshot, e) ->
+                listener.onEvent(snapshot != null ? new FirestoreDocument(snapshot) : null, e));
+    }
+
+    @Override
+    public ListenerRegistration addQueryListener(final BackendQuery query, final BackendListener<List<BackendChange>> listener) {
+        return addQueryListener(toQuery(query), listener);
+    }
+
+    /**
+     * Converts a query to a Firestore query on its collection.
+     * @param query The query.
+     * @return Returns a Firestore Query.
+     */
+    public Query toQuery(final BackendQuery query) {
+        return toQuery(firestore.collection(query.getCollection()), query);
+    }
+
+    /**
+     * Applies the filters, orderings, limit and cursors of a query to a Firestore query.
+     * @param base The Firestore query to apply the query to.
+     * @param query The query.
+     * @return Returns a Firestore Query.
+     */
+    public static Query toQuery(final Query base, final BackendQuery query) {
+        Query result = base;
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            final FieldPath field = fieldPath(filter.getFieldPath());
+            switch (filter.getOperator()) {
+                case EQUAL:
+                    result = result.whereEqualTo(field, filter.getValue());
+                    break;
+                case LESS_THAN:
+                    result = result.whereLessThan(field, filter.getValue());
+                    break;
+                case LESS_THAN_OR_EQUAL:
+                    result = result.whereLessThanOrEqualTo(field, filter.getValue());
+                    break;
+                case GREATER_THAN:
+                    result = result.whereGreaterThan(field, filter.getValue());
+                    break;
+                case GREATER_THAN_OR_EQUAL:
+                    result = result.whereGreaterThanOrEqualTo(field, filter.getValue());
+                    break;
+                case ARRAY_CONTAINS:
+                    result = result.whereArrayContains(field, filter.getValue());
+                    break;
+                case ARRAY_CONTAINS_ANY:
+                    result = result.whereArrayContainsAny(field, (List<?>) filter.getValue());
+                    break;
+                case IN:
+                    result = result.whereIn(field, (List<?>) filter.getValue());
+                    break;
+                case NOT_IN:
+                    result = result.whereNotIn(field, (List<?>) filter.getValue());
+                    break;
+            }
+        }
+        for (BackendQuery.Order order : query.getOrders()) {
+            result = result.orderBy(fieldPath(order.getFieldPath()), order.isDescending() ? Query.Direction.DESCENDING : Query.Direction.ASCENDING);
+        }
+        if (query.getLimit() >= 0) {
+            result = result.limit(query.getLimit());
+        }
+        final BackendQuery.Cursor start = query.getStart();
+        if (start != null) {
+            if (start.getDocument() != null) {
+                final DocumentSnapshot snapshot = snapshotOf(start.getDocument());
+                result = start.isInclusive() ? result.startAt(snapshot) : result.startAfter(snapshot);
+            }
+            else {
+                result = start.isInclusive() ? result.startAt(start.getValues().toArray()) : result.startAfter(start.getValues().toArray());
+            }
+        }
+        final BackendQuery.Cursor end = query.getEnd();
+        if (end != null) {
+            if (end.getDocument() != null) {
+                final DocumentSnapshot snapshot = snapshotOf(end.getDocument());
+                result = end.isInclusive() ? result.endAt(snapshot) : result.endBefore(snapshot);
+            }
+            else {
+                result = end.isInclusive() ? result.endAt(end.getValues().toArray()) : result.endBefore(end.getValues().toArray());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a Firestore query.
+     * @param query The Firestore query.
+     * @return Returns a Task with the documents matching the query.
+     */
+    public static Task<List<BackendDocument>> query(final Query query) {
+        return query(query, Source.DEFAULT);
+    }
+
+    /**
+     * Runs a Firestore query, reading from a given source.
+     * @param query The Firestore query.
+     * @param source The source, e.g. Source.CACHE to read from the local cache only.
+     * @return Returns a Task with the documents matching the query.
+     */
+    public static Task<List<BackendDocument>> query(final Query query, final Source source) {
+        return query.get(source).continueWith(DIRECT, task -> documentsOf(task.getResult()));
+    }
+
+    /**
+     * Listens for changes to the results of a Firestore query.
+     * @param query The Firestore query.
+     * @param listener The listener.
+     * @return Returns a ListenerRegistration.
+     */
+    public static ListenerRegistration addQueryListener(final Query query, final BackendListener<List<BackendChange>> listener) {
+        return query.addSnapshotListener((snapshot, e) -> listener.onEvent(snapshot != null ? changesOf(snapshot) : null, e));
+    }
+
+    /**
+     * Wraps a Firestore transaction.
+     * @param firestore The Firestore instance running the transaction.
+     * @param transaction The Firestore transaction.
+     * @return Returns a BackendTransaction.
+     */
+    public static BackendTransaction wrap(final FirebaseFirestore firestore, final Transaction transaction) {
+        return new BackendTransaction() {
+            @Override
+            public BackendDocument get(final String collection, final String documentID) throws FirebaseFirestoreException {
+                return new FirestoreDocument(transaction.get(firestore.collection(collection).document(documentID)));
+            }
+
+            @Override
+            public void set(final String collection, final String documentID, final Object object) {
+                transaction.set(firestore.collection(collection).document(documentID), object);
+            }
+
+            @Override
+            public void delete(final String collection, final String documentID) {
+                transaction.delete(firestore.collection(collection).document(documentID));
+            }
+        };
+    }
+
+    /**
+     * Converts the results of a Firestore query to documents.
+     * @param snapshot The query snapshot.
+     * @return Returns a list of documents.
+     */
+    private static List<BackendDocument> documentsOf(final QuerySnapshot snapshot) {
+        final List<DocumentSnapshot> snapshots = snapshot.getDocuments();
+        final ArrayList<BackendDocument> documents = new ArrayList<>(snapshots.size());
+        for (DocumentSnapshot documentSnapshot : snapshots) {
+            documents.add(new FirestoreDocument(documentSnapshot));
+        }
+        return documents;
+    }
+
+    /**
+     * Converts the document changes of a Firestore query snapshot to changes.
+     * @param snapshot The query snapshot.
+     * @return Returns a list of changes.
+     */
+    public static List<BackendChange> changesOf(final QuerySnapshot snapshot) {
+        final List<DocumentChange> documentChanges = snapshot.getDocumentChanges();
+        final ArrayList<BackendChange> changes = new ArrayList<>(documentChanges.size());
+        for (DocumentChange documentChange : documentChanges) {
+            changes.add(new BackendChange(typeOf(documentChange.getType()),
+                    new FirestoreDocument(documentChange.getDocument()), documentChange.getOldIndex(), documentChange.getNewIndex()));
+        }
+        return changes;
+    }
+
+    /**
+     * Converts the type of a Firestore document change.
+     * @param type The type of the document change.
+     * @return Returns a BackendChange.Type.
+     */
+    private static BackendChange.Type typeOf(final DocumentChange.Type type) {
+        switch (type) {
+            case ADDED:
+                return BackendChange.Type.ADDED;
+            case MODIFIED:
+                return BackendChange.Type.MODIFIED;
+            case REMOVED:
+                return BackendChange.Type.REMOVED;
+        }
+        throw new NoSuchElementException("Invalid DocumentChange.Type provided");
+    }
+
+    /**
+     * Retrieves the Firestore snapshot of a document used as a query cursor.
+     * @param document The document.
+     * @return Returns a DocumentSnapshot.
+     */
+    private static DocumentSnapshot snapshotOf(final BackendDocument document) {
+        if (!(document instanceof FirestoreDocument)) {
+            throw new IllegalArgumentException("Only documents read from Firestore can be used as cursors of Firestore queries.");
+        }
+        return ((FirestoreDocument) document).getSnapshot();
+    }
+
+    /**
+     * Converts the path of a field of a query to a Firestore field path.
+     * @param fieldPath The segments of the path.
+     * @return Returns a FieldPath.
+     */
+    private static FieldPath fieldPath(final List<String> fieldPath) {
+        if (fieldPath.size() == 1 && BackendQuery.DOCUMENT_ID.equals(fieldPath.get(0))) {
+            return FieldPath.documentId();
+        }
+        return FieldPath.of(fieldPath.toArray(new String[0]));
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A document read from Firestore through a {@link FirestoreBackend}.
+ * @version 1.4.0
+ */
+public final class FirestoreDocument implements BackendDocument {
+
+    private final DocumentSnapshot snapshot;
+
+    /**
+     * Constructs a FirestoreDocument.
+     * @param snapshot The snapshot of the document.
+     */
+    public FirestoreDocument(final DocumentSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Retrieves the snapshot of the document.
+     * @return Returns a DocumentSnapshot.
+     */
+    public DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Retrieves the snapshots of a list of documents read from Firestore.
+     * @param documents The documents.
+     * @return Returns a list of DocumentSnapshots, or null if any of the documents was not read from Firestore.
+     */
+    public static List<DocumentSnapshot> snapshotsOf(final List<BackendDocument> documents) {
+        final ArrayList<DocumentSnapshot> snapshots = new ArrayList<>(documents.size());
+        for (BackendDocument document : documents) {
+            if (!(document instanceof FirestoreDocument)) {
+                return null;
+            }
+            snapshots.add(((FirestoreDocument) document).snapshot);
+        }
+        return snapshots;
+    }
+
+    @Override
+    public String getId() {
+        return snapshot.getId();
+    }
+
+    @Override
+    public String getPath() {
+        return snapshot.getReference().getPath();
+    }
+
+    @Override
+    public boolean exists() {
+        return snapshot.exists();
+    }
+
+    @Override
+    public Map<String, Object> getData() {
+        return snapshot.getData();
+    }
+
+    @Override
+    public <T> T toObject(final Class<T> objectClass) {
+        return snapshot.toObject(objectClass);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The storage used by Firestorm to read, write, query and listen to documents.
+ * Firestorm uses a {@link FirestoreBackend} by default. Other implementations, such as the {@link MemoryBackend},
+ * can be set using <i>FirestormSettings.Builder.setBackend()</i>.
+ * <p>
+ * Documents are addressed by a collection name (the simple name of their class) and a document ID.
+ * Failures are reported through the returned tasks, preferably as a FirebaseFirestoreException so that they can be
+ * retried according to their code.
+ * @version 1.4.0
+ */
+public interface FirestormBackend {
+
+    /**
+     * Generates the ID of a new document.
+     * @param collection The collection of the document.
+     * @return Returns a unique document ID.
+     */
+    String newDocumentID(String collection);
+
+    /**
+     * Converts an object to the fields of a document, as the backend maps the object when it is set. Setting the
+     * returned fields writes the same document as setting the object.
+     * @param object The object.
+     * @return Returns a map of field names to values.
+     * @throws IllegalArgumentException Thrown when the object cannot be stored as a document.
+     */
+    Map<String, Object> toData(Object object);
+
+    /**
+     * Reads a document.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a Task with a BackendDocument, which may not exist.
+     */
+    Task<BackendDocument> get(String collection, String documentID);
+
+    /**
+     * Sets a document to the contents of an object, creating it if it does not exist.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param object The object.
+     * @return Returns a Task which completes when the document is written.
+     */
+    Task<Void> set(String collection, String documentID, Object object);
+
+    /**
+     * Deletes a document.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a Task which completes when the document is deleted.
+     */
+    Task<Void> delete(String collection, String documentID);
+
+    /**
+     * Runs a query.
+     * @param query The query.
+     * @return Returns a Task with the documents matching the query, in query order.
+     */
+    Task<List<BackendDocument>> query(BackendQuery query);
+
+    /**
+     * Commits a list of writes atomically.
+     * @param writes The writes.
+     * @return Returns a Task which completes when all writes are committed.
+     */
+    Task<Void> commit(List<BackendWrite> writes);
+
+    /**
+     * Runs a transaction.
+     * @param function The code of the transaction.
+     * @param <R> The type of the transaction's result.
+     * @return Returns a Task with the result of the transaction.
+     */
+    <R> Task<R> runTransaction(BackendTransaction.Function<R> function);
+
+    /**
+     * Listens for changes to a document. The listener receives the current state of the document once attached.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param listener The listener.
+     * @return Returns a ListenerRegistration which detaches the listener.
+     */
+    ListenerRegistration addDocumentListener(String collection, String documentID, BackendListener<BackendDocument> listener);
+
+    /**
+     * Listens for changes to the results of a query. The listener first receives all current results as additions.
+     * @param query The query.
+     * @param listener The listener.
+     * @return Returns a ListenerRegistration which detaches the listener.
+     */
+    ListenerRegistration addQueryListener(BackendQuery query, BackendListener<List<BackendChange>> listener);
+
+}
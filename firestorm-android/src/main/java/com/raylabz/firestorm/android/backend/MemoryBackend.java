@@ -0,0 +1,148 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.gson.Gson;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link FirestormBackend} keeping documents in memory in a {@link MemoryStore}, without Firestore. It can be used
+ * for tests, load tests at memory speed and as a local store. Like the rest of the backend SPI, it returns Play
+ * Services tasks, so only the {@link MemoryStore} itself can be used outside Android.
+ * <p>
+ * Operations complete immediately and their tasks are already complete when returned. Invalid arguments, such as
+ * objects Gson cannot serialize, fail with an INVALID_ARGUMENT FirebaseFirestoreException.
+ * @version 1.4.0
+ */
+public final class MemoryBackend implements FirestormBackend {
+
+    private final MemoryStore store;
+
+    /**
+     * Constructs a MemoryBackend which notifies listeners on the thread carrying out each write.
+     */
+    public MemoryBackend() {
+        this(new MemoryStore());
+    }
+
+    /**
+     * Constructs a MemoryBackend.
+     * @param gson The Gson instance used to convert objects to documents and back.
+     * @param listenerExecutor The executor used to notify listeners.
+     */
+    public MemoryBackend(final Gson gson, final Executor listenerExecutor) {
+        this(new MemoryStore(gson, listenerExecutor));
+    }
+
+    /**
+     * Constructs a MemoryBackend on an existing store.
+     * @param store The store.
+     */
+    public MemoryBackend(final MemoryStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Retrieves the store holding the documents.
+     * @return Returns a MemoryStore.
+     */
+    public MemoryStore getStore() {
+        return store;
+    }
+
+    @Override
+    public String newDocumentID(final String collection) {
+        return store.newDocumentID();
+    }
+
+    @Override
+    public Map<String, Object> toData(final Object object) {
+        return store.toData(object);
+    }
+
+    @Override
+    public Task<BackendDocument> get(final String collection, final String documentID) {
+        return Tasks.forResult(store.get(collection, documentID));
+    }
+
+    @Override
+    public Task<Void> set(final String collection, final String documentID, final Object object) {
+        return commit(Collections.singletonList(BackendWrite.set(collection, documentID, object)));
+    }
+
+    @Override
+    public Task<Void> delete(final String collection, final String documentID) {
+        return commit(Collections.singletonList(BackendWrite.delete(collection, documentID)));
+    }
+
+    @Override
+    public Task<List<BackendDocument>> query(final BackendQuery query) {
+        try {
+            return Tasks.forResult(store.query(query));
+        } catch (RuntimeException e) {
+            return Tasks.forException(invalidArgument(e));
+        }
+    }
+
+    @Override
+    public Task<Void> commit(final List<BackendWrite> writes) {
+        try {
+            store.commit(writes);
+            return Tasks.forResult(null);
+        } catch (RuntimeException e) {
+            return Tasks.forException(invalidArgument(e));
+        }
+    }
+
+    @Override
+    public <R> Task<R> runTransaction(final BackendTransaction.Function<R> function) {
+        try {
+            return Tasks.forResult(store.runTransaction(function));
+        } catch (FirebaseFirestoreException | RuntimeException e) {
+            return Tasks.forException(e);
+        }
+    }
+
+    @Override
+    public ListenerRegistration addDocumentListener(final String collection, final String documentID, final BackendListener<BackendDocument> listener) {
+        return store.addDocumentListener(collection, documentID, listener);
+    }
+
+    @Override
+    public ListenerRegistration addQueryListener(final BackendQuery query, final BackendListener<List<BackendChange>> listener) {
+        return store.addQueryListener(query, (changes, error) ->
+                listener.onEvent(changes, error instanceof RuntimeException ? invalidArgument((RuntimeException) error) : error));
+    }
+
+    /**
+     * Retrieves the number of documents in a collection.
+     * @param collection The collection.
+     * @return Returns an integer.
+     */
+    public int size(final String collection) {
+        return store.size(collection);
+    }
+
+    /**
+     * Deletes all documents. Listeners are not notified.
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    /**
+     * Wraps an exception caused by an invalid argument.
+     * @param e The exception.
+     * @return Returns a FirebaseFirestoreException.
+     */
+    private static FirebaseFirestoreException invalidArgument(final RuntimeException e) {
+        return new FirebaseFirestoreException(String.valueOf(e.getMessage()), FirebaseFirestoreException.Code.INVALID_ARGUMENT, e);
+    }
+
+}
@@ -0,0 +1,417 @@
+package com.raylabz.firestorm.android.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The documents of a collection of a {@link MemoryStore}, along with sorted indexes on their fields.
+ * <p>
+ * Queries are answered from an index rather than by scanning the collection: an equality or array-contains filter
+ * is answered by looking up its value, IN and array-contains-any filters by looking up each of their values and
+ * merging the documents found by ID, and other queries by scanning the range of the index on their first ordered
+ * field which lies within their range filters and cursors. When the index yields documents in the order of the
+ * query, the scan stops as soon as the limit of the query is reached. Like Firestore's single-field indexes, indexes are created the first time a query
+ * needs them and are maintained on every write from then on.
+ * <p>
+ * Not thread-safe: the store guards collections with its lock.
+ * @version 1.4.0
+ */
+final class MemoryCollection {
+
+    private final HashMap<String, MemoryDocument> documents = new HashMap<>();
+    private final HashMap<String, MemoryIndex> indexes = new HashMap<>();
+    private final HashMap<String, MemoryIndex> elementIndexes = new HashMap<>();
+
+    /**
+     * Constructs an empty collection, indexed by document ID.
+     */
+    MemoryCollection() {
+        indexes.put(BackendQuery.DOCUMENT_ID, new MemoryIndex(BackendQuery.DOCUMENT_ID, false));
+    }
+
+    /**
+     * The way a query is answered from an index.
+     */
+    private static final class Plan {
+
+        private final String field;
+        private final boolean elements;
+        private final List<?> values;
+        private final MemoryIndex.Key lower;
+        private final MemoryIndex.Key upper;
+        private final boolean ordered;
+        private final boolean descending;
+
+        /**
+         * Constructs a plan.
+         * @param field The field of the index used.
+         * @param elements True to use the index on array elements, false for the index on values.
+         * @param values The values looked up, or null to scan a range of the index.
+         * @param lower The lower bound of the range scanned, or null.
+         * @param upper The upper bound of the range scanned, or null.
+         * @param ordered True if the index yields the documents in query order, false if they must be sorted.
+         * @param descending True to read the index in descending order.
+         */
+        Plan(final String field, final boolean elements, final List<?> values, final MemoryIndex.Key lower,
+             final MemoryIndex.Key upper, final boolean ordered, final boolean descending) {
+            this.field = field;
+            this.elements = elements;
+            this.values = values;
+            this.lower = lower;
+            this.upper = upper;
+            this.ordered = ordered;
+            this.descending = descending;
+        }
+
+    }
+
+    /**
+     * Retrieves a document.
+     * @param id The ID of the document.
+     * @return Returns a MemoryDocument, or null if the document does not exist.
+     */
+    MemoryDocument get(final String id) {
+        return documents.get(id);
+    }
+
+    /**
+     * Retrieves the number of documents.
+     * @return Returns an integer.
+     */
+    int size() {
+        return documents.size();
+    }
+
+    /**
+     * Stores a document, updating the indexes.
+     * @param document The document; if it does not exist, the document with its ID is deleted.
+     */
+    void put(final MemoryDocument document) {
+        final MemoryDocument previous = document.exists() ? documents.put(document.getId(), document) : documents.remove(document.getId());
+        if (previous == null && !document.exists()) {
+            return;
+        }
+        update(indexes, previous, document);
+        update(elementIndexes, previous, document);
+    }
+
+    /**
+     * Replaces the entries of a document in a set of indexes.
+     * @param indexMap The indexes.
+     * @param previous The previous version of the document, or null.
+     * @param document The new version of the document.
+     */
+    private static void update(final HashMap<String, MemoryIndex> indexMap, final MemoryDocument previous, final MemoryDocument document) {
+        for (MemoryIndex index : indexMap.values()) {
+            if (previous != null) {
+                index.remove(previous);
+            }
+            if (document.exists()) {
+                index.add(document);
+            }
+        }
+    }
+
+    /**
+     * Checks if the index needed to answer a query exists.
+     * @param query The query.
+     * @return Returns true if the index exists, false otherwise.
+     */
+    boolean isIndexed(final MemoryQuery query) {
+        return indexOf(plan(query)) != null;
+    }
+
+    /**
+     * Creates the index needed to answer a query, if it does not exist.
+     * @param query The query.
+     */
+    void index(final MemoryQuery query) {
+        final Plan plan = plan(query);
+        if (indexOf(plan) != null) {
+            return;
+        }
+        final MemoryIndex index = new MemoryIndex(plan.field, plan.elements);
+        for (MemoryDocument document : documents.values()) {
+            index.add(document);
+        }
+        (plan.elements ? elementIndexes : indexes).put(plan.field, index);
+    }
+
+    /**
+     * Retrieves the index used by a plan.
+     * @param plan The plan.
+     * @return Returns a MemoryIndex, or null if the index does not exist.
+     */
+    private MemoryIndex indexOf(final Plan plan) {
+        return (plan.elements ? elementIndexes : indexes).get(plan.field);
+    }
+
+    /**
+     * Chooses how to answer a query.
+     * @param query The query.
+     * @return Returns a Plan.
+     */
+    private static Plan plan(final MemoryQuery query) {
+        final List<BackendQuery.Order> orders = query.getOrders();
+
+        //Equality and array-contains filters select the fewest documents, ordered by ID:
+        final BackendQuery.Order order = firstNonEqualityOrder(query);
+        final boolean orderedByID = BackendQuery.DOCUMENT_ID.equals(order.getField());
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            final BackendQuery.Operator operator = filter.getOperator();
+            if (operator == BackendQuery.Operator.EQUAL || operator == BackendQuery.Operator.ARRAY_CONTAINS) {
+                return new Plan(filter.getField(), operator == BackendQuery.Operator.ARRAY_CONTAINS,
+                        Collections.singletonList(filter.getValue()), null, null, orderedByID, order.isDescending());
+            }
+        }
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            final BackendQuery.Operator operator = filter.getOperator();
+            if ((operator == BackendQuery.Operator.IN || operator == BackendQuery.Operator.ARRAY_CONTAINS_ANY) && filter.getValue() instanceof List) {
+                return new Plan(filter.getField(), operator == BackendQuery.Operator.ARRAY_CONTAINS_ANY,
+                        (List<?>) filter.getValue(), null, null, orderedByID, order.isDescending());
+            }
+        }
+
+        //Otherwise, scan the index on the first ordered field, which is the field of any inequality filter:
+        final BackendQuery.Order first = orders.get(0);
+        final String field = first.getField();
+        final boolean ordered = orders.size() == 1 || (orders.size() == 2 && orders.get(1).isDescending() == first.isDescending());
+        MemoryIndex.Key lower = null;
+        MemoryIndex.Key upper = null;
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            if (!filter.getField().equals(field) || !filter.getOperator().isRange()) {
+                continue;
+            }
+            final Object value = filter.getValue();
+            switch (filter.getOperator()) {
+                case LESS_THAN:
+                    lower = max(lower, MemoryIndex.Key.typeStart(value));
+                    upper = min(upper, MemoryIndex.Key.before(value));
+                    break;
+                case LESS_THAN_OR_EQUAL:
+                    lower = max(lower, MemoryIndex.Key.typeStart(value));
+                    upper = min(upper, MemoryIndex.Key.after(value));
+                    break;
+                case GREATER_THAN:
+                    lower = max(lower, MemoryIndex.Key.after(value));
+                    upper = min(upper, MemoryIndex.Key.typeEnd(value));
+                    break;
+                case GREATER_THAN_OR_EQUAL:
+                    lower = max(lower, MemoryIndex.Key.before(value));
+                    upper = min(upper, MemoryIndex.Key.typeEnd(value));
+                    break;
+            }
+        }
+
+        //Cursors bound the values of the first ordered field:
+        final List<Object> start = query.getStartPosition();
+        if (start != null && !start.isEmpty()) {
+            if (first.isDescending()) {
+                upper = min(upper, MemoryIndex.Key.after(start.get(0)));
+            }
+            else {
+                lower = max(lower, MemoryIndex.Key.before(start.get(0)));
+            }
+        }
+        final List<Object> end = query.getEndPosition();
+        if (end != null && !end.isEmpty()) {
+            if (first.isDescending()) {
+                lower = max(lower, MemoryIndex.Key.before(end.get(0)));
+            }
+            else {
+                upper = min(upper, MemoryIndex.Key.after(end.get(0)));
+            }
+        }
+        return new Plan(field, false, null, lower, upper, ordered, first.isDescending());
+    }
+
+    /**
+     * Retrieves the first ordering of a query which is not on a field filtered by equality.
+     * Documents having the same value in the filtered fields are only ordered by the remaining orderings.
+     * @param query The query.
+     * @return Returns an Order; the last ordering, by document ID, if all others are on fields filtered by equality.
+     */
+    private static BackendQuery.Order firstNonEqualityOrder(final MemoryQuery query) {
+        final HashSet<String> equalityFields = new HashSet<>();
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            if (filter.getOperator() == BackendQuery.Operator.EQUAL) {
+                equalityFields.add(filter.getField());
+            }
+        }
+        for (BackendQuery.Order order : query.getOrders()) {
+            if (!equalityFields.contains(order.getField())) {
+                return order;
+            }
+        }
+        return query.getOrders().get(query.getOrders().size() - 1);
+    }
+
+    /**
+     * Retrieves the greater of two lower bounds.
+     * @param a The first bound, or null.
+     * @param b The second bound.
+     * @return Returns a Key.
+     */
+    private static MemoryIndex.Key max(final MemoryIndex.Key a, final MemoryIndex.Key b) {
+        return a == null || b.compareTo(a) > 0 ? b : a;
+    }
+
+    /**
+     * Retrieves the lesser of two upper bounds.
+     * @param a The first bound, or null.
+     * @param b The second bound.
+     * @return Returns a Key.
+     */
+    private static MemoryIndex.Key min(final MemoryIndex.Key a, final MemoryIndex.Key b) {
+        return a == null || b.compareTo(a) < 0 ? b : a;
+    }
+
+    /**
+     * Evaluates a query. The index needed by the query must exist.
+     * @param query The query.
+     * @return Returns the matching documents, in query order and limited by the limit of the query.
+     */
+    List<MemoryDocument> query(final MemoryQuery query) {
+        final Plan plan = plan(query);
+        final MemoryIndex index = indexOf(plan);
+        final long limit = query.getQuery().getLimit();
+        final ArrayList<MemoryDocument> results = new ArrayList<>();
+
+        if (plan.values != null) {
+            final ArrayList<Iterable<MemoryDocument>> sources = new ArrayList<>(plan.values.size());
+            for (Object value : plan.values) {
+                final NavigableMap<MemoryIndex.Key, MemoryDocument> entries = index.equalTo(value);
+                sources.add((plan.descending ? entries.descendingMap() : entries).values());
+            }
+            final HashSet<String> seen = sources.size() > 1 ? new HashSet<String>() : null;
+            if (plan.ordered && sources.size() > 1) {
+                collect(query, plan, merge(sources, plan.descending), seen, results);
+            }
+            else {
+                for (Iterable<MemoryDocument> source : sources) {
+                    if (collect(query, plan, source, seen, results)) {
+                        break;
+                    }
+                }
+            }
+        }
+        else {
+            final NavigableMap<MemoryIndex.Key, MemoryDocument> entries = index.range(plan.lower, plan.upper);
+            collect(query, plan, (plan.descending ? entries.descendingMap() : entries).values(), null, results);
+        }
+
+        if (!plan.ordered) {
+            Collections.sort(results, query);
+            if (limit >= 0 && results.size() > limit) {
+                return new ArrayList<>(results.subList(0, (int) limit));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merges lists of documents ordered by ID into a single list ordered by ID.
+     * @param sources The lists of documents.
+     * @param descending True if the lists are in descending order of ID, false if they are in ascending order.
+     * @return Returns an Iterable which merges the lists as it is iterated.
+     */
+    private static Iterable<MemoryDocument> merge(final List<Iterable<MemoryDocument>> sources, final boolean descending) {
+        return () -> new Iterator<MemoryDocument>() {
+
+            private final PriorityQueue<PeekingIterator> queue = new PriorityQueue<>(sources.size(), (a, b) ->
+                    descending ? b.peek().getId().compareTo(a.peek().getId()) : a.peek().getId().compareTo(b.peek().getId()));
+
+            {
+                for (Iterable<MemoryDocument> source : sources) {
+                    final PeekingIterator iterator = new PeekingIterator(source.iterator());
+                    if (iterator.peek() != null) {
+                        queue.add(iterator);
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !queue.isEmpty();
+            }
+
+            @Override
+            public MemoryDocument next() {
+                final PeekingIterator iterator = queue.poll();
+                if (iterator == null) {
+                    throw new NoSuchElementException();
+                }
+                final MemoryDocument document = iterator.next();
+                if (iterator.peek() != null) {
+                    queue.add(iterator);
+                }
+                return document;
+            }
+
+        };
+    }
+
+    /**
+     * An iterator over documents which can retrieve the next document without advancing.
+     */
+    private static final class PeekingIterator {
+
+        private final Iterator<MemoryDocument> iterator;
+        private MemoryDocument next;
+
+        PeekingIterator(final Iterator<MemoryDocument> iterator) {
+            this.iterator = iterator;
+            this.next = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        /**
+         * Retrieves the next document without advancing.
+         * @return Returns a MemoryDocument, or null if there are no more documents.
+         */
+        MemoryDocument peek() {
+            return next;
+        }
+
+        /**
+         * Retrieves the next document and advances.
+         * @return Returns a MemoryDocument.
+         */
+        MemoryDocument next() {
+            final MemoryDocument document = next;
+            next = iterator.hasNext() ? iterator.next() : null;
+            return document;
+        }
+
+    }
+
+    /**
+     * Collects the documents read from an index which match a query.
+     * @param query The query.
+     * @param plan The plan of the query.
+     * @param candidates The documents read from the index.
+     * @param seen The IDs of the documents already collected, or null if documents cannot be read twice.
+     * @param results The list to add the matching documents to.
+     * @return Returns true if the results are complete, false otherwise.
+     */
+    private static boolean collect(final MemoryQuery query, final Plan plan, final Iterable<MemoryDocument> candidates,
+                                   final HashSet<String> seen, final List<MemoryDocument> results) {
+        final long limit = query.getQuery().getLimit();
+        for (MemoryDocument document : candidates) {
+            if (plan.ordered && ((limit >= 0 && results.size() >= limit) || query.isPastEnd(document))) {
+                return true;
+            }
+            if ((seen == null || seen.add(document.getId())) && query.matches(document)) {
+                results.add(document);
+            }
+        }
+        return false;
+    }
+
+}
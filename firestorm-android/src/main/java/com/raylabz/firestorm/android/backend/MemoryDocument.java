@@ -0,0 +1,74 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.gson.Gson;
+
+import java.util.Map;
+
+/**
+ * An immutable document stored by a {@link MemoryBackend}. Every write replaces the document with a new instance.
+ * @version 1.4.0
+ */
+final class MemoryDocument implements BackendDocument {
+
+    private final Gson gson;
+    private final String collection;
+    private final String id;
+    private final Map<String, Object> data;
+
+    /**
+     * Constructs a MemoryDocument.
+     * @param gson The Gson instance used to convert the document to objects.
+     * @param collection The collection of the document.
+     * @param id The ID of the document.
+     * @param data The normalized fields of the document, or null if the document does not exist.
+     */
+    MemoryDocument(final Gson gson, final String collection, final String id, final Map<String, Object> data) {
+        this.gson = gson;
+        this.collection = collection;
+        this.id = id;
+        this.data = data;
+    }
+
+    /**
+     * Retrieves the collection of the document.
+     * @return Returns a string.
+     */
+    String getCollection() {
+        return collection;
+    }
+
+    /**
+     * Retrieves the value of a field.
+     * @param field The field name or dot-separated path, or {@link BackendQuery#DOCUMENT_ID}.
+     * @return Returns the value of the field, or {@link Values#MISSING} if the field does not exist.
+     */
+    Object get(final String field) {
+        return data != null ? Values.get(id, data, field) : Values.MISSING;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getPath() {
+        return collection + "/" + id;
+    }
+
+    @Override
+    public boolean exists() {
+        return data != null;
+    }
+
+    @Override
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    @Override
+    public <T> T toObject(final Class<T> objectClass) {
+        return data != null ? Values.toObject(gson, data, objectClass) : null;
+    }
+
+}
@@ -0,0 +1,207 @@
+package com.raylabz.firestorm.android.backend;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A sorted index of the documents of a {@link MemoryCollection} on the value of a field. Entries are ordered by
+ * field value, using Firestore's ordering, and then by document ID, which is the order of query results ordered by
+ * the field. An index on the elements of an array field holds an entry for each distinct element of the array.
+ * Documents which do not have the field are not indexed.
+ * @version 1.4.0
+ */
+final class MemoryIndex {
+
+    /**
+     * The key of an index entry. Besides the keys of entries, keys can denote the bounds of a range of keys: the
+     * position before or after all the entries of a value, or before or after all the entries of a value type.
+     */
+    static final class Key implements Comparable<Key> {
+
+        private static final int BEFORE = -1;
+        private static final int AT = 0;
+        private static final int AFTER = 1;
+
+        private final Object value;
+        private final String id;
+        private final int type;
+        private final boolean typeBound;
+        private final int bound;
+
+        /**
+         * Constructs a key.
+         * @param value The field value.
+         * @param id The document ID, or null for a bound.
+         * @param type The type order of the value.
+         * @param typeBound True if the key is a bound of all the values of the type, false otherwise.
+         * @param bound The position of a bound relative to its value or type, or AT for the key of an entry.
+         */
+        private Key(final Object value, final String id, final int type, final boolean typeBound, final int bound) {
+            this.value = value;
+            this.id = id;
+            this.type = type;
+            this.typeBound = typeBound;
+            this.bound = bound;
+        }
+
+        /**
+         * Constructs the key of an entry.
+         * @param value The field value.
+         * @param id The document ID.
+         */
+        Key(final Object value, final String id) {
+            this(value, id, Values.typeOf(value), false, AT);
+        }
+
+        /**
+         * Retrieves the bound before all entries of a value.
+         * @param value The value.
+         * @return Returns a Key.
+         */
+        static Key before(final Object value) {
+            return new Key(value, null, Values.typeOf(value), false, BEFORE);
+        }
+
+        /**
+         * Retrieves the bound after all entries of a value.
+         * @param value The value.
+         * @return Returns a Key.
+         */
+        static Key after(final Object value) {
+            return new Key(value, null, Values.typeOf(value), false, AFTER);
+        }
+
+        /**
+         * Retrieves the bound before all entries whose values have the type of a value.
+         * @param value The value.
+         * @return Returns a Key.
+         */
+        static Key typeStart(final Object value) {
+            return new Key(null, null, Values.typeOf(value), true, BEFORE);
+        }
+
+        /**
+         * Retrieves the bound after all entries whose values have the type of a value.
+         * @param value The value.
+         * @return Returns a Key.
+         */
+        static Key typeEnd(final Object value) {
+            return new Key(null, null, Values.typeOf(value), true, AFTER);
+        }
+
+        @Override
+        public int compareTo(final Key other) {
+            if (type != other.type) {
+                return Integer.compare(type, other.type);
+            }
+            if (typeBound || other.typeBound) {
+                if (typeBound && other.typeBound) {
+                    return Integer.compare(bound, other.bound);
+                }
+                return typeBound ? bound : -other.bound;
+            }
+            final int result = Values.compare(value, other.value);
+            if (result != 0) {
+                return result;
+            }
+            if (bound != AT || other.bound != AT) {
+                return Integer.compare(bound, other.bound);
+            }
+            return id.compareTo(other.id);
+        }
+
+    }
+
+    private final String field;
+    private final boolean elements;
+    private final TreeMap<Key, MemoryDocument> entries = new TreeMap<>();
+
+    /**
+     * Constructs an empty index.
+     * @param field The indexed field, or {@link BackendQuery#DOCUMENT_ID}.
+     * @param elements True to index the elements of array values, false to index the values themselves.
+     */
+    MemoryIndex(final String field, final boolean elements) {
+        this.field = field;
+        this.elements = elements;
+    }
+
+    /**
+     * Retrieves the indexed field.
+     * @return Returns a field name or dot-separated field path.
+     */
+    String getField() {
+        return field;
+    }
+
+    /**
+     * Adds the entries of a document.
+     * @param document The document.
+     */
+    void add(final MemoryDocument document) {
+        final Object value = document.get(field);
+        if (value == Values.MISSING) {
+            return;
+        }
+        if (!elements) {
+            entries.put(new Key(value, document.getId()), document);
+        }
+        else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                entries.put(new Key(element, document.getId()), document);
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of a document.
+     * @param document The document, as it was added.
+     */
+    void remove(final MemoryDocument document) {
+        final Object value = document.get(field);
+        if (value == Values.MISSING) {
+            return;
+        }
+        if (!elements) {
+            entries.remove(new Key(value, document.getId()));
+        }
+        else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                entries.remove(new Key(element, document.getId()));
+            }
+        }
+    }
+
+    /**
+     * Retrieves the entries of the documents having a value, ordered by document ID.
+     * @param value The normalized value.
+     * @return Returns a view of the entries.
+     */
+    NavigableMap<Key, MemoryDocument> equalTo(final Object value) {
+        return entries.subMap(Key.before(value), true, Key.after(value), true);
+    }
+
+    /**
+     * Retrieves the entries between two bounds, ordered by value and document ID.
+     * @param lower The lower bound, or null.
+     * @param upper The upper bound, or null.
+     * @return Returns a view of the entries, which is empty if the lower bound is after the upper bound.
+     */
+    NavigableMap<Key, MemoryDocument> range(final Key lower, final Key upper) {
+        if (lower != null && upper != null) {
+            if (lower.compareTo(upper) > 0) {
+                return new TreeMap<>();
+            }
+            return entries.subMap(lower, true, upper, true);
+        }
+        if (lower != null) {
+            return entries.tailMap(lower, true);
+        }
+        if (upper != null) {
+            return entries.headMap(upper, true);
+        }
+        return entries;
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link BackendQuery} prepared for evaluation against in-memory documents: filter and cursor values are
+ * normalized, and the orderings include the implicit ones Firestore applies (the field of an inequality filter and
+ * the document ID).
+ * @version 1.4.0
+ */
+final class MemoryQuery implements Comparator<MemoryDocument> {
+
+    private final BackendQuery query;
+    private final List<BackendQuery.Filter> filters;
+    private final List<BackendQuery.Order> orders;
+    private final List<Object> start;
+    private final List<Object> end;
+
+    /**
+     * Prepares a query.
+     * @param gson The Gson instance used to normalize values.
+     * @param query The query.
+     */
+    MemoryQuery(final Gson gson, final BackendQuery query) {
+        this.query = query;
+
+        final ArrayList<BackendQuery.Filter> normalizedFilters = new ArrayList<>(query.getFilters().size());
+        List<String> inequalityField = null;
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            normalizedFilters.add(new BackendQuery.Filter(filter.getFieldPath(), filter.getOperator(), Values.normalize(gson, filter.getValue())));
+            if (inequalityField == null && (filter.getOperator().isRange() || filter.getOperator() == BackendQuery.Operator.NOT_IN)) {
+                inequalityField = filter.getFieldPath();
+            }
+        }
+        this.filters = Collections.unmodifiableList(normalizedFilters);
+
+        final ArrayList<BackendQuery.Order> effectiveOrders = new ArrayList<>(query.getOrders());
+        if (effectiveOrders.isEmpty() && inequalityField != null) {
+            effectiveOrders.add(new BackendQuery.Order(inequalityField, false));
+        }
+        final BackendQuery.Order lastOrder = effectiveOrders.isEmpty() ? null : effectiveOrders.get(effectiveOrders.size() - 1);
+        if (lastOrder == null || !BackendQuery.DOCUMENT_ID.equals(lastOrder.getField())) {
+            effectiveOrders.add(new BackendQuery.Order(Collections.singletonList(BackendQuery.DOCUMENT_ID), lastOrder != null && lastOrder.isDescending()));
+        }
+        this.orders = Collections.unmodifiableList(effectiveOrders);
+
+        this.start = positionOf(gson, query.getStart());
+        this.end = positionOf(gson, query.getEnd());
+    }
+
+    /**
+     * Converts a cursor to the values of the ordered fields at its position.
+     * @param gson The Gson instance used to normalize values.
+     * @param cursor The cursor, or null.
+     * @return Returns a list of values, or null if there is no cursor.
+     */
+    private List<Object> positionOf(final Gson gson, final BackendQuery.Cursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        final ArrayList<Object> position = new ArrayList<>(orders.size());
+        if (cursor.getDocument() != null) {
+            final BackendDocument document = cursor.getDocument();
+            final Map<String, Object> data = document instanceof MemoryDocument || document.getData() == null ?
+                    document.getData() : Values.toData(gson, document.getData());
+            for (BackendQuery.Order order : orders) {
+                position.add(Values.get(document.getId(), data, order.getField()));
+            }
+        }
+        else {
+            for (Object value : cursor.getValues()) {
+                position.add(Values.normalize(gson, value));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Retrieves the query.
+     * @return Returns a BackendQuery.
+     */
+    BackendQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Retrieves the filters, with normalized values.
+     * @return Returns a list of filters.
+     */
+    List<BackendQuery.Filter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Retrieves the orderings, including the implicit ones.
+     * @return Returns a list of orderings, the last one being by document ID.
+     */
+    List<BackendQuery.Order> getOrders() {
+        return orders;
+    }
+
+    /**
+     * Retrieves the values of the ordered fields at the starting point of the query.
+     * @return Returns a list of values, or null if the query has no starting point.
+     */
+    List<Object> getStartPosition() {
+        return start;
+    }
+
+    /**
+     * Retrieves the values of the ordered fields at the ending point of the query.
+     * @return Returns a list of values, or null if the query has no ending point.
+     */
+    List<Object> getEndPosition() {
+        return end;
+    }
+
+    /**
+     * Checks if a document comes after the ending point of the query, in query order.
+     * @param document The document.
+     * @return Returns true if the document is past the ending point, false otherwise.
+     */
+    boolean isPastEnd(final MemoryDocument document) {
+        if (end == null) {
+            return false;
+        }
+        final int result = compareToPosition(document, end);
+        return result > 0 || (result == 0 && !query.getEnd().isInclusive());
+    }
+
+    /**
+     * Checks if a document matches the query: it satisfies all filters, has all ordered fields and lies between the
+     * cursors of the query.
+     * @param document The document.
+     * @return Returns true if the document matches, false otherwise.
+     */
+    boolean matches(final MemoryDocument document) {
+        if (!document.exists()) {
+            return false;
+        }
+        for (BackendQuery.Filter filter : filters) {
+            if (!matches(filter, document.get(filter.getField()))) {
+                return false;
+            }
+        }
+        for (BackendQuery.Order order : orders) {
+            if (document.get(order.getField()) == Values.MISSING) {
+                return false;
+            }
+        }
+        if (start != null) {
+            final int result = compareToPosition(document, start);
+            if (result < 0 || (result == 0 && !query.getStart().isInclusive())) {
+                return false;
+            }
+        }
+        return !isPastEnd(document);
+    }
+
+    /**
+     * Checks if a value satisfies a filter.
+     * @param filter The filter, with a normalized value.
+     * @param value The value of the filtered field, or {@link Values#MISSING}.
+     * @return Returns true if the value satisfies the filter, false otherwise.
+     */
+    static boolean matches(final BackendQuery.Filter filter, final Object value) {
+        if (value == Values.MISSING) {
+            return false;
+        }
+        final Object target = filter.getValue();
+        switch (filter.getOperator()) {
+            case EQUAL:
+                return Values.equal(value, target);
+            case LESS_THAN:
+                return Values.typeOf(value) == Values.typeOf(target) && Values.compare(value, target) < 0;
+            case LESS_THAN_OR_EQUAL:
+                return Values.typeOf(value) == Values.typeOf(target) && Values.compare(value, target) <= 0;
+            case GREATER_THAN:
+                return Values.typeOf(value) == Values.typeOf(target) && Values.compare(value, target) > 0;
+            case GREATER_THAN_OR_EQUAL:
+                return Values.typeOf(value) == Values.typeOf(target) && Values.compare(value, target) >= 0;
+            case ARRAY_CONTAINS:
+                return value instanceof List && contains((List<?>) value, target);
+            case ARRAY_CONTAINS_ANY:
+                if (value instanceof List && target instanceof List) {
+                    for (Object item : (List<?>) target) {
+                        if (contains((List<?>) value, item)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            case IN:
+                return target instanceof List && contains((List<?>) target, value);
+            case NOT_IN:
+                return value != null && target instanceof List && !contains((List<?>) target, value);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks if a list contains a value, using Firestore's equality.
+     * @param list The list.
+     * @param value The value.
+     * @return Returns true if the list contains the value, false otherwise.
+     */
+    private static boolean contains(final List<?> list, final Object value) {
+        for (Object item : list) {
+            if (Values.equal(item, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares a document to a cursor position, over the ordered fields the position specifies.
+     * @param document The document.
+     * @param position The values of the ordered fields at the cursor position.
+     * @return Returns a negative integer, zero or a positive integer as the document comes before, at or after the position.
+     */
+    private int compareToPosition(final MemoryDocument document, final List<Object> position) {
+        final int size = Math.min(position.size(), orders.size());
+        for (int i = 0; i < size; i++) {
+            final BackendQuery.Order order = orders.get(i);
+            int result = Values.compare(document.get(order.getField()), position.get(i));
+            if (order.isDescending()) {
+                result = -result;
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two documents using the orderings of the query.
+     * @param a The first document.
+     * @param b The second document.
+     * @return Returns the result of the comparison.
+     */
+    @Override
+    public int compare(final MemoryDocument a, final MemoryDocument b) {
+        for (BackendQuery.Order order : orders) {
+            int result = Values.compare(a.get(order.getField()), b.get(order.getField()));
+            if (order.isDescending()) {
+                result = -result;
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+}
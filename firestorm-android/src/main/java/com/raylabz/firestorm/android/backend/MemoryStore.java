@@ -0,0 +1,622 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.gson.Gson;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An embedded, thread-safe document store evaluating the queries of {@link BackendQuery} (and therefore
+ * FirestormFilterable) in memory. It backs the {@link MemoryBackend}, and can also be used on its own.
+ * <p>
+ * Unlike the rest of the library, the store runs on a plain JVM: it does not depend on Play Services tasks or on the
+ * Firestorm package, only on Gson and the small Firestore types of its signatures ({@code ListenerRegistration},
+ * {@code FirebaseFirestoreException} and {@code Timestamp}), which are plain classes that a JVM build can supply.
+ * <p>
+ * Collections are held in sorted indexes, so queries are answered with index lookups and range scans instead of
+ * full scans (see {@link MemoryCollection}). Objects are stored as the normalized values of their Gson JSON
+ * representation, so they must be serializable by Gson. Reads run concurrently, while writes, batches and
+ * transactions are serialized, so transactions are never contended.
+ * <p>
+ * Listeners are notified through the listener executor after every write affecting them. Query listeners receive
+ * the changes to the results as deltas, which are computed incrementally from the written documents for queries
+ * without a limit.
+ * @version 1.4.0
+ */
+public final class MemoryStore {
+
+    private static final String ID_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final int ID_LENGTH = 20;
+
+    private final Gson gson;
+    private final Executor listenerExecutor;
+    private final Random random = new SecureRandom();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<String, MemoryCollection> collections = new HashMap<>();
+    private final CopyOnWriteArrayList<DocumentWatch> documentWatches = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<QueryWatch> queryWatches = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructs a MemoryStore which notifies listeners on the thread carrying out each write.
+     */
+    public MemoryStore() {
+        this(new Gson(), Runnable::run);
+    }
+
+    /**
+     * Constructs a MemoryStore.
+     * @param gson The Gson instance used to convert objects to documents and back.
+     * @param listenerExecutor The executor used to notify listeners.
+     */
+    public MemoryStore(final Gson gson, final Executor listenerExecutor) {
+        this.gson = gson;
+        this.listenerExecutor = listenerExecutor;
+    }
+
+    /**
+     * Generates a new random document ID.
+     * @return Returns a string of 20 alphanumeric characters.
+     */
+    public String newDocumentID() {
+        final StringBuilder builder = new StringBuilder(ID_LENGTH);
+        for (int i = 0; i < ID_LENGTH; i++) {
+            builder.append(ID_CHARACTERS.charAt(random.nextInt(ID_CHARACTERS.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Converts an object to the fields of a document, as they are stored when the object is set.
+     * @param object The object.
+     * @return Returns an unmodifiable map of field names to values.
+     * @throws IllegalArgumentException Thrown when the object cannot be stored as a document.
+     */
+    public Map<String, Object> toData(final Object object) {
+        return Values.toData(gson, object);
+    }
+
+    /**
+     * Reads a document.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a BackendDocument, which does not exist if the document was not found.
+     */
+    public BackendDocument get(final String collection, final String documentID) {
+        lock.readLock().lock();
+        try {
+            return read(collection, documentID);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query.
+     * @param query The query.
+     * @return Returns the matching documents, in query order.
+     * @throws IllegalArgumentException Thrown when the values of the query cannot be converted.
+     */
+    public List<BackendDocument> query(final BackendQuery query) throws IllegalArgumentException {
+        return new ArrayList<BackendDocument>(evaluate(new MemoryQuery(gson, query)));
+    }
+
+    /**
+     * Applies writes atomically.
+     * @param writes The writes.
+     * @throws IllegalArgumentException Thrown when an object cannot be stored as a document. No write is applied.
+     */
+    public void commit(final List<BackendWrite> writes) throws IllegalArgumentException {
+        final List<MemoryDocument> documents = prepare(writes);
+        lock.writeLock().lock();
+        try {
+            apply(writes, documents);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyWatches(documents);
+    }
+
+    /**
+     * Runs a transaction. The transaction code runs once, excluding all other writes.
+     * @param function The transaction code.
+     * @param <R> The type of the transaction's result.
+     * @return Returns the result of the transaction.
+     * @throws FirebaseFirestoreException Thrown when the transaction code fails. The transaction is not committed.
+     */
+    public <R> R runTransaction(final BackendTransaction.Function<R> function) throws FirebaseFirestoreException {
+        final MemoryTransaction transaction = new MemoryTransaction();
+        final R result;
+        final List<MemoryDocument> documents;
+        lock.writeLock().lock();
+        try {
+            result = function.apply(transaction);
+            documents = prepare(transaction.writes);
+            apply(transaction.writes, documents);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        notifyWatches(documents);
+        return result;
+    }
+
+    /**
+     * Listens to a document. The listener receives the current state of the document, and then every new state.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @param listener The listener.
+     * @return Returns a ListenerRegistration.
+     */
+    public ListenerRegistration addDocumentListener(final String collection, final String documentID, final BackendListener<BackendDocument> listener) {
+        final DocumentWatch watch = new DocumentWatch(collection, documentID, listener);
+        documentWatches.add(watch);
+        listenerExecutor.execute(watch::refresh);
+        return () -> {
+            watch.removed = true;
+            documentWatches.remove(watch);
+        };
+    }
+
+    /**
+     * Listens to the results of a query. The listener receives the current results as additions, and then the changes
+     * to the results after every write affecting them.
+     * @param query The query.
+     * @param listener The listener.
+     * @return Returns a ListenerRegistration.
+     */
+    public ListenerRegistration addQueryListener(final BackendQuery query, final BackendListener<List<BackendChange>> listener) {
+        final QueryWatch watch;
+        try {
+            watch = new QueryWatch(new MemoryQuery(gson, query), listener);
+        } catch (RuntimeException e) {
+            listenerExecutor.execute(() -> listener.onEvent(null, e));
+            return () -> {};
+        }
+        queryWatches.add(watch);
+        listenerExecutor.execute(watch::refresh);
+        return () -> {
+            watch.removed = true;
+            queryWatches.remove(watch);
+        };
+    }
+
+    /**
+     * Retrieves the number of documents in a collection.
+     * @param collection The collection.
+     * @return Returns an integer.
+     */
+    public int size(final String collection) {
+        lock.readLock().lock();
+        try {
+            final MemoryCollection documents = collections.get(collection);
+            return documents != null ? documents.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes all documents and indexes. Listeners are not notified.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            collections.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a document. Must be called while holding the lock.
+     * @param collection The collection of the document.
+     * @param documentID The ID of the document.
+     * @return Returns a MemoryDocument, which does not exist if the document was not found.
+     */
+    private MemoryDocument read(final String collection, final String documentID) {
+        final MemoryCollection documents = collections.get(collection);
+        final MemoryDocument document = documents != null ? documents.get(documentID) : null;
+        return document != null ? document : new MemoryDocument(gson, collection, documentID, null);
+    }
+
+    /**
+     * Evaluates a query. If the collection does not have the index the query needs, the index is created while
+     * holding the write lock; otherwise the query runs while holding the read lock.
+     * @param query The prepared query.
+     * @return Returns the matching documents, in query order.
+     */
+    private List<MemoryDocument> evaluate(final MemoryQuery query) {
+        final String name = query.getQuery().getCollection();
+        lock.readLock().lock();
+        try {
+            final MemoryCollection collection = collections.get(name);
+            if (collection == null) {
+                return new ArrayList<>();
+            }
+            if (collection.isIndexed(query)) {
+                return collection.query(query);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            final MemoryCollection collection = collections.get(name);
+            if (collection == null) {
+                return new ArrayList<>();
+            }
+            collection.index(query);
+            return collection.query(query);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Converts writes to the documents they result in, before any lock is held. Increments depend on the current
+     * state of their documents, so they are resolved by {@link #apply(List, List)}.
+     * @param writes The writes.
+     * @return Returns a list of documents; deleted documents do not exist, and increments are null.
+     */
+    private List<MemoryDocument> prepare(final List<BackendWrite> writes) {
+        final ArrayList<MemoryDocument> documents = new ArrayList<>(writes.size());
+        for (BackendWrite write : writes) {
+            if (write.isIncrement()) {
+                documents.add(null);
+                continue;
+            }
+            final Map<String, Object> data = write.isDelete() ? null : Values.toData(gson, write.getObject());
+            documents.add(new MemoryDocument(gson, write.getCollection(), write.getDocumentID(), data));
+        }
+        return documents;
+    }
+
+    /**
+     * Stores documents. Must be called while holding the write lock.
+     * @param writes The writes.
+     * @param documents The documents prepared from the writes; documents which do not exist are deleted, and the
+     * documents of increments are resolved in place.
+     */
+    private void apply(final List<BackendWrite> writes, final List<MemoryDocument> documents) {
+        for (int i = 0; i < documents.size(); i++) {
+            MemoryDocument document = documents.get(i);
+            if (document == null) {
+                document = increment(writes.get(i));
+                documents.set(i, document);
+            }
+            MemoryCollection collection = collections.get(document.getCollection());
+            if (collection == null) {
+                if (!document.exists()) {
+                    continue;
+                }
+                collection = new MemoryCollection();
+                collections.put(document.getCollection(), collection);
+            }
+            collection.put(document);
+        }
+    }
+
+    /**
+     * Resolves the document resulting from an increment. Must be called while holding the write lock.
+     * @param write The increment write.
+     * @return Returns the incremented document.
+     */
+    private MemoryDocument increment(final BackendWrite write) {
+        final MemoryDocument current = read(write.getCollection(), write.getDocumentID());
+        final LinkedHashMap<String, Object> data = current.exists() ? new LinkedHashMap<>(current.getData()) : new LinkedHashMap<String, Object>();
+        final Object value = data.get(write.getField());
+        if (value instanceof Long) {
+            data.put(write.getField(), (Long) value + write.getDelta());
+        }
+        else if (value instanceof Double) {
+            data.put(write.getField(), (Double) value + write.getDelta());
+        }
+        else {
+            data.put(write.getField(), write.getDelta());
+        }
+        return new MemoryDocument(gson, write.getCollection(), write.getDocumentID(), Collections.unmodifiableMap(data));
+    }
+
+    /**
+     * Notifies the listeners affected by written documents.
+     * @param documents The written documents.
+     */
+    private void notifyWatches(final List<MemoryDocument> documents) {
+        if (documentWatches.isEmpty() && queryWatches.isEmpty()) {
+            return;
+        }
+        final HashSet<String> paths = new HashSet<>();
+        final HashMap<String, List<String>> documentIDs = new HashMap<>();
+        for (MemoryDocument document : documents) {
+            paths.add(document.getPath());
+            List<String> ids = documentIDs.get(document.getCollection());
+            if (ids == null) {
+                ids = new ArrayList<>();
+                documentIDs.put(document.getCollection(), ids);
+            }
+            ids.add(document.getId());
+        }
+        for (DocumentWatch watch : documentWatches) {
+            if (paths.contains(watch.path)) {
+                listenerExecutor.execute(watch::refresh);
+            }
+        }
+        for (QueryWatch watch : queryWatches) {
+            final List<String> ids = documentIDs.get(watch.query.getQuery().getCollection());
+            if (ids != null) {
+                watch.invalidate(ids);
+                listenerExecutor.execute(watch::refresh);
+            }
+        }
+    }
+
+    /**
+     * A transaction buffering its writes until it is committed.
+     */
+    private final class MemoryTransaction implements BackendTransaction {
+
+        private final ArrayList<BackendWrite> writes = new ArrayList<>();
+
+        @Override
+        public BackendDocument get(final String collection, final String documentID) throws FirebaseFirestoreException {
+            if (!writes.isEmpty()) {
+                throw new FirebaseFirestoreException("All reads of a transaction must be carried out before its writes.", FirebaseFirestoreException.Code.INVALID_ARGUMENT);
+            }
+            return read(collection, documentID);
+        }
+
+        @Override
+        public void set(final String collection, final String documentID, final Object object) {
+            writes.add(BackendWrite.set(collection, documentID, object));
+        }
+
+        @Override
+        public void delete(final String collection, final String documentID) {
+            writes.add(BackendWrite.delete(collection, documentID));
+        }
+
+    }
+
+    /**
+     * A listener on a document.
+     */
+    private final class DocumentWatch {
+
+        private final String collection;
+        private final String documentID;
+        private final String path;
+        private final BackendListener<BackendDocument> listener;
+        private MemoryDocument last;
+        private volatile boolean removed = false;
+
+        DocumentWatch(final String collection, final String documentID, final BackendListener<BackendDocument> listener) {
+            this.collection = collection;
+            this.documentID = documentID;
+            this.path = collection + "/" + documentID;
+            this.listener = listener;
+        }
+
+        /**
+         * Delivers the current state of the document if it changed since it was last delivered.
+         */
+        synchronized void refresh() {
+            if (removed) {
+                return;
+            }
+            final MemoryDocument current;
+            lock.readLock().lock();
+            try {
+                current = read(collection, documentID);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (last != null && current.getData() == last.getData()) {
+                return;
+            }
+            last = current;
+            listener.onEvent(current, null);
+        }
+
+    }
+
+    /**
+     * A listener on the results of a query.
+     * <p>
+     * The first refresh delivers the full results. For queries without a limit, later refreshes only re-read the
+     * documents written since the previous refresh and move them in or out of the sorted results, so their cost does
+     * not grow with the size of the results. Queries with a limit are re-evaluated through the indexes and diffed.
+     */
+    private final class QueryWatch {
+
+        private final MemoryQuery query;
+        private final BackendListener<List<BackendChange>> listener;
+        private final HashSet<String> invalidated = new HashSet<>();
+        private ArrayList<MemoryDocument> results;
+        private HashMap<String, MemoryDocument> resultsByID;
+        private volatile boolean removed = false;
+
+        QueryWatch(final MemoryQuery query, final BackendListener<List<BackendChange>> listener) {
+            this.query = query;
+            this.listener = listener;
+        }
+
+        /**
+         * Marks written documents to be re-read by the next refresh.
+         * @param ids The IDs of the written documents.
+         */
+        void invalidate(final Collection<String> ids) {
+            synchronized (invalidated) {
+                invalidated.addAll(ids);
+            }
+        }
+
+        /**
+         * Delivers the changes to the results of the query since they were last delivered.
+         */
+        synchronized void refresh() {
+            if (removed) {
+                return;
+            }
+            final TreeSet<String> ids;
+            synchronized (invalidated) {
+                ids = new TreeSet<>(invalidated);
+                invalidated.clear();
+            }
+            final List<BackendChange> changes;
+            if (results == null || query.getQuery().getLimit() >= 0) {
+                final List<MemoryDocument> current = evaluate(query);
+                changes = diff(results, current);
+                if (results != null && changes.isEmpty()) {
+                    return;
+                }
+                results = new ArrayList<>(current);
+                if (query.getQuery().getLimit() < 0) {
+                    resultsByID = new HashMap<>(results.size() * 2);
+                    for (MemoryDocument document : results) {
+                        resultsByID.put(document.getId(), document);
+                    }
+                }
+            }
+            else {
+                if (ids.isEmpty()) {
+                    return;
+                }
+                changes = update(ids);
+                if (changes.isEmpty()) {
+                    return;
+                }
+            }
+            listener.onEvent(changes, null);
+        }
+
+        /**
+         * Moves re-read documents in or out of the sorted results. As in Firestore, removals are listed first, and the
+         * indexes of each change apply to the results after all previous changes.
+         * @param ids The IDs of the documents to re-read.
+         * @return Returns a list of changes.
+         */
+        private List<BackendChange> update(final Collection<String> ids) {
+            final HashMap<String, MemoryDocument> current = new HashMap<>(ids.size() * 2);
+            lock.readLock().lock();
+            try {
+                for (String id : ids) {
+                    current.put(id, read(query.getQuery().getCollection(), id));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            final ArrayList<BackendChange> changes = new ArrayList<>();
+            for (String id : ids) {
+                final MemoryDocument previous = resultsByID.get(id);
+                if (previous != null && !query.matches(current.get(id))) {
+                    final int oldIndex = Collections.binarySearch(results, previous, query);
+                    results.remove(oldIndex);
+                    resultsByID.remove(id);
+                    changes.add(new BackendChange(BackendChange.Type.REMOVED, previous, oldIndex, -1));
+                }
+            }
+            for (String id : ids) {
+                final MemoryDocument document = current.get(id);
+                if (!query.matches(document)) {
+                    continue;
+                }
+                final MemoryDocument previous = resultsByID.put(id, document);
+                if (previous == document) {
+                    continue;
+                }
+                int oldIndex = -1;
+                if (previous != null) {
+                    oldIndex = Collections.binarySearch(results, previous, query);
+                    results.remove(oldIndex);
+                }
+                final int newIndex = -Collections.binarySearch(results, document, query) - 1;
+                results.add(newIndex, document);
+                changes.add(new BackendChange(previous != null ? BackendChange.Type.MODIFIED : BackendChange.Type.ADDED, document, oldIndex, newIndex));
+            }
+            return changes;
+        }
+
+    }
+
+    /**
+     * Computes the changes between two lists of results. As in Firestore, removals are listed first, and the indexes
+     * of each change apply to the results after all previous changes.
+     * <p>
+     * After the removals, the documents of the previous results which remain are either already placed at the start
+     * of the results or still in their previous order after them, so the index of a document is found by counting
+     * the remaining documents before it which are not placed yet, in a Fenwick tree over their previous order.
+     * @param previous The previous results, or null if there were no previous results.
+     * @param current The current results.
+     * @return Returns a list of changes.
+     */
+    static List<BackendChange> diff(final List<? extends BackendDocument> previous, final List<? extends BackendDocument> current) {
+        final ArrayList<BackendChange> changes = new ArrayList<>();
+        final HashMap<String, BackendDocument> currentDocuments = new HashMap<>();
+        for (BackendDocument document : current) {
+            currentDocuments.put(document.getId(), document);
+        }
+
+        //Remove the documents which left the results, and number the remaining ones in their previous order:
+        final HashMap<String, BackendDocument> previousDocuments = new HashMap<>();
+        final HashMap<String, Integer> positions = new HashMap<>();
+        if (previous != null) {
+            for (BackendDocument document : previous) {
+                if (previousDocuments.put(document.getId(), document) != null) {
+                    continue;
+                }
+                if (currentDocuments.containsKey(document.getId())) {
+                    positions.put(document.getId(), positions.size());
+                }
+                else {
+                    changes.add(new BackendChange(BackendChange.Type.REMOVED, document, positions.size(), -1));
+                }
+            }
+        }
+
+        //The tree counts the remaining documents which are not placed yet:
+        final int[] unplaced = new int[positions.size() + 1];
+        for (int i = 1; i < unplaced.length; i++) {
+            unplaced[i]++;
+            final int parent = i + (i & -i);
+            if (parent < unplaced.length) {
+                unplaced[parent] += unplaced[i];
+            }
+        }
+
+        for (int newIndex = 0; newIndex < current.size(); newIndex++) {
+            final BackendDocument document = current.get(newIndex);
+            final BackendDocument previousDocument = previousDocuments.get(document.getId());
+            if (previousDocument == null) {
+                changes.add(new BackendChange(BackendChange.Type.ADDED, document, -1, newIndex));
+                continue;
+            }
+            final int position = positions.get(document.getId());
+            int before = 0;
+            for (int i = position; i > 0; i -= i & -i) {
+                before += unplaced[i];
+            }
+            for (int i = position + 1; i < unplaced.length; i += i & -i) {
+                unplaced[i]--;
+            }
+            if (previousDocument.getData() != document.getData() || before > 0) {
+                changes.add(new BackendChange(BackendChange.Type.MODIFIED, document, newIndex + before, newIndex));
+            }
+        }
+        return changes;
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A condition on the fields of documents, built from filters combined with <i>and</i> and <i>or</i>.
+ * Unlike the filters of a {@link BackendQuery}, a predicate may combine disjunctions, range filters on several fields
+ * and lists of any length: {@link QueryPlanner} decomposes it into queries a backend can run.
+ * Predicates are immutable.
+ * @version 1.4.0
+ */
+public abstract class Predicate {
+
+    /**
+     * The Gson instance used to normalize filter and field values.
+     */
+    static final Gson GSON = new Gson();
+
+    /**
+     * Package-private constructor: predicates are created with the static factory methods.
+     */
+    Predicate() {
+    }
+
+    /**
+     * Creates a predicate filtering by the value of a field.
+     * @param field The field, or {@link BackendQuery#DOCUMENT_ID} to filter by document ID.
+     * @param operator The operator.
+     * @param value The value, or a list of values for the ARRAY_CONTAINS_ANY, IN and NOT_IN operators.
+     * @return Returns a Predicate.
+     */
+    public static Predicate where(final String field, final BackendQuery.Operator operator, final Object value) {
+        if (field == null || operator == null) {
+            throw new IllegalArgumentException("The field and operator of a predicate must not be null.");
+        }
+        if ((operator == BackendQuery.Operator.ARRAY_CONTAINS_ANY || operator == BackendQuery.Operator.IN || operator == BackendQuery.Operator.NOT_IN)
+                && !(value instanceof List)) {
+            throw new IllegalArgumentException("The " + operator + " operator requires a list of values.");
+        }
+        return new Leaf(new BackendQuery.Filter(field, operator, value));
+    }
+
+    /**
+     * Creates a predicate which holds when all of the provided predicates hold.
+     * @param predicates The predicates.
+     * @return Returns a Predicate.
+     */
+    public static Predicate and(final Predicate... predicates) {
+        return and(Arrays.asList(predicates));
+    }
+
+    /**
+     * Creates a predicate which holds when all of the provided predicates hold.
+     * @param predicates The predicates.
+     * @return Returns a Predicate.
+     */
+    public static Predicate and(final List<Predicate> predicates) {
+        return combine(predicates, true);
+    }
+
+    /**
+     * Creates a predicate which holds when any of the provided predicates holds.
+     * @param predicates The predicates.
+     * @return Returns a Predicate.
+     */
+    public static Predicate or(final Predicate... predicates) {
+        return or(Arrays.asList(predicates));
+    }
+
+    /**
+     * Creates a predicate which holds when any of the provided predicates holds.
+     * @param predicates The predicates.
+     * @return Returns a Predicate.
+     */
+    public static Predicate or(final List<Predicate> predicates) {
+        return combine(predicates, false);
+    }
+
+    /**
+     * Combines predicates, flattening nested combinations of the same kind.
+     * @param predicates The predicates.
+     * @param conjunction True to combine with <i>and</i>, false to combine with <i>or</i>.
+     * @return Returns a Predicate.
+     */
+    private static Predicate combine(final List<Predicate> predicates, final boolean conjunction) {
+        if (predicates.isEmpty()) {
+            throw new IllegalArgumentException("At least one predicate must be combined.");
+        }
+        final ArrayList<Predicate> children = new ArrayList<>(predicates.size());
+        for (Predicate predicate : predicates) {
+            if (predicate == null) {
+                throw new IllegalArgumentException("Combined predicates must not be null.");
+            }
+            if (predicate instanceof Composite && ((Composite) predicate).conjunction == conjunction) {
+                children.addAll(((Composite) predicate).children);
+            }
+            else {
+                children.add(predicate);
+            }
+        }
+        return children.size() == 1 ? children.get(0) : new Composite(Collections.unmodifiableList(children), conjunction);
+    }
+
+    /**
+     * Checks if a document satisfies the predicate.
+     * @param document The document.
+     * @return Returns true if the document exists and satisfies the predicate, false otherwise.
+     */
+    public boolean matches(final BackendDocument document) {
+        return document.exists() && matches(document.getId(), document.getData());
+    }
+
+    /**
+     * Checks if the fields of a document satisfy the predicate.
+     * @param id The ID of the document.
+     * @param data The fields of the document.
+     * @return Returns true if the fields satisfy the predicate, false otherwise.
+     */
+    abstract boolean matches(String id, Map<String, Object> data);
+
+    /**
+     * A predicate consisting of a single filter.
+     */
+    static final class Leaf extends Predicate {
+
+        private final BackendQuery.Filter filter;
+        private final BackendQuery.Filter normalizedFilter;
+
+        Leaf(final BackendQuery.Filter filter) {
+            this.filter = filter;
+            this.normalizedFilter = new BackendQuery.Filter(filter.getFieldPath(), filter.getOperator(), Values.normalize(GSON, filter.getValue()));
+        }
+
+        /**
+         * Retrieves the filter, with its value as provided.
+         * @return Returns a Filter.
+         */
+        BackendQuery.Filter getFilter() {
+            return filter;
+        }
+
+        /**
+         * Retrieves the filter, with its value normalized.
+         * @return Returns a Filter.
+         */
+        BackendQuery.Filter getNormalizedFilter() {
+            return normalizedFilter;
+        }
+
+        @Override
+        boolean matches(final String id, final Map<String, Object> data) {
+            final Object value = Values.get(id, data, filter.getField());
+            return MemoryQuery.matches(normalizedFilter, value == Values.MISSING ? value : Values.normalize(GSON, value));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return normalizedFilter.equals(((Leaf) o).normalizedFilter);
+        }
+
+        @Override
+        public int hashCode() {
+            return normalizedFilter.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return filter.getField() + " " + filter.getOperator() + " " + filter.getValue();
+        }
+
+    }
+
+    /**
+     * A conjunction or disjunction of predicates.
+     */
+    static final class Composite extends Predicate {
+
+        private final List<Predicate> children;
+        private final boolean conjunction;
+
+        Composite(final List<Predicate> children, final boolean conjunction) {
+            this.children = children;
+            this.conjunction = conjunction;
+        }
+
+        /**
+         * Retrieves the combined predicates.
+         * @return Returns a list of predicates.
+         */
+        List<Predicate> getChildren() {
+            return children;
+        }
+
+        /**
+         * Checks if the predicates are combined with <i>and</i>.
+         * @return Returns true for a conjunction, false for a disjunction.
+         */
+        boolean isConjunction() {
+            return conjunction;
+        }
+
+        @Override
+        boolean matches(final String id, final Map<String, Object> data) {
+            for (Predicate child : children) {
+                if (child.matches(id, data) != conjunction) {
+                    return !conjunction;
+                }
+            }
+            return conjunction;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Composite composite = (Composite) o;
+            return conjunction == composite.conjunction && children.equals(composite.children);
+        }
+
+        @Override
+        public int hashCode() {
+            return children.hashCode() * 31 + (conjunction ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder("(");
+            for (int i = 0; i < children.size(); i++) {
+                if (i > 0) {
+                    builder.append(conjunction ? " AND " : " OR ");
+                }
+                builder.append(children.get(i));
+            }
+            return builder.append(')').toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,424 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * A plan for running a {@link Predicate} on a backend, created by {@link QueryPlanner}: a union of queries which the
+ * backend can run, each with an optional residual predicate checked on its results. The queries run in parallel and
+ * their results, each in query order, are merged and deduplicated.
+ * @version 1.4.0
+ */
+public final class QueryPlan {
+
+    /**
+     * The number of documents fetched by the first page of a query with a residual predicate and a limit, unless the
+     * limit is larger. Every following page is twice as large, up to {@link #MAX_PAGE_SIZE}.
+     */
+    static final int MIN_PAGE_SIZE = 50;
+
+    /**
+     * The largest number of documents fetched per page by a query with a residual predicate and a limit.
+     */
+    static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Runs the continuations of queries on the thread completing them, rather than on the main thread.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private final List<Scan> scans;
+    private final DocumentOrder order;
+    private final long limit;
+
+    /**
+     * Constructs a plan.
+     * @param scans The queries of the plan, or an empty list if no document can match.
+     * @param order The order of the results.
+     * @param limit The maximum number of results, or -1 for no limit.
+     */
+    QueryPlan(final List<Scan> scans, final DocumentOrder order, final long limit) {
+        this.scans = Collections.unmodifiableList(scans);
+        this.order = order;
+        this.limit = limit;
+    }
+
+    /**
+     * Retrieves the queries run by the plan.
+     * @return Returns a list of BackendQuery, without limits.
+     */
+    public List<BackendQuery> getQueries() {
+        final ArrayList<BackendQuery> queries = new ArrayList<>(scans.size());
+        for (Scan scan : scans) {
+            queries.add(scan.query);
+        }
+        return queries;
+    }
+
+    /**
+     * Retrieves the scans of the plan.
+     * @return Returns an unmodifiable list of scans.
+     */
+    List<Scan> getScans() {
+        return scans;
+    }
+
+    /**
+     * Retrieves the maximum number of results.
+     * @return Returns the limit, or -1 if the results are not limited.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Checks if the limit of the plan is passed on to the queries it runs, rather than applied after fetching all
+     * their results.
+     * @return Returns true if the plan is limited and every query returns its results in the order of the plan.
+     */
+    public boolean isLimitPushedDown() {
+        if (limit < 0) {
+            return false;
+        }
+        for (Scan scan : scans) {
+            if (!scan.ordered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the plan.
+     * @param backend The backend which runs the queries.
+     * @return Returns a Task with the matching documents, in query order.
+     */
+    public Task<List<BackendDocument>> execute(final FirestormBackend backend) {
+        if (scans.isEmpty()) {
+            return Tasks.forResult(Collections.<BackendDocument>emptyList());
+        }
+        final ArrayList<Task<List<Row>>> tasks = new ArrayList<>(scans.size());
+        for (Scan scan : scans) {
+            tasks.add(scan.execute(backend, order, limit));
+        }
+        final TaskCompletionSource<List<BackendDocument>> source = new TaskCompletionSource<>();
+        Tasks.whenAll(tasks).addOnCompleteListener(DIRECT, task -> {
+            if (!task.isSuccessful()) {
+                source.setException(task.getException() != null ? task.getException() : new FirestormException("Failed to run query plan."));
+                return;
+            }
+            final ArrayList<List<Row>> results = new ArrayList<>(tasks.size());
+            for (Task<List<Row>> scanTask : tasks) {
+                results.add(scanTask.getResult());
+            }
+            source.setResult(merge(results, order, limit));
+        });
+        return source.getTask();
+    }
+
+    /**
+     * Merges results which are each in query order into one list in query order, dropping duplicates.
+     * @param results The results.
+     * @param order The order of the results.
+     * @param limit The maximum number of documents, or -1 for no limit.
+     * @return Returns a list of documents.
+     */
+    static List<BackendDocument> merge(final List<List<Row>> results, final DocumentOrder order, final long limit) {
+        final ArrayList<BackendDocument> merged = new ArrayList<>();
+        if (results.size() == 1) {
+            for (Row row : results.get(0)) {
+                if (limit >= 0 && merged.size() >= limit) {
+                    break;
+                }
+                merged.add(row.document);
+            }
+            return merged;
+        }
+
+        final PriorityQueue<int[]> heads = new PriorityQueue<>(results.size(), new Comparator<int[]>() {
+            @Override
+            public int compare(final int[] a, final int[] b) {
+                return order.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1]));
+            }
+        });
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        final HashSet<String> paths = new HashSet<>();
+        while (!heads.isEmpty() && (limit < 0 || merged.size() < limit)) {
+            final int[] head = heads.poll();
+            final List<Row> rows = results.get(head[0]);
+            final Row row = rows.get(head[1]);
+            if (paths.add(row.document.getPath())) {
+                merged.add(row.document);
+            }
+            if (++head[1] < rows.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        if (scans.isEmpty()) {
+            return "EMPTY";
+        }
+        final StringBuilder builder = new StringBuilder("UNION of ").append(scans.size()).append(" queries, order by ").append(order);
+        if (limit >= 0) {
+            builder.append(", limit ").append(limit).append(isLimitPushedDown() ? " (pushed down)" : " (after merge)");
+        }
+        for (Scan scan : scans) {
+            builder.append("\n  ").append(scan);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A document with the values of the fields it is ordered by.
+     */
+    static final class Row {
+
+        final BackendDocument document;
+        final Object[] keys;
+
+        Row(final BackendDocument document, final Object[] keys) {
+            this.document = document;
+            this.keys = keys;
+        }
+
+    }
+
+    /**
+     * The order of the results of a plan: the orderings of the query, then the document ID.
+     */
+    static final class DocumentOrder implements Comparator<Row> {
+
+        private final List<BackendQuery.Order> orders;
+        private final boolean descendingIDs;
+
+        DocumentOrder(final List<BackendQuery.Order> orders) {
+            this.orders = orders;
+            this.descendingIDs = !orders.isEmpty() && orders.get(orders.size() - 1).isDescending();
+        }
+
+        /**
+         * Retrieves the field the results are ordered by first.
+         * @return Returns a field, or {@link BackendQuery#DOCUMENT_ID}.
+         */
+        String getFirstField() {
+            return orders.isEmpty() ? BackendQuery.DOCUMENT_ID : orders.get(0).getField();
+        }
+
+        /**
+         * Creates the row of a document.
+         * @param document The document.
+         * @return Returns a Row.
+         */
+        Row rowOf(final BackendDocument document) {
+            final Object[] keys = new Object[orders.size()];
+            final Map<String, Object> data = document.getData();
+            for (int i = 0; i < keys.length; i++) {
+                final Object value = Values.get(document.getId(), data, orders.get(i).getField());
+                keys[i] = value == Values.MISSING ? null : Values.normalize(Predicate.GSON, value);
+            }
+            return new Row(document, keys);
+        }
+
+        @Override
+        public int compare(final Row a, final Row b) {
+            for (int i = 0; i < a.keys.length; i++) {
+                final int result = Values.compare(a.keys[i], b.keys[i]);
+                if (result != 0) {
+                    return orders.get(i).isDescending() ? -result : result;
+                }
+            }
+            final int result = a.document.getId().compareTo(b.document.getId());
+            return descendingIDs ? -result : result;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder();
+            for (BackendQuery.Order order : orders) {
+                builder.append(order.getField()).append(order.isDescending() ? " DESC" : " ASC").append(", ");
+            }
+            return builder.append(BackendQuery.DOCUMENT_ID).append(descendingIDs ? " DESC" : " ASC").toString();
+        }
+
+    }
+
+    /**
+     * A query run by a plan. Its results are checked against its residual predicate, if any, and sorted in the
+     * order of the plan unless the backend already returns them in that order.
+     */
+    static final class Scan {
+
+        private final BackendQuery query;
+        private final Predicate residual;
+        private final boolean ordered;
+
+        /**
+         * Constructs a scan.
+         * @param query The query, without a limit.
+         * @param residual The predicate its results must also satisfy, or null.
+         * @param ordered True if the backend returns the results in the order of the plan.
+         */
+        Scan(final BackendQuery query, final Predicate residual, final boolean ordered) {
+            this.query = query;
+            this.residual = residual;
+            this.ordered = ordered;
+        }
+
+        BackendQuery getQuery() {
+            return query;
+        }
+
+        Predicate getResidual() {
+            return residual;
+        }
+
+        boolean isOrdered() {
+            return ordered;
+        }
+
+        /**
+         * Runs the scan.
+         * @param backend The backend.
+         * @param order The order of the plan.
+         * @param limit The maximum number of results needed, or -1 for no limit.
+         * @return Returns a Task with the matching rows, in the order of the plan.
+         */
+        Task<List<Row>> execute(final FirestormBackend backend, final DocumentOrder order, final long limit) {
+            final TaskCompletionSource<List<Row>> source = new TaskCompletionSource<>();
+            if (!ordered || limit < 0) {
+                //Fetch all results, then sort and limit them:
+                backend.query(query).addOnCompleteListener(DIRECT, task -> {
+                    if (!task.isSuccessful()) {
+                        fail(source, task.getException());
+                        return;
+                    }
+                    final ArrayList<Row> rows = new ArrayList<>();
+                    collect(task.getResult(), order, rows, -1);
+                    if (!ordered) {
+                        Collections.sort(rows, order);
+                        if (limit >= 0 && rows.size() > limit) {
+                            rows.subList((int) limit, rows.size()).clear();
+                        }
+                    }
+                    source.setResult(rows);
+                });
+            }
+            else if (residual == null) {
+                backend.query(query.limit(limit)).addOnCompleteListener(DIRECT, task -> {
+                    if (!task.isSuccessful()) {
+                        fail(source, task.getException());
+                        return;
+                    }
+                    final ArrayList<Row> rows = new ArrayList<>();
+                    collect(task.getResult(), order, rows, -1);
+                    source.setResult(rows);
+                });
+            }
+            else {
+                fetchPage(backend, order, limit, Math.max(limit, MIN_PAGE_SIZE), null, new ArrayList<Row>(), source);
+            }
+            return source.getTask();
+        }
+
+        /**
+         * Fetches pages of results until enough of them satisfy the residual predicate or the results run out. Pages
+         * grow, so that selective residual predicates take few queries.
+         * @param backend The backend.
+         * @param order The order of the plan.
+         * @param limit The number of results needed.
+         * @param pageSize The number of documents per page.
+         * @param last The last document of the previous page, or null for the first page.
+         * @param rows The matching rows collected so far.
+         * @param source The source completed with the rows.
+         */
+        private void fetchPage(final FirestormBackend backend, final DocumentOrder order, final long limit, final long pageSize,
+                               final BackendDocument last, final ArrayList<Row> rows, final TaskCompletionSource<List<Row>> source) {
+            final BackendQuery page = last == null ? query.limit(pageSize) : query.limit(pageSize).startAfter(last);
+            backend.query(page).addOnCompleteListener(DIRECT, task -> {
+                if (!task.isSuccessful()) {
+                    fail(source, task.getException());
+                    return;
+                }
+                final List<BackendDocument> documents = task.getResult();
+                collect(documents, order, rows, limit);
+                if (rows.size() >= limit || documents.size() < pageSize) {
+                    source.setResult(rows);
+                }
+                else {
+                    final long nextPageSize = Math.max(pageSize, Math.min(pageSize * 2, MAX_PAGE_SIZE));
+                    fetchPage(backend, order, limit, nextPageSize, documents.get(documents.size() - 1), rows, source);
+                }
+            });
+        }
+
+        /**
+         * Adds the documents which satisfy the residual predicate to a list of rows.
+         * @param documents The documents.
+         * @param order The order of the plan.
+         * @param rows The rows.
+         * @param limit The maximum number of rows, or -1 for no limit.
+         */
+        private void collect(final List<BackendDocument> documents, final DocumentOrder order, final List<Row> rows, final long limit) {
+            for (BackendDocument document : documents) {
+                if (limit >= 0 && rows.size() >= limit) {
+                    return;
+                }
+                if (residual == null || residual.matches(document)) {
+                    rows.add(order.rowOf(document));
+                }
+            }
+        }
+
+        /**
+         * Fails a scan.
+         * @param source The source of the scan.
+         * @param exception The exception of the failed query, or null.
+         */
+        private static void fail(final TaskCompletionSource<List<Row>> source, final Exception exception) {
+            source.setException(exception != null ? exception : new FirestormException("Failed to run query."));
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder("QUERY ").append(query.getCollection());
+            String separator = " WHERE ";
+            for (BackendQuery.Filter filter : query.getFilters()) {
+                builder.append(separator).append(filter.getField()).append(' ').append(filter.getOperator()).append(' ').append(filter.getValue());
+                separator = " AND ";
+            }
+            separator = " ORDER BY ";
+            for (BackendQuery.Order queryOrder : query.getOrders()) {
+                builder.append(separator).append(queryOrder.getField()).append(queryOrder.isDescending() ? " DESC" : " ASC");
+                separator = ", ";
+            }
+            if (!ordered) {
+                builder.append(" (sorted after fetching)");
+            }
+            if (residual != null) {
+                builder.append(" FILTER ").append(residual);
+            }
+            return builder.toString();
+        }
+
+    }
+
+}
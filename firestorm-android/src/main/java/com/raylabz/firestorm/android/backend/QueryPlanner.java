@@ -0,0 +1,347 @@
+package com.raylabz.firestorm.android.backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decomposes a {@link Predicate} into the queries of a {@link QueryPlan}, within the limits of Firestore queries:
+ * <ul>
+ *     <li>The predicate is rewritten as a disjunction of conjunctions, and each conjunction becomes a query.</li>
+ *     <li>Range and not-in filters run on the backend for one field only: the first ordered field if it is filtered,
+ *     otherwise the field with the most range filters. Filters on other fields are checked on the results.</li>
+ *     <li>Lists of IN and ARRAY_CONTAINS_ANY values longer than {@value #MAX_DISJUNCTION_VALUES} are split across
+ *     queries. Only one such filter, and one ARRAY_CONTAINS filter, run on the backend per query.</li>
+ *     <li>A conjunction of predicates whose rewriting would take more than {@value #MAX_CONJUNCTIONS} queries runs the
+ *     predicate which takes the fewest queries, and checks the others on its results.</li>
+ *     <li>Queries which differ only in their residual predicates are run once.</li>
+ * </ul>
+ * The limit of the plan is passed to every query which returns its results in the order of the plan: the first
+ * results of the union are among the first results of each query. Queries with residual predicates then fetch pages
+ * until they have enough matching results.
+ * @version 1.4.0
+ */
+public final class QueryPlanner {
+
+    /**
+     * The maximum number of values in the IN and ARRAY_CONTAINS_ANY filters of a Firestore query.
+     */
+    public static final int MAX_DISJUNCTION_VALUES = 30;
+
+    /**
+     * The maximum number of values in the NOT_IN filter of a Firestore query.
+     */
+    public static final int MAX_NOT_IN_VALUES = 10;
+
+    /**
+     * The maximum number of conjunctions a predicate is rewritten into.
+     */
+    public static final int MAX_CONJUNCTIONS = 30;
+
+    private QueryPlanner() {
+    }
+
+    /**
+     * Plans a query.
+     * @param query The query, providing the collection, orderings and limit. Its filters, if any, must hold as well as
+     *              the predicate. Cursors are not supported.
+     * @param predicate The predicate, or null to use the filters of the query only.
+     * @return Returns a QueryPlan.
+     * @throws IllegalArgumentException Thrown when the query has cursors.
+     */
+    public static QueryPlan plan(final BackendQuery query, final Predicate predicate) {
+        if (query.getStart() != null || query.getEnd() != null) {
+            throw new IllegalArgumentException("Planned queries do not support cursors.");
+        }
+        final ArrayList<Predicate> conditions = new ArrayList<>();
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            conditions.add(Predicate.where(filter.getField(), filter.getOperator(), filter.getValue()));
+        }
+        if (predicate != null) {
+            conditions.add(predicate);
+        }
+        final QueryPlan.DocumentOrder order = new QueryPlan.DocumentOrder(query.getOrders());
+        final BackendQuery base = baseQuery(query);
+
+        final ArrayList<QueryPlan.Scan> scans = new ArrayList<>();
+        if (conditions.isEmpty()) {
+            scans.add(new QueryPlan.Scan(base, null, true));
+        }
+        else {
+            plan(Predicate.and(conditions), base, order, null, scans);
+        }
+        return new QueryPlan(mergeScans(scans), order, query.getLimit());
+    }
+
+    /**
+     * Creates the query all planned queries start from: the collection and orderings of a query.
+     * @param query The query.
+     * @return Returns a BackendQuery.
+     */
+    private static BackendQuery baseQuery(final BackendQuery query) {
+        BackendQuery base = new BackendQuery(query.getCollection());
+        for (BackendQuery.Order order : query.getOrders()) {
+            base = base.orderBy(order.getField(), order.isDescending());
+        }
+        return base;
+    }
+
+    /**
+     * Plans a predicate, adding its scans to a list.
+     * @param predicate The predicate.
+     * @param base The query the scans start from.
+     * @param order The order of the plan.
+     * @param residual A predicate which the results must also satisfy, or null.
+     * @param scans The list of scans.
+     */
+    private static void plan(final Predicate predicate, final BackendQuery base, final QueryPlan.DocumentOrder order,
+                             final Predicate residual, final List<QueryPlan.Scan> scans) {
+        final List<List<Predicate.Leaf>> conjunctions = toConjunctions(predicate);
+        if (conjunctions != null) {
+            for (List<Predicate.Leaf> conjunction : conjunctions) {
+                planConjunction(conjunction, base, order, residual, scans);
+            }
+            return;
+        }
+        final Predicate.Composite composite = (Predicate.Composite) predicate;
+        if (!composite.isConjunction()) {
+            for (Predicate child : composite.getChildren()) {
+                plan(child, base, order, residual, scans);
+            }
+            return;
+        }
+
+        //Run the child taking the fewest queries and check the others on its results:
+        Predicate driver = null;
+        int driverSize = Integer.MAX_VALUE;
+        for (Predicate child : composite.getChildren()) {
+            final List<List<Predicate.Leaf>> childConjunctions = toConjunctions(child);
+            final int size = childConjunctions != null ? childConjunctions.size() : Integer.MAX_VALUE - 1;
+            if (size < driverSize) {
+                driver = child;
+                driverSize = size;
+            }
+        }
+        final ArrayList<Predicate> others = new ArrayList<>(composite.getChildren());
+        others.remove(driver);
+        if (residual != null) {
+            others.add(residual);
+        }
+        plan(driver, base, order, Predicate.and(others), scans);
+    }
+
+    /**
+     * Rewrites a predicate as a disjunction of conjunctions of filters.
+     * @param predicate The predicate.
+     * @return Returns a list of conjunctions, or null if there would be more than {@value #MAX_CONJUNCTIONS}.
+     */
+    static List<List<Predicate.Leaf>> toConjunctions(final Predicate predicate) {
+        if (predicate instanceof Predicate.Leaf) {
+            final ArrayList<List<Predicate.Leaf>> conjunctions = new ArrayList<>(1);
+            conjunctions.add(Collections.singletonList((Predicate.Leaf) predicate));
+            return conjunctions;
+        }
+        final Predicate.Composite composite = (Predicate.Composite) predicate;
+        List<List<Predicate.Leaf>> result = null;
+        for (Predicate child : composite.getChildren()) {
+            final List<List<Predicate.Leaf>> childConjunctions = toConjunctions(child);
+            if (childConjunctions == null) {
+                return null;
+            }
+            if (result == null) {
+                result = childConjunctions;
+            }
+            else if (!composite.isConjunction()) {
+                if (result.size() + childConjunctions.size() > MAX_CONJUNCTIONS) {
+                    return null;
+                }
+                result.addAll(childConjunctions);
+            }
+            else {
+                if ((long) result.size() * childConjunctions.size() > MAX_CONJUNCTIONS) {
+                    return null;
+                }
+                final ArrayList<List<Predicate.Leaf>> product = new ArrayList<>(result.size() * childConjunctions.size());
+                for (List<Predicate.Leaf> left : result) {
+                    for (List<Predicate.Leaf> right : childConjunctions) {
+                        final ArrayList<Predicate.Leaf> conjunction = new ArrayList<>(left.size() + right.size());
+                        conjunction.addAll(left);
+                        conjunction.addAll(right);
+                        product.add(conjunction);
+                    }
+                }
+                result = product;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Plans a conjunction of filters, adding one scan per chunk of its IN or ARRAY_CONTAINS_ANY values.
+     * @param conjunction The filters.
+     * @param base The query the scans start from.
+     * @param order The order of the plan.
+     * @param extraResidual A predicate which the results must also satisfy, or null.
+     * @param scans The list of scans.
+     */
+    private static void planConjunction(final List<Predicate.Leaf> conjunction, final BackendQuery base, final QueryPlan.DocumentOrder order,
+                                        final Predicate extraResidual, final List<QueryPlan.Scan> scans) {
+        final String inequalityField = chooseInequalityField(conjunction, order);
+        Predicate.Leaf disjunction = null;
+        for (Predicate.Leaf leaf : conjunction) {
+            final BackendQuery.Operator operator = leaf.getFilter().getOperator();
+            if (operator == BackendQuery.Operator.IN || operator == BackendQuery.Operator.ARRAY_CONTAINS_ANY) {
+                if (((List<?>) leaf.getFilter().getValue()).isEmpty()) {
+                    return; //Matches no document.
+                }
+                if (disjunction == null) {
+                    disjunction = leaf;
+                }
+            }
+        }
+
+        BackendQuery query = base;
+        final ArrayList<Predicate> residuals = new ArrayList<>();
+        boolean arrayContains = disjunction != null && disjunction.getFilter().getOperator() == BackendQuery.Operator.ARRAY_CONTAINS_ANY;
+        boolean notIn = false;
+        for (Predicate.Leaf leaf : conjunction) {
+            final BackendQuery.Filter filter = leaf.getFilter();
+            boolean server;
+            switch (filter.getOperator()) {
+                case EQUAL:
+                    server = true;
+                    break;
+                case ARRAY_CONTAINS:
+                    server = !arrayContains;
+                    arrayContains = true;
+                    break;
+                case NOT_IN:
+                    final int size = ((List<?>) filter.getValue()).size();
+                    server = !notIn && disjunction == null && filter.getField().equals(inequalityField) && size > 0 && size <= MAX_NOT_IN_VALUES;
+                    notIn |= server;
+                    break;
+                case IN:
+                case ARRAY_CONTAINS_ANY:
+                    if (leaf == disjunction) {
+                        continue;
+                    }
+                    server = false;
+                    break;
+                default:
+                    server = filter.getField().equals(inequalityField);
+            }
+            if (server) {
+                query = query.where(filter.getField(), filter.getOperator(), filter.getValue());
+            }
+            else if (!residuals.contains(leaf)) {
+                residuals.add(leaf);
+            }
+        }
+        if (extraResidual != null) {
+            residuals.add(extraResidual);
+        }
+        final Predicate residual = residuals.isEmpty() ? null : Predicate.and(residuals);
+
+        final boolean ordered = inequalityField == null || inequalityField.equals(order.getFirstField());
+        if (!ordered) {
+            query = withLeadingOrder(query, inequalityField);
+        }
+
+        if (disjunction == null) {
+            scans.add(new QueryPlan.Scan(query, residual, ordered));
+            return;
+        }
+        final List<?> values = new ArrayList<>(new LinkedHashSet<>((List<?>) disjunction.getFilter().getValue()));
+        for (int start = 0; start < values.size(); start += MAX_DISJUNCTION_VALUES) {
+            final List<?> chunk = new ArrayList<>(values.subList(start, Math.min(start + MAX_DISJUNCTION_VALUES, values.size())));
+            scans.add(new QueryPlan.Scan(query.where(disjunction.getFilter().getField(), disjunction.getFilter().getOperator(), chunk), residual, ordered));
+        }
+    }
+
+    /**
+     * Chooses the field whose range and not-in filters run on the backend.
+     * @param conjunction The filters.
+     * @param order The order of the plan.
+     * @return Returns a field, or null if no filter is a range or not-in filter.
+     */
+    private static String chooseInequalityField(final List<Predicate.Leaf> conjunction, final QueryPlan.DocumentOrder order) {
+        final LinkedHashMap<String, Integer> counts = new LinkedHashMap<>();
+        for (Predicate.Leaf leaf : conjunction) {
+            final BackendQuery.Filter filter = leaf.getFilter();
+            if (filter.getOperator().isRange() || filter.getOperator() == BackendQuery.Operator.NOT_IN) {
+                final Integer count = counts.get(filter.getField());
+                counts.put(filter.getField(), count == null ? 1 : count + 1);
+            }
+        }
+        if (counts.containsKey(order.getFirstField())) {
+            return order.getFirstField();
+        }
+        String chosen = null;
+        int chosenCount = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > chosenCount) {
+                chosen = entry.getKey();
+                chosenCount = entry.getValue();
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Orders a query by a field before its other orderings, as Firestore requires for the field of an inequality.
+     * @param query The query.
+     * @param field The field.
+     * @return Returns a new BackendQuery.
+     */
+    private static BackendQuery withLeadingOrder(final BackendQuery query, final String field) {
+        BackendQuery ordered = new BackendQuery(query.getCollection());
+        for (BackendQuery.Filter filter : query.getFilters()) {
+            ordered = ordered.where(filter.getField(), filter.getOperator(), filter.getValue());
+        }
+        ordered = ordered.orderBy(field, false);
+        for (BackendQuery.Order order : query.getOrders()) {
+            if (!order.getField().equals(field)) {
+                ordered = ordered.orderBy(order.getField(), order.isDescending());
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Merges scans which run the same query into one scan, whose residual predicate is the disjunction of theirs.
+     * @param scans The scans.
+     * @return Returns a list of scans.
+     */
+    private static List<QueryPlan.Scan> mergeScans(final List<QueryPlan.Scan> scans) {
+        final LinkedHashMap<BackendQuery, List<QueryPlan.Scan>> groups = new LinkedHashMap<>();
+        for (QueryPlan.Scan scan : scans) {
+            List<QueryPlan.Scan> group = groups.get(scan.getQuery());
+            if (group == null) {
+                group = new ArrayList<>(1);
+                groups.put(scan.getQuery(), group);
+            }
+            group.add(scan);
+        }
+        final ArrayList<QueryPlan.Scan> merged = new ArrayList<>(groups.size());
+        for (List<QueryPlan.Scan> group : groups.values()) {
+            if (group.size() == 1) {
+                merged.add(group.get(0));
+                continue;
+            }
+            final ArrayList<Predicate> residuals = new ArrayList<>(group.size());
+            for (QueryPlan.Scan scan : group) {
+                if (scan.getResidual() == null) {
+                    residuals.clear();
+                    break;
+                }
+                residuals.add(scan.getResidual());
+            }
+            merged.add(new QueryPlan.Scan(group.get(0).getQuery(), residuals.isEmpty() ? null : Predicate.or(residuals), group.get(0).isOrdered()));
+        }
+        return merged;
+    }
+
+}
@@ -0,0 +1,363 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.firebase.Timestamp;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts objects to the field values stored by in-memory backends and compares field values using Firestore's
+ * ordering: null, booleans, numbers, dates, strings, arrays and maps. Numbers are stored as Long or Double values.
+ * @version 1.4.0
+ */
+final class Values {
+
+    /**
+     * Denotes a field which does not exist in a document.
+     */
+    static final Object MISSING = new Object();
+
+    private static final int NULL_TYPE = 0;
+    private static final int BOOLEAN_TYPE = 1;
+    private static final int NUMBER_TYPE = 2;
+    private static final int DATE_TYPE = 3;
+    private static final int STRING_TYPE = 4;
+    private static final int OTHER_TYPE = 5;
+    private static final int ARRAY_TYPE = 6;
+    private static final int MAP_TYPE = 7;
+
+    /**
+     * Private constructor.
+     */
+    private Values() {
+    }
+
+    /**
+     * Converts an object to the fields of a document.
+     * @param gson The Gson instance used to serialize the object.
+     * @param object The object.
+     * @return Returns an unmodifiable map of field names to values.
+     */
+    static Map<String, Object> toData(final Gson gson, final Object object) {
+        final Object value = normalize(gson, object);
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException("Objects of type " + object.getClass().getSimpleName() + " cannot be stored as documents.");
+        }
+        //noinspection unchecked
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Converts the fields of a document to an object.
+     * @param gson The Gson instance used to deserialize the object.
+     * @param data The fields of the document.
+     * @param objectClass The class of the object.
+     * @param <T> The type of the object.
+     * @return Returns an object of type T.
+     */
+    static <T> T toObject(final Gson gson, final Map<String, Object> data, final Class<T> objectClass) {
+        return gson.fromJson(gson.toJsonTree(data), objectClass);
+    }
+
+    /**
+     * Converts a value to the representation stored in documents: null, Boolean, Long, Double, Date, String,
+     * unmodifiable lists and unmodifiable maps. Firestore timestamps are converted to dates. Other values are converted
+     * through their JSON representation.
+     * @param gson The Gson instance used to serialize other values.
+     * @param value The value.
+     * @return Returns the normalized value.
+     */
+    static Object normalize(final Gson gson, final Object value) {
+        if (value == null || value instanceof Boolean || value instanceof String || value instanceof Date) {
+            return value;
+        }
+        if (value instanceof Number) {
+            return normalizeNumber((Number) value);
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toDate();
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            final ArrayList<Object> normalized = new ArrayList<>(list.size());
+            for (Object item : list) {
+                normalized.add(normalize(gson, item));
+            }
+            return Collections.unmodifiableList(normalized);
+        }
+        if (value instanceof Map) {
+            final LinkedHashMap<String, Object> normalized = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                normalized.put(String.valueOf(entry.getKey()), normalize(gson, entry.getValue()));
+            }
+            return Collections.unmodifiableMap(normalized);
+        }
+        return fromJson(gson.toJsonTree(value));
+    }
+
+    /**
+     * Converts a JSON element to a normalized value.
+     * @param element The element.
+     * @return Returns the normalized value.
+     */
+    private static Object fromJson(final JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return null;
+        }
+        if (element.isJsonObject()) {
+            final JsonObject object = element.getAsJsonObject();
+            final LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                map.put(entry.getKey(), fromJson(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if (element.isJsonArray()) {
+            final JsonArray array = element.getAsJsonArray();
+            final ArrayList<Object> list = new ArrayList<>(array.size());
+            for (JsonElement item : array) {
+                list.add(fromJson(item));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        final JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        }
+        if (primitive.isNumber()) {
+            return normalizeNumber(primitive.getAsNumber());
+        }
+        return primitive.getAsString();
+    }
+
+    /**
+     * Converts a number to a Long if it is integral, or a Double otherwise.
+     * @param number The number.
+     * @return Returns a Long or a Double.
+     */
+    private static Object normalizeNumber(final Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            return number.longValue();
+        }
+        if (number instanceof Double || number instanceof Float) {
+            return number.doubleValue();
+        }
+        final String string = number.toString();
+        if (string.indexOf('.') < 0 && string.indexOf('e') < 0 && string.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(string);
+            } catch (NumberFormatException ignored) {}
+        }
+        return number.doubleValue();
+    }
+
+    /**
+     * Retrieves the value of a field of a document.
+     * @param id The ID of the document.
+     * @param data The fields of the document.
+     * @param field The field name or dot-separated path, as returned by {@link BackendQuery#fieldOf(List)}, or
+     *              {@link BackendQuery#DOCUMENT_ID}.
+     * @return Returns the value of the field, or {@link #MISSING} if the field does not exist.
+     */
+    static Object get(final String id, final Map<String, Object> data, final String field) {
+        if (BackendQuery.DOCUMENT_ID.equals(field)) {
+            return id;
+        }
+        if (field.indexOf('`') >= 0) {
+            return get(data, BackendQuery.fieldPathOf(field));
+        }
+        Object current = data;
+        int start = 0;
+        while (true) {
+            if (!(current instanceof Map)) {
+                return MISSING;
+            }
+            final Map<?, ?> map = (Map<?, ?>) current;
+            final int dot = field.indexOf('.', start);
+            final String key = dot < 0 ? field.substring(start) : field.substring(start, dot);
+            if (!map.containsKey(key)) {
+                return MISSING;
+            }
+            current = map.get(key);
+            if (dot < 0) {
+                return current;
+            }
+            start = dot + 1;
+        }
+    }
+
+    /**
+     * Retrieves the value of a field of a document by the segments of its path, whose names may contain dots.
+     * @param data The fields of the document.
+     * @param fieldPath The segments of the path.
+     * @return Returns the value of the field, or {@link #MISSING} if the field does not exist.
+     */
+    private static Object get(final Map<String, Object> data, final List<String> fieldPath) {
+        Object current = data;
+        for (String segment : fieldPath) {
+            if (!(current instanceof Map) || !((Map<?, ?>) current).containsKey(segment)) {
+                return MISSING;
+            }
+            current = ((Map<?, ?>) current).get(segment);
+        }
+        return current;
+    }
+
+    /**
+     * Retrieves the type order of a value.
+     * @param value The value.
+     * @return Returns an integer; values of lower type order are ordered first.
+     */
+    static int typeOf(final Object value) {
+        if (value == null) {
+            return NULL_TYPE;
+        }
+        if (value instanceof Boolean) {
+            return BOOLEAN_TYPE;
+        }
+        if (value instanceof Number) {
+            return NUMBER_TYPE;
+        }
+        if (value instanceof Date) {
+            return DATE_TYPE;
+        }
+        if (value instanceof String) {
+            return STRING_TYPE;
+        }
+        if (value instanceof List) {
+            return ARRAY_TYPE;
+        }
+        if (value instanceof Map) {
+            return MAP_TYPE;
+        }
+        return OTHER_TYPE;
+    }
+
+    /**
+     * Compares two normalized values using Firestore's ordering.
+     * @param a The first value.
+     * @param b The second value.
+     * @return Returns a negative integer, zero or a positive integer as the first value is less than, equal to or greater than the second.
+     */
+    static int compare(final Object a, final Object b) {
+        final int typeA = typeOf(a);
+        final int typeB = typeOf(b);
+        if (typeA != typeB) {
+            return Integer.compare(typeA, typeB);
+        }
+        switch (typeA) {
+            case NULL_TYPE:
+                return 0;
+            case BOOLEAN_TYPE:
+                return Boolean.compare((Boolean) a, (Boolean) b);
+            case NUMBER_TYPE:
+                return compareNumbers((Number) a, (Number) b);
+            case DATE_TYPE:
+                return ((Date) a).compareTo((Date) b);
+            case STRING_TYPE:
+                return ((String) a).compareTo((String) b);
+            case ARRAY_TYPE:
+                return compareLists((List<?>) a, (List<?>) b);
+            case MAP_TYPE:
+                return compareMaps((Map<?, ?>) a, (Map<?, ?>) b);
+            default:
+                return String.valueOf(a).compareTo(String.valueOf(b));
+        }
+    }
+
+    /**
+     * Checks if two normalized values are equal using Firestore's semantics, where 1 and 1.0 are equal.
+     * @param a The first value.
+     * @param b The second value.
+     * @return Returns true if the values are equal, false otherwise.
+     */
+    static boolean equal(final Object a, final Object b) {
+        return compare(a, b) == 0;
+    }
+
+    /**
+     * Compares two numbers. NaN is ordered before all other numbers, as in Firestore.
+     * @param a The first number.
+     * @param b The second number.
+     * @return Returns the result of the comparison.
+     */
+    private static int compareNumbers(final Number a, final Number b) {
+        if (a instanceof Long && b instanceof Long) {
+            return Long.compare(a.longValue(), b.longValue());
+        }
+        final double x = a.doubleValue();
+        final double y = b.doubleValue();
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return Double.isNaN(x) ? (Double.isNaN(y) ? 0 : -1) : 1;
+        }
+        return x < y ? -1 : (x > y ? 1 : 0);
+    }
+
+    /**
+     * Compares two lists element by element.
+     * @param a The first list.
+     * @param b The second list.
+     * @return Returns the result of the comparison.
+     */
+    private static int compareLists(final List<?> a, final List<?> b) {
+        final int size = Math.min(a.size(), b.size());
+        for (int i = 0; i < size; i++) {
+            final int result = compare(a.get(i), b.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(a.size(), b.size());
+    }
+
+    /**
+     * Compares two maps by their entries, in key order.
+     * @param a The first map.
+     * @param b The second map.
+     * @return Returns the result of the comparison.
+     */
+    private static int compareMaps(final Map<?, ?> a, final Map<?, ?> b) {
+        final Iterator<? extends Map.Entry<String, ?>> iteratorA = sorted(a).entrySet().iterator();
+        final Iterator<? extends Map.Entry<String, ?>> iteratorB = sorted(b).entrySet().iterator();
+        while (iteratorA.hasNext() && iteratorB.hasNext()) {
+            final Map.Entry<String, ?> entryA = iteratorA.next();
+            final Map.Entry<String, ?> entryB = iteratorB.next();
+            int result = entryA.getKey().compareTo(entryB.getKey());
+            if (result == 0) {
+                result = compare(entryA.getValue(), entryB.getValue());
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Boolean.compare(iteratorA.hasNext(), iteratorB.hasNext());
+    }
+
+    /**
+     * Sorts the entries of a map by key.
+     * @param map The map.
+     * @return Returns a sorted map.
+     */
+    private static TreeMap<String, Object> sorted(final Map<?, ?> map) {
+        final TreeMap<String, Object> sorted = new TreeMap<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            sorted.put(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return sorted;
+    }
+
+}
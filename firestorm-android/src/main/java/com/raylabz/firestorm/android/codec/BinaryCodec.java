@@ -0,0 +1,87 @@
+package com.raylabz.firestorm.android.codec;
+
+import com.raylabz.firestorm.android.exception.FirestormException;
+import com.raylabz.firestorm.android.exception.FirestormObjectException;
+
+/**
+ * Encodes objects to, and decodes them from, a compact binary format for local caching.
+ * <p>
+ * The format is driven by the {@link ClassDescriptor} of each class: fields are keyed by numeric IDs rather than
+ * names, numbers are written as varints and strings are length-prefixed, so encoded objects are several times smaller
+ * than their JSON, and are encoded and decoded without parsing text. Data encoded by an older or newer version of a
+ * class can be decoded, as long as fields keep their IDs (see {@link com.raylabz.firestorm.android.annotation.FieldId}).
+ * <p>
+ * The format is meant for data written and read by the same application, such as caches and snapshots on disk. It
+ * is not a replacement for the Firestore representation of objects.
+ * @version 1.4.0
+ */
+public final class BinaryCodec {
+
+    /**
+     * The writer of each thread, reused between calls to avoid growing a new buffer for every object.
+     */
+    private static final ThreadLocal<BinaryWriter> WRITERS = new ThreadLocal<BinaryWriter>() {
+        @Override
+        protected BinaryWriter initialValue() {
+            return new BinaryWriter();
+        }
+    };
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Encodes an object.
+     * @param object The object.
+     * @return Returns the encoded bytes.
+     * @throws FirestormException Thrown when the object cannot be encoded.
+     */
+    public static byte[] encode(final Object object) throws FirestormException {
+        try {
+            final ClassDescriptor descriptor = ClassDescriptor.of(object.getClass());
+            final BinaryWriter writer = WRITERS.get();
+            writer.reset();
+            descriptor.write(writer, object, 0);
+            return writer.toByteArray();
+        } catch (FirestormObjectException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Decodes an object.
+     * @param bytes The encoded bytes.
+     * @param objectClass The class of the object.
+     * @param <T> The type of the object.
+     * @return Returns the object.
+     * @throws FirestormException Thrown when the class cannot be decoded or the bytes are malformed.
+     */
+    public static <T> T decode(final byte[] bytes, final Class<T> objectClass) throws FirestormException {
+        return decode(bytes, 0, bytes.length, objectClass);
+    }
+
+    /**
+     * Decodes an object from a range of an array.
+     * @param bytes The array.
+     * @param offset The position of the first encoded byte.
+     * @param length The number of encoded bytes.
+     * @param objectClass The class of the object.
+     * @param <T> The type of the object.
+     * @return Returns the object.
+     * @throws FirestormException Thrown when the class cannot be decoded or the bytes are malformed.
+     */
+    public static <T> T decode(final byte[] bytes, final int offset, final int length, final Class<T> objectClass) throws FirestormException {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("The range [" + offset + ", " + (offset + length) + ") is outside of an array of " + bytes.length + " bytes.");
+        }
+        try {
+            final ClassDescriptor descriptor = ClassDescriptor.of(objectClass);
+            return objectClass.cast(descriptor.read(new BinaryReader(bytes, offset, length), 0));
+        } catch (FirestormObjectException e) {
+            throw new FirestormException(e);
+        } catch (ClassCastException | IllegalArgumentException e) {
+            throw BinaryReader.malformed(e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.raylabz.firestorm.android.codec;
+
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the binary values written by a {@link BinaryWriter} from an array of bytes.
+ * @version 1.4.0
+ */
+final class BinaryReader {
+
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * Constructs a reader.
+     * @param buffer The bytes to read.
+     * @param offset The position of the first byte.
+     * @param length The number of bytes.
+     */
+    BinaryReader(final byte[] buffer, final int offset, final int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Checks if there are bytes left before the limit.
+     * @return Returns true if there are bytes left, false otherwise.
+     */
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Retrieves the number of bytes left before the limit.
+     * @return Returns a number of bytes.
+     */
+    int remaining() {
+        return limit - position;
+    }
+
+    /**
+     * Reads the length of a message and limits reading to its content.
+     * @return Returns the previous limit, to pass to <i>endMessage()</i>.
+     */
+    int startMessage() {
+        final int length = readLength();
+        final int previousLimit = limit;
+        limit = position + length;
+        return previousLimit;
+    }
+
+    /**
+     * Skips the rest of a message and restores the previous limit.
+     * @param previousLimit The limit returned by <i>startMessage()</i>.
+     */
+    void endMessage(final int previousLimit) {
+        position = limit;
+        limit = previousLimit;
+    }
+
+    /**
+     * Reads an unsigned varint.
+     * @return Returns the value.
+     */
+    long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            require(1);
+            final byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw malformed("Varint too long.");
+    }
+
+    /**
+     * Reads a zigzag varint.
+     * @return Returns the signed value.
+     */
+    long readSignedVarint() {
+        final long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads 4 bytes, little-endian.
+     * @return Returns the value.
+     */
+    int readFixed32() {
+        require(4);
+        final int value = (buffer[position] & 0xFF) | (buffer[position + 1] & 0xFF) << 8
+                | (buffer[position + 2] & 0xFF) << 16 | (buffer[position + 3] & 0xFF) << 24;
+        position += 4;
+        return value;
+    }
+
+    /**
+     * Reads 8 bytes, little-endian.
+     * @return Returns the value.
+     */
+    long readFixed64() {
+        final long low = readFixed32() & 0xFFFFFFFFL;
+        final long high = readFixed32() & 0xFFFFFFFFL;
+        return low | high << 32;
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string.
+     * @return Returns a string.
+     */
+    String readString() {
+        final int length = readLength();
+        final String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Reads a length-prefixed array of bytes.
+     * @return Returns an array of bytes.
+     */
+    byte[] readBytes() {
+        final int length = readLength();
+        final byte[] value = new byte[length];
+        System.arraycopy(buffer, position, value, 0, length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Skips a value.
+     * @param wireType The wire type of the value.
+     */
+    void skip(final int wireType) {
+        switch (wireType) {
+            case WireType.VARINT:
+                readVarint();
+                break;
+            case WireType.FIXED64:
+                require(8);
+                position += 8;
+                break;
+            case WireType.LENGTH:
+                final int length = readLength();
+                position += length;
+                break;
+            case WireType.FIXED32:
+                require(4);
+                position += 4;
+                break;
+            default:
+                throw malformed("Unknown wire type " + wireType + ".");
+        }
+    }
+
+    /**
+     * Reads a length and checks that that many bytes are left.
+     * @return Returns the length.
+     */
+    private int readLength() {
+        final long length = readVarint();
+        if (length < 0 || length > limit - position) {
+            throw malformed("Length " + length + " exceeds the remaining " + (limit - position) + " bytes.");
+        }
+        return (int) length;
+    }
+
+    /**
+     * Checks that bytes are left.
+     * @param bytes The number of bytes needed.
+     */
+    private void require(final int bytes) {
+        if (limit - position < bytes) {
+            throw malformed("Unexpected end of data.");
+        }
+    }
+
+    /**
+     * Creates the exception thrown for malformed data.
+     * @param message The description of the problem.
+     * @return Returns a FirestormException.
+     */
+    static FirestormException malformed(final String message) {
+        return new FirestormException("Malformed binary data: " + message);
+    }
+
+}
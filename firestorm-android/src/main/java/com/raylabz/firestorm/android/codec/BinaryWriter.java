@@ -0,0 +1,193 @@
+package com.raylabz.firestorm.android.codec;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer which binary values are written to: varints, fixed-size numbers and length-prefixed strings and
+ * messages.
+ * @version 1.4.0
+ */
+final class BinaryWriter {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Buffers larger than this are not kept for reuse.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int position = 0;
+
+    /**
+     * Empties the buffer so that it can be reused.
+     */
+    void reset() {
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new byte[INITIAL_CAPACITY];
+        }
+        position = 0;
+    }
+
+    /**
+     * Copies the written bytes.
+     * @return Returns an array of bytes.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Makes room for more bytes.
+     * @param bytes The number of bytes about to be written.
+     */
+    private void ensure(final int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+
+    /**
+     * Writes an unsigned varint: 7 bits per byte, least significant group first.
+     * @param value The value.
+     */
+    void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    /**
+     * Writes a signed value as a zigzag varint, so that small negative values stay small.
+     * @param value The value.
+     */
+    void writeSignedVarint(final long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes 4 bytes, little-endian.
+     * @param value The value.
+     */
+    void writeFixed32(final int value) {
+        ensure(4);
+        buffer[position++] = (byte) value;
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 24);
+    }
+
+    /**
+     * Writes 8 bytes, little-endian.
+     * @param value The value.
+     */
+    void writeFixed64(final long value) {
+        writeFixed32((int) value);
+        writeFixed32((int) (value >>> 32));
+    }
+
+    /**
+     * Writes a string as its length in UTF-8 bytes followed by the bytes.
+     * @param value The string.
+     */
+    void writeString(final String value) {
+        final int length = value.length();
+        int utf8Length = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utf8Length += 1;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 2;
+                i++;
+            }
+            else if (!Character.isSurrogate(c)) {
+                utf8Length += 2;
+            }
+        }
+        writeVarint(utf8Length);
+        ensure(utf8Length);
+        if (utf8Length == length) {
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >>> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >>> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                //An unpaired surrogate, replaced with '?' like String.getBytes() does:
+                buffer[position++] = (byte) '?';
+            }
+            else {
+                buffer[position++] = (byte) (0xE0 | (c >>> 12));
+                buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes an array of bytes prefixed with its length.
+     * @param value The bytes.
+     */
+    void writeBytes(final byte[] value) {
+        writeVarint(value.length);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    /**
+     * Starts a length-prefixed message. A byte is reserved for the length, which is written by <i>endMessage()</i>.
+     * @return Returns the position of the message, to pass to <i>endMessage()</i>.
+     */
+    int startMessage() {
+        ensure(1);
+        return position++;
+    }
+
+    /**
+     * Ends a length-prefixed message, writing its length and moving its content if the length takes more than the
+     * reserved byte.
+     * @param start The position returned by <i>startMessage()</i>.
+     */
+    void endMessage(final int start) {
+        final int length = position - start - 1;
+        if (length < 0x80) {
+            buffer[start] = (byte) length;
+            return;
+        }
+        int lengthSize = 1;
+        for (int remaining = length >>> 7; remaining != 0; remaining >>>= 7) {
+            lengthSize++;
+        }
+        ensure(lengthSize - 1);
+        System.arraycopy(buffer, start + 1, buffer, start + lengthSize, length);
+        position = start;
+        writeVarint(length);
+        position = start + lengthSize + length;
+    }
+
+}
@@ -0,0 +1,211 @@
+package com.raylabz.firestorm.android.codec;
+
+import com.raylabz.firestorm.android.annotation.FieldId;
+import com.raylabz.firestorm.android.exception.FirestormException;
+import com.raylabz.firestorm.android.exception.FirestormObjectException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Describes the binary encoding of a class: the ID, wire type and codec of each of its fields.
+ * <p>
+ * The encoding of an object is a sequence of fields, each written as a varint key, <i>(ID &lt;&lt; 3) | wire type</i>,
+ * followed by its value. Every non-static, non-transient field of the class and its superclasses is encoded. A field
+ * is identified by its {@link FieldId}, or by a hash of its name if it has none, so that fields can be added, removed
+ * and reordered between versions of a class: decoding skips fields which are unknown or whose wire type changed,
+ * and leaves fields which are missing from the data as set by the empty constructor.
+ * <p>
+ * Descriptors are built when a class is first encoded or decoded, and cached. Conflicting field IDs are therefore
+ * reported by the first encoding of the class rather than when it is registered.
+ * @version 1.4.0
+ */
+public final class ClassDescriptor {
+
+    /**
+     * The first ID given to fields without a {@link FieldId}. Hashed IDs take 22 bits, so their keys take 4 bytes.
+     */
+    private static final int FIRST_HASHED_ID = FieldId.MAX_ID + 1;
+    private static final int HASHED_ID_RANGE = 1 << 22;
+
+    private static final ConcurrentHashMap<Class<?>, ClassDescriptor> DESCRIPTORS = new ConcurrentHashMap<>();
+
+    private final Class<?> objectClass;
+    private final Constructor<?> constructor;
+    private final FieldDescriptor[] fields;
+
+    /**
+     * Constructs a descriptor.
+     * @param objectClass The class.
+     * @throws FirestormObjectException Thrown when the class cannot be encoded.
+     */
+    private ClassDescriptor(final Class<?> objectClass) throws FirestormObjectException {
+        this.objectClass = objectClass;
+        try {
+            constructor = objectClass.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new FirestormObjectException("The class '" + objectClass.getSimpleName() + "' does not have an empty (no-parameter) constructor.");
+        }
+
+        final ArrayList<FieldDescriptor> fieldList = new ArrayList<>();
+        for (Class<?> aClass = objectClass; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()) {
+            for (Field field : aClass.getDeclaredFields()) {
+                final int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                fieldList.add(new FieldDescriptor(field, idOf(field)));
+            }
+        }
+        fields = fieldList.toArray(new FieldDescriptor[0]);
+        Arrays.sort(fields, new Comparator<FieldDescriptor>() {
+            @Override
+            public int compare(final FieldDescriptor a, final FieldDescriptor b) {
+                return Integer.compare(a.getId(), b.getId());
+            }
+        });
+        for (int i = 1; i < fields.length; i++) {
+            if (fields[i].getId() == fields[i - 1].getId()) {
+                throw new FirestormObjectException("The fields '" + fields[i - 1].getField().getName() + "' and '"
+                        + fields[i].getField().getName() + "' of class '" + objectClass.getSimpleName()
+                        + "' have the same binary field ID " + fields[i].getId() + ". Assign distinct IDs with @"
+                        + FieldId.class.getSimpleName() + ".");
+            }
+        }
+    }
+
+    /**
+     * Retrieves the descriptor of a class, building it when first requested.
+     * @param objectClass The class.
+     * @return Returns a ClassDescriptor.
+     * @throws FirestormObjectException Thrown when the class cannot be encoded: it has no empty constructor, or two of
+     * its fields have the same ID.
+     */
+    public static ClassDescriptor of(final Class<?> objectClass) throws FirestormObjectException {
+        final ClassDescriptor cached = DESCRIPTORS.get(objectClass);
+        if (cached != null) {
+            return cached;
+        }
+        final ClassDescriptor descriptor = new ClassDescriptor(objectClass);
+        final ClassDescriptor previous = DESCRIPTORS.putIfAbsent(objectClass, descriptor);
+        return previous != null ? previous : descriptor;
+    }
+
+    /**
+     * Retrieves the ID of a field.
+     * @param field The field.
+     * @return Returns the ID.
+     * @throws FirestormObjectException Thrown when the field has an invalid {@link FieldId}.
+     */
+    private static int idOf(final Field field) throws FirestormObjectException {
+        final FieldId fieldId = field.getAnnotation(FieldId.class);
+        if (fieldId == null) {
+            return FIRST_HASHED_ID + (field.getName().hashCode() & 0x7FFFFFFF) % HASHED_ID_RANGE;
+        }
+        if (fieldId.value() < 1 || fieldId.value() > FieldId.MAX_ID) {
+            throw new FirestormObjectException("The @" + FieldId.class.getSimpleName() + " of field '" + field.getName()
+                    + "' must be between 1 and " + FieldId.MAX_ID + ", but " + fieldId.value() + " found.");
+        }
+        return fieldId.value();
+    }
+
+    /**
+     * Retrieves the described class.
+     * @return Returns a class.
+     */
+    public Class<?> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Retrieves the binary ID of a field.
+     * @param fieldName The name of the field.
+     * @return Returns the ID, or -1 if the class has no encoded field with this name.
+     */
+    public int getFieldId(final String fieldName) {
+        for (FieldDescriptor field : fields) {
+            if (field.getField().getName().equals(fieldName)) {
+                return field.getId();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the fields of an object, in the order of their IDs.
+     * @param writer The writer.
+     * @param object The object.
+     * @param depth The nesting depth of the object.
+     */
+    void write(final BinaryWriter writer, final Object object, final int depth) {
+        for (FieldDescriptor field : fields) {
+            field.write(writer, object, depth);
+        }
+    }
+
+    /**
+     * Reads the fields of an object until the limit of the reader, into a new instance of the class.
+     * @param reader The reader.
+     * @param depth The nesting depth of the object.
+     * @return Returns the object.
+     */
+    Object read(final BinaryReader reader, final int depth) {
+        final Object object;
+        try {
+            object = constructor.newInstance();
+        } catch (Exception e) {
+            throw new FirestormException(e);
+        }
+        int next = 0;
+        while (reader.hasRemaining()) {
+            final long key = reader.readVarint();
+            final int wireType = (int) (key & WireType.MASK);
+            final long id = key >>> WireType.BITS;
+            final int index = indexOf(id, next);
+            if (index >= 0 && fields[index].getWireType() == wireType) {
+                fields[index].read(reader, object, depth);
+                next = index + 1;
+            }
+            else {
+                reader.skip(wireType);
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Finds the field with an ID. Fields are usually read in the order they were written, so the field after the
+     * previous one is checked first.
+     * @param id The ID.
+     * @param hint The index of the field expected next.
+     * @return Returns the index of the field, or -1 if there is none.
+     */
+    private int indexOf(final long id, final int hint) {
+        if (hint < fields.length && fields[hint].getId() == id) {
+            return hint;
+        }
+        int low = 0;
+        int high = fields.length - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int middleId = fields[middle].getId();
+            if (middleId < id) {
+                low = middle + 1;
+            }
+            else if (middleId > id) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.raylabz.firestorm.android.codec;
+
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.lang.reflect.Field;
+
+/**
+ * Describes how a field of a class is encoded: its ID, wire type and codec.
+ * Primitive fields are read and written without boxing, and are always encoded. Other fields are omitted while null.
+ * @version 1.4.0
+ */
+final class FieldDescriptor {
+
+    private static final int REFERENCE = 0;
+    private static final int BOOLEAN = 1;
+    private static final int BYTE = 2;
+    private static final int SHORT = 3;
+    private static final int CHAR = 4;
+    private static final int INT = 5;
+    private static final int LONG = 6;
+    private static final int FLOAT = 7;
+    private static final int DOUBLE = 8;
+
+    private final Field field;
+    private final int id;
+    private final int kind;
+    private final ValueCodec codec;
+    private final int wireType;
+    private final long key;
+
+    /**
+     * Constructs a descriptor.
+     * @param field The field.
+     * @param id The ID of the field.
+     */
+    FieldDescriptor(final Field field, final int id) {
+        this.field = field;
+        this.id = id;
+        this.kind = kindOf(field.getType());
+        this.codec = ValueCodecs.forType(field.getGenericType());
+        this.wireType = codec.getWireType();
+        this.key = ((long) id << 3) | wireType;
+        field.setAccessible(true);
+    }
+
+    /**
+     * Retrieves the kind of a field type.
+     * @param type The type.
+     * @return Returns one of the kind constants.
+     */
+    private static int kindOf(final Class<?> type) {
+        if (type == boolean.class) {
+            return BOOLEAN;
+        }
+        if (type == byte.class) {
+            return BYTE;
+        }
+        if (type == short.class) {
+            return SHORT;
+        }
+        if (type == char.class) {
+            return CHAR;
+        }
+        if (type == int.class) {
+            return INT;
+        }
+        if (type == long.class) {
+            return LONG;
+        }
+        if (type == float.class) {
+            return FLOAT;
+        }
+        if (type == double.class) {
+            return DOUBLE;
+        }
+        return REFERENCE;
+    }
+
+    /**
+     * Retrieves the field.
+     * @return Returns a Field.
+     */
+    Field getField() {
+        return field;
+    }
+
+    /**
+     * Retrieves the ID of the field.
+     * @return Returns the ID.
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the wire type of the field.
+     * @return Returns a WireType constant.
+     */
+    int getWireType() {
+        return wireType;
+    }
+
+    /**
+     * Writes the key and value of the field of an object, unless the value is null.
+     * @param writer The writer.
+     * @param object The object.
+     * @param depth The nesting depth of the object.
+     */
+    void write(final BinaryWriter writer, final Object object, final int depth) {
+        try {
+            switch (kind) {
+                case BOOLEAN:
+                    writer.writeVarint(key);
+                    writer.writeVarint(field.getBoolean(object) ? 1 : 0);
+                    break;
+                case BYTE:
+                    writer.writeVarint(key);
+                    writer.writeSignedVarint(field.getByte(object));
+                    break;
+                case SHORT:
+                    writer.writeVarint(key);
+                    writer.writeSignedVarint(field.getShort(object));
+                    break;
+                case CHAR:
+                    writer.writeVarint(key);
+                    writer.writeVarint(field.getChar(object));
+                    break;
+                case INT:
+                    writer.writeVarint(key);
+                    writer.writeSignedVarint(field.getInt(object));
+                    break;
+                case LONG:
+                    writer.writeVarint(key);
+                    writer.writeSignedVarint(field.getLong(object));
+                    break;
+                case FLOAT:
+                    writer.writeVarint(key);
+                    writer.writeFixed32(Float.floatToIntBits(field.getFloat(object)));
+                    break;
+                case DOUBLE:
+                    writer.writeVarint(key);
+                    writer.writeFixed64(Double.doubleToLongBits(field.getDouble(object)));
+                    break;
+                default:
+                    final Object value = field.get(object);
+                    if (value != null) {
+                        writer.writeVarint(key);
+                        codec.write(writer, value, depth);
+                    }
+            }
+        } catch (IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Reads the value of the field into an object. The key has already been read and its wire type matched.
+     * @param reader The reader.
+     * @param object The object.
+     * @param depth The nesting depth of the object.
+     */
+    void read(final BinaryReader reader, final Object object, final int depth) {
+        try {
+            switch (kind) {
+                case BOOLEAN:
+                    field.setBoolean(object, reader.readVarint() != 0);
+                    break;
+                case BYTE:
+                    field.setByte(object, (byte) reader.readSignedVarint());
+                    break;
+                case SHORT:
+                    field.setShort(object, (short) reader.readSignedVarint());
+                    break;
+                case CHAR:
+                    field.setChar(object, (char) reader.readVarint());
+                    break;
+                case INT:
+                    field.setInt(object, (int) reader.readSignedVarint());
+                    break;
+                case LONG:
+                    field.setLong(object, reader.readSignedVarint());
+                    break;
+                case FLOAT:
+                    field.setFloat(object, Float.intBitsToFloat(reader.readFixed32()));
+                    break;
+                case DOUBLE:
+                    field.setDouble(object, Double.longBitsToDouble(reader.readFixed64()));
+                    break;
+                default:
+                    field.set(object, codec.read(reader, depth));
+            }
+        } catch (IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+}
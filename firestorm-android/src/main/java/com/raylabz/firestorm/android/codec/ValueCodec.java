@@ -0,0 +1,44 @@
+package com.raylabz.firestorm.android.codec;
+
+/**
+ * Encodes and decodes the values of one type. Every encoded value is self-delimiting, as told by its wire type.
+ * Codecs are created once per field by {@link ValueCodecs} and shared by all objects of a class.
+ * @version 1.4.0
+ */
+abstract class ValueCodec {
+
+    private final int wireType;
+
+    /**
+     * Constructs a codec.
+     * @param wireType The wire type of the encoded values.
+     */
+    ValueCodec(final int wireType) {
+        this.wireType = wireType;
+    }
+
+    /**
+     * Retrieves the wire type of the encoded values.
+     * @return Returns a WireType constant.
+     */
+    final int getWireType() {
+        return wireType;
+    }
+
+    /**
+     * Encodes a value.
+     * @param writer The writer.
+     * @param value The value, which is not null.
+     * @param depth The nesting depth of the value.
+     */
+    abstract void write(BinaryWriter writer, Object value, int depth);
+
+    /**
+     * Decodes a value.
+     * @param reader The reader.
+     * @param depth The nesting depth of the value.
+     * @return Returns the value.
+     */
+    abstract Object read(BinaryReader reader, int depth);
+
+}
@@ -0,0 +1,823 @@
+package com.raylabz.firestorm.android.codec;
+
+import com.raylabz.firestorm.android.annotation.FirestormObject;
+import com.raylabz.firestorm.android.exception.FirestormException;
+import com.raylabz.firestorm.android.exception.FirestormObjectException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates the codecs of declared field types.
+ * <p>
+ * Numbers are zigzag varints, except for floats and doubles which are written as their fixed-size bits. Strings,
+ * byte arrays, collections, arrays, maps and nested objects are length-prefixed, so that readers which do not know a
+ * field can skip it. Fields declared as Object, or with a type variable, use a tagged encoding which records the kind
+ * of each value.
+ * @version 1.4.0
+ */
+final class ValueCodecs {
+
+    /**
+     * The largest nesting depth of encoded values, which stops cyclic object graphs.
+     */
+    static final int MAX_DEPTH = 64;
+
+    private ValueCodecs() {
+    }
+
+    static final ValueCodec BOOLEAN = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeVarint((Boolean) value ? 1 : 0);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return reader.readVarint() != 0;
+        }
+    };
+
+    static final ValueCodec BYTE = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeSignedVarint((Byte) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return (byte) reader.readSignedVarint();
+        }
+    };
+
+    static final ValueCodec SHORT = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeSignedVarint((Short) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return (short) reader.readSignedVarint();
+        }
+    };
+
+    static final ValueCodec CHARACTER = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeVarint((Character) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return (char) reader.readVarint();
+        }
+    };
+
+    static final ValueCodec INTEGER = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeSignedVarint((Integer) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return (int) reader.readSignedVarint();
+        }
+    };
+
+    static final ValueCodec LONG = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeSignedVarint((Long) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return reader.readSignedVarint();
+        }
+    };
+
+    static final ValueCodec FLOAT = new ValueCodec(WireType.FIXED32) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeFixed32(Float.floatToIntBits((Float) value));
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return Float.intBitsToFloat(reader.readFixed32());
+        }
+    };
+
+    static final ValueCodec DOUBLE = new ValueCodec(WireType.FIXED64) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeFixed64(Double.doubleToLongBits((Double) value));
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return Double.longBitsToDouble(reader.readFixed64());
+        }
+    };
+
+    static final ValueCodec STRING = new ValueCodec(WireType.LENGTH) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeString((String) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return reader.readString();
+        }
+    };
+
+    static final ValueCodec BYTES = new ValueCodec(WireType.LENGTH) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeBytes((byte[]) value);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return reader.readBytes();
+        }
+    };
+
+    static final ValueCodec DATE = new ValueCodec(WireType.VARINT) {
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeSignedVarint(((Date) value).getTime());
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            return new Date(reader.readSignedVarint());
+        }
+    };
+
+    static final ValueCodec DYNAMIC = new DynamicCodec();
+
+    /**
+     * Retrieves the codec of a declared type.
+     * @param type The type.
+     * @return Returns a ValueCodec.
+     */
+    static ValueCodec forType(final Type type) {
+        if (type instanceof Class) {
+            return forClass((Class<?>) type);
+        }
+        if (type instanceof ParameterizedType) {
+            final ParameterizedType parameterizedType = (ParameterizedType) type;
+            final Class<?> rawType = (Class<?>) parameterizedType.getRawType();
+            final Type[] arguments = parameterizedType.getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(rawType)) {
+                return new CollectionCodec(rawType, arguments.length == 1 ? forType(arguments[0]) : DYNAMIC);
+            }
+            if (Map.class.isAssignableFrom(rawType)) {
+                return arguments.length == 2
+                        ? new MapCodec(rawType, forType(arguments[0]), forType(arguments[1]))
+                        : new MapCodec(rawType, DYNAMIC, DYNAMIC);
+            }
+            return forClass(rawType);
+        }
+        if (type instanceof GenericArrayType) {
+            final Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayCodec(rawClass(componentType), forType(componentType));
+        }
+        if (type instanceof WildcardType) {
+            return forType(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (type instanceof TypeVariable) {
+            return DYNAMIC;
+        }
+        return new UnsupportedCodec(type);
+    }
+
+    /**
+     * Retrieves the codec of a declared class.
+     * @param aClass The class.
+     * @return Returns a ValueCodec.
+     */
+    private static ValueCodec forClass(final Class<?> aClass) {
+        if (aClass == boolean.class || aClass == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (aClass == byte.class || aClass == Byte.class) {
+            return BYTE;
+        }
+        if (aClass == short.class || aClass == Short.class) {
+            return SHORT;
+        }
+        if (aClass == char.class || aClass == Character.class) {
+            return CHARACTER;
+        }
+        if (aClass == int.class || aClass == Integer.class) {
+            return INTEGER;
+        }
+        if (aClass == long.class || aClass == Long.class) {
+            return LONG;
+        }
+        if (aClass == float.class || aClass == Float.class) {
+            return FLOAT;
+        }
+        if (aClass == double.class || aClass == Double.class) {
+            return DOUBLE;
+        }
+        if (aClass == String.class) {
+            return STRING;
+        }
+        if (aClass == byte[].class) {
+            return BYTES;
+        }
+        if (aClass == Date.class) {
+            return DATE;
+        }
+        if (aClass.isEnum()) {
+            return new EnumCodec(aClass);
+        }
+        if (aClass.isArray()) {
+            return new ArrayCodec(aClass.getComponentType(), forClass(aClass.getComponentType()));
+        }
+        if (Collection.class.isAssignableFrom(aClass)) {
+            return new CollectionCodec(aClass, DYNAMIC);
+        }
+        if (Map.class.isAssignableFrom(aClass)) {
+            return new MapCodec(aClass, DYNAMIC, DYNAMIC);
+        }
+        if (aClass == Object.class || aClass == Number.class) {
+            return DYNAMIC;
+        }
+        if (aClass.isInterface() || Modifier.isAbstract(aClass.getModifiers()) || aClass.getName().startsWith("java.")) {
+            return new UnsupportedCodec(aClass);
+        }
+        return new ObjectCodec(aClass);
+    }
+
+    /**
+     * Retrieves the class of a type, as erased at runtime.
+     * @param type The type.
+     * @return Returns a class.
+     */
+    private static Class<?> rawClass(final Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    /**
+     * Checks the nesting depth of a value.
+     * @param depth The depth.
+     */
+    static void checkDepth(final int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new FirestormException("Values nested deeper than " + MAX_DEPTH + " levels cannot be encoded. Does the object graph contain a cycle?");
+        }
+    }
+
+    /**
+     * Writes an element of a collection, array or map, which may be null.
+     * @param writer The writer.
+     * @param codec The codec of the element.
+     * @param value The element.
+     * @param depth The nesting depth of the element.
+     */
+    private static void writeElement(final BinaryWriter writer, final ValueCodec codec, final Object value, final int depth) {
+        if (value == null) {
+            writer.writeVarint(0);
+        }
+        else {
+            writer.writeVarint(1);
+            codec.write(writer, value, depth);
+        }
+    }
+
+    /**
+     * Reads an element of a collection, array or map, which may be null.
+     * @param reader The reader.
+     * @param codec The codec of the element.
+     * @param depth The nesting depth of the element.
+     * @return Returns the element.
+     */
+    private static Object readElement(final BinaryReader reader, final ValueCodec codec, final int depth) {
+        return reader.readVarint() == 0 ? null : codec.read(reader, depth);
+    }
+
+    /**
+     * Reads the number of elements of a collection, array or map. Every element takes at least one byte, which
+     * bounds the count by the remaining data.
+     * @param reader The reader.
+     * @return Returns the count.
+     */
+    private static int readCount(final BinaryReader reader) {
+        final long count = reader.readVarint();
+        if (count < 0 || count > reader.remaining()) {
+            throw BinaryReader.malformed("Element count " + count + " exceeds the remaining data.");
+        }
+        return (int) count;
+    }
+
+    /**
+     * Stands for a declared type which cannot be encoded. Fields of such types may be declared, e.g. to be stored in
+     * Firestore only, but encoding fails while they are set.
+     */
+    private static final class UnsupportedCodec extends ValueCodec {
+
+        private final Type type;
+
+        UnsupportedCodec(final Type type) {
+            super(WireType.LENGTH);
+            this.type = type;
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            throw new FirestormException("Values of type " + type + " cannot be encoded.");
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            throw new FirestormException("Values of type " + type + " cannot be decoded.");
+        }
+
+    }
+
+    /**
+     * Encodes an enum constant by its name. Names which are unknown when decoding, e.g. of removed constants,
+     * decode to null.
+     */
+    private static final class EnumCodec extends ValueCodec {
+
+        private final Class<?> enumClass;
+
+        EnumCodec(final Class<?> enumClass) {
+            super(WireType.LENGTH);
+            this.enumClass = enumClass;
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            writer.writeString(((Enum<?>) value).name());
+        }
+
+        @Override
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object read(final BinaryReader reader, final int depth) {
+            final String name = reader.readString();
+            try {
+                return Enum.valueOf((Class) enumClass, name);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+    }
+
+    /**
+     * Encodes an array as its length followed by its elements.
+     */
+    private static final class ArrayCodec extends ValueCodec {
+
+        private final Class<?> componentType;
+        private final ValueCodec elementCodec;
+
+        ArrayCodec(final Class<?> componentType, final ValueCodec elementCodec) {
+            super(WireType.LENGTH);
+            this.componentType = componentType;
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            checkDepth(depth);
+            final int start = writer.startMessage();
+            final int length = Array.getLength(value);
+            writer.writeVarint(length);
+            for (int i = 0; i < length; i++) {
+                writeElement(writer, elementCodec, Array.get(value, i), depth + 1);
+            }
+            writer.endMessage(start);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            checkDepth(depth);
+            final int previousLimit = reader.startMessage();
+            final int length = readCount(reader);
+            final Object array = Array.newInstance(componentType, length);
+            for (int i = 0; i < length; i++) {
+                final Object element = readElement(reader, elementCodec, depth + 1);
+                if (element != null || !componentType.isPrimitive()) {
+                    Array.set(array, i, element);
+                }
+            }
+            reader.endMessage(previousLimit);
+            return array;
+        }
+
+    }
+
+    /**
+     * Encodes a collection as its size followed by its elements.
+     */
+    private static final class CollectionCodec extends ValueCodec {
+
+        private final Class<?> collectionClass;
+        private final ValueCodec elementCodec;
+
+        CollectionCodec(final Class<?> collectionClass, final ValueCodec elementCodec) {
+            super(WireType.LENGTH);
+            this.collectionClass = collectionClass;
+            this.elementCodec = elementCodec;
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            checkDepth(depth);
+            final Collection<?> collection = (Collection<?>) value;
+            final int start = writer.startMessage();
+            writer.writeVarint(collection.size());
+            for (Object element : collection) {
+                writeElement(writer, elementCodec, element, depth + 1);
+            }
+            writer.endMessage(start);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object read(final BinaryReader reader, final int depth) {
+            checkDepth(depth);
+            final int previousLimit = reader.startMessage();
+            final int size = readCount(reader);
+            final Collection<Object> collection = (Collection<Object>) newCollection(collectionClass, size);
+            for (int i = 0; i < size; i++) {
+                collection.add(readElement(reader, elementCodec, depth + 1));
+            }
+            reader.endMessage(previousLimit);
+            return collection;
+        }
+
+    }
+
+    /**
+     * Encodes a map as its size followed by its keys and values.
+     */
+    private static final class MapCodec extends ValueCodec {
+
+        private final Class<?> mapClass;
+        private final ValueCodec keyCodec;
+        private final ValueCodec valueCodec;
+
+        MapCodec(final Class<?> mapClass, final ValueCodec keyCodec, final ValueCodec valueCodec) {
+            super(WireType.LENGTH);
+            this.mapClass = mapClass;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            checkDepth(depth);
+            final Map<?, ?> map = (Map<?, ?>) value;
+            final int start = writer.startMessage();
+            writer.writeVarint(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeElement(writer, keyCodec, entry.getKey(), depth + 1);
+                writeElement(writer, valueCodec, entry.getValue(), depth + 1);
+            }
+            writer.endMessage(start);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Object read(final BinaryReader reader, final int depth) {
+            checkDepth(depth);
+            final int previousLimit = reader.startMessage();
+            final int size = readCount(reader);
+            final Map<Object, Object> map = (Map<Object, Object>) newMap(mapClass, size);
+            for (int i = 0; i < size; i++) {
+                final Object key = readElement(reader, keyCodec, depth + 1);
+                map.put(key, readElement(reader, valueCodec, depth + 1));
+            }
+            reader.endMessage(previousLimit);
+            return map;
+        }
+
+    }
+
+    /**
+     * Encodes a nested object as a length-prefixed message of its fields. The descriptor of the class is resolved
+     * when it is first needed, so that classes may refer to themselves.
+     */
+    private static final class ObjectCodec extends ValueCodec {
+
+        private final Class<?> objectClass;
+        private volatile ClassDescriptor descriptor;
+
+        ObjectCodec(final Class<?> objectClass) {
+            super(WireType.LENGTH);
+            this.objectClass = objectClass;
+        }
+
+        private ClassDescriptor getDescriptor() {
+            ClassDescriptor classDescriptor = descriptor;
+            if (classDescriptor == null) {
+                try {
+                    classDescriptor = ClassDescriptor.of(objectClass);
+                } catch (FirestormObjectException e) {
+                    throw new FirestormException(e);
+                }
+                descriptor = classDescriptor;
+            }
+            return classDescriptor;
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            checkDepth(depth);
+            final int start = writer.startMessage();
+            getDescriptor().write(writer, value, depth + 1);
+            writer.endMessage(start);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            checkDepth(depth);
+            final int previousLimit = reader.startMessage();
+            final Object value = getDescriptor().read(reader, depth + 1);
+            reader.endMessage(previousLimit);
+            return value;
+        }
+
+    }
+
+    /**
+     * Encodes a value of any supported type, preceded by a tag which tells its kind. Integral numbers decode as
+     * Long, floating point numbers as Double, lists as ArrayList and maps as LinkedHashMap. Nested objects are only
+     * supported if their class is annotated with @FirestormObject.
+     */
+    private static final class DynamicCodec extends ValueCodec {
+
+        private static final int NULL = 0;
+        private static final int FALSE = 1;
+        private static final int TRUE = 2;
+        private static final int INTEGRAL = 3;
+        private static final int FLOATING = 4;
+        private static final int STRING = 5;
+        private static final int BYTES = 6;
+        private static final int LIST = 7;
+        private static final int MAP = 8;
+        private static final int DATE = 9;
+        private static final int OBJECT = 10;
+
+        DynamicCodec() {
+            super(WireType.LENGTH);
+        }
+
+        @Override
+        void write(final BinaryWriter writer, final Object value, final int depth) {
+            final int start = writer.startMessage();
+            writeTagged(writer, value, depth);
+            writer.endMessage(start);
+        }
+
+        @Override
+        Object read(final BinaryReader reader, final int depth) {
+            final int previousLimit = reader.startMessage();
+            final Object value = readTagged(reader, depth);
+            reader.endMessage(previousLimit);
+            return value;
+        }
+
+        private void writeTagged(final BinaryWriter writer, final Object value, final int depth) {
+            checkDepth(depth);
+            if (value == null) {
+                writer.writeVarint(NULL);
+            }
+            else if (value instanceof Boolean) {
+                writer.writeVarint((Boolean) value ? TRUE : FALSE);
+            }
+            else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                writer.writeVarint(INTEGRAL);
+                writer.writeSignedVarint(((Number) value).longValue());
+            }
+            else if (value instanceof Double || value instanceof Float) {
+                writer.writeVarint(FLOATING);
+                writer.writeFixed64(Double.doubleToLongBits(((Number) value).doubleValue()));
+            }
+            else if (value instanceof String || value instanceof Character || value instanceof Enum) {
+                writer.writeVarint(STRING);
+                writer.writeString(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+            }
+            else if (value instanceof byte[]) {
+                writer.writeVarint(BYTES);
+                writer.writeBytes((byte[]) value);
+            }
+            else if (value instanceof Date) {
+                writer.writeVarint(DATE);
+                writer.writeSignedVarint(((Date) value).getTime());
+            }
+            else if (value instanceof Collection) {
+                final Collection<?> collection = (Collection<?>) value;
+                writer.writeVarint(LIST);
+                writer.writeVarint(collection.size());
+                for (Object element : collection) {
+                    writeTagged(writer, element, depth + 1);
+                }
+            }
+            else if (value.getClass().isArray()) {
+                final int length = Array.getLength(value);
+                writer.writeVarint(LIST);
+                writer.writeVarint(length);
+                for (int i = 0; i < length; i++) {
+                    writeTagged(writer, Array.get(value, i), depth + 1);
+                }
+            }
+            else if (value instanceof Map) {
+                final Map<?, ?> map = (Map<?, ?>) value;
+                writer.writeVarint(MAP);
+                writer.writeVarint(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeTagged(writer, entry.getKey(), depth + 1);
+                    writeTagged(writer, entry.getValue(), depth + 1);
+                }
+            }
+            else if (value.getClass().isAnnotationPresent(FirestormObject.class)) {
+                writer.writeVarint(OBJECT);
+                writer.writeString(value.getClass().getName());
+                final int start = writer.startMessage();
+                descriptorOf(value.getClass()).write(writer, value, depth + 1);
+                writer.endMessage(start);
+            }
+            else {
+                throw new FirestormException("Values of type " + value.getClass().getName() + " cannot be encoded.");
+            }
+        }
+
+        private Object readTagged(final BinaryReader reader, final int depth) {
+            checkDepth(depth);
+            final long tag = reader.readVarint();
+            switch ((int) tag) {
+                case NULL:
+                    return null;
+                case FALSE:
+                    return false;
+                case TRUE:
+                    return true;
+                case INTEGRAL:
+                    return reader.readSignedVarint();
+                case FLOATING:
+                    return Double.longBitsToDouble(reader.readFixed64());
+                case STRING:
+                    return reader.readString();
+                case BYTES:
+                    return reader.readBytes();
+                case DATE:
+                    return new Date(reader.readSignedVarint());
+                case LIST: {
+                    final int size = readCount(reader);
+                    final ArrayList<Object> list = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        list.add(readTagged(reader, depth + 1));
+                    }
+                    return list;
+                }
+                case MAP: {
+                    final int size = readCount(reader);
+                    final LinkedHashMap<Object, Object> map = new LinkedHashMap<>(capacity(size));
+                    for (int i = 0; i < size; i++) {
+                        final Object key = readTagged(reader, depth + 1);
+                        map.put(key, readTagged(reader, depth + 1));
+                    }
+                    return map;
+                }
+                case OBJECT: {
+                    final String className = reader.readString();
+                    final Class<?> objectClass;
+                    try {
+                        objectClass = Class.forName(className);
+                    } catch (ClassNotFoundException e) {
+                        throw BinaryReader.malformed("Unknown class " + className + ".");
+                    }
+                    if (!objectClass.isAnnotationPresent(FirestormObject.class)) {
+                        throw BinaryReader.malformed("The class " + className + " is not annotated with @" + FirestormObject.class.getSimpleName() + ".");
+                    }
+                    final int previousLimit = reader.startMessage();
+                    final Object value = descriptorOf(objectClass).read(reader, depth + 1);
+                    reader.endMessage(previousLimit);
+                    return value;
+                }
+                default:
+                    throw BinaryReader.malformed("Unknown value tag " + tag + ".");
+            }
+        }
+
+        private static ClassDescriptor descriptorOf(final Class<?> objectClass) {
+            try {
+                return ClassDescriptor.of(objectClass);
+            } catch (FirestormObjectException e) {
+                throw new FirestormException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Creates an empty collection for a declared collection class: the class itself if it is concrete, or a default
+     * implementation of its interface.
+     * @param collectionClass The declared class.
+     * @param size The number of elements which will be added.
+     * @return Returns a collection.
+     */
+    private static Collection<?> newCollection(final Class<?> collectionClass, final int size) {
+        if (!collectionClass.isInterface() && !Modifier.isAbstract(collectionClass.getModifiers())) {
+            return (Collection<?>) instantiate(collectionClass);
+        }
+        if (SortedSet.class.isAssignableFrom(collectionClass)) {
+            return new TreeSet<>();
+        }
+        if (Set.class.isAssignableFrom(collectionClass)) {
+            return new LinkedHashSet<>(capacity(size));
+        }
+        if (Queue.class.isAssignableFrom(collectionClass) && !List.class.isAssignableFrom(collectionClass)) {
+            return new ArrayDeque<>(Math.max(size, 1));
+        }
+        return new ArrayList<>(size);
+    }
+
+    /**
+     * Creates an empty map for a declared map class: the class itself if it is concrete, or a default implementation
+     * of its interface.
+     * @param mapClass The declared class.
+     * @param size The number of entries which will be added.
+     * @return Returns a map.
+     */
+    private static Map<?, ?> newMap(final Class<?> mapClass, final int size) {
+        if (!mapClass.isInterface() && !Modifier.isAbstract(mapClass.getModifiers())) {
+            return (Map<?, ?>) instantiate(mapClass);
+        }
+        if (SortedMap.class.isAssignableFrom(mapClass)) {
+            return new TreeMap<>();
+        }
+        if (ConcurrentMap.class.isAssignableFrom(mapClass)) {
+            return new ConcurrentHashMap<>(capacity(size));
+        }
+        return new LinkedHashMap<>(capacity(size));
+    }
+
+    /**
+     * Instantiates a concrete collection or map class with its empty constructor.
+     * @param aClass The class.
+     * @return Returns a new instance.
+     */
+    private static Object instantiate(final Class<?> aClass) {
+        try {
+            return aClass.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new FirestormException(e);
+        }
+    }
+
+    /**
+     * Retrieves the initial capacity of a hash-based collection which holds a number of elements without resizing.
+     * @param size The number of elements.
+     * @return Returns a capacity.
+     */
+    private static int capacity(final int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1);
+    }
+
+}
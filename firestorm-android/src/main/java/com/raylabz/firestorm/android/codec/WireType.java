@@ -0,0 +1,24 @@
+package com.raylabz.firestorm.android.codec;
+
+/**
+ * The wire types of encoded fields, stored in the lowest 3 bits of each field key. The wire type tells how to find
+ * the end of a value, so that fields unknown to the reading class can be skipped.
+ * @version 1.4.0
+ */
+final class WireType {
+
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH = 2;
+    static final int FIXED32 = 5;
+
+    static final int BITS = 3;
+    static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Private constructor.
+     */
+    private WireType() {
+    }
+
+}
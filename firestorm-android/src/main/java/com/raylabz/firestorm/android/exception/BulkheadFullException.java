@@ -0,0 +1,34 @@
+package com.raylabz.firestorm.android.exception;
+
+import com.raylabz.firestorm.android.OperationType;
+
+/**
+ * An exception thrown when an operation is rejected by a bulkhead because too many operations are in flight.
+ * @version 1.4.0
+ */
+public class BulkheadFullException extends FirestormException {
+
+    /**
+     * The type of the rejected operation.
+     */
+    private final OperationType type;
+
+    /**
+     * Constructs a BulkheadFullException.
+     * @param type The type of the rejected operation.
+     * @param message The exception's message.
+     */
+    public BulkheadFullException(final OperationType type, final String message) {
+        super(message);
+        this.type = type;
+    }
+
+    /**
+     * Retrieves the type of the rejected operation.
+     * @return Returns an OperationType.
+     */
+    public OperationType getType() {
+        return type;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.raylabz.firestorm.android.exception;
+
+import com.raylabz.firestorm.android.OperationType;
+
+/**
+ * An exception thrown when an operation does not complete before its deadline.
+ * @version 1.4.0
+ */
+public class DeadlineExceededException extends FirestormException {
+
+    /**
+     * The type of the operation.
+     */
+    private final OperationType type;
+
+    /**
+     * The deadline of the operation.
+     */
+    private final long deadlineMillis;
+
+    /**
+     * Constructs a DeadlineExceededException.
+     * @param type The type of the operation.
+     * @param deadlineMillis The deadline of the operation, in milliseconds.
+     */
+    public DeadlineExceededException(final OperationType type, final long deadlineMillis) {
+        super("The " + type + " operation did not complete within " + deadlineMillis + " ms.");
+        this.type = type;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Retrieves the type of the operation.
+     * @return Returns an OperationType.
+     */
+    public OperationType getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the deadline of the operation.
+     * @return Returns a time in milliseconds.
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+}
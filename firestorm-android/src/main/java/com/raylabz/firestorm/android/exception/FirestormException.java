@@ -9,6 +9,7 @@ public class FirestormException extends RuntimeException {
 
     public FirestormException(final Exception e) {
         super(e.getMessage());
+        initCause(e);
     }
 
     public FirestormException(String message) {
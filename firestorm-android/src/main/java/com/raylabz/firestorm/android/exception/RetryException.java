@@ -0,0 +1,43 @@
+package com.raylabz.firestorm.android.exception;
+
+/**
+ * An exception thrown when an operation still fails after being retried.
+ * @version 1.4.0
+ */
+public class RetryException extends FirestormException {
+
+    /**
+     * The number of attempts made.
+     */
+    private final int attempts;
+
+    /**
+     * Constructs a RetryException.
+     * @param e The exception of the last attempt.
+     * @param attempts The number of attempts made.
+     */
+    public RetryException(final Exception e, final int attempts) {
+        super("Failed after " + attempts + " attempt(s): " + e.getMessage());
+        initCause(e);
+        this.attempts = attempts;
+    }
+
+    /**
+     * Constructs a RetryException.
+     * @param message The exception's message.
+     * @param attempts The number of attempts made.
+     */
+    public RetryException(final String message, final int attempts) {
+        super(message);
+        this.attempts = attempts;
+    }
+
+    /**
+     * Retrieves the number of attempts made.
+     * @return Returns an integer.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+}
@@ -0,0 +1,451 @@
+package com.raylabz.firestorm.android.geo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Encodes coordinates as geohashes, and covers circles with ranges of geohashes which can be queried.
+ * <p>
+ * A geohash of <i>n</i> characters names a cell of a grid which divides longitudes in 2<sup>ceil(5n/2)</sup> and
+ * latitudes in 2<sup>floor(5n/2)</sup>, by interleaving the bits of the cell's longitude and latitude indexes. The
+ * characters of the base-32 alphabet are in ascending order, so a cell contains exactly the longer geohashes
+ * between its own geohash and the geohash of the next cell, and neighbouring cells of the same parent form
+ * contiguous ranges.
+ * @version 1.4.0
+ */
+public final class Geohash {
+
+    /**
+     * The maximum number of characters of a geohash, which locates a point to a few centimetres.
+     */
+    public static final int MAX_PRECISION = 12;
+
+    /**
+     * The mean radius of the Earth, in metres.
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    private static final char[] ALPHABET = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /**
+     * A string ordered after all geohashes, ending the range of the last cell.
+     */
+    private static final String END = "~";
+
+    /**
+     * The maximum number of cells examined to cover a circle at one precision.
+     */
+    private static final int MAX_CELLS = 1024;
+
+    private Geohash() {
+    }
+
+    /**
+     * Encodes coordinates as a geohash.
+     * @param latitude The latitude, in degrees.
+     * @param longitude The longitude, in degrees.
+     * @param precision The number of characters, between 1 and {@value #MAX_PRECISION}.
+     * @return Returns a geohash.
+     * @throws IllegalArgumentException Thrown when the coordinates or precision are out of range.
+     */
+    public static String encode(final double latitude, final double longitude, final int precision) {
+        checkCoordinates(latitude, longitude);
+        checkPrecision(precision);
+        final int latitudeBits = 5 * precision / 2;
+        final int longitudeBits = 5 * precision - latitudeBits;
+        return cell(index(latitude + 90, 180, latitudeBits), index(longitude + 180, 360, longitudeBits), precision);
+    }
+
+    /**
+     * Computes the great-circle distance between two points.
+     * @param latitude1 The latitude of the first point, in degrees.
+     * @param longitude1 The longitude of the first point, in degrees.
+     * @param latitude2 The latitude of the second point, in degrees.
+     * @param longitude2 The longitude of the second point, in degrees.
+     * @return Returns the distance in metres.
+     */
+    public static double distance(final double latitude1, final double longitude1, final double latitude2, final double longitude2) {
+        final double phi1 = Math.toRadians(latitude1);
+        final double phi2 = Math.toRadians(latitude2);
+        final double sinLatitude = Math.sin((phi2 - phi1) / 2);
+        final double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        final double a = sinLatitude * sinLatitude + Math.cos(phi1) * Math.cos(phi2) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Covers a circle with ranges of geohashes, reading as few points outside of the circle as possible with at most
+     * the given number of ranges.
+     * <p>
+     * The circle is first covered with the cells of the finest grid whose cells meeting the circle merge into few
+     * enough ranges. The cells are then refined, largest first: a cell is replaced by those of its 32 sub-cells which
+     * meet the circle when the resulting ranges remain few enough, so that cells along the edge of the circle shrink.
+     * @param latitude The latitude of the centre, in degrees.
+     * @param longitude The longitude of the centre, in degrees.
+     * @param radius The radius, in metres.
+     * @param precision The precision of the geohashes which will be queried, between 1 and {@value #MAX_PRECISION}.
+     * @param maxRanges The maximum number of ranges.
+     * @return Returns a list of disjoint ranges, in ascending order.
+     * @throws IllegalArgumentException Thrown when an argument is out of range.
+     */
+    public static List<Range> cover(final double latitude, final double longitude, final double radius, final int precision, final int maxRanges) {
+        checkCoordinates(latitude, longitude);
+        checkPrecision(precision);
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("The radius must be positive.");
+        }
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("At least one range must be allowed.");
+        }
+        final double angle = radius / EARTH_RADIUS;
+        final double latitudeDelta = Math.toDegrees(angle);
+        final double minLatitude = Math.max(-90, latitude - latitudeDelta);
+        final double maxLatitude = Math.min(90, latitude + latitudeDelta);
+        final double sinRatio = Math.sin(Math.min(angle, Math.PI / 2)) / Math.cos(Math.toRadians(latitude));
+        final boolean allLongitudes = latitude - latitudeDelta <= -90 || latitude + latitudeDelta >= 90 || angle >= Math.PI / 2 || sinRatio >= 1;
+        final double longitudeDelta = allLongitudes ? 180 : Math.toDegrees(Math.asin(sinRatio));
+
+        TreeSet<String> cells = null;
+        for (int length = 1; length <= precision; length++) {
+            final int latitudeBits = 5 * length / 2;
+            final int longitudeBits = 5 * length - latitudeBits;
+            final long longitudeCells = 1L << longitudeBits;
+            final long firstLatitude = index(minLatitude + 90, 180, latitudeBits);
+            final long lastLatitude = index(maxLatitude + 90, 180, latitudeBits);
+            final long firstLongitude;
+            final long lastLongitude;
+            if (allLongitudes) {
+                firstLongitude = 0;
+                lastLongitude = longitudeCells - 1;
+            }
+            else {
+                final double cellWidth = 360.0 / longitudeCells;
+                firstLongitude = (long) Math.floor((longitude - longitudeDelta + 180) / cellWidth);
+                lastLongitude = Math.min(firstLongitude + longitudeCells - 1, (long) Math.floor((longitude + longitudeDelta + 180) / cellWidth));
+            }
+            if ((lastLatitude - firstLatitude + 1) * (lastLongitude - firstLongitude + 1) > MAX_CELLS) {
+                break;
+            }
+
+            final TreeSet<String> grid = new TreeSet<>();
+            for (long y = firstLatitude; y <= lastLatitude; y++) {
+                for (long x = firstLongitude; x <= lastLongitude; x++) {
+                    final long wrapped = ((x % longitudeCells) + longitudeCells) % longitudeCells;
+                    if (distanceToCell(latitude, longitude, y, wrapped, latitudeBits, longitudeBits) <= radius) {
+                        grid.add(cell(y, wrapped, length));
+                    }
+                }
+            }
+            if (cells != null && grid.size() - joins(grid) > maxRanges) {
+                break;
+            }
+            cells = grid;
+        }
+
+        // Refines the cells, largest first, while the ranges remain few enough.
+        int ranges = cells.size() - joins(cells);
+        final ArrayDeque<String> candidates = new ArrayDeque<>(cells);
+        while (!candidates.isEmpty() && cells.size() < MAX_CELLS) {
+            final String parent = candidates.poll();
+            if (parent.length() >= precision) {
+                continue;
+            }
+            final ArrayList<String> children = new ArrayList<>(ALPHABET.length);
+            final long[] indexes = new long[2];
+            for (char character : ALPHABET) {
+                final String child = parent + character;
+                decode(child, indexes);
+                final int latitudeBits = 5 * child.length() / 2;
+                if (distanceToCell(latitude, longitude, indexes[0], indexes[1], latitudeBits, 5 * child.length() - latitudeBits) <= radius) {
+                    children.add(child);
+                }
+            }
+            if (children.size() == ALPHABET.length) {
+                continue;
+            }
+            final String previous = cells.lower(parent);
+            final String following = cells.higher(parent);
+            final int oldJoins = (previous != null && adjacent(previous, parent) ? 1 : 0) + (following != null && adjacent(parent, following) ? 1 : 0);
+            int newJoins = (previous != null && adjacent(previous, children.get(0)) ? 1 : 0)
+                    + (following != null && adjacent(children.get(children.size() - 1), following) ? 1 : 0);
+            for (int i = 1; i < children.size(); i++) {
+                newJoins += adjacent(children.get(i - 1), children.get(i)) ? 1 : 0;
+            }
+            final int refinedRanges = ranges - 1 + children.size() - newJoins + oldJoins;
+            if (refinedRanges <= maxRanges) {
+                cells.remove(parent);
+                cells.addAll(children);
+                candidates.addAll(children);
+                ranges = refinedRanges;
+            }
+        }
+        return merge(cells, maxRanges);
+    }
+
+    /**
+     * Merges cells into ranges, joining the ranges with the smallest gaps between them while there are too many.
+     * @param cells The geohashes of the cells, none of which contains another, in ascending order.
+     * @param maxRanges The maximum number of ranges.
+     * @return Returns a list of disjoint ranges, in ascending order.
+     */
+    private static List<Range> merge(final TreeSet<String> cells, final int maxRanges) {
+        final ArrayList<Range> ranges = new ArrayList<>();
+        String start = null;
+        String last = null;
+        for (String cell : cells) {
+            if (start != null && !adjacent(last, cell)) {
+                ranges.add(new Range(start, next(last)));
+                start = null;
+            }
+            if (start == null) {
+                start = cell;
+            }
+            last = cell;
+        }
+        if (start != null) {
+            ranges.add(new Range(start, next(last)));
+        }
+        while (ranges.size() > maxRanges) {
+            int smallest = 0;
+            long smallestGap = Long.MAX_VALUE;
+            for (int i = 1; i < ranges.size(); i++) {
+                final long gap = position(ranges.get(i).start) - position(ranges.get(i - 1).end);
+                if (gap < smallestGap) {
+                    smallest = i;
+                    smallestGap = gap;
+                }
+            }
+            ranges.set(smallest - 1, new Range(ranges.get(smallest - 1).start, ranges.remove(smallest).end));
+        }
+        return ranges;
+    }
+
+    /**
+     * Retrieves the position of a geohash among the geohashes of {@value #MAX_PRECISION} characters.
+     * @param geohash The geohash, or the string ordered after all geohashes.
+     * @return Returns the number of geohashes of {@value #MAX_PRECISION} characters ordered before it.
+     */
+    private static long position(final String geohash) {
+        if (END.equals(geohash)) {
+            return 1L << (5 * MAX_PRECISION);
+        }
+        long position = 0;
+        for (int i = 0; i < MAX_PRECISION; i++) {
+            position = (position << 5) | (i < geohash.length() ? valueOf(geohash.charAt(i)) : 0);
+        }
+        return position;
+    }
+
+    /**
+     * Counts the cells which directly follow the previous cell, and so extend its range.
+     * @param cells The geohashes of the cells, none of which contains another, in ascending order.
+     * @return Returns the number of adjacent pairs of cells.
+     */
+    private static int joins(final TreeSet<String> cells) {
+        int joins = 0;
+        String last = null;
+        for (String cell : cells) {
+            if (last != null && adjacent(last, cell)) {
+                joins++;
+            }
+            last = cell;
+        }
+        return joins;
+    }
+
+    /**
+     * Checks if a cell directly follows another, with no geohash between them: its geohash is the geohash of the next
+     * cell, or the first geohash within it.
+     * @param cell The geohash of the first cell.
+     * @param following The geohash of the following cell.
+     * @return Returns true if the cells are adjacent, false otherwise.
+     */
+    private static boolean adjacent(final String cell, final String following) {
+        final String next = next(cell);
+        if (!following.startsWith(next)) {
+            return false;
+        }
+        for (int i = next.length(); i < following.length(); i++) {
+            if (following.charAt(i) != ALPHABET[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the indexes of the cell of a geohash.
+     * @param geohash The geohash.
+     * @param indexes An array receiving the latitude index and the longitude index.
+     */
+    private static void decode(final String geohash, final long[] indexes) {
+        long y = 0;
+        long x = 0;
+        for (int i = 0; i < geohash.length(); i++) {
+            final int value = valueOf(geohash.charAt(i));
+            for (int j = 4; j >= 0; j--) {
+                final long bit = (value >>> j) & 1;
+                if ((i * 5 + 4 - j) % 2 == 0) {
+                    x = (x << 1) | bit;
+                }
+                else {
+                    y = (y << 1) | bit;
+                }
+            }
+        }
+        indexes[0] = y;
+        indexes[1] = x;
+    }
+
+    /**
+     * Retrieves the geohash of the cell following a cell, in the order of geohashes.
+     * @param cell The geohash of the cell.
+     * @return Returns the geohash of the next cell, which is shorter if the cell is the last of its parent, or a
+     * string ordered after all geohashes if the cell is the last one.
+     */
+    private static String next(final String cell) {
+        for (int i = cell.length() - 1; i >= 0; i--) {
+            final int value = valueOf(cell.charAt(i));
+            if (value < ALPHABET.length - 1) {
+                return cell.substring(0, i) + ALPHABET[value + 1];
+            }
+        }
+        return END;
+    }
+
+    /**
+     * Computes the distance from a point to the nearest point of a cell.
+     * @param latitude The latitude of the point, in degrees.
+     * @param longitude The longitude of the point, in degrees.
+     * @param y The latitude index of the cell.
+     * @param x The longitude index of the cell.
+     * @param latitudeBits The number of bits of latitude indexes.
+     * @param longitudeBits The number of bits of longitude indexes.
+     * @return Returns the distance in metres, or 0 if the point is within the cell.
+     */
+    private static double distanceToCell(final double latitude, final double longitude, final long y, final long x,
+                                         final int latitudeBits, final int longitudeBits) {
+        final double cellHeight = 180.0 / (1L << latitudeBits);
+        final double cellWidth = 360.0 / (1L << longitudeBits);
+        final double south = -90 + y * cellHeight;
+        final double north = south + cellHeight;
+        final double west = -180 + x * cellWidth;
+
+        // The longitude difference to the nearest meridian of the cell, if the point is not between its meridians.
+        final double offset = (((longitude - west) % 360) + 360) % 360;
+        if (offset <= cellWidth) {
+            return distance(latitude, longitude, Math.max(south, Math.min(north, latitude)), longitude);
+        }
+        final double longitudeDelta = Math.min(offset - cellWidth, 360 - offset);
+        final double meridian = offset - cellWidth < 360 - offset ? west + cellWidth : west;
+
+        // Along a meridian, the nearest point to the point is at this latitude, and distance grows away from it.
+        final double nearest = Math.toDegrees(Math.atan2(Math.tan(Math.toRadians(latitude)), Math.cos(Math.toRadians(longitudeDelta))));
+        return distance(latitude, longitude, Math.max(south, Math.min(north, Math.max(-90, Math.min(90, nearest)))), meridian);
+    }
+
+    /**
+     * Retrieves the index of the cell containing a value.
+     * @param value The value, from 0 to the span.
+     * @param span The span of all cells.
+     * @param bits The number of bits of the index.
+     * @return Returns the index.
+     */
+    private static long index(final double value, final double span, final int bits) {
+        final long cells = 1L << bits;
+        return Math.max(0, Math.min(cells - 1, (long) Math.floor(value / span * cells)));
+    }
+
+    /**
+     * Encodes the indexes of a cell as a geohash, interleaving their bits from the first longitude bit.
+     * @param y The latitude index.
+     * @param x The longitude index.
+     * @param length The number of characters.
+     * @return Returns a geohash.
+     */
+    private static String cell(final long y, final long x, final int length) {
+        final int bits = 5 * length;
+        int latitudeBit = bits / 2;
+        int longitudeBit = bits - latitudeBit;
+        final char[] characters = new char[length];
+        for (int i = 0; i < length; i++) {
+            int value = 0;
+            for (int j = 0; j < 5; j++) {
+                final boolean longitudeTurn = (i * 5 + j) % 2 == 0;
+                final long bit = longitudeTurn ? (x >>> --longitudeBit) & 1 : (y >>> --latitudeBit) & 1;
+                value = (value << 1) | (int) bit;
+            }
+            characters[i] = ALPHABET[value];
+        }
+        return new String(characters);
+    }
+
+    private static int valueOf(final char character) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == character) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("'" + character + "' is not a geohash character.");
+    }
+
+    private static void checkCoordinates(final double latitude, final double longitude) {
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Invalid coordinates: " + latitude + ", " + longitude + ".");
+        }
+    }
+
+    private static void checkPrecision(final int precision) {
+        if (precision < 1 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("The precision of a geohash must be between 1 and " + MAX_PRECISION + ", but " + precision + " found.");
+        }
+    }
+
+    /**
+     * A range of geohashes, from a start geohash (inclusive) to an end geohash (exclusive).
+     */
+    public static final class Range {
+
+        private final String start;
+        private final String end;
+
+        Range(final String start, final String end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Retrieves the first geohash of the range.
+         * @return Returns a string.
+         */
+        public String getStart() {
+            return start;
+        }
+
+        /**
+         * Retrieves the string following the last geohash of the range.
+         * @return Returns a string.
+         */
+        public String getEnd() {
+            return end;
+        }
+
+        /**
+         * Checks if a geohash is in the range.
+         * @param geohash The geohash.
+         * @return Returns true if the geohash is in the range, false otherwise.
+         */
+        public boolean contains(final String geohash) {
+            return geohash.compareTo(start) >= 0 && geohash.compareTo(end) < 0;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.raylabz.firestorm.android.index;
+
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads a field of the objects of a class, including fields declared by its superclasses.
+ * @version 1.4.0
+ */
+final class FieldAccessor {
+
+    private final Field field;
+
+    /**
+     * Constructs an accessor.
+     * @param field The field.
+     */
+    private FieldAccessor(final Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Creates an accessor for a field of a class.
+     * @param objectClass The class.
+     * @param fieldName The name of the field.
+     * @return Returns a FieldAccessor.
+     * @throws IllegalArgumentException Thrown when the class has no instance field with this name.
+     */
+    static FieldAccessor of(final Class<?> objectClass, final String fieldName) {
+        for (Class<?> aClass = objectClass; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()) {
+            try {
+                final Field field = aClass.getDeclaredField(fieldName);
+                if (Modifier.isStatic(field.getModifiers())) {
+                    break;
+                }
+                field.setAccessible(true);
+                return new FieldAccessor(field);
+            } catch (NoSuchFieldException ignored) {}
+        }
+        throw new IllegalArgumentException("The class '" + objectClass.getSimpleName() + "' has no field named '" + fieldName + "'.");
+    }
+
+    /**
+     * Retrieves the name of the field.
+     * @return Returns a string.
+     */
+    String getName() {
+        return field.getName();
+    }
+
+    /**
+     * Retrieves the declared type of the field.
+     * @return Returns a class.
+     */
+    Class<?> getType() {
+        return field.getType();
+    }
+
+    /**
+     * Reads the field of an object.
+     * @param object The object.
+     * @return Returns the value of the field.
+     */
+    Object get(final Object object) {
+        try {
+            return field.get(object);
+        } catch (IllegalAccessException e) {
+            throw new FirestormException(e);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.raylabz.firestorm.android.index;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Indexes objects by the value of a field, for equality lookups. If the field is a collection or an array, each
+ * object is indexed by each of its elements instead, for <i>array-contains</i> lookups.
+ * @param <T> The type of the indexed objects.
+ * @version 1.4.0
+ */
+final class HashIndex<T> extends LocalIndex<T> {
+
+    private final FieldAccessor accessor;
+    private final boolean multiKey;
+    private final HashMap<Object, HashSet<String>> idsByKey = new HashMap<>();
+
+    /**
+     * The key of each indexed object, or an array of its keys if the index is multi-key.
+     */
+    private final HashMap<String, Object> keysById = new HashMap<>();
+
+    /**
+     * Constructs a hash index.
+     * @param accessor The accessor of the indexed field.
+     */
+    HashIndex(final FieldAccessor accessor) {
+        this.accessor = accessor;
+        this.multiKey = Collection.class.isAssignableFrom(accessor.getType()) || accessor.getType().isArray();
+    }
+
+    /**
+     * Checks if the objects are indexed by the elements of the field rather than by its value.
+     * @return Returns true if the index is multi-key, false otherwise.
+     */
+    boolean isMultiKey() {
+        return multiKey;
+    }
+
+    /**
+     * Retrieves the IDs of the objects indexed under a key.
+     * @param key The normalized key.
+     * @return Returns a set of IDs, which must not be modified.
+     */
+    Set<String> get(final Object key) {
+        final HashSet<String> ids = idsByKey.get(key);
+        return ids != null ? ids : Collections.<String>emptySet();
+    }
+
+    @Override
+    void add(final String id, final T object) {
+        final Object value = accessor.get(object);
+        if (!multiKey) {
+            final Object key = IndexKeys.normalize(value);
+            keysById.put(id, key);
+            addKey(key, id);
+        }
+        else if (value != null) {
+            final HashSet<Object> keys = new HashSet<>();
+            if (value instanceof Collection) {
+                for (Object element : (Collection<?>) value) {
+                    keys.add(IndexKeys.normalize(element));
+                }
+            }
+            else {
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    keys.add(IndexKeys.normalize(Array.get(value, i)));
+                }
+            }
+            keysById.put(id, keys.toArray());
+            for (Object key : keys) {
+                addKey(key, id);
+            }
+        }
+    }
+
+    @Override
+    void remove(final String id) {
+        if (!keysById.containsKey(id)) {
+            return;
+        }
+        final Object key = keysById.remove(id);
+        if (multiKey) {
+            for (Object element : (Object[]) key) {
+                removeKey(element, id);
+            }
+        }
+        else {
+            removeKey(key, id);
+        }
+    }
+
+    @Override
+    void clear() {
+        idsByKey.clear();
+        keysById.clear();
+    }
+
+    private void addKey(final Object key, final String id) {
+        HashSet<String> ids = idsByKey.get(key);
+        if (ids == null) {
+            ids = new HashSet<>();
+            idsByKey.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private void removeKey(final Object key, final String id) {
+        final HashSet<String> ids = idsByKey.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            idsByKey.remove(key);
+        }
+    }
+
+}
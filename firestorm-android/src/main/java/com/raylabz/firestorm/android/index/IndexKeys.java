@@ -0,0 +1,158 @@
+package com.raylabz.firestorm.android.index;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+
+/**
+ * Normalizes and orders the field values held by local indexes.
+ * <p>
+ * Values are ordered by type first, as in Firestore: null, booleans, numbers, dates, strings, then any other values.
+ * Integral numbers are keyed as Longs and whole floating-point numbers are keyed as the equal Long, so that
+ * <i>1</i> and <i>1.0</i> are the same key.
+ * @version 1.4.0
+ */
+final class IndexKeys {
+
+    private static final int NULL_TYPE = 0;
+    private static final int BOOLEAN_TYPE = 1;
+    private static final int NUMBER_TYPE = 2;
+    private static final int DATE_TYPE = 3;
+    private static final int STRING_TYPE = 4;
+    private static final int OTHER_TYPE = 5;
+
+    /**
+     * Orders normalized values.
+     */
+    static final Comparator<Object> COMPARATOR = new Comparator<Object>() {
+        @Override
+        public int compare(final Object a, final Object b) {
+            return IndexKeys.compare(a, b);
+        }
+    };
+
+    private IndexKeys() {
+    }
+
+    /**
+     * Normalizes a field value into an index key.
+     * @param value The value.
+     * @return Returns the key.
+     */
+    static Object normalize(final Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            final double number = ((Number) value).doubleValue();
+            final long integral = (long) number;
+            return integral == number && integral != Long.MAX_VALUE && integral != Long.MIN_VALUE ? (Object) integral : (Object) number;
+        }
+        if (value instanceof Number) {
+            return normalize(((Number) value).doubleValue());
+        }
+        if (value instanceof Character) {
+            return value.toString();
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        return value;
+    }
+
+    /**
+     * Checks if two values are of the same type, and can therefore be compared by range.
+     * @param a The first normalized value.
+     * @param b The second normalized value.
+     * @return Returns true if the values are comparable, false otherwise.
+     */
+    static boolean comparable(final Object a, final Object b) {
+        final int type = typeOf(a);
+        return type == typeOf(b) && (type != OTHER_TYPE || a.getClass() == b.getClass());
+    }
+
+    /**
+     * Compares two normalized values.
+     * @param a The first value.
+     * @param b The second value.
+     * @return Returns a negative integer, zero or a positive integer as the first value is less than, equal to or greater than the second.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(final Object a, final Object b) {
+        final int typeA = typeOf(a);
+        final int typeB = typeOf(b);
+        if (typeA != typeB) {
+            return Integer.compare(typeA, typeB);
+        }
+        switch (typeA) {
+            case NULL_TYPE:
+                return 0;
+            case BOOLEAN_TYPE:
+                return Boolean.compare((Boolean) a, (Boolean) b);
+            case NUMBER_TYPE:
+                if (a instanceof Long && b instanceof Long) {
+                    return Long.compare((Long) a, (Long) b);
+                }
+                return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+            case DATE_TYPE:
+                return ((Date) a).compareTo((Date) b);
+            case STRING_TYPE:
+                return ((String) a).compareTo((String) b);
+            default:
+                if (a.getClass() == b.getClass() && a instanceof Comparable) {
+                    return ((Comparable) a).compareTo(b);
+                }
+                final int result = a.getClass().getName().compareTo(b.getClass().getName());
+                return result != 0 ? result : String.valueOf(a).compareTo(String.valueOf(b));
+        }
+    }
+
+    /**
+     * Checks if a field value contains an element, when the value is a collection or an array.
+     * @param value The field value.
+     * @param key The normalized element.
+     * @return Returns true if the value contains the element, false otherwise.
+     */
+    static boolean contains(final Object value, final Object key) {
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (compare(normalize(element), key) == 0) {
+                    return true;
+                }
+            }
+        }
+        else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                if (compare(normalize(element), key) == 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the type order of a normalized value.
+     * @param value The value.
+     * @return Returns an integer; values of lower type order are ordered first.
+     */
+    private static int typeOf(final Object value) {
+        if (value == null) {
+            return NULL_TYPE;
+        }
+        if (value instanceof Boolean) {
+            return BOOLEAN_TYPE;
+        }
+        if (value instanceof Number) {
+            return NUMBER_TYPE;
+        }
+        if (value instanceof Date) {
+            return DATE_TYPE;
+        }
+        if (value instanceof String) {
+            return STRING_TYPE;
+        }
+        return OTHER_TYPE;
+    }
+
+}
@@ -0,0 +1,370 @@
+package com.raylabz.firestorm.android.index;
+
+import com.raylabz.firestorm.android.ObjectChange;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds a local copy of a collection of objects, with secondary indexes on chosen fields so that it can be filtered
+ * and ordered without a round trip to Firestore. Hash indexes answer equality, IN and <i>array-contains</i> conditions,
+ * and sorted indexes answer range conditions and ordering. A text index answers full-text searches over the
+ * {@link com.raylabz.firestorm.android.annotation.Searchable} fields of the class.
+ * <p>
+ * The collection is typically kept up to date by applying the changes delivered to a {@link com.raylabz.firestorm.android.ClassListener}
+ * or {@link com.raylabz.firestorm.android.FilterableListener}:
+ * <pre>
+ * final IndexedCollection&lt;Person&gt; people = new IndexedCollection.Builder&lt;&gt;(Person.class)
+ *         .addHashIndex("city")
+ *         .addSortedIndex("age")
+ *         .build();
+ * // In onSuccess(List&lt;ObjectChange&lt;Person&gt;&gt; changes):
+ * people.apply(changes);
+ * // Anywhere:
+ * List&lt;Person&gt; adults = people.query().whereEqualTo("city", "Nicosia").whereGreaterThanOrEqualTo("age", 18).orderBy("age").get();
+ * </pre>
+ * Indexed collections are thread-safe: queries may run concurrently with each other, and block while changes are applied.
+ * @param <T> The type of the objects.
+ * @version 1.4.0
+ */
+public class IndexedCollection<T> {
+
+    private final Class<T> objectClass;
+    private final FieldAccessor idAccessor;
+    private final HashMap<String, T> objects = new LinkedHashMap<>();
+    private final List<LocalIndex<T>> indexes;
+    private final HashMap<String, HashIndex<T>> hashIndexes;
+    private final HashMap<String, SortedIndex<T>> sortedIndexes;
+    private final TextIndex<T> textIndex;
+    private final ConcurrentHashMap<String, FieldAccessor> accessors = new ConcurrentHashMap<>();
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructs an indexed collection from a builder.
+     * @param builder The builder.
+     */
+    private IndexedCollection(final Builder<T> builder) {
+        this.objectClass = builder.objectClass;
+        this.idAccessor = FieldAccessor.of(objectClass, "id");
+        this.hashIndexes = new HashMap<>();
+        for (String field : builder.hashFields) {
+            hashIndexes.put(field, new HashIndex<T>(accessor(field)));
+        }
+        this.sortedIndexes = new HashMap<>();
+        for (String field : builder.sortedFields) {
+            sortedIndexes.put(field, new SortedIndex<T>(accessor(field)));
+        }
+        this.textIndex = builder.textIndex ? TextIndex.of(objectClass) : null;
+        final ArrayList<LocalIndex<T>> indexList = new ArrayList<>();
+        indexList.addAll(hashIndexes.values());
+        indexList.addAll(sortedIndexes.values());
+        if (textIndex != null) {
+            indexList.add(textIndex);
+        }
+        this.indexes = Collections.unmodifiableList(indexList);
+    }
+
+    /**
+     * Retrieves the class of the objects.
+     * @return Returns a class.
+     */
+    public Class<T> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Applies the changes delivered by a listener: added and modified objects are stored and re-indexed, and removed
+     * objects are dropped.
+     * @param changes The changes.
+     */
+    public void apply(final List<ObjectChange<T>> changes) {
+        lock.writeLock().lock();
+        try {
+            for (ObjectChange<T> change : changes) {
+                if (change.getType() == ObjectChange.Type.REMOVED) {
+                    removeLocked(idOf(change.getObject()));
+                }
+                else {
+                    putLocked(change.getObject());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores an object, replacing any object with the same ID.
+     * @param object The object.
+     */
+    public void put(final T object) {
+        lock.writeLock().lock();
+        try {
+            putLocked(object);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stores objects, replacing any objects with the same IDs.
+     * @param objects The objects.
+     */
+    public void putAll(final Collection<? extends T> objects) {
+        lock.writeLock().lock();
+        try {
+            for (T object : objects) {
+                putLocked(object);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes an object.
+     * @param id The ID of the object.
+     * @return Returns the removed object, or null if there was no object with this ID.
+     */
+    public T remove(final String id) {
+        lock.writeLock().lock();
+        try {
+            return removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all objects.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            objects.clear();
+            for (LocalIndex<T> index : indexes) {
+                index.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves an object by its ID.
+     * @param id The ID of the object.
+     * @return Returns the object, or null if there is no object with this ID.
+     */
+    public T get(final String id) {
+        lock.readLock().lock();
+        try {
+            return objects.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of objects.
+     * @return Returns an integer.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return objects.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a query over the objects of the collection.
+     * @return Returns an IndexedQuery.
+     */
+    public IndexedQuery<T> query() {
+        return new IndexedQuery<>(this);
+    }
+
+    /**
+     * Searches the {@link com.raylabz.firestorm.android.annotation.Searchable} fields of the objects for text, as it
+     * is typed: the objects must contain every word of the text, and the last word may be incomplete.
+     * @param text The text to search for.
+     * @param limit The maximum number of results, or 0 for all results.
+     * @return Returns a list of objects, ranked by relevance.
+     * @throws IllegalStateException Thrown when the collection was built without a text index.
+     */
+    public List<T> search(final String text, final int limit) {
+        if (textIndex == null) {
+            throw new IllegalStateException("The collection was built without a text index.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit of a search must not be negative.");
+        }
+        lock.readLock().lock();
+        try {
+            final List<String> ids = textIndex.search(text, limit);
+            final ArrayList<T> results = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                results.add(objects.get(id));
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the map of objects by ID. Must be called while holding the lock.
+     * @return Returns a map.
+     */
+    HashMap<String, T> objects() {
+        return objects;
+    }
+
+    /**
+     * Retrieves the hash index on a field.
+     * @param field The field.
+     * @return Returns a HashIndex, or null if the field has none.
+     */
+    HashIndex<T> getHashIndex(final String field) {
+        return hashIndexes.get(field);
+    }
+
+    /**
+     * Retrieves the sorted index on a field.
+     * @param field The field.
+     * @return Returns a SortedIndex, or null if the field has none.
+     */
+    SortedIndex<T> getSortedIndex(final String field) {
+        return sortedIndexes.get(field);
+    }
+
+    /**
+     * Retrieves the accessor of a field of the objects.
+     * @param field The field.
+     * @return Returns a FieldAccessor.
+     * @throws IllegalArgumentException Thrown when the class of the objects has no such field.
+     */
+    FieldAccessor accessor(final String field) {
+        FieldAccessor accessor = accessors.get(field);
+        if (accessor == null) {
+            accessor = FieldAccessor.of(objectClass, field);
+            accessors.put(field, accessor);
+        }
+        return accessor;
+    }
+
+    /**
+     * Retrieves the ID of an object.
+     * @param object The object.
+     * @return Returns the ID.
+     * @throws IllegalArgumentException Thrown when the object has no ID.
+     */
+    String idOf(final Object object) {
+        final Object id = idAccessor.get(object);
+        if (id == null) {
+            throw new IllegalArgumentException("Objects stored in an indexed collection must have an ID.");
+        }
+        return id.toString();
+    }
+
+    private void putLocked(final T object) {
+        final String id = idOf(object);
+        if (objects.put(id, object) != null) {
+            for (LocalIndex<T> index : indexes) {
+                index.remove(id);
+            }
+        }
+        for (LocalIndex<T> index : indexes) {
+            index.add(id, object);
+        }
+    }
+
+    private T removeLocked(final String id) {
+        final T removed = objects.remove(id);
+        if (removed != null) {
+            for (LocalIndex<T> index : indexes) {
+                index.remove(id);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Builds an IndexedCollection.
+     * @param <T> The type of the objects.
+     */
+    public static class Builder<T> {
+
+        private final Class<T> objectClass;
+        private final LinkedHashSet<String> hashFields = new LinkedHashSet<>();
+        private final LinkedHashSet<String> sortedFields = new LinkedHashSet<>();
+        private boolean textIndex;
+
+        /**
+         * Instantiates a builder.
+         * @param objectClass The class of the objects.
+         */
+        public Builder(final Class<T> objectClass) {
+            this.objectClass = objectClass;
+        }
+
+        /**
+         * Adds a hash index on a field, answering equality and IN conditions, or <i>array-contains</i> conditions
+         * when the field is a collection or an array.
+         * @param field The name of the field.
+         * @return Returns the builder.
+         * @throws IllegalArgumentException Thrown when the class has no such field.
+         */
+        public Builder<T> addHashIndex(final String field) {
+            FieldAccessor.of(objectClass, field);
+            hashFields.add(field);
+            return this;
+        }
+
+        /**
+         * Adds a sorted index on a field, answering range conditions and ordering.
+         * @param field The name of the field.
+         * @return Returns the builder.
+         * @throws IllegalArgumentException Thrown when the class has no such field, or the field is a collection or an array.
+         */
+        public Builder<T> addSortedIndex(final String field) {
+            final FieldAccessor accessor = FieldAccessor.of(objectClass, field);
+            if (Collection.class.isAssignableFrom(accessor.getType()) || accessor.getType().isArray()) {
+                throw new IllegalArgumentException("The field '" + field + "' is a collection or an array and cannot have a sorted index.");
+            }
+            sortedFields.add(field);
+            return this;
+        }
+
+        /**
+         * Adds a text index on the {@link com.raylabz.firestorm.android.annotation.Searchable} fields of the class,
+         * answering {@link IndexedCollection#search(String, int)}.
+         * @return Returns the builder.
+         * @throws IllegalArgumentException Thrown when the class has no searchable fields, or a searchable field is not a String.
+         */
+        public Builder<T> addTextIndex() {
+            TextIndex.of(objectClass);
+            textIndex = true;
+            return this;
+        }
+
+        /**
+         * Builds the indexed collection, initially empty.
+         * @return Returns an IndexedCollection.
+         * @throws IllegalArgumentException Thrown when the class has no <i>id</i> field.
+         */
+        public IndexedCollection<T> build() {
+            return new IndexedCollection<>(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,581 @@
+package com.raylabz.firestorm.android.index;
+
+import com.google.firebase.firestore.Query;
+import com.raylabz.firestorm.android.backend.BackendQuery;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+
+/**
+ * Filters and orders the objects of an {@link IndexedCollection} locally.
+ * <p>
+ * A query reads its candidates from the index which narrows them down the most: a hash index for an equality, IN or
+ * <i>array-contains</i> condition, or a sorted index for a range condition. When the query is ordered by a field with a
+ * sorted index, the candidates may instead be read in order from that index, which stops as soon as the limit is
+ * reached. Every condition is then checked on the candidates, so conditions on fields without an index are allowed.
+ * Conditions and ordering follow Firestore's semantics: range conditions only match values of the same type, and
+ * objects with equal ordered values are ordered by ID. Without an ordering, results are in no particular order.
+ * @param <T> The type of objects this query is able to interact with.
+ * @version 1.4.0
+ */
+public class IndexedQuery<T> {
+
+    private final IndexedCollection<T> collection;
+    private final ArrayList<Condition> conditions = new ArrayList<>();
+    private final ArrayList<Order> orders = new ArrayList<>();
+    private int limit = -1;
+
+    /**
+     * Instantiates a query.
+     * @param collection The collection to query.
+     */
+    IndexedQuery(final IndexedCollection<T> collection) {
+        this.collection = collection;
+    }
+
+    /**
+     * Filters objects where the value of a field is equal to a value.
+     * @param field The field.
+     * @param value The value.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereEqualTo(@Nonnull String field, @Nullable Object value) {
+        return where(field, BackendQuery.Operator.EQUAL, value);
+    }
+
+    /**
+     * Filters objects where the value of a field is less than a value.
+     * @param field The field.
+     * @param value The value.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereLessThan(@Nonnull String field, @Nonnull Object value) {
+        return where(field, BackendQuery.Operator.LESS_THAN, value);
+    }
+
+    /**
+     * Filters objects where the value of a field is less than or equal to a value.
+     * @param field The field.
+     * @param value The value.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereLessThanOrEqualTo(@Nonnull String field, @Nonnull Object value) {
+        return where(field, BackendQuery.Operator.LESS_THAN_OR_EQUAL, value);
+    }
+
+    /**
+     * Filters objects where the value of a field is greater than a value.
+     * @param field The field.
+     * @param value The value.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereGreaterThan(@Nonnull String field, @Nonnull Object value) {
+        return where(field, BackendQuery.Operator.GREATER_THAN, value);
+    }
+
+    /**
+     * Filters objects where the value of a field is greater than or equal to a value.
+     * @param field The field.
+     * @param value The value.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereGreaterThanOrEqualTo(@Nonnull String field, @Nonnull Object value) {
+        return where(field, BackendQuery.Operator.GREATER_THAN_OR_EQUAL, value);
+    }
+
+    /**
+     * Filters objects where a collection or array field contains a value.
+     * @param field The field.
+     * @param value The value.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereArrayContains(@Nonnull String field, @Nonnull Object value) {
+        return where(field, BackendQuery.Operator.ARRAY_CONTAINS, value);
+    }
+
+    /**
+     * Filters objects where a collection or array field contains any of a list of values.
+     * @param field The field.
+     * @param values The values.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereArrayContainsAny(@Nonnull String field, @Nonnull List<?> values) {
+        return where(field, BackendQuery.Operator.ARRAY_CONTAINS_ANY, values);
+    }
+
+    /**
+     * Filters objects where the value of a field is equal to any of a list of values.
+     * @param field The field.
+     * @param values The values.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereIn(@Nonnull String field, @Nonnull List<?> values) {
+        return where(field, BackendQuery.Operator.IN, values);
+    }
+
+    /**
+     * Filters objects where the value of a field is not null and not equal to any of a list of values.
+     * @param field The field.
+     * @param values The values.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> whereNotIn(@Nonnull String field, @Nonnull List<?> values) {
+        return where(field, BackendQuery.Operator.NOT_IN, values);
+    }
+
+    /**
+     * Orders results by a field.
+     * @param field The field.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> orderBy(@Nonnull String field) {
+        return orderBy(field, Query.Direction.ASCENDING);
+    }
+
+    /**
+     * Orders results by a field in a specified direction.
+     * @param field The field.
+     * @param direction The direction (ascending/descending) of ordering.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> orderBy(@Nonnull String field, @Nonnull Query.Direction direction) {
+        orders.add(new Order(field, collection.accessor(field), direction == Query.Direction.DESCENDING));
+        return this;
+    }
+
+    /**
+     * Limits the number of results.
+     * @param limit The maximum number of results to retrieve.
+     * @return Returns the query.
+     */
+    @Nonnull
+    public IndexedQuery<T> limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit of a query must not be negative.");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Retrieves the objects matching the query.
+     * @return Returns a list of objects, in the order of the query.
+     */
+    @Nonnull
+    public List<T> get() {
+        collection.lock.readLock().lock();
+        try {
+            return execute();
+        } finally {
+            collection.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the objects matching the query, up to its limit.
+     * @return Returns the number of matching objects.
+     */
+    public int count() {
+        return get().size();
+    }
+
+    /**
+     * Adds a condition.
+     * @param field The field.
+     * @param operator The operator.
+     * @param value The value, or list of values.
+     * @return Returns the query.
+     */
+    private IndexedQuery<T> where(final String field, final BackendQuery.Operator operator, final Object value) {
+        conditions.add(new Condition(field, collection.accessor(field), operator, value));
+        return this;
+    }
+
+    /**
+     * Runs the query. Must be called while holding the read lock of the collection.
+     * @return Returns the matching objects.
+     */
+    private List<T> execute() {
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+        final Source source = chooseSource();
+        final ArrayList<T> results = new ArrayList<>();
+        for (String id : source.ids) {
+            final T object = collection.objects().get(id);
+            if (object != null && matches(object, source.skipped)) {
+                results.add(object);
+                if (source.ordered && results.size() == limit) {
+                    return results;
+                }
+            }
+        }
+        if (!source.ordered && !orders.isEmpty()) {
+            sort(results);
+        }
+        return limit > 0 && results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+
+    /**
+     * Chooses where the candidates of the query are read from.
+     * @return Returns a Source.
+     */
+    private Source chooseSource() {
+        final int size = collection.objects().size();
+        final String orderField = orders.size() == 1 ? orders.get(0).field : null;
+        final SortedIndex<T> orderIndex = orderField != null ? collection.getSortedIndex(orderField) : null;
+
+        // Hash index lookups are sized exactly and cheaply, so they are considered first and bound the counting of
+        // the ranges of sorted indexes, which is only needed when there is a choice between several of them.
+        Source best = null;
+        final LinkedHashSet<String> rangeFields = new LinkedHashSet<>();
+        for (Condition condition : conditions) {
+            final Source source = hashSourceOf(condition, best != null ? best.estimate : size);
+            if (source != null && (best == null || source.estimate < best.estimate)) {
+                best = source;
+            }
+            if ((condition.operator == BackendQuery.Operator.EQUAL || condition.operator.isRange())
+                    && collection.getSortedIndex(condition.field) != null) {
+                rangeFields.add(condition.field);
+            }
+        }
+        if (orderIndex != null && best == null && (rangeFields.isEmpty() || (rangeFields.size() == 1 && rangeFields.contains(orderField)))) {
+            return ordered(rangeOf(orderIndex, orderField), size);
+        }
+        for (String field : rangeFields) {
+            final NavigableSet<SortedIndex.Entry> range = rangeOf(collection.getSortedIndex(field), field);
+            final int cap = best != null ? best.estimate : size;
+            int estimate = 0;
+            for (Iterator<SortedIndex.Entry> iterator = range.iterator(); iterator.hasNext() && estimate < cap; iterator.next()) {
+                estimate++;
+            }
+            if (best == null || estimate < best.estimate) {
+                best = new Source(ids(range), estimate, orders.isEmpty(), null, range, field);
+            }
+        }
+
+        if (orderIndex != null) {
+            if (best.range != null && best.field.equals(orderField)) {
+                return ordered(best.range, best.estimate);
+            }
+            // Reading in index order visits about limit * size / matches objects, while sorting the candidates costs
+            // about estimate * log(estimate): the candidates of the best condition bound the number of matches.
+            if (limit > 0 && (long) limit * size < (long) best.estimate * best.estimate) {
+                return ordered(rangeOf(orderIndex, orderField), size);
+            }
+        }
+        return best != null ? best : new Source(collection.objects().keySet(), size, orders.isEmpty(), null, null, null);
+    }
+
+    /**
+     * Creates a source reading entries of the sorted index of the ordered field, in the direction of the ordering.
+     * @param entries The entries, in ascending order.
+     * @param estimate The number of entries, or an upper bound of the number worth counting.
+     * @return Returns a Source.
+     */
+    private Source ordered(final NavigableSet<SortedIndex.Entry> entries, final int estimate) {
+        return new Source(ids(orders.get(0).descending ? entries.descendingSet() : entries), estimate, true, null, null, null);
+    }
+
+    /**
+     * Retrieves the candidates of a condition from the hash index of its field.
+     * @param condition The condition.
+     * @param cap The number of candidates above which the source is not useful.
+     * @return Returns a Source, or null if the condition cannot be answered from a hash index.
+     */
+    private Source hashSourceOf(final Condition condition, final int cap) {
+        final HashIndex<T> hashIndex = collection.getHashIndex(condition.field);
+        if (hashIndex == null) {
+            return null;
+        }
+        switch (condition.operator) {
+            case EQUAL:
+            case ARRAY_CONTAINS:
+                if (hashIndex.isMultiKey() == (condition.operator == BackendQuery.Operator.ARRAY_CONTAINS)) {
+                    final Set<String> ids = hashIndex.get(condition.value);
+                    return new Source(ids, ids.size(), orders.isEmpty(), condition, null, null);
+                }
+                return null;
+            case IN:
+            case ARRAY_CONTAINS_ANY:
+                if (hashIndex.isMultiKey() == (condition.operator == BackendQuery.Operator.ARRAY_CONTAINS_ANY)) {
+                    int estimate = 0;
+                    for (Object value : condition.values) {
+                        estimate += hashIndex.get(value).size();
+                    }
+                    if (estimate >= cap) {
+                        return null;
+                    }
+                    final Set<String> ids = new HashSet<>(Math.max(16, estimate * 2));
+                    for (Object value : condition.values) {
+                        ids.addAll(hashIndex.get(value));
+                    }
+                    return new Source(ids, ids.size(), orders.isEmpty(), condition, null, null);
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Retrieves the entries of a sorted index within the bounds set by the equality and range conditions on its field.
+     * @param sortedIndex The sorted index.
+     * @param field The field of the index.
+     * @return Returns a set of entries, in ascending order.
+     */
+    private NavigableSet<SortedIndex.Entry> rangeOf(final SortedIndex<T> sortedIndex, final String field) {
+        SortedIndex.Bound lower = null;
+        SortedIndex.Bound upper = null;
+        for (Condition condition : conditions) {
+            if (!condition.field.equals(field) || !(condition.operator == BackendQuery.Operator.EQUAL || condition.operator.isRange())) {
+                continue;
+            }
+            if (condition.operator != BackendQuery.Operator.LESS_THAN && condition.operator != BackendQuery.Operator.LESS_THAN_OR_EQUAL
+                    && (lower == null || IndexKeys.compare(condition.value, lower.key) >= 0)) {
+                lower = new SortedIndex.Bound(condition.value, condition.operator != BackendQuery.Operator.GREATER_THAN);
+            }
+            if (condition.operator != BackendQuery.Operator.GREATER_THAN && condition.operator != BackendQuery.Operator.GREATER_THAN_OR_EQUAL
+                    && (upper == null || IndexKeys.compare(condition.value, upper.key) <= 0)) {
+                upper = new SortedIndex.Bound(condition.value, condition.operator != BackendQuery.Operator.LESS_THAN);
+            }
+        }
+        return sortedIndex.range(lower, upper);
+    }
+
+    /**
+     * Checks if an object satisfies the conditions of the query.
+     * @param object The object.
+     * @param skipped A condition which is known to hold, or null.
+     * @return Returns true if the object satisfies all conditions, false otherwise.
+     */
+    private boolean matches(final T object, final Condition skipped) {
+        for (int i = 0; i < conditions.size(); i++) {
+            final Condition condition = conditions.get(i);
+            if (condition != skipped && !condition.matches(condition.accessor.get(object))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sorts objects in the order of the query, then by ID in the direction of the last ordering.
+     * @param objects The objects.
+     */
+    private void sort(final ArrayList<T> objects) {
+        final int count = orders.size();
+        final ArrayList<Object[]> rows = new ArrayList<>(objects.size());
+        for (T object : objects) {
+            final Object[] row = new Object[count + 2];
+            for (int i = 0; i < count; i++) {
+                row[i] = IndexKeys.normalize(orders.get(i).accessor.get(object));
+            }
+            row[count] = collection.idOf(object);
+            row[count + 1] = object;
+            rows.add(row);
+        }
+        final boolean idDescending = orders.get(count - 1).descending;
+        Collections.sort(rows, new Comparator<Object[]>() {
+            @Override
+            public int compare(final Object[] a, final Object[] b) {
+                for (int i = 0; i < count; i++) {
+                    final int result = IndexKeys.compare(a[i], b[i]);
+                    if (result != 0) {
+                        return orders.get(i).descending ? -result : result;
+                    }
+                }
+                final int result = ((String) a[count]).compareTo((String) b[count]);
+                return idDescending ? -result : result;
+            }
+        });
+        for (int i = 0; i < rows.size(); i++) {
+            @SuppressWarnings("unchecked") final T object = (T) rows.get(i)[count + 1];
+            objects.set(i, object);
+        }
+    }
+
+    /**
+     * Views index entries as the IDs of their objects.
+     * @param entries The entries.
+     * @return Returns an iterable of IDs.
+     */
+    private static Iterable<String> ids(final Collection<SortedIndex.Entry> entries) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<SortedIndex.Entry> iterator = entries.iterator();
+                return new Iterator<String>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iterator.hasNext();
+                    }
+
+                    @Override
+                    public String next() {
+                        return iterator.next().id;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * The candidates of a query.
+     */
+    private static final class Source {
+
+        final Iterable<String> ids;
+        final int estimate;
+        final boolean ordered;
+        final Condition skipped;
+        final NavigableSet<SortedIndex.Entry> range;
+        final String field;
+
+        /**
+         * Constructs a source.
+         * @param ids The IDs of the candidates.
+         * @param estimate The number of candidates, or an upper bound of the number worth counting.
+         * @param ordered True if the candidates are read in the order of the query.
+         * @param skipped A condition which all candidates satisfy, or null.
+         * @param range The range of a sorted index the candidates are read from, or null.
+         * @param field The field of the sorted index, or null.
+         */
+        Source(final Iterable<String> ids, final int estimate, final boolean ordered, final Condition skipped,
+               final NavigableSet<SortedIndex.Entry> range, final String field) {
+            this.ids = ids;
+            this.estimate = estimate;
+            this.ordered = ordered;
+            this.skipped = skipped;
+            this.range = range;
+            this.field = field;
+        }
+
+    }
+
+    /**
+     * An ordering of the results by a field.
+     */
+    private static final class Order {
+
+        final String field;
+        final FieldAccessor accessor;
+        final boolean descending;
+
+        Order(final String field, final FieldAccessor accessor, final boolean descending) {
+            this.field = field;
+            this.accessor = accessor;
+            this.descending = descending;
+        }
+
+    }
+
+    /**
+     * A condition on the value of a field.
+     */
+    private static final class Condition {
+
+        final String field;
+        final FieldAccessor accessor;
+        final BackendQuery.Operator operator;
+        final Object value;
+        final List<Object> values;
+
+        Condition(final String field, final FieldAccessor accessor, final BackendQuery.Operator operator, final Object value) {
+            this.field = field;
+            this.accessor = accessor;
+            this.operator = operator;
+            if (operator == BackendQuery.Operator.ARRAY_CONTAINS_ANY || operator == BackendQuery.Operator.IN || operator == BackendQuery.Operator.NOT_IN) {
+                if (!(value instanceof List)) {
+                    throw new IllegalArgumentException("The " + operator + " operator requires a list of values.");
+                }
+                values = new ArrayList<>();
+                for (Object element : (List<?>) value) {
+                    values.add(IndexKeys.normalize(element));
+                }
+                this.value = null;
+            }
+            else {
+                values = null;
+                this.value = IndexKeys.normalize(value);
+            }
+        }
+
+        /**
+         * Checks if a field value satisfies the condition.
+         * @param fieldValue The value of the field.
+         * @return Returns true if the value satisfies the condition, false otherwise.
+         */
+        boolean matches(final Object fieldValue) {
+            switch (operator) {
+                case EQUAL:
+                    return IndexKeys.compare(IndexKeys.normalize(fieldValue), value) == 0;
+                case ARRAY_CONTAINS:
+                    return IndexKeys.contains(fieldValue, value);
+                case ARRAY_CONTAINS_ANY:
+                    for (Object element : values) {
+                        if (IndexKeys.contains(fieldValue, element)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case IN:
+                case NOT_IN:
+                    final Object key = IndexKeys.normalize(fieldValue);
+                    if (key == null && operator == BackendQuery.Operator.NOT_IN) {
+                        return false;
+                    }
+                    for (Object element : values) {
+                        if (IndexKeys.compare(key, element) == 0) {
+                            return operator == BackendQuery.Operator.IN;
+                        }
+                    }
+                    return operator == BackendQuery.Operator.NOT_IN;
+                default:
+                    final Object normalized = IndexKeys.normalize(fieldValue);
+                    if (!IndexKeys.comparable(normalized, value)) {
+                        return false;
+                    }
+                    final int result = IndexKeys.compare(normalized, value);
+                    switch (operator) {
+                        case LESS_THAN:
+                            return result < 0;
+                        case LESS_THAN_OR_EQUAL:
+                            return result <= 0;
+                        case GREATER_THAN:
+                            return result > 0;
+                        default:
+                            return result >= 0;
+                    }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.raylabz.firestorm.android.index;
+
+/**
+ * An in-memory index over the objects of an {@link IndexedCollection}, kept up to date as objects are added,
+ * modified and removed.
+ * @param <T> The type of the indexed objects.
+ * @version 1.4.0
+ */
+public abstract class LocalIndex<T> {
+
+    /**
+     * Package-private constructor: indexes are added to a collection with its {@link IndexedCollection.Builder}.
+     */
+    LocalIndex() {
+    }
+
+    /**
+     * Indexes an object. The object must not already be indexed under the same ID.
+     * @param id The ID of the object.
+     * @param object The object.
+     */
+    abstract void add(String id, T object);
+
+    /**
+     * Removes an object from the index.
+     * @param id The ID of the object.
+     */
+    abstract void remove(String id);
+
+    /**
+     * Removes all objects from the index.
+     */
+    abstract void clear();
+
+}
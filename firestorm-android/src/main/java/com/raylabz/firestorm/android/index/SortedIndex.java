@@ -0,0 +1,132 @@
+package com.raylabz.firestorm.android.index;
+
+import java.util.HashMap;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Indexes objects in the order of the value of a field, for range lookups and ordered iteration. Objects with equal
+ * values are ordered by ID.
+ * @param <T> The type of the indexed objects.
+ * @version 1.4.0
+ */
+final class SortedIndex<T> extends LocalIndex<T> {
+
+    private final FieldAccessor accessor;
+    private final TreeSet<Entry> entries = new TreeSet<>();
+    private final HashMap<String, Entry> entriesById = new HashMap<>();
+
+    /**
+     * Constructs a sorted index.
+     * @param accessor The accessor of the indexed field.
+     */
+    SortedIndex(final FieldAccessor accessor) {
+        this.accessor = accessor;
+    }
+
+    /**
+     * Retrieves the entries of the index, in ascending order.
+     * @return Returns a set of entries, which must not be modified.
+     */
+    NavigableSet<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * Retrieves the entries with keys in a range, in ascending order.
+     * @param lower The lower bound, or null if the range has none.
+     * @param upper The upper bound, or null if the range has none.
+     * @return Returns a set of entries, which must not be modified.
+     */
+    NavigableSet<Entry> range(final Bound lower, final Bound upper) {
+        if (lower == null && upper == null) {
+            return entries;
+        }
+        if (lower == null) {
+            return entries.headSet(upper.toEntry(false), false);
+        }
+        if (upper == null) {
+            return entries.tailSet(lower.toEntry(true), false);
+        }
+        if (IndexKeys.compare(lower.key, upper.key) > 0) {
+            return new TreeSet<>();
+        }
+        return entries.subSet(lower.toEntry(true), false, upper.toEntry(false), false);
+    }
+
+    @Override
+    void add(final String id, final T object) {
+        final Entry entry = new Entry(IndexKeys.normalize(accessor.get(object)), id, 0);
+        entries.add(entry);
+        entriesById.put(id, entry);
+    }
+
+    @Override
+    void remove(final String id) {
+        final Entry entry = entriesById.remove(id);
+        if (entry != null) {
+            entries.remove(entry);
+        }
+    }
+
+    @Override
+    void clear() {
+        entries.clear();
+        entriesById.clear();
+    }
+
+    /**
+     * A bound of a range of keys.
+     */
+    static final class Bound {
+
+        final Object key;
+        final boolean inclusive;
+
+        Bound(final Object key, final boolean inclusive) {
+            this.key = key;
+            this.inclusive = inclusive;
+        }
+
+        /**
+         * Creates an entry ordered just outside of the entries within the bound.
+         * @param lower True if this is a lower bound, false if it is an upper bound.
+         * @return Returns an Entry.
+         */
+        Entry toEntry(final boolean lower) {
+            return new Entry(key, null, lower == inclusive ? -1 : 1);
+        }
+
+    }
+
+    /**
+     * An indexed object ID and its key. Entries with a non-zero position are bounds, ordered before (-1) or after (1)
+     * all the objects with the same key.
+     */
+    static final class Entry implements Comparable<Entry> {
+
+        final Object key;
+        final String id;
+        final int position;
+
+        Entry(final Object key, final String id, final int position) {
+            this.key = key;
+            this.id = id;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            final int result = IndexKeys.compare(key, other.key);
+            if (result != 0) {
+                return result;
+            }
+            if (position != 0 || other.position != 0) {
+                return Integer.compare(position, other.position);
+            }
+            return id.compareTo(other.id);
+        }
+
+    }
+
+}
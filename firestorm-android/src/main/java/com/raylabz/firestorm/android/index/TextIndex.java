@@ -0,0 +1,394 @@
+package com.raylabz.firestorm.android.index;
+
+import com.raylabz.firestorm.android.annotation.Searchable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over the {@link Searchable} fields of objects, for ranked full-text search with prefix matching.
+ * <p>
+ * Text is split into words of letters and digits, lower-cased and stripped of diacritics. Each indexed object is given
+ * a document number, and each word maps to a posting list of the numbers of the documents containing it, with the
+ * weighted number of occurrences, held in a single int array. Numbers are assigned in increasing order, so posting
+ * lists are appended to in order: a modified object is removed and added again under a new number. Removed numbers
+ * are skipped when searching, and reclaimed by compacting the index once they outnumber the indexed objects.
+ * <p>
+ * Results contain every word of the query, the last one as a prefix unless the query ends with a separator, and
+ * are ranked by BM25. Words completing a prefix score in proportion to how much of them the prefix covers.
+ * @param <T> The type of the indexed objects.
+ * @version 1.4.0
+ */
+final class TextIndex<T> extends LocalIndex<T> {
+
+    private static final int MAX_WORD_LENGTH = 64;
+    private static final int MIN_COMPACTION = 1024;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final FieldAccessor[] fields;
+    private final int[] weights;
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    private final HashMap<String, Integer> documents = new HashMap<>();
+
+    /**
+     * The ID of the object of each document number, or null if the document was removed.
+     */
+    private String[] ids = new String[64];
+    private int[] lengths = new int[64];
+    private int documentCount;
+    private int liveCount;
+    private long totalLength;
+
+    /**
+     * Constructs a text index.
+     * @param fields The accessors of the searchable fields.
+     * @param weights The weight of each field.
+     */
+    private TextIndex(final FieldAccessor[] fields, final int[] weights) {
+        this.fields = fields;
+        this.weights = weights;
+    }
+
+    /**
+     * Creates a text index over the {@link Searchable} fields of a class and its superclasses.
+     * @param objectClass The class.
+     * @param <T> The type of the objects.
+     * @return Returns a TextIndex.
+     * @throws IllegalArgumentException Thrown when the class has no searchable fields, a searchable field is not a
+     * String or its weight is not positive.
+     */
+    static <T> TextIndex<T> of(final Class<T> objectClass) {
+        final ArrayList<FieldAccessor> fields = new ArrayList<>();
+        final ArrayList<Integer> weights = new ArrayList<>();
+        for (Class<?> aClass = objectClass; aClass != null && aClass != Object.class; aClass = aClass.getSuperclass()) {
+            for (Field field : aClass.getDeclaredFields()) {
+                final Searchable searchable = field.getAnnotation(Searchable.class);
+                if (searchable == null || Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (field.getType() != String.class) {
+                    throw new IllegalArgumentException("The @" + Searchable.class.getSimpleName() + " field '" + field.getName() + "' must be a String.");
+                }
+                if (searchable.weight() < 1) {
+                    throw new IllegalArgumentException("The @" + Searchable.class.getSimpleName() + " field '" + field.getName() + "' must have a positive weight.");
+                }
+                fields.add(FieldAccessor.of(aClass, field.getName()));
+                weights.add(searchable.weight());
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("The class '" + objectClass.getSimpleName() + "' has no @" + Searchable.class.getSimpleName() + " fields.");
+        }
+        final int[] weightArray = new int[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+            weightArray[i] = weights.get(i);
+        }
+        return new TextIndex<>(fields.toArray(new FieldAccessor[0]), weightArray);
+    }
+
+    /**
+     * Splits text into normalized words.
+     * @param text The text.
+     * @param words The list to add the words to.
+     */
+    static void tokenize(final String text, final List<String> words) {
+        String normalized = text;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            final char c = normalized.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (word.length() < MAX_WORD_LENGTH) {
+                    word.append(Character.toLowerCase(c));
+                }
+            }
+            else if (Character.getType(c) != Character.NON_SPACING_MARK && word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+    }
+
+    @Override
+    void add(final String id, final T object) {
+        final HashMap<String, int[]> frequencies = new HashMap<>();
+        final ArrayList<String> fieldWords = new ArrayList<>();
+        int length = 0;
+        for (int i = 0; i < fields.length; i++) {
+            final Object value = fields[i].get(object);
+            if (value == null) {
+                continue;
+            }
+            fieldWords.clear();
+            tokenize(value.toString(), fieldWords);
+            for (String word : fieldWords) {
+                int[] frequency = frequencies.get(word);
+                if (frequency == null) {
+                    frequency = new int[1];
+                    frequencies.put(word, frequency);
+                }
+                frequency[0] += weights[i];
+                length += weights[i];
+            }
+        }
+
+        final int document = documentCount++;
+        if (document == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+        ids[document] = id;
+        lengths[document] = length;
+        documents.put(id, document);
+        liveCount++;
+        totalLength += length;
+        for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+            Postings postings = words.get(entry.getKey());
+            if (postings == null) {
+                postings = new Postings();
+                words.put(entry.getKey(), postings);
+            }
+            postings.add(document, entry.getValue()[0]);
+        }
+    }
+
+    @Override
+    void remove(final String id) {
+        final Integer document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        ids[document] = null;
+        liveCount--;
+        totalLength -= lengths[document];
+        final int removed = documentCount - liveCount;
+        if (removed >= MIN_COMPACTION && removed > liveCount) {
+            compact();
+        }
+    }
+
+    @Override
+    void clear() {
+        words.clear();
+        documents.clear();
+        ids = new String[64];
+        lengths = new int[64];
+        documentCount = 0;
+        liveCount = 0;
+        totalLength = 0;
+    }
+
+    /**
+     * Searches the index.
+     * @param query The text to search for.
+     * @param limit The maximum number of results, or 0 for all results.
+     * @return Returns the IDs of the matching objects, best first.
+     */
+    List<String> search(final String query, final int limit) {
+        final ArrayList<String> queryWords = new ArrayList<>();
+        tokenize(query, queryWords);
+        if (queryWords.isEmpty() || liveCount == 0) {
+            return new ArrayList<>();
+        }
+        final boolean prefix = Character.isLetterOrDigit(query.charAt(query.length() - 1));
+        final float averageLength = Math.max(1f, (float) totalLength / liveCount);
+
+        // Documents must match the words in turn: hits counts the words a document matched so far.
+        final int[] hits = new int[documentCount];
+        final float[] scores = new float[documentCount];
+        int[] candidates = new int[16];
+        int candidateCount = 0;
+        final int wordCount = queryWords.size();
+        for (int i = 0; i < wordCount; i++) {
+            final String word = queryWords.get(i);
+            final Map<String, Postings> matches;
+            if (prefix && i == wordCount - 1) {
+                matches = words.subMap(word, true, word + Character.MAX_VALUE, false);
+            }
+            else {
+                final Postings postings = words.get(word);
+                matches = postings != null ? Collections.singletonMap(word, postings) : Collections.<String, Postings>emptyMap();
+            }
+            for (Map.Entry<String, Postings> entry : matches.entrySet()) {
+                final Postings postings = entry.getValue();
+                final int frequency = Math.min(postings.size, liveCount);
+                final float idf = (float) Math.log(1 + (liveCount - frequency + 0.5) / (frequency + 0.5));
+                final float boost = idf * word.length() / entry.getKey().length();
+                final int[] data = postings.data;
+                for (int j = 0; j < postings.size * 2; j += 2) {
+                    final int document = data[j];
+                    if (ids[document] == null) {
+                        continue;
+                    }
+                    if (hits[document] == i) {
+                        hits[document] = i + 1;
+                        if (i == 0) {
+                            if (candidateCount == candidates.length) {
+                                candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                            }
+                            candidates[candidateCount++] = document;
+                        }
+                    }
+                    else if (hits[document] != i + 1) {
+                        continue;
+                    }
+                    final float tf = data[j + 1];
+                    scores[document] += boost * tf * (K1 + 1) / (tf + K1 * (1 - B + B * lengths[document] / averageLength));
+                }
+            }
+        }
+
+        // Keeps the best results in a min-heap, ordered by score and then by document number, older first.
+        final int capacity = limit > 0 ? Math.min(limit, candidateCount) : candidateCount;
+        final int[] heap = new int[capacity];
+        int heapSize = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            final int document = candidates[i];
+            if (hits[document] != wordCount) {
+                continue;
+            }
+            if (heapSize < capacity) {
+                heap[heapSize] = document;
+                siftUp(heap, heapSize++, scores);
+            }
+            else if (capacity > 0 && better(document, heap[0], scores)) {
+                heap[0] = document;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+        final String[] results = new String[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            results[i] = ids[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Renumbers the documents, dropping removed documents from the posting lists.
+     */
+    private void compact() {
+        final int[] numbers = new int[documentCount];
+        int next = 0;
+        for (int document = 0; document < documentCount; document++) {
+            if (ids[document] != null) {
+                numbers[document] = next;
+                ids[next] = ids[document];
+                lengths[next] = lengths[document];
+                documents.put(ids[next], next);
+                next++;
+            }
+            else {
+                numbers[document] = -1;
+            }
+        }
+        Arrays.fill(ids, next, documentCount, null);
+        documentCount = next;
+        for (Iterator<Postings> iterator = words.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().renumber(numbers) == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static boolean better(final int a, final int b, final float[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+    }
+
+    private static void siftUp(final int[] heap, int index, final float[] scores) {
+        final int document = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (!better(heap[parent], document, scores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = document;
+    }
+
+    private static void siftDown(final int[] heap, final int size, final float[] scores) {
+        if (size == 0) {
+            return;
+        }
+        final int document = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!better(document, heap[child], scores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = document;
+    }
+
+    /**
+     * The posting list of a word: pairs of document numbers, in increasing order, and weighted occurrence counts.
+     */
+    private static final class Postings {
+
+        int[] data = new int[4];
+        int size;
+
+        void add(final int document, final int frequency) {
+            if (size * 2 == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size * 2] = document;
+            data[size * 2 + 1] = frequency;
+            size++;
+        }
+
+        /**
+         * Renumbers the documents of the list, dropping removed documents.
+         * @param numbers The new number of each document, or -1 if it was removed.
+         * @return Returns the size of the list.
+         */
+        int renumber(final int[] numbers) {
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                final int number = numbers[data[i * 2]];
+                if (number >= 0) {
+                    data[next * 2] = number;
+                    data[next * 2 + 1] = data[i * 2 + 1];
+                    next++;
+                }
+            }
+            size = next;
+            if (data.length > 8 && size * 8 < data.length) {
+                data = Arrays.copyOf(data, Math.max(4, size * 4));
+            }
+            return size;
+        }
+
+    }
+
+}
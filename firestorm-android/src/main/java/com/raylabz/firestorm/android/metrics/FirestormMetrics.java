@@ -0,0 +1,22 @@
+package com.raylabz.firestorm.android.metrics;
+
+/**
+ * A sink receiving a record for every operation carried out by Firestorm.
+ * Implementations are called from the thread completing the operation and must be thread-safe and fast.
+ * @version 1.4.0
+ */
+public interface FirestormMetrics {
+
+    /**
+     * A sink which discards all records. Firestorm skips payload size estimation when this sink is used, even if
+     * it is enabled in the settings.
+     */
+    FirestormMetrics NONE = record -> { };
+
+    /**
+     * Records a completed operation.
+     * @param record The record of the operation.
+     */
+    void record(OperationRecord record);
+
+}
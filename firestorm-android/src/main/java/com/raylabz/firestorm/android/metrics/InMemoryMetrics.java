@@ -0,0 +1,86 @@
+package com.raylabz.firestorm.android.metrics;
+
+import com.raylabz.firestorm.android.OperationType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The default metrics sink, which aggregates records in memory per class and operation type.
+ * Memory use is bounded by the number of classes and operation types, not by the number of operations.
+ * @version 1.4.0
+ */
+public class InMemoryMetrics implements FirestormMetrics {
+
+    /**
+     * The key used for operations that do not concern a single class, such as batches and transactions.
+     */
+    public static final Class<?> NO_CLASS = Void.class;
+
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<OperationType, OperationStats>> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void record(final OperationRecord record) {
+        final Class<?> key = record.getObjectClass() != null ? record.getObjectClass() : NO_CLASS;
+        ConcurrentHashMap<OperationType, OperationStats> classStats = stats.get(key);
+        if (classStats == null) {
+            final ConcurrentHashMap<OperationType, OperationStats> newClassStats = new ConcurrentHashMap<>();
+            classStats = stats.putIfAbsent(key, newClassStats);
+            if (classStats == null) {
+                classStats = newClassStats;
+            }
+        }
+        OperationStats operationStats = classStats.get(record.getType());
+        if (operationStats == null) {
+            final OperationStats newOperationStats = new OperationStats();
+            operationStats = classStats.putIfAbsent(record.getType(), newOperationStats);
+            if (operationStats == null) {
+                operationStats = newOperationStats;
+            }
+        }
+        operationStats.add(record);
+    }
+
+    /**
+     * Takes a snapshot of the metrics recorded so far. The snapshot is not affected by operations recorded later.
+     * @return Returns a map of classes to the stats of each operation type.
+     */
+    public Map<Class<?>, Map<OperationType, OperationStats>> snapshot() {
+        final HashMap<Class<?>, Map<OperationType, OperationStats>> snapshot = new HashMap<>();
+        for (Map.Entry<Class<?>, ConcurrentHashMap<OperationType, OperationStats>> classEntry : stats.entrySet()) {
+            final EnumMap<OperationType, OperationStats> classSnapshot = new EnumMap<>(OperationType.class);
+            for (Map.Entry<OperationType, OperationStats> entry : classEntry.getValue().entrySet()) {
+                classSnapshot.put(entry.getKey(), entry.getValue().copy());
+            }
+            snapshot.put(classEntry.getKey(), Collections.unmodifiableMap(classSnapshot));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Takes a snapshot of the metrics of one class.
+     * @param objectClass The class.
+     * @return Returns a map of operation types to stats.
+     */
+    public Map<OperationType, OperationStats> snapshot(final Class<?> objectClass) {
+        final EnumMap<OperationType, OperationStats> classSnapshot = new EnumMap<>(OperationType.class);
+        final ConcurrentHashMap<OperationType, OperationStats> classStats = stats.get(objectClass);
+        if (classStats != null) {
+            for (Map.Entry<OperationType, OperationStats> entry : classStats.entrySet()) {
+                classSnapshot.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+        return Collections.unmodifiableMap(classSnapshot);
+    }
+
+    /**
+     * Clears all metrics recorded so far.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.raylabz.firestorm.android.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-memory, thread-safe histogram of latencies.
+ * Values are recorded in microseconds into log-linear buckets: every power of two is split into
+ * {@value #SUB_BUCKETS} buckets, which bounds the relative error of percentiles to 12.5% while using the same
+ * small amount of memory regardless of how many values are recorded.
+ * @version 1.4.0
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAGNITUDES = 40;
+    private static final int BUCKETS = (MAGNITUDES + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a latency.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = maxMicros.get())) {
+            if (maxMicros.compareAndSet(currentMax, micros)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of latencies recorded.
+     * @return Returns a count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Retrieves the mean latency.
+     * @return Returns the mean in microseconds, or 0 if nothing was recorded.
+     */
+    public double getMeanMicros() {
+        final long n = count.get();
+        return n == 0 ? 0 : (double) sumMicros.get() / n;
+    }
+
+    /**
+     * Retrieves the maximum latency.
+     * @return Returns the maximum in microseconds.
+     */
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Retrieves a percentile of the recorded latencies.
+     * @param percentile The percentile, between 0 and 100 (e.g. 99.9).
+     * @return Returns the upper bound of the bucket containing the percentile, in microseconds.
+     */
+    public long getPercentileMicros(final double percentile) {
+        final long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Creates a copy of this histogram.
+     * @return Returns a LatencyHistogram.
+     */
+    public LatencyHistogram copy() {
+        final LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            copy.counts.set(i, counts.get(i));
+        }
+        copy.count.set(count.get());
+        copy.sumMicros.set(sumMicros.get());
+        copy.maxMicros.set(maxMicros.get());
+        return copy;
+    }
+
+    /**
+     * Finds the bucket of a value.
+     * @param micros The value in microseconds.
+     * @return Returns the index of the bucket.
+     */
+    private static int bucketOf(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS + 1;
+        if (magnitude > MAGNITUDES) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (micros >>> (magnitude - 1)) - SUB_BUCKETS;
+        return magnitude * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Retrieves the largest value of a bucket.
+     * @param bucket The index of the bucket.
+     * @return Returns a value in microseconds.
+     */
+    private static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int magnitude = bucket / SUB_BUCKETS;
+        final int subBucket = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - 1)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "count=" + getCount() +
+                ", meanMicros=" + getMeanMicros() +
+                ", p50=" + getPercentileMicros(50) +
+                ", p99=" + getPercentileMicros(99) +
+                ", p999=" + getPercentileMicros(99.9) +
+                ", maxMicros=" + getMaxMicros() +
+                '}';
+    }
+
+}
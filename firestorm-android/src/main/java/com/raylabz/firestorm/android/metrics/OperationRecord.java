@@ -0,0 +1,124 @@
+package com.raylabz.firestorm.android.metrics;
+
+import com.raylabz.firestorm.android.OperationType;
+
+/**
+ * Describes a completed Firestorm operation: its phases, the documents it touched and its outcome.
+ * @version 1.4.0
+ */
+public final class OperationRecord {
+
+    private final OperationType type;
+    private final Class<?> objectClass;
+    private final long dispatchNanos;
+    private final long networkNanos;
+    private final long decodeNanos;
+    private final int documentCount;
+    private final long payloadBytes;
+    private final String errorCode;
+
+    /**
+     * Constructs an OperationRecord.
+     * @param type The type of the operation.
+     * @param objectClass The class of the objects the operation worked on, or null if it spans several classes.
+     * @param dispatchNanos The time the operation waited to be dispatched.
+     * @param networkNanos The time spent waiting for Firestore, including retries.
+     * @param decodeNanos The time spent converting documents to objects.
+     * @param documentCount The number of documents read or written.
+     * @param payloadBytes The approximate size of the documents read or written, or 0 if payload estimation is not
+     *                     enabled in the settings.
+     * @param errorCode The error code of a failed operation, or null if it succeeded.
+     */
+    public OperationRecord(final OperationType type, final Class<?> objectClass, final long dispatchNanos, final long networkNanos,
+                           final long decodeNanos, final int documentCount, final long payloadBytes, final String errorCode) {
+        this.type = type;
+        this.objectClass = objectClass;
+        this.dispatchNanos = dispatchNanos;
+        this.networkNanos = networkNanos;
+        this.decodeNanos = decodeNanos;
+        this.documentCount = documentCount;
+        this.payloadBytes = payloadBytes;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Retrieves the type of the operation.
+     * @return Returns an OperationType.
+     */
+    public OperationType getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the class of the objects the operation worked on.
+     * @return Returns a class, or null if the operation spans several classes.
+     */
+    public Class<?> getObjectClass() {
+        return objectClass;
+    }
+
+    /**
+     * Retrieves the time the operation waited to be dispatched.
+     * @return Returns a time in nanoseconds.
+     */
+    public long getDispatchNanos() {
+        return dispatchNanos;
+    }
+
+    /**
+     * Retrieves the time spent waiting for Firestore.
+     * @return Returns a time in nanoseconds.
+     */
+    public long getNetworkNanos() {
+        return networkNanos;
+    }
+
+    /**
+     * Retrieves the time spent converting documents to objects.
+     * @return Returns a time in nanoseconds.
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * Retrieves the end-to-end latency of the operation.
+     * @return Returns a time in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return dispatchNanos + networkNanos + decodeNanos;
+    }
+
+    /**
+     * Retrieves the number of documents read or written.
+     * @return Returns an integer.
+     */
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Retrieves the approximate size of the documents read or written.
+     * @return Returns a size in bytes.
+     */
+    public long getPayloadBytes() {
+        return payloadBytes;
+    }
+
+    /**
+     * Retrieves the error code of a failed operation.
+     * @return Returns the Firestore error code (or exception name), or null if the operation succeeded.
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Checks if the operation succeeded.
+     * @return Returns true if the operation succeeded, false otherwise.
+     */
+    public boolean isSuccessful() {
+        return errorCode == null;
+    }
+
+}
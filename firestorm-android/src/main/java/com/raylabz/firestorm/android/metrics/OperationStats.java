@@ -0,0 +1,178 @@
+package com.raylabz.firestorm.android.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the records of one type of operation on one class: counts, documents, payload sizes, error codes and
+ * latency histograms of each phase.
+ * @version 1.4.0
+ */
+public final class OperationStats {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong payloadBytes = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> errorCodes = new ConcurrentHashMap<>();
+    private final LatencyHistogram totalLatency;
+    private final LatencyHistogram dispatchLatency;
+    private final LatencyHistogram networkLatency;
+    private final LatencyHistogram decodeLatency;
+
+    /**
+     * Constructs empty stats.
+     */
+    public OperationStats() {
+        this(new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram());
+    }
+
+    /**
+     * Constructs stats using the provided histograms.
+     * @param totalLatency The histogram of the end-to-end latency.
+     * @param dispatchLatency The histogram of the dispatch wait.
+     * @param networkLatency The histogram of the network time.
+     * @param decodeLatency The histogram of the decoding time.
+     */
+    private OperationStats(final LatencyHistogram totalLatency, final LatencyHistogram dispatchLatency,
+                           final LatencyHistogram networkLatency, final LatencyHistogram decodeLatency) {
+        this.totalLatency = totalLatency;
+        this.dispatchLatency = dispatchLatency;
+        this.networkLatency = networkLatency;
+        this.decodeLatency = decodeLatency;
+    }
+
+    /**
+     * Adds a record to the stats.
+     * @param record The record.
+     */
+    public void add(final OperationRecord record) {
+        count.incrementAndGet();
+        documents.addAndGet(record.getDocumentCount());
+        payloadBytes.addAndGet(record.getPayloadBytes());
+        if (!record.isSuccessful()) {
+            errors.incrementAndGet();
+            AtomicLong codeCount = errorCodes.get(record.getErrorCode());
+            if (codeCount == null) {
+                final AtomicLong newCount = new AtomicLong();
+                codeCount = errorCodes.putIfAbsent(record.getErrorCode(), newCount);
+                if (codeCount == null) {
+                    codeCount = newCount;
+                }
+            }
+            codeCount.incrementAndGet();
+        }
+        totalLatency.record(record.getTotalNanos());
+        dispatchLatency.record(record.getDispatchNanos());
+        networkLatency.record(record.getNetworkNanos());
+        decodeLatency.record(record.getDecodeNanos());
+    }
+
+    /**
+     * Creates a copy of these stats.
+     * @return Returns OperationStats.
+     */
+    public OperationStats copy() {
+        final OperationStats copy = new OperationStats(totalLatency.copy(), dispatchLatency.copy(), networkLatency.copy(), decodeLatency.copy());
+        copy.count.set(count.get());
+        copy.errors.set(errors.get());
+        copy.documents.set(documents.get());
+        copy.payloadBytes.set(payloadBytes.get());
+        for (Map.Entry<String, AtomicLong> entry : errorCodes.entrySet()) {
+            copy.errorCodes.put(entry.getKey(), new AtomicLong(entry.getValue().get()));
+        }
+        return copy;
+    }
+
+    /**
+     * Retrieves the number of operations.
+     * @return Returns a count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Retrieves the number of failed operations.
+     * @return Returns a count.
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * Retrieves the number of documents read or written.
+     * @return Returns a count.
+     */
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * Retrieves the approximate size of the documents read or written.
+     * @return Returns a size in bytes.
+     */
+    public long getPayloadBytes() {
+        return payloadBytes.get();
+    }
+
+    /**
+     * Retrieves the number of failures per error code.
+     * @return Returns a map of error codes to counts.
+     */
+    public Map<String, Long> getErrorCodes() {
+        final HashMap<String, Long> codes = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : errorCodes.entrySet()) {
+            codes.put(entry.getKey(), entry.getValue().get());
+        }
+        return Collections.unmodifiableMap(codes);
+    }
+
+    /**
+     * Retrieves the histogram of the end-to-end latency.
+     * @return Returns a LatencyHistogram.
+     */
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    /**
+     * Retrieves the histogram of the time operations waited to be dispatched.
+     * @return Returns a LatencyHistogram.
+     */
+    public LatencyHistogram getDispatchLatency() {
+        return dispatchLatency;
+    }
+
+    /**
+     * Retrieves the histogram of the time spent waiting for Firestore.
+     * @return Returns a LatencyHistogram.
+     */
+    public LatencyHistogram getNetworkLatency() {
+        return networkLatency;
+    }
+
+    /**
+     * Retrieves the histogram of the time spent converting documents to objects.
+     * @return Returns a LatencyHistogram.
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStats{" +
+                "count=" + getCount() +
+                ", errors=" + getErrors() +
+                ", documents=" + getDocuments() +
+                ", payloadBytes=" + getPayloadBytes() +
+                ", errorCodes=" + getErrorCodes() +
+                ", totalLatency=" + totalLatency +
+                '}';
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.raylabz.firestorm.android;
+
+import com.raylabz.firestorm.android.backend.BackendDocument;
+import com.raylabz.firestorm.android.backend.MemoryBackend;
+import com.raylabz.firestorm.android.backend.MemoryStore;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests replaying the journal of a {@link FirestormOutbox}, including a journal whose last record was partially
+ * written when the app was killed, compacting it once writes are applied, and applying writes as their objects were
+ * when they were submitted.
+ * <p>
+ * Firestorm is initialized with a {@link MemoryBackend} and a dispatcher which holds the work, so writes stay in the
+ * outbox until the test drains it.
+ * @version 1.4.0
+ */
+public class FirestormOutboxTest {
+
+    static class Note {
+        String id;
+        String text;
+        Note() { }
+        Note(final String id, final String text) {
+            this.id = id;
+            this.text = text;
+        }
+    }
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ArrayList<Runnable> held = new ArrayList<>();
+    private MemoryStore store;
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        Firestorm.init(new FirestormSettings.Builder()
+                .setBackend(new MemoryBackend(store))
+                .setDispatcher(held::add)
+                .build());
+        journalFile = new File(folder.getRoot(), "outbox.journal");
+    }
+
+    @Test
+    public void replayCollapsesWritesIntoNetWrites() {
+        final FirestormOutbox outbox = new FirestormOutbox(journalFile);
+        submit(outbox, new Note("a", "first"), new Note("b", "only"), new Note("a", "second"));
+        outbox.submit(Collections.singletonList(new FirestormOutbox.Write(Note.class, "c", null)));
+        assertEquals(3, outbox.getPendingCount());
+
+        final FirestormOutbox replayed = restart();
+        assertEquals(3, replayed.getPendingCount());
+        drain(replayed);
+        assertEquals("second", text("a"));
+        assertEquals("only", text("b"));
+        assertNull(text("c"));
+    }
+
+    @Test
+    public void replaySkipsTruncatedLastLineAndCompactsIt() throws IOException {
+        final FirestormOutbox outbox = new FirestormOutbox(journalFile);
+        submit(outbox, new Note("a", "first"), new Note("b", "second"));
+        append("{\"sequence\":3,\"operation\":\"SET\",\"className\":\"" + Note.class.getName() + "\",\"docum");
+
+        final FirestormOutbox replayed = restart();
+        assertEquals(2, replayed.getPendingCount());
+        final List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("{") && line.endsWith("}"));
+        }
+
+        submit(replayed, new Note("c", "third"));
+        final FirestormOutbox reopened = restart();
+        assertEquals(3, reopened.getPendingCount());
+        drain(reopened);
+        assertEquals("first", text("a"));
+        assertEquals("second", text("b"));
+        assertEquals("third", text("c"));
+    }
+
+    @Test
+    public void replaySkipsRecordsOfAppliedWrites() throws IOException {
+        final FirestormOutbox outbox = new FirestormOutbox(journalFile);
+        submit(outbox, new Note("a", "first"));
+        drain(outbox);
+        assertEquals(0, journalFile.length());
+
+        submit(outbox, new Note("b", "second"));
+        append("garbage\n");
+        assertEquals(1, restart().getPendingCount());
+    }
+
+    @Test
+    public void writesObjectsAsTheyWereWhenSubmitted() {
+        final FirestormOutbox outbox = new FirestormOutbox(journalFile);
+        final Note note = new Note("a", "submitted");
+        submit(outbox, note);
+        note.text = "changed";
+        drain(outbox);
+        assertEquals("submitted", text("a"));
+
+        note.text = "replayed";
+        submit(outbox, note);
+        note.text = "changed";
+        drain(restart());
+        assertEquals("replayed", text("a"));
+    }
+
+    private static void submit(final FirestormOutbox outbox, final Note... notes) {
+        final ArrayList<FirestormOutbox.Write> writes = new ArrayList<>();
+        for (Note note : notes) {
+            writes.add(new FirestormOutbox.Write(Note.class, note.id, note));
+        }
+        outbox.submit(writes);
+    }
+
+    /**
+     * Discards the held work, as if the app was killed, and opens the journal again.
+     * @return Returns a new outbox backed by the journal.
+     */
+    private FirestormOutbox restart() {
+        held.clear();
+        return new FirestormOutbox(journalFile);
+    }
+
+    /**
+     * Runs the held work, and the work it dispatches, until the outbox is drained.
+     * @param outbox The outbox.
+     */
+    private void drain(final FirestormOutbox outbox) {
+        outbox.drain();
+        while (!held.isEmpty()) {
+            held.remove(0).run();
+        }
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    /**
+     * Appends text to the journal, as a write interrupted when the app was killed would leave it.
+     * @param text The text.
+     * @throws IOException Thrown when the journal cannot be written.
+     */
+    private void append(final String text) throws IOException {
+        try (OutputStream stream = new FileOutputStream(journalFile, true)) {
+            stream.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String text(final String id) {
+        final BackendDocument document = store.get(Note.class.getSimpleName(), id);
+        return document.exists() ? document.toObject(Note.class).text : null;
+    }
+
+}
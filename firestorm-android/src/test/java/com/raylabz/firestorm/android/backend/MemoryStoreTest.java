@@ -0,0 +1,258 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.firebase.firestore.ListenerRegistration;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the queries of a {@link MemoryStore} return the same results as a scan of the whole collection, and that
+ * the changes delivered to query listeners, with and without a limit, keep a copy of the results up to date. Also
+ * tests that field paths whose names contain dots are not confused with nested fields.
+ * @version 1.4.0
+ */
+public class MemoryStoreTest {
+
+    private static final String COLLECTION = "items";
+    private static final String[] CITIES = {"a", "b", "c", "d", "e"};
+
+    static class Item {
+        String city;
+        int age;
+        double score;
+    }
+
+    private MemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        final Random random = new Random(17);
+        final ArrayList<BackendWrite> writes = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            writes.add(BackendWrite.set(COLLECTION, id(i), item(random)));
+        }
+        store.commit(writes);
+    }
+
+    @Test
+    public void randomQueriesMatchAFullScan() {
+        final Random random = new Random(4);
+        for (int i = 0; i < 500; i++) {
+            final boolean ordered = random.nextBoolean();
+            BackendQuery query = new BackendQuery(COLLECTION);
+            final ArrayList<Predicate> conditions = new ArrayList<>();
+            final int size = random.nextInt(3);
+            for (int j = 0; j < size; j++) {
+                final Predicate condition;
+                switch (random.nextInt(5)) {
+                    case 0:
+                        condition = Predicate.where("city", BackendQuery.Operator.EQUAL, CITIES[random.nextInt(CITIES.length)]);
+                        break;
+                    case 1:
+                        condition = Predicate.where("city", BackendQuery.Operator.IN, Arrays.<Object>asList(CITIES[random.nextInt(CITIES.length)], CITIES[random.nextInt(CITIES.length)]));
+                        break;
+                    case 2:
+                        condition = Predicate.where("age", BackendQuery.Operator.GREATER_THAN_OR_EQUAL, random.nextInt(100));
+                        break;
+                    case 3:
+                        condition = Predicate.where("age", BackendQuery.Operator.LESS_THAN, random.nextInt(100));
+                        break;
+                    default:
+                        condition = Predicate.where("score", BackendQuery.Operator.EQUAL, random.nextInt(20) * 1.0);
+                        break;
+                }
+                conditions.add(condition);
+                query = where(query, condition);
+            }
+            if (ordered) {
+                query = query.orderBy("age", random.nextBoolean());
+                if (random.nextBoolean()) {
+                    query = query.limit(1 + random.nextInt(40));
+                }
+            }
+            final List<String> expected = scan(query, conditions);
+            final List<String> actual = ids(store.query(query));
+            if (ordered) {
+                assertEquals(query.toString(), expected, actual);
+            }
+            else {
+                assertEquals(query.toString(), new HashSet<>(expected), new HashSet<>(actual));
+            }
+        }
+    }
+
+    @Test
+    public void listenerWithoutLimitKeepsResultsUpToDate() {
+        assertListenerKeepsResultsUpToDate(new BackendQuery(COLLECTION).where("city", BackendQuery.Operator.IN, Arrays.<Object>asList("a", "b")).orderBy("age", false));
+        assertListenerKeepsResultsUpToDate(new BackendQuery(COLLECTION).where("age", BackendQuery.Operator.GREATER_THAN, 50));
+    }
+
+    @Test
+    public void listenerWithLimitKeepsResultsUpToDate() {
+        assertListenerKeepsResultsUpToDate(new BackendQuery(COLLECTION).orderBy("score", true).limit(10));
+        assertListenerKeepsResultsUpToDate(new BackendQuery(COLLECTION).where("city", BackendQuery.Operator.EQUAL, "c").orderBy("age", false).limit(5));
+    }
+
+    @Test
+    public void removedListenerIsNotNotified() {
+        final ArrayList<List<BackendChange>> events = new ArrayList<>();
+        final ListenerRegistration registration = store.addQueryListener(new BackendQuery(COLLECTION), (changes, error) -> events.add(changes));
+        assertEquals(1, events.size());
+        assertEquals(300, events.get(0).size());
+        registration.remove();
+        store.commit(Collections.singletonList(BackendWrite.delete(COLLECTION, id(0))));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void diffListsRemovalsFirstAndMovesInOrder() {
+        final List<BackendDocument> previous = documents("a", "b", "c", "d");
+        final List<BackendDocument> current = documents("d", "c", "e", "a");
+        final List<BackendChange> changes = MemoryStore.diff(previous, current);
+        assertEquals(BackendChange.Type.REMOVED, changes.get(0).getType());
+        assertEquals("b", changes.get(0).getDocument().getId());
+        final ArrayList<String> results = new ArrayList<>(ids(previous));
+        apply(results, changes);
+        assertEquals(ids(current), results);
+        assertTrue(MemoryStore.diff(current, current).isEmpty());
+    }
+
+    @Test
+    public void fieldPathsKeepNamesContainingDots() {
+        final List<String> dotted = Collections.singletonList("a.b");
+        assertEquals("`a.b`", BackendQuery.fieldOf(dotted));
+        assertEquals(Arrays.asList("a.b", "c`d", "e"), BackendQuery.fieldPathOf(BackendQuery.fieldOf(Arrays.asList("a.b", "c`d", "e"))));
+        assertEquals(Arrays.asList("a", "b"), BackendQuery.fieldPathOf("a.b"));
+
+        store.commit(Arrays.asList(BackendWrite.set("paths", "x", paths(1, 2)), BackendWrite.set("paths", "y", paths(2, 1))));
+        assertEquals(Collections.singletonList("x"), ids(store.query(new BackendQuery("paths").where(dotted, BackendQuery.Operator.EQUAL, 1))));
+        assertEquals(Collections.singletonList("y"), ids(store.query(new BackendQuery("paths").where("a.b", BackendQuery.Operator.EQUAL, 1))));
+        assertEquals(Arrays.asList("x", "y"), ids(store.query(new BackendQuery("paths").orderBy(dotted, false))));
+        assertEquals(Arrays.asList("y", "x"), ids(store.query(new BackendQuery("paths").orderBy("a.b", false))));
+    }
+
+    /**
+     * Listens to a query while random documents are set and deleted, and checks after every write that the changes
+     * delivered so far turn the initial empty results into the results of the query.
+     * @param query The query.
+     */
+    private void assertListenerKeepsResultsUpToDate(final BackendQuery query) {
+        final ArrayList<String> results = new ArrayList<>();
+        final ListenerRegistration registration = store.addQueryListener(query, (changes, error) -> {
+            assertNull(error);
+            apply(results, changes);
+        });
+        final Random random = new Random(query.hashCode());
+        try {
+            assertEquals(ids(store.query(query)), results);
+            for (int i = 0; i < 300; i++) {
+                final ArrayList<BackendWrite> writes = new ArrayList<>();
+                final int size = 1 + random.nextInt(3);
+                for (int j = 0; j < size; j++) {
+                    final String id = id(random.nextInt(350));
+                    writes.add(random.nextInt(4) == 0 ? BackendWrite.delete(COLLECTION, id) : BackendWrite.set(COLLECTION, id, item(random)));
+                }
+                store.commit(writes);
+                assertEquals(ids(store.query(query)), results);
+            }
+        } finally {
+            registration.remove();
+        }
+    }
+
+    /**
+     * Applies changes to a copy of the results of a query, checking the indexes of the changes.
+     * @param results The IDs of the results.
+     * @param changes The changes.
+     */
+    private static void apply(final List<String> results, final List<BackendChange> changes) {
+        for (BackendChange change : changes) {
+            final String id = change.getDocument().getId();
+            if (change.getType() != BackendChange.Type.ADDED) {
+                assertEquals(id, results.remove(change.getOldIndex()));
+            }
+            if (change.getType() != BackendChange.Type.REMOVED) {
+                assertFalse(results.contains(id));
+                results.add(change.getNewIndex(), id);
+            }
+        }
+    }
+
+    /**
+     * Finds the documents of the collection which match the filters of a query, in query order and limited.
+     * @param query The query.
+     * @param conditions The predicates of the filters of the query.
+     * @return Returns the IDs of the documents.
+     */
+    private List<String> scan(final BackendQuery query, final List<Predicate> conditions) {
+        final QueryPlan.DocumentOrder order = new QueryPlan.DocumentOrder(query.getOrders());
+        final ArrayList<QueryPlan.Row> rows = new ArrayList<>();
+        for (BackendDocument document : store.query(new BackendQuery(COLLECTION))) {
+            if (conditions.isEmpty() || Predicate.and(conditions).matches(document)) {
+                rows.add(order.rowOf(document));
+            }
+        }
+        Collections.sort(rows, order);
+        final ArrayList<String> ids = new ArrayList<>();
+        for (QueryPlan.Row row : rows) {
+            if (query.getLimit() >= 0 && ids.size() >= query.getLimit()) {
+                break;
+            }
+            ids.add(row.document.getId());
+        }
+        return ids;
+    }
+
+    private static BackendQuery where(final BackendQuery query, final Predicate condition) {
+        final BackendQuery.Filter filter = ((Predicate.Leaf) condition).getFilter();
+        return query.where(filter.getField(), filter.getOperator(), filter.getValue());
+    }
+
+    private static Item item(final Random random) {
+        final Item item = new Item();
+        item.city = CITIES[random.nextInt(CITIES.length)];
+        item.age = random.nextInt(100);
+        item.score = random.nextInt(20);
+        return item;
+    }
+
+    private static Map<String, Object> paths(final long dotted, final long nested) {
+        final HashMap<String, Object> data = new HashMap<>();
+        data.put("a.b", dotted);
+        data.put("a", Collections.singletonMap("b", nested));
+        return data;
+    }
+
+    private static String id(final int index) {
+        return String.format("i%04d", index);
+    }
+
+    private static List<BackendDocument> documents(final String... ids) {
+        final ArrayList<BackendDocument> documents = new ArrayList<>();
+        for (String id : ids) {
+            documents.add(new MemoryDocument(Predicate.GSON, COLLECTION, id, Collections.<String, Object>emptyMap()));
+        }
+        return documents;
+    }
+
+    private static List<String> ids(final List<? extends BackendDocument> documents) {
+        final ArrayList<String> ids = new ArrayList<>(documents.size());
+        for (BackendDocument document : documents) {
+            ids.add(document.getId());
+        }
+        return ids;
+    }
+
+}
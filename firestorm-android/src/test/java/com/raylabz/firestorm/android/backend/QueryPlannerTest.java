@@ -0,0 +1,312 @@
+package com.raylabz.firestorm.android.backend;
+
+import com.google.android.gms.tasks.Task;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests how {@link QueryPlanner} splits predicates into queries and how {@link QueryPlan} merges their results.
+ * Plans are run on a {@link MemoryBackend}, and their results compared with a scan of the whole collection.
+ * @version 1.4.0
+ */
+public class QueryPlannerTest {
+
+    private static final String COLLECTION = "items";
+    private static final String[] CITIES = {"a", "b", "c", "d", "e"};
+    private static final String[] TAGS = {"x", "y", "z"};
+
+    static class Item {
+        String city;
+        int age;
+        double score;
+        List<String> tags;
+    }
+
+    private MemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new MemoryStore();
+        final Random random = new Random(11);
+        final ArrayList<BackendWrite> writes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            final Item item = new Item();
+            item.city = CITIES[random.nextInt(CITIES.length)];
+            item.age = random.nextInt(100);
+            item.score = random.nextInt(1000) / 10.0;
+            item.tags = new ArrayList<>();
+            for (String tag : TAGS) {
+                if (random.nextInt(3) == 0) {
+                    item.tags.add(tag);
+                }
+            }
+            writes.add(BackendWrite.set(COLLECTION, String.format("i%04d", i), item));
+        }
+        store.commit(writes);
+    }
+
+    @Test
+    public void disjunctionOfEqualitiesRunsOneQueryPerBranch() {
+        final BackendQuery query = new BackendQuery(COLLECTION);
+        final Predicate predicate = Predicate.or(
+                Predicate.where("city", BackendQuery.Operator.EQUAL, "a"),
+                Predicate.where("age", BackendQuery.Operator.EQUAL, 3));
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        assertEquals(2, plan.getQueries().size());
+        for (BackendQuery planned : plan.getQueries()) {
+            assertEquals(1, planned.getFilters().size());
+            assertEquals(BackendQuery.Operator.EQUAL, planned.getFilters().get(0).getOperator());
+        }
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void inequalitiesOnSeveralFieldsRunOnlyTheOrderedFieldOnTheBackend() {
+        final BackendQuery query = new BackendQuery(COLLECTION).orderBy("age", false).limit(10);
+        final Predicate predicate = Predicate.and(
+                Predicate.where("age", BackendQuery.Operator.GREATER_THAN, 20),
+                Predicate.where("score", BackendQuery.Operator.LESS_THAN, 50.0),
+                Predicate.where("score", BackendQuery.Operator.GREATER_THAN_OR_EQUAL, 10.0));
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        assertEquals(1, plan.getQueries().size());
+        for (BackendQuery.Filter filter : plan.getQueries().get(0).getFilters()) {
+            assertEquals("age", filter.getField());
+        }
+        assertNotNull(plan.getScans().get(0).getResidual());
+        assertTrue(plan.isLimitPushedDown());
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void residualRejectingWholePagesFetchesFurtherPages() {
+        final ArrayList<BackendWrite> writes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Item item = new Item();
+            item.city = "z";
+            item.age = 100 + i;
+            item.score = 500;
+            writes.add(BackendWrite.set(COLLECTION, "z" + i, item));
+        }
+        store.commit(writes);
+        final BackendQuery query = new BackendQuery(COLLECTION).orderBy("age", false).limit(2);
+        final Predicate predicate = Predicate.and(
+                Predicate.where("age", BackendQuery.Operator.GREATER_THAN_OR_EQUAL, 0),
+                Predicate.where("score", BackendQuery.Operator.GREATER_THAN, 200.0));
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        assertTrue(plan.isLimitPushedDown());
+        assertNotNull(plan.getScans().get(0).getResidual());
+        final ArrayList<String> ids = new ArrayList<>();
+        for (BackendDocument document : run(plan)) {
+            ids.add(document.getId());
+        }
+        assertEquals(Arrays.asList("z0", "z1"), ids);
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void inequalityOnAnotherFieldIsOrderedFirstAndSortedAfterFetching() {
+        final BackendQuery query = new BackendQuery(COLLECTION).orderBy("score", true).limit(5);
+        final Predicate predicate = Predicate.where("age", BackendQuery.Operator.GREATER_THAN_OR_EQUAL, 40);
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        assertEquals(1, plan.getQueries().size());
+        assertEquals("age", plan.getQueries().get(0).getOrders().get(0).getField());
+        assertFalse(plan.isLimitPushedDown());
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void largeInListsAreSplitAcrossQueries() {
+        final ArrayList<Object> ages = new ArrayList<>();
+        for (int age = 0; age < 70; age++) {
+            ages.add(age);
+        }
+        ages.add(5);
+        final BackendQuery query = new BackendQuery(COLLECTION).orderBy("age", false);
+        final Predicate predicate = Predicate.where("age", BackendQuery.Operator.IN, ages);
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        final List<BackendQuery> queries = plan.getQueries();
+        assertEquals(3, queries.size());
+        assertEquals(QueryPlanner.MAX_DISJUNCTION_VALUES, ((List<?>) queries.get(0).getFilters().get(0).getValue()).size());
+        assertEquals(QueryPlanner.MAX_DISJUNCTION_VALUES, ((List<?>) queries.get(1).getFilters().get(0).getValue()).size());
+        assertEquals(10, ((List<?>) queries.get(2).getFilters().get(0).getValue()).size());
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void emptyInListMatchesNothing() {
+        final Predicate predicate = Predicate.where("city", BackendQuery.Operator.IN, Collections.emptyList());
+        final QueryPlan plan = QueryPlanner.plan(new BackendQuery(COLLECTION), predicate);
+        assertTrue(plan.getQueries().isEmpty());
+        assertEquals("EMPTY", plan.toString());
+    }
+
+    @Test
+    public void branchesRunningTheSameQueryAreMerged() {
+        final BackendQuery query = new BackendQuery(COLLECTION).orderBy("age", false);
+        final Predicate predicate = Predicate.or(
+                Predicate.and(Predicate.where("city", BackendQuery.Operator.EQUAL, "a"),
+                        Predicate.where("age", BackendQuery.Operator.GREATER_THAN, 50),
+                        Predicate.where("score", BackendQuery.Operator.LESS_THAN, 10.0)),
+                Predicate.and(Predicate.where("city", BackendQuery.Operator.EQUAL, "a"),
+                        Predicate.where("age", BackendQuery.Operator.GREATER_THAN, 50),
+                        Predicate.where("score", BackendQuery.Operator.GREATER_THAN, 90.0)));
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        assertEquals(1, plan.getQueries().size());
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void overlappingBranchesAreMergedWithoutDuplicates() {
+        final BackendQuery query = new BackendQuery(COLLECTION).orderBy("age", false).limit(40);
+        final Predicate predicate = Predicate.or(
+                Predicate.where("city", BackendQuery.Operator.EQUAL, "b"),
+                Predicate.where("tags", BackendQuery.Operator.ARRAY_CONTAINS, "x"));
+        final QueryPlan plan = QueryPlanner.plan(query, predicate);
+
+        assertEquals(2, plan.getQueries().size());
+        final List<BackendDocument> results = run(plan);
+        final ArrayList<String> ids = new ArrayList<>();
+        for (BackendDocument document : results) {
+            assertFalse(ids.contains(document.getId()));
+            ids.add(document.getId());
+        }
+        assertResults(query, predicate, plan);
+    }
+
+    @Test
+    public void mergeInterleavesResultsInOrderAndAppliesTheLimit() {
+        final QueryPlan.DocumentOrder order = new QueryPlan.DocumentOrder(Collections.<BackendQuery.Order>emptyList());
+        final List<QueryPlan.Row> first = rows(order, "a", "c", "e");
+        final List<QueryPlan.Row> second = rows(order, "b", "c", "d", "f");
+        final List<BackendDocument> merged = QueryPlan.merge(Arrays.asList(first, second), order, 5);
+        final ArrayList<String> ids = new ArrayList<>();
+        for (BackendDocument document : merged) {
+            ids.add(document.getId());
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), ids);
+    }
+
+    @Test
+    public void randomPredicatesMatchAFullScan() {
+        final Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            BackendQuery query = new BackendQuery(COLLECTION);
+            if (random.nextBoolean()) {
+                query = query.orderBy(random.nextBoolean() ? "age" : "score", random.nextBoolean());
+            }
+            if (random.nextBoolean()) {
+                query = query.limit(1 + random.nextInt(30));
+            }
+            final Predicate predicate = randomPredicate(random, 0);
+            assertResults(query, predicate, QueryPlanner.plan(query, predicate));
+        }
+    }
+
+    /**
+     * Creates a random predicate.
+     * @param random The random generator.
+     * @param depth The depth of the predicate in the tree.
+     * @return Returns a Predicate.
+     */
+    private static Predicate randomPredicate(final Random random, final int depth) {
+        if (depth < 2 && random.nextInt(3) > 0) {
+            final ArrayList<Predicate> children = new ArrayList<>();
+            final int size = 2 + random.nextInt(2);
+            for (int i = 0; i < size; i++) {
+                children.add(randomPredicate(random, depth + 1));
+            }
+            return random.nextBoolean() ? Predicate.and(children) : Predicate.or(children);
+        }
+        switch (random.nextInt(6)) {
+            case 0:
+                return Predicate.where("city", BackendQuery.Operator.EQUAL, CITIES[random.nextInt(CITIES.length)]);
+            case 1:
+                return Predicate.where("age", random.nextBoolean() ? BackendQuery.Operator.LESS_THAN : BackendQuery.Operator.GREATER_THAN_OR_EQUAL, random.nextInt(100));
+            case 2:
+                return Predicate.where("score", random.nextBoolean() ? BackendQuery.Operator.LESS_THAN_OR_EQUAL : BackendQuery.Operator.GREATER_THAN, random.nextInt(100) * 1.0);
+            case 3:
+                return Predicate.where("tags", BackendQuery.Operator.ARRAY_CONTAINS, TAGS[random.nextInt(TAGS.length)]);
+            case 4: {
+                final ArrayList<Object> ages = new ArrayList<>();
+                final int size = 1 + random.nextInt(45);
+                for (int i = 0; i < size; i++) {
+                    ages.add(random.nextInt(100));
+                }
+                return Predicate.where("age", BackendQuery.Operator.IN, ages);
+            }
+            default:
+                return Predicate.where("city", BackendQuery.Operator.NOT_IN, Arrays.<Object>asList(CITIES[random.nextInt(CITIES.length)], CITIES[random.nextInt(CITIES.length)]));
+        }
+    }
+
+    /**
+     * Checks that a plan returns the documents of the collection which match a predicate, in query order and limited.
+     * @param query The planned query.
+     * @param predicate The planned predicate.
+     * @param plan The plan.
+     */
+    private void assertResults(final BackendQuery query, final Predicate predicate, final QueryPlan plan) {
+        final QueryPlan.DocumentOrder order = new QueryPlan.DocumentOrder(query.getOrders());
+        final ArrayList<QueryPlan.Row> expectedRows = new ArrayList<>();
+        for (BackendDocument document : store.query(new BackendQuery(COLLECTION))) {
+            if (predicate.matches(document)) {
+                expectedRows.add(order.rowOf(document));
+            }
+        }
+        Collections.sort(expectedRows, order);
+        final ArrayList<String> expected = new ArrayList<>();
+        for (QueryPlan.Row row : expectedRows) {
+            if (query.getLimit() >= 0 && expected.size() >= query.getLimit()) {
+                break;
+            }
+            expected.add(row.document.getId());
+        }
+
+        final ArrayList<String> actual = new ArrayList<>();
+        for (BackendDocument document : run(plan)) {
+            actual.add(document.getId());
+        }
+        assertEquals(plan.toString(), expected, actual);
+    }
+
+    /**
+     * Runs a plan against a backend reading the store.
+     * @param plan The plan.
+     * @return Returns the documents.
+     */
+    private List<BackendDocument> run(final QueryPlan plan) {
+        final Task<List<BackendDocument>> task = plan.execute(new MemoryBackend(store));
+        assertTrue(task.isComplete());
+        return task.getResult();
+    }
+
+    /**
+     * Creates the rows of documents without fields.
+     * @param order The order of the rows.
+     * @param ids The IDs of the documents.
+     * @return Returns a list of rows.
+     */
+    private static List<QueryPlan.Row> rows(final QueryPlan.DocumentOrder order, final String... ids) {
+        final ArrayList<QueryPlan.Row> rows = new ArrayList<>();
+        for (String id : ids) {
+            rows.add(order.rowOf(new MemoryDocument(Predicate.GSON, COLLECTION, id, Collections.<String, Object>emptyMap())));
+        }
+        return rows;
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.raylabz.firestorm.android.codec;
+
+import com.raylabz.firestorm.android.annotation.FieldId;
+import com.raylabz.firestorm.android.exception.FirestormException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the round trip of objects through {@link BinaryCodec}, and decoding data written by another version of a class.
+ * @version 1.4.0
+ */
+public class BinaryCodecTest {
+
+    enum Level { LOW, HIGH }
+
+    static class Address {
+        String city;
+        int number;
+    }
+
+    static class Person {
+        @FieldId(1) String name;
+        @FieldId(2) int age;
+        long visits;
+        double score;
+        boolean active;
+        Level level;
+        Date born;
+        byte[] avatar;
+        List<String> tags;
+        Map<String, Integer> counts;
+        Address address;
+        transient String cached = "transient";
+    }
+
+    static class PersonV1 {
+        @FieldId(1) String name;
+        @FieldId(2) long visits;
+        @FieldId(3) int level;
+        String email;
+    }
+
+    static class PersonV2 {
+        @FieldId(1) String displayName;
+        @FieldId(2) long visits;
+        @FieldId(3) String level = "unknown";
+        String phone = "none";
+    }
+
+    static class DuplicateIds {
+        @FieldId(7) String first;
+        @FieldId(7) String second;
+    }
+
+    @Test
+    public void roundTripKeepsAllFields() {
+        final Person person = new Person();
+        person.name = "Ada";
+        person.age = -36;
+        person.visits = Long.MAX_VALUE;
+        person.score = 99.5;
+        person.active = true;
+        person.level = Level.HIGH;
+        person.born = new Date(-1000000L);
+        person.avatar = new byte[] {1, 2, 3};
+        person.tags = Arrays.asList("a", "", "c");
+        person.counts = new HashMap<>();
+        person.counts.put("x", 1);
+        person.counts.put("y", -2);
+        person.address = new Address();
+        person.address.city = "Nicosia";
+        person.address.number = 12;
+        person.cached = "changed";
+
+        final Person decoded = BinaryCodec.decode(BinaryCodec.encode(person), Person.class);
+        assertEquals("Ada", decoded.name);
+        assertEquals(-36, decoded.age);
+        assertEquals(Long.MAX_VALUE, decoded.visits);
+        assertEquals(99.5, decoded.score, 0);
+        assertTrue(decoded.active);
+        assertEquals(Level.HIGH, decoded.level);
+        assertEquals(person.born, decoded.born);
+        assertArrayEquals(person.avatar, decoded.avatar);
+        assertEquals(person.tags, decoded.tags);
+        assertEquals(person.counts, decoded.counts);
+        assertEquals("Nicosia", decoded.address.city);
+        assertEquals(12, decoded.address.number);
+        assertEquals("transient", decoded.cached);
+    }
+
+    @Test
+    public void roundTripKeepsNullsAndEmptyCollections() {
+        final Person person = new Person();
+        person.tags = Collections.emptyList();
+        final Person decoded = BinaryCodec.decode(BinaryCodec.encode(person), Person.class);
+        assertNull(decoded.name);
+        assertNull(decoded.address);
+        assertEquals(Collections.<String>emptyList(), decoded.tags);
+    }
+
+    @Test
+    public void decodingNewerVersionHandlesRenamedAddedAndRemovedFields() {
+        final PersonV1 v1 = new PersonV1();
+        v1.name = "Grace";
+        v1.visits = 42;
+        v1.level = 3;
+        v1.email = "grace@example.com";
+
+        final PersonV2 v2 = BinaryCodec.decode(BinaryCodec.encode(v1), PersonV2.class);
+        assertEquals("Grace", v2.displayName);
+        assertEquals(42, v2.visits);
+        assertEquals("none", v2.phone);
+    }
+
+    @Test
+    public void decodingSkipsFieldsWhoseWireTypeChanged() {
+        final PersonV1 v1 = new PersonV1();
+        v1.level = 3;
+        v1.visits = 5;
+        final PersonV2 v2 = BinaryCodec.decode(BinaryCodec.encode(v1), PersonV2.class);
+        assertEquals("unknown", v2.level);
+        assertEquals(5, v2.visits);
+
+        final PersonV2 newer = new PersonV2();
+        newer.level = "high";
+        newer.displayName = "Grace";
+        final PersonV1 older = BinaryCodec.decode(BinaryCodec.encode(newer), PersonV1.class);
+        assertEquals(0, older.level);
+        assertEquals("Grace", older.name);
+        assertNull(older.email);
+    }
+
+    @Test
+    public void decodingRangeOfArray() {
+        final PersonV1 v1 = new PersonV1();
+        v1.name = "Linus";
+        final byte[] encoded = BinaryCodec.encode(v1);
+        final byte[] padded = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, padded, 2, encoded.length);
+        assertEquals("Linus", BinaryCodec.decode(padded, 2, encoded.length, PersonV1.class).name);
+    }
+
+    @Test(expected = FirestormException.class)
+    public void decodingTruncatedDataFails() {
+        final PersonV1 v1 = new PersonV1();
+        v1.name = "A long enough name";
+        final byte[] encoded = BinaryCodec.encode(v1);
+        BinaryCodec.decode(Arrays.copyOf(encoded, encoded.length - 3), PersonV1.class);
+    }
+
+    @Test(expected = FirestormException.class)
+    public void encodingClassWithDuplicateIdsFails() {
+        BinaryCodec.encode(new DuplicateIds());
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.raylabz.firestorm.android.geo;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests encoding coordinates with {@link Geohash} and covering circles with ranges of geohashes, on the edges of
+ * cells, at the poles and across the antimeridian.
+ * @version 1.4.0
+ */
+public class GeohashTest {
+
+    private static final int PRECISION = 10;
+
+    @Test
+    public void encodeMatchesKnownGeohashes() {
+        assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+        assertEquals("6gkzwgj", Geohash.encode(-25.382708, -49.265506, 7));
+    }
+
+    @Test
+    public void encodeHandlesTheEdgesOfTheGrid() {
+        assertEquals("0", Geohash.encode(-90, -180, 1));
+        assertEquals("z", Geohash.encode(90, 180, 1));
+        assertEquals("s", Geohash.encode(0, 0, 1));
+        assertEquals("7", Geohash.encode(-0.000001, -0.000001, 1));
+        assertEquals(Geohash.MAX_PRECISION, Geohash.encode(90, 180, Geohash.MAX_PRECISION).length());
+    }
+
+    @Test
+    public void longerGeohashesStartWithShorterOnes() {
+        final String geohash = Geohash.encode(35.1856, 33.3823, Geohash.MAX_PRECISION);
+        for (int precision = 1; precision < Geohash.MAX_PRECISION; precision++) {
+            assertTrue(geohash.startsWith(Geohash.encode(35.1856, 33.3823, precision)));
+        }
+    }
+
+    @Test
+    public void distanceIsTheGreatCircleDistance() {
+        assertEquals(111195, Geohash.distance(0, 0, 0, 1), 1);
+        assertEquals(111195, Geohash.distance(0, 179.5, 0, -179.5), 1);
+        assertEquals(Math.PI * Geohash.EARTH_RADIUS, Geohash.distance(90, 0, -90, 0), 1);
+        assertEquals(0, Geohash.distance(89.99, 10, 89.99, 10), 0);
+    }
+
+    @Test
+    public void coverOnTheEdgesOfCells() {
+        assertCovers(0, 0, 1000, 9);
+        assertCovers(0, 0, 1000, 1);
+        assertCovers(45, 90, 50000, 4);
+        assertCovers(-22.5, -45, 300, 9);
+    }
+
+    @Test
+    public void coverAcrossTheAntimeridian() {
+        final List<Geohash.Range> ranges = assertCovers(10, 179.999, 50000, 9);
+        assertCovered(ranges, Geohash.encode(10, -179.8, PRECISION));
+        assertCovered(ranges, Geohash.encode(10, 179.8, PRECISION));
+        assertCovers(-40, -180, 20000, 9);
+        assertCovers(0, 180, 5000, 4);
+    }
+
+    @Test
+    public void coverNearThePoles() {
+        assertCovers(89.95, 0, 20000, 9);
+        assertCovers(-89.99, 120, 5000, 9);
+        assertCovers(90, 0, 1000, 9);
+    }
+
+    @Test
+    public void coverOfTheWholeEarthCoversEveryPoint() {
+        final List<Geohash.Range> ranges = Geohash.cover(0, 0, 2.1e7, PRECISION, 4);
+        final Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            assertCovered(ranges, Geohash.encode(-90 + 180 * random.nextDouble(), -180 + 360 * random.nextDouble(), PRECISION));
+        }
+    }
+
+    @Test
+    public void coverOfRandomCirclesCoversTheirPoints() {
+        final Random random = new Random(9);
+        for (int i = 0; i < 300; i++) {
+            final double latitude = -89 + 178 * random.nextDouble();
+            final double longitude = i % 5 == 0 ? (random.nextBoolean() ? 179.99 : -179.99) : -180 + 360 * random.nextDouble();
+            assertCovers(latitude, longitude, Math.pow(10, 1 + 5 * random.nextDouble()), 1 + random.nextInt(9));
+        }
+    }
+
+    @Test
+    public void coverReadsLittleOutsideOfSmallCircles() {
+        final List<Geohash.Range> ranges = Geohash.cover(35.1856, 33.3823, 100, PRECISION, 9);
+        final String centre = Geohash.encode(35.1856, 33.3823, PRECISION);
+        assertCovered(ranges, centre);
+        assertFalse(covered(ranges, Geohash.encode(35.1956, 33.3823, PRECISION)));
+        assertFalse(covered(ranges, Geohash.encode(35.1856, 33.3923, PRECISION)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsInvalidLatitudes() {
+        Geohash.encode(90.5, 0, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encodeRejectsInvalidPrecisions() {
+        Geohash.encode(0, 0, Geohash.MAX_PRECISION + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void coverRejectsNonPositiveRadii() {
+        Geohash.cover(0, 0, 0, PRECISION, 9);
+    }
+
+    /**
+     * Covers a circle and checks that the ranges are few enough, disjoint and ascending, and contain the points of
+     * the circle: its centre and points on its edge, in all directions.
+     * @param latitude The latitude of the centre.
+     * @param longitude The longitude of the centre.
+     * @param radius The radius, in metres.
+     * @param maxRanges The maximum number of ranges.
+     * @return Returns the ranges.
+     */
+    private static List<Geohash.Range> assertCovers(final double latitude, final double longitude, final double radius, final int maxRanges) {
+        final List<Geohash.Range> ranges = Geohash.cover(latitude, longitude, radius, PRECISION, maxRanges);
+        assertFalse(ranges.isEmpty());
+        assertTrue(ranges.size() <= maxRanges);
+        for (int i = 0; i < ranges.size(); i++) {
+            assertTrue(ranges.get(i).getStart().compareTo(ranges.get(i).getEnd()) < 0);
+            if (i > 0) {
+                assertTrue(ranges.get(i - 1).getEnd().compareTo(ranges.get(i).getStart()) < 0);
+            }
+        }
+        assertCovered(ranges, Geohash.encode(latitude, longitude, PRECISION));
+        final double angle = radius * 0.999 / Geohash.EARTH_RADIUS;
+        final double phi = Math.toRadians(latitude);
+        for (int direction = 0; direction < 64; direction++) {
+            final double bearing = 2 * Math.PI * direction / 64;
+            final double pointPhi = Math.asin(Math.sin(phi) * Math.cos(angle) + Math.cos(phi) * Math.sin(angle) * Math.cos(bearing));
+            final double deltaLambda = Math.atan2(Math.sin(bearing) * Math.sin(angle) * Math.cos(phi), Math.cos(angle) - Math.sin(phi) * Math.sin(pointPhi));
+            final double pointLatitude = Math.max(-90, Math.min(90, Math.toDegrees(pointPhi)));
+            double pointLongitude = longitude + Math.toDegrees(deltaLambda);
+            pointLongitude = ((pointLongitude + 540) % 360) - 180;
+            if (Geohash.distance(latitude, longitude, pointLatitude, pointLongitude) <= radius) {
+                assertCovered(ranges, Geohash.encode(pointLatitude, pointLongitude, PRECISION));
+            }
+        }
+        return ranges;
+    }
+
+    private static void assertCovered(final List<Geohash.Range> ranges, final String geohash) {
+        assertTrue(geohash + " is not in " + ranges, covered(ranges, geohash));
+    }
+
+    private static boolean covered(final List<Geohash.Range> ranges, final String geohash) {
+        for (Geohash.Range range : ranges) {
+            if (range.contains(geohash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
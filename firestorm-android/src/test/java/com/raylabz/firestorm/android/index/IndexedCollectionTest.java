@@ -0,0 +1,200 @@
+package com.raylabz.firestorm.android.index;
+
+import com.google.firebase.firestore.Query;
+import com.raylabz.firestorm.android.ObjectChange;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that queries of an {@link IndexedCollection} return the same results whichever index they read their
+ * candidates from, as a full scan of a collection without indexes.
+ * @version 1.4.0
+ */
+public class IndexedCollectionTest {
+
+    private static final String[] CITIES = {"a", "b", "c", "d", "e", "f"};
+    private static final String[] TAGS = {"x", "y", "z", "w"};
+
+    static class Person {
+        String id;
+        String city;
+        int age;
+        double score;
+        List<String> tags;
+        Person() { }
+    }
+
+    private IndexedCollection<Person> indexed;
+    private IndexedCollection<Person> plain;
+
+    @Before
+    public void setUp() {
+        indexed = new IndexedCollection.Builder<>(Person.class)
+                .addHashIndex("city")
+                .addHashIndex("tags")
+                .addSortedIndex("age")
+                .addSortedIndex("score")
+                .build();
+        plain = new IndexedCollection.Builder<>(Person.class).build();
+        final Random random = new Random(5);
+        final ArrayList<Person> people = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            people.add(person(String.format("p%04d", i), CITIES[random.nextInt(CITIES.length)], random.nextInt(90),
+                    random.nextInt(1000) / 10.0, random));
+        }
+        indexed.putAll(people);
+        plain.putAll(people);
+    }
+
+    @Test
+    public void equalityUsesTheHashIndex() {
+        final List<Person> results = indexed.query().whereEqualTo("city", "c").whereGreaterThan("age", 30).get();
+        assertFalse(results.isEmpty());
+        for (Person person : results) {
+            assertEquals("c", person.city);
+            assertTrue(person.age > 30);
+        }
+        assertEquals(ids(plain.query().whereEqualTo("city", "c").whereGreaterThan("age", 30).get()), ids(results));
+    }
+
+    @Test
+    public void orderedQueryWithLimitReadsTheSortedIndexInOrder() {
+        final List<Person> results = indexed.query().orderBy("score", Query.Direction.DESCENDING).limit(10).get();
+        assertEquals(10, results.size());
+        for (int i = 1; i < results.size(); i++) {
+            assertTrue(results.get(i - 1).score >= results.get(i).score);
+        }
+        assertEquals(idList(plain.query().orderBy("score", Query.Direction.DESCENDING).limit(10).get()), idList(results));
+    }
+
+    @Test
+    public void rangeOnOrderedFieldIsReadInOrder() {
+        final List<Person> results = indexed.query().whereGreaterThanOrEqualTo("age", 20).whereLessThan("age", 25).orderBy("age").get();
+        assertEquals(idList(plain.query().whereGreaterThanOrEqualTo("age", 20).whereLessThan("age", 25).orderBy("age").get()), idList(results));
+        for (Person person : results) {
+            assertTrue(person.age >= 20 && person.age < 25);
+        }
+    }
+
+    @Test
+    public void rangeConditionsOnlyMatchValuesOfTheSameType() {
+        assertTrue(indexed.query().whereGreaterThan("age", "10").get().isEmpty());
+        assertTrue(indexed.query().whereLessThan("city", 3).get().isEmpty());
+    }
+
+    @Test
+    public void changesReindexObjects() {
+        final Person person = indexed.get("p0001");
+        final Person moved = person("p0001", "zzz", 200, person.score, new Random(1));
+        final Person added = person("q0001", "zzz", 201, 0, new Random(1));
+        indexed.apply(Arrays.asList(
+                new ObjectChange<>(moved, null, 1, 1, ObjectChange.Type.MODIFIED),
+                new ObjectChange<>(added, null, -1, 2000, ObjectChange.Type.ADDED),
+                new ObjectChange<>(indexed.get("p0002"), null, 2, -1, ObjectChange.Type.REMOVED)));
+
+        assertEquals(Arrays.asList("p0001", "q0001"), idList(indexed.query().whereEqualTo("city", "zzz").orderBy("age").get()));
+        assertEquals(Arrays.asList("q0001", "p0001"), idList(indexed.query().orderBy("age", Query.Direction.DESCENDING).limit(2).get()));
+        assertFalse(ids(indexed.query().whereEqualTo("city", person.city).get()).contains("p0001"));
+        assertNull(indexed.get("p0002"));
+        assertEquals(2000, indexed.size());
+    }
+
+    @Test
+    public void randomQueriesMatchAFullScan() {
+        for (int i = 0; i < 500; i++) {
+            final long seed = 1000 + i;
+            final boolean ordered = new Random(seed).nextBoolean();
+            final List<Person> expected = randomQuery(plain, new Random(seed)).get();
+            final List<Person> actual = randomQuery(indexed, new Random(seed)).get();
+            if (ordered) {
+                assertEquals("Query " + seed, idList(expected), idList(actual));
+            }
+            else {
+                assertEquals("Query " + seed, ids(expected), ids(actual));
+            }
+        }
+    }
+
+    /**
+     * Builds a random query. Only ordered queries are limited, so that the results of unordered queries can be
+     * compared as sets.
+     * @param collection The collection.
+     * @param random The random generator, which decides first if the query is ordered.
+     * @return Returns an IndexedQuery.
+     */
+    private static IndexedQuery<Person> randomQuery(final IndexedCollection<Person> collection, final Random random) {
+        final boolean ordered = random.nextBoolean();
+        final IndexedQuery<Person> query = collection.query();
+        final int conditions = random.nextInt(3);
+        for (int i = 0; i < conditions; i++) {
+            switch (random.nextInt(7)) {
+                case 0:
+                    query.whereEqualTo("city", CITIES[random.nextInt(CITIES.length)]);
+                    break;
+                case 1:
+                    query.whereIn("city", Arrays.asList(CITIES[random.nextInt(CITIES.length)], CITIES[random.nextInt(CITIES.length)]));
+                    break;
+                case 2:
+                    query.whereArrayContains("tags", TAGS[random.nextInt(TAGS.length)]);
+                    break;
+                case 3:
+                    query.whereArrayContainsAny("tags", Arrays.asList(TAGS[random.nextInt(TAGS.length)], TAGS[random.nextInt(TAGS.length)]));
+                    break;
+                case 4:
+                    query.whereGreaterThanOrEqualTo("age", random.nextInt(90));
+                    break;
+                case 5:
+                    query.whereLessThan("score", random.nextInt(100) * 1.0);
+                    break;
+                default:
+                    query.whereNotIn("city", Collections.singletonList(CITIES[random.nextInt(CITIES.length)]));
+                    break;
+            }
+        }
+        if (ordered) {
+            query.orderBy(random.nextBoolean() ? "age" : "score", random.nextBoolean() ? Query.Direction.ASCENDING : Query.Direction.DESCENDING);
+            if (random.nextBoolean()) {
+                query.limit(1 + random.nextInt(50));
+            }
+        }
+        return query;
+    }
+
+    private static Person person(final String id, final String city, final int age, final double score, final Random random) {
+        final Person person = new Person();
+        person.id = id;
+        person.city = city;
+        person.age = age;
+        person.score = score;
+        person.tags = new ArrayList<>();
+        for (String tag : TAGS) {
+            if (random.nextInt(3) == 0) {
+                person.tags.add(tag);
+            }
+        }
+        return person;
+    }
+
+    private static List<String> idList(final List<Person> people) {
+        final ArrayList<String> ids = new ArrayList<>(people.size());
+        for (Person person : people) {
+            ids.add(person.id);
+        }
+        return ids;
+    }
+
+    private static HashSet<String> ids(final List<Person> people) {
+        return new HashSet<>(idList(people));
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.raylabz.firestorm.android.index;
+
+import com.raylabz.firestorm.android.annotation.Searchable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the tokenizing, matching and ranking of {@link TextIndex}.
+ * @version 1.4.0
+ */
+public class TextIndexTest {
+
+    static class Article {
+        String id;
+        @Searchable(weight = 3) String title;
+        @Searchable String body;
+        int views;
+        Article() { }
+        Article(final String id, final String title, final String body) {
+            this.id = id;
+            this.title = title;
+            this.body = body;
+        }
+    }
+
+    static class NumberSearchable {
+        String id;
+        @Searchable int count;
+    }
+
+    static class NothingSearchable {
+        String id;
+        String title;
+    }
+
+    @Test
+    public void tokenizeNormalizesWords() {
+        final ArrayList<String> words = new ArrayList<>();
+        TextIndex.tokenize("Héllo, WORLD! déjà-vu  42nd", words);
+        assertEquals(Arrays.asList("hello", "world", "deja", "vu", "42nd"), words);
+    }
+
+    @Test
+    public void tokenizeIgnoresSeparatorsOnly() {
+        final ArrayList<String> words = new ArrayList<>();
+        TextIndex.tokenize(" ,.;-! ", words);
+        assertTrue(words.isEmpty());
+    }
+
+    @Test
+    public void tokenizeTruncatesLongWords() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append('a');
+        }
+        final ArrayList<String> words = new ArrayList<>();
+        TextIndex.tokenize(text + " b", words);
+        assertEquals(2, words.size());
+        assertEquals(64, words.get(0).length());
+        assertEquals("b", words.get(1));
+    }
+
+    @Test
+    public void resultsContainEveryWord() {
+        final TextIndex<Article> index = index(
+                new Article("1", "Red apples", "Fresh from the farm"),
+                new Article("2", "Green apples", "Sour and fresh"),
+                new Article("3", "Red cars", "Fast"));
+        assertEquals(Collections.singletonList("1"), index.search("red apples ", 0));
+        assertEquals(Arrays.asList("1", "2"), sorted(index.search("apples fresh ", 0)));
+        assertTrue(index.search("red sour ", 0).isEmpty());
+        assertTrue(index.search("", 0).isEmpty());
+    }
+
+    @Test
+    public void lastWordMatchesAsPrefixUnlessFollowedByASeparator() {
+        final TextIndex<Article> index = index(
+                new Article("1", "Catalog", ""),
+                new Article("2", "Cat", ""),
+                new Article("3", "Dog", ""));
+        assertEquals(Arrays.asList("2", "1"), index.search("cat", 0));
+        assertEquals(Collections.singletonList("2"), index.search("cat ", 0));
+        assertTrue(index.search("cats", 0).isEmpty());
+    }
+
+    @Test
+    public void rankingFavorsWeightedFieldsAndFrequentWords() {
+        final TextIndex<Article> index = index(
+                new Article("body", "Notes", "storm"),
+                new Article("title", "Storm", "notes"),
+                new Article("none", "Notes", "notes"));
+        assertEquals(Arrays.asList("title", "body"), index.search("storm ", 0));
+
+        final TextIndex<Article> frequencies = index(
+                new Article("once", "", "rain and sun and wind"),
+                new Article("twice", "", "rain rain and sun and wind"));
+        assertEquals(Arrays.asList("twice", "once"), frequencies.search("rain ", 0));
+    }
+
+    @Test
+    public void limitKeepsTheBestResults() {
+        final ArrayList<Article> articles = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final StringBuilder body = new StringBuilder();
+            for (int j = 0; j <= i; j++) {
+                body.append("word ");
+            }
+            articles.add(new Article(String.valueOf(i), "", body.append("filler filler filler").toString()));
+        }
+        final TextIndex<Article> index = index(articles.toArray(new Article[0]));
+        assertEquals(Arrays.asList("19", "18", "17"), index.search("word ", 3));
+        assertEquals(20, index.search("word ", 0).size());
+    }
+
+    @Test
+    public void removedAndModifiedObjectsAreReindexed() {
+        final TextIndex<Article> index = index(
+                new Article("1", "Alpha", ""),
+                new Article("2", "Beta", ""));
+        index.remove("1");
+        assertTrue(index.search("alpha ", 0).isEmpty());
+        index.remove("2");
+        index.add("2", new Article("2", "Gamma", ""));
+        assertTrue(index.search("beta ", 0).isEmpty());
+        assertEquals(Collections.singletonList("2"), index.search("gamma ", 0));
+    }
+
+    @Test
+    public void compactionKeepsResults() {
+        final TextIndex<Article> index = TextIndex.of(Article.class);
+        for (int i = 0; i < 3000; i++) {
+            index.add(String.valueOf(i), new Article(String.valueOf(i), i % 2 == 0 ? "even" : "odd", "number"));
+        }
+        for (int i = 0; i < 2500; i++) {
+            index.remove(String.valueOf(i));
+        }
+        final List<String> even = index.search("even ", 0);
+        assertEquals(250, even.size());
+        for (String id : even) {
+            assertTrue(Integer.parseInt(id) >= 2500 && Integer.parseInt(id) % 2 == 0);
+        }
+        assertEquals(500, index.search("numb", 0).size());
+    }
+
+    @Test
+    public void collectionSearchReturnsObjects() {
+        final IndexedCollection<Article> collection = new IndexedCollection.Builder<>(Article.class).addTextIndex().build();
+        collection.put(new Article("1", "Firestorm guide", "How to query"));
+        collection.put(new Article("2", "Cooking", "How to bake"));
+        final List<Article> results = collection.search("how to qu", 10);
+        assertEquals(1, results.size());
+        assertEquals("1", results.get(0).id);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void searchableFieldsMustBeStrings() {
+        TextIndex.of(NumberSearchable.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void classMustHaveSearchableFields() {
+        TextIndex.of(NothingSearchable.class);
+    }
+
+    private static TextIndex<Article> index(final Article... articles) {
+        final TextIndex<Article> index = TextIndex.of(Article.class);
+        for (Article article : articles) {
+            index.add(article.id, article);
+        }
+        return index;
+    }
+
+    private static List<String> sorted(final List<String> ids) {
+        final ArrayList<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+}